@@ -43,6 +43,7 @@ public final class RunStats implements Runnable {
 
     private final List<Statsable> stats = new ArrayList<Statsable>();
     private final List<Touchable> touchs = new ArrayList<Touchable>();
+    private final List<Stoppable> stops = new ArrayList<Stoppable>();
 
     private File statusFile;
     private final long initialTime;
@@ -69,6 +70,12 @@ public final class RunStats implements Runnable {
                     log.debug(header);
                 } catch (Throwable t) {
                 }
+                for (Stoppable stop : getStoppables()) {
+                    try {
+                        stop.onStop();
+                    } catch (Throwable t) {
+                    }
+                }
                 for (Statsable stat : stats) {
                     if (stat instanceof SimpleDataSource) {
                         try {
@@ -98,6 +105,16 @@ public final class RunStats implements Runnable {
         }
     }
 
+    public synchronized void addStoppable(Stoppable stop) {
+        if (!stops.contains(stop)) {
+            stops.add(stop);
+        }
+    }
+
+    synchronized List<Stoppable> getStoppables() {
+        return new ArrayList<Stoppable>(stops);
+    }
+
     public void addStat(Statsable stat) {
         if (!stats.contains(stat)) {
             stats.add(stat);
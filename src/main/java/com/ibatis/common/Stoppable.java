@@ -0,0 +1,16 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.common;
+
+/**
+ * Stoppable for internal use only, called by the shutdown hook of {@link RunStats} before the data sources are closed.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public interface Stoppable {
+    void onStop();
+}
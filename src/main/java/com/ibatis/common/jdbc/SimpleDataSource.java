@@ -28,6 +28,7 @@ import java.sql.*;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
@@ -46,6 +47,8 @@ import java.util.logging.Logger;
  * JDBC.DefaultTransactionIsolation
  * Pool.MaximumActiveConnections
  * Pool.MaximumIdleConnections
+ * Pool.MinimumIdleConnections
+ * Pool.MinimumIdleFillThreads
  * Pool.MaximumCheckoutTime
  * Pool.TimeToWait
  * Pool.PingQuery
@@ -54,6 +57,8 @@ import java.util.logging.Logger;
  * Pool.PingConnectionsNotUsedFor
  * Pool.PingIdleConnectionsAfter
  * Pool.EraseIdleConnectionsAfter
+ * Pool.ValidationInterval
+ * Pool.ValidationTimeout
  * Pool.ShutdownDelay
  * Pool.LogSqlOverdueThan
  * Pool.CommitOnReturn
@@ -73,6 +78,8 @@ public class SimpleDataSource implements DataSource, Statsable {
     // Optional Properties
     private static final String PROP_POOL_MAX_ACTIVE_CONN = "Pool.MaximumActiveConnections";
     private static final String PROP_POOL_MAX_IDLE_CONN = "Pool.MaximumIdleConnections";
+    private static final String PROP_POOL_MIN_IDLE_CONN = "Pool.MinimumIdleConnections";
+    private static final String PROP_POOL_MIN_IDLE_FILL_THREADS = "Pool.MinimumIdleFillThreads";
     private static final String PROP_POOL_MAX_CHECKOUT_TIME = "Pool.MaximumCheckoutTime";
     private static final String PROP_POOL_TIME_TO_WAIT = "Pool.TimeToWait";
     private static final String PROP_POOL_PING_QUERY = "Pool.PingQuery";
@@ -81,6 +88,8 @@ public class SimpleDataSource implements DataSource, Statsable {
     private static final String PROP_POOL_PING_CONN_NOT_USED_FOR = "Pool.PingConnectionsNotUsedFor";
     private static final String PROP_POOL_PING_IDLE_CONN_AFTER = "Pool.PingIdleConnectionsAfter";
     private static final String PROP_POOL_Erase_IDLE_CONN_AFTER = "Pool.EraseIdleConnectionsAfter";
+    private static final String PROP_POOL_VALIDATION_INTERVAL = "Pool.ValidationInterval";
+    private static final String PROP_POOL_VALIDATION_TIMEOUT = "Pool.ValidationTimeout";
     private static final String PROP_POOL_ShutdownDelay = "Pool.ShutdownDelay";
     private static final String PROP_POOL_LogSqlOverdueThan = "Pool.LogSqlOverdueThan";
     private static final String PROP_POOL_CommitOnReturn = "Pool.CommitOnReturn";
@@ -95,6 +104,7 @@ public class SimpleDataSource implements DataSource, Statsable {
 
     final ReentrantLock poolLock = new ReentrantLock();
     final Condition forIdle  = poolLock.newCondition();
+    final Condition forFill  = poolLock.newCondition();
 
     static class Stat {
         volatile long requestCount = 0;
@@ -108,12 +118,30 @@ public class SimpleDataSource implements DataSource, Statsable {
         volatile long totalOverdueCheckoutTime = 0;
         volatile long totalWaitTime = 0;
         volatile long hadToWaitCount = 0;
+        volatile long fillCount = 0;
+        volatile long fillFailCount = 0;
+        volatile long validateCount = 0;
+        volatile long totalValidateNanos = 0;
+        volatile long checkoutPingCount = 0;
+        volatile long totalCheckoutPingNanos = 0;
+        volatile long pingSkippedCount = 0;
     }
 
     long maxIdleCount = 0;
     long maxActiveCount = 0;
+    // the connections being created by the fillers
+    final AtomicInteger filling = new AtomicInteger();
+    // the connections being created by the requests
+    int creating;
+    // the fillers do not connect before this time after a failure
+    volatile long fillRetryAt;
+    long fillRetryDelay = FILL_RETRY_MIN;
     // ----- END: FIELDS LOCKED BY POOL_LOCK -----
 
+    static final long FILL_CHECK_INTERVAL = 1000L;
+    static final long FILL_RETRY_MIN = 1000L;
+    static final long FILL_RETRY_MAX = 30000L;
+
     // ----- BEGIN: PROPERTY FIELDS FOR CONFIGURATION -----
     private String jdbcDriver;
     private String jdbcUrl;
@@ -127,6 +155,8 @@ public class SimpleDataSource implements DataSource, Statsable {
 
     private int poolMaxActive;
     private int poolMaxIdle;
+    private int poolMinIdle;
+    private int poolMinIdleFillThreads;
     private int poolMaxCheckoutTime;
     private int poolTimeToWait;
     private String poolPingQuery, realPingQuery;
@@ -135,6 +165,8 @@ public class SimpleDataSource implements DataSource, Statsable {
     private int poolPingConnNotUsedFor;
     private int poolPingIdleConnAfter;
     private int poolEraseIdleConnAfter;
+    private int poolValidationInterval;
+    private int poolValidationTimeout;
     private int poolShutdownDelay;
     int poolLogSqlOverdueThan;
     private boolean poolCommitOnReturn;
@@ -142,6 +174,10 @@ public class SimpleDataSource implements DataSource, Statsable {
     // ----- END: PROPERTY FIELDS FOR CONFIGURATION -----
 
     IdleThread idle;
+    FillThread[] fillers;
+    ValidateThread validator;
+    // the driver has no Connection.isValid, the ping query is used instead
+    volatile boolean isValidUnsupported;
     AtomicBoolean threadDumped = new AtomicBoolean(false);
 
     /**
@@ -175,6 +211,18 @@ public class SimpleDataSource implements DataSource, Statsable {
 
         idle = new IdleThread(hashCode());
         idle.start();
+
+        if (poolValidationInterval > 0) {
+            validator = new ValidateThread(hashCode());
+            validator.start();
+        }
+        if (poolMinIdle > 0) {
+            fillers = new FillThread[Math.max(1, Math.min(poolMinIdleFillThreads, poolMinIdle))];
+            for (int i = 0; i < fillers.length; i++) {
+                fillers[i] = new FillThread(hashCode(), i + 1);
+                fillers[i].start();
+            }
+        }
     }
 
     void initialize(Map<Object, Object> props) throws Exception {
@@ -190,6 +238,9 @@ public class SimpleDataSource implements DataSource, Statsable {
 
         poolMaxActive = propInt(props, PROP_POOL_MAX_ACTIVE_CONN, 10);
         poolMaxIdle = propInt(props, PROP_POOL_MAX_IDLE_CONN, 5);
+        poolMinIdle = Math.max(0, Math.min(propInt(props, PROP_POOL_MIN_IDLE_CONN, 0), Math.min(poolMaxIdle,
+            poolMaxActive)));
+        poolMinIdleFillThreads = propInt(props, PROP_POOL_MIN_IDLE_FILL_THREADS, 2);
         poolMaxCheckoutTime = propInt(props, PROP_POOL_MAX_CHECKOUT_TIME, 20000);
         poolTimeToWait = propInt(props, PROP_POOL_TIME_TO_WAIT, 20000);
         if (poolTimeToWait < 1000) {
@@ -201,6 +252,8 @@ public class SimpleDataSource implements DataSource, Statsable {
         poolPingConnNotUsedFor = propInt(props, PROP_POOL_PING_CONN_NOT_USED_FOR, 0);
         poolPingIdleConnAfter = propInt(props, PROP_POOL_PING_IDLE_CONN_AFTER, 0);
         poolEraseIdleConnAfter = propInt(props, PROP_POOL_Erase_IDLE_CONN_AFTER, 0);
+        poolValidationInterval = propInt(props, PROP_POOL_VALIDATION_INTERVAL, 0);
+        poolValidationTimeout = propInt(props, PROP_POOL_VALIDATION_TIMEOUT, 5);
         poolShutdownDelay = propInt(props, PROP_POOL_ShutdownDelay, 10000);
         poolLogSqlOverdueThan = propInt(props, PROP_POOL_LogSqlOverdueThan, 0);
         sql_executor_threshold = propInt(props, "sql_executor_threshold", 1000);
@@ -425,6 +478,96 @@ public class SimpleDataSource implements DataSource, Statsable {
         return poolMaxIdle;
     }
 
+    /**
+     * Getter for the number of idle connections kept ready by the fillers
+     *
+     * @return The minimum number of idle connections
+     */
+    public int getPoolMinimumIdleConnections() {
+        return poolMinIdle;
+    }
+
+    /**
+     * Getter for the number of idle connections created off the request path
+     *
+     * @return The number of connections created by the fillers
+     */
+    public long getFillCount() {
+        return stat.fillCount;
+    }
+
+    /**
+     * Getter for the number of failures of the fillers to connect
+     *
+     * @return The number of failures
+     */
+    public long getFillFailCount() {
+        return stat.fillFailCount;
+    }
+
+    /**
+     * Getter for the number of idle connections
+     *
+     * @return The number of idle connections
+     */
+    public int getIdleConnectionCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Getter for the interval of the background validation of the idle connections
+     *
+     * @return The milliseconds, 0 if the validation is off
+     */
+    public int getPoolValidationInterval() {
+        return poolValidationInterval;
+    }
+
+    /**
+     * Getter for the number of idle connections validated in the background
+     *
+     * @return The number of validations
+     */
+    public long getValidateCount() {
+        return stat.validateCount;
+    }
+
+    /**
+     * Getter for the average time of a validation in the background
+     *
+     * @return The average micros
+     */
+    public long getAvgValidateMicros() {
+        return stat.validateCount == 0 ? 0 : stat.totalValidateNanos / stat.validateCount / 1000L;
+    }
+
+    /**
+     * Getter for the number of connections checked while the request waits
+     *
+     * @return The number of checks on checkout
+     */
+    public long getCheckoutPingCount() {
+        return stat.checkoutPingCount;
+    }
+
+    /**
+     * Getter for the average time the request waits for the check of a connection
+     *
+     * @return The average micros
+     */
+    public long getAvgCheckoutPingMicros() {
+        return stat.checkoutPingCount == 0 ? 0 : stat.totalCheckoutPingNanos / stat.checkoutPingCount / 1000L;
+    }
+
+    /**
+     * Getter for the number of pings on checkout skipped, the connections were validated in the background
+     *
+     * @return The number of pings skipped
+     */
+    public long getPingSkippedCount() {
+        return stat.pingSkippedCount;
+    }
+
     /**
      * Getter for the maximum time a connection can be used before it *may* be given away again.
      *
@@ -579,11 +722,17 @@ buf.append(h).append(" avgWaitTime        ").append(pad(getAvgWaitTime()))
 buf.append(h).append(" maxIdleCount       ").append(pad(maxIdleCount))               .append(" poolShutdownDelay        ").append(poolShutdownDelay);
 buf.append(h).append(" maxActiveCount     ").append(pad(maxActiveCount))             .append(" poolCommitOnReturn       ").append(poolCommitOnReturn);
 buf.append(h).append(" sql_exec_threshold ").append(pad(sql_executor_threshold))     .append(" poolLogSqlOverdueThan    ").append(poolLogSqlOverdueThan);
+buf.append(h).append(" fillCount          ").append(pad(stat.fillCount))             .append(" poolMinIdleConnections   ").append(poolMinIdle);
+buf.append(h).append(" fillFailCount      ").append(pad(stat.fillFailCount))         .append(" poolMinIdleFillThreads   ").append(poolMinIdleFillThreads);
+buf.append(h).append(" validateCount      ").append(pad(stat.validateCount))         .append(" poolValidationInterval   ").append(poolValidationInterval);
+buf.append(h).append(" avgValidateMicros  ").append(pad(getAvgValidateMicros()))     .append(" poolValidationTimeout    ").append(poolValidationTimeout);
+buf.append(h).append(" checkoutPingCount  ").append(pad(stat.checkoutPingCount))     .append(" avgCheckoutPingMicros    ").append(getAvgCheckoutPingMicros());
+buf.append(h).append(" pingSkippedCount   ").append(pad(stat.pingSkippedCount));
 buf.append(h).append(" ---------------------------------------------------------------------------------");
 // @formatter:on
         }
         /*-
-         *  requestCount - reuseCount - claimedOverdue = activeConnections + idleConnections + closeCount + eraseCount + badCount
+         *  requestCount - reuseCount - claimedOverdue + fillCount = activeConnections + idleConnections + closeCount + eraseCount + badCount
          */
         return buf.toString();
     }
@@ -661,6 +810,14 @@ buf.append(h).append(" ---------------------------------------------------------
             t.interrupt();
         } catch (Throwable e) {
         }
+        if (fillers != null) {
+            for (FillThread filler : fillers) {
+                filler.interrupt();
+            }
+        }
+        if (validator != null) {
+            validator.interrupt();
+        }
         notifyPool();
         // }
     }
@@ -722,6 +879,7 @@ buf.append(h).append(" ---------------------------------------------------------
                             SimplePooledConnection newConn = new SimplePooledConnection(conn.getRealConnection(), this);
                             newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
                             newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+                            newConn.setValidatedTimestamp(conn.getValidatedTimestamp());
 
                             long size = idleConnections.put(newConn);
                             if (size > maxIdleCount) {
@@ -793,6 +951,7 @@ buf.append(h).append(" ---------------------------------------------------------
             throw new SQLException("SimpleDataSource " + hashCode() + ": pool closed.");
         }
         boolean countedWait = false;
+        boolean reserved = false;
         SimplePooledConnection conn = null;
         long t = System.currentTimeMillis();
         int localBadConnectionCount = 0;
@@ -829,20 +988,16 @@ buf.append(h).append(" ---------------------------------------------------------
                     }
                 } else {
                     // Pool does not have available connection
-                    if (activeConnections.size() < poolMaxActive) {
+                    if (reserveCreate()) {
                         // Can create new connection
-                        if (useDriverProps) {
-                            conn = new SimplePooledConnection(DriverManager.getConnection(jdbcUrl, driverProps), this);
-                        } else {
-                            conn = new SimplePooledConnection(DriverManager.getConnection(jdbcUrl, jdbcUsername, jdbcPassword), this);
-                        }
-
-                        if (defaultTransactionIsolation != null) {
-                            conn.getRealConnection().setTransactionIsolation(defaultTransactionIsolation);
-                        }
+                        reserved = true;
+                        conn = newConnection();
                         if (log.isDebugEnabled()) {
                             log.debug("Created connection " + conn.getRealHashCode());
                         }
+                    } else if (idleConnections.size() > 0) {
+                        // filled meanwhile
+                        continue;
                     } else if (poolMaxCheckoutTime > 0) {
                         // Cannot create new connection
                         SimplePooledConnection oldest = activeConnections.peek();
@@ -857,6 +1012,7 @@ buf.append(h).append(" ---------------------------------------------------------
                                 conn = new SimplePooledConnection(oldest.getRealConnection(), this);
                                 conn.setCreatedTimestamp(oldest.getCreatedTimestamp());
                                 conn.setLastUsedTimestamp(oldest.getLastUsedTimestamp());
+                                conn.setValidatedTimestamp(oldest.getValidatedTimestamp());
                                 oldest.invalidate();
 
                                 int ret = pingFree(conn, true);
@@ -917,6 +1073,9 @@ buf.append(h).append(" ---------------------------------------------------------
                         log.warn("Wait as long as " + t + " milliseconds for connection " + conn.getRealHashCode());
                         dumpThread();
                     }
+                    if (fillers != null && idleConnections.size() < poolMinIdle) {
+                        signalFill();
+                    }
                 } else if (localBadConnectionCount > (poolMaxIdle + 3)) {
                     if (log.isDebugEnabled()) {
                         log.debug("SimpleDataSource: Could not get a good connection to the database.");
@@ -925,6 +1084,11 @@ buf.append(h).append(" ---------------------------------------------------------
                 }
                 // }
             } finally {
+                if (reserved) {
+                    // counted by the active connections, or failed
+                    releaseCreate();
+                    reserved = false;
+                }
                 // synchronized (stat)
                 {
                     stat.reuseCount += reuseCount;
@@ -944,6 +1108,74 @@ buf.append(h).append(" ---------------------------------------------------------
         return conn;
     }
 
+    SimplePooledConnection newConnection() throws SQLException {
+        SimplePooledConnection conn;
+        if (useDriverProps) {
+            conn = new SimplePooledConnection(DriverManager.getConnection(jdbcUrl, driverProps), this);
+        } else {
+            conn = new SimplePooledConnection(DriverManager.getConnection(jdbcUrl, jdbcUsername, jdbcPassword), this);
+        }
+
+        if (defaultTransactionIsolation != null) {
+            conn.getRealConnection().setTransactionIsolation(defaultTransactionIsolation);
+        }
+        return conn;
+    }
+
+    void signalFill() {
+        poolLock.lock();
+        try {
+            forFill.signalAll();
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    /**
+     * Reserve the creation of a connection for a request, while all the connections, the ones being created by the
+     * fillers and the other requests included, are fewer than the maximum active.
+     */
+    boolean reserveCreate() {
+        poolLock.lock();
+        try {
+            if (activeConnections.size() + idleConnections.size() + filling.get() + creating >= poolMaxActive) {
+                return false;
+            }
+            creating++;
+            return true;
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    void releaseCreate() {
+        poolLock.lock();
+        try {
+            creating--;
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    /**
+     * Reserve the creation of an idle connection, while the idle connections and the ones being created are fewer than
+     * the minimum, and all the connections fewer than the maximum active.
+     */
+    boolean reserveFill() {
+        poolLock.lock();
+        try {
+            int n = filling.get();
+            if (idle == null || System.currentTimeMillis() < fillRetryAt || idleConnections.size() + n >= poolMinIdle
+                || activeConnections.size() + idleConnections.size() + n + creating >= poolMaxActive) {
+                return false;
+            }
+            filling.incrementAndGet();
+            return true;
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
     void dumpThread() {
         if (threadDumped.compareAndSet(false, true)) {
             log.warn("iBATIS Thread dump start ...");
@@ -984,12 +1216,26 @@ buf.append(h).append(" ---------------------------------------------------------
             return 1;
         }
 
-        if (poolPingEnabled && (poolPingConnOlderThan > 0 && conn.getAge() > poolPingConnOlderThan
-            || poolPingConnNotUsedFor > 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnNotUsedFor)) {
+        boolean ping = poolPingEnabled && (poolPingConnOlderThan > 0 && conn.getAge() > poolPingConnOlderThan
+            || poolPingConnNotUsedFor > 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnNotUsedFor);
+        boolean validated = out && poolValidationInterval > 0;
+        if (validated) {
+            // the idle connections are validated in the background, only the ones idle for long are checked here
+            if (conn.getTimeElapsedSinceValidation() <= poolValidationInterval * 2L) {
+                if (ping) {
+                    stat.pingSkippedCount++;
+                }
+                return 0;
+            }
+            ping = true;
+        }
 
+        if (ping) {
+            long time = System.nanoTime();
             try {
-                boolean ok = pingConn(conn.getRealConnection());
+                boolean ok = validated ? validConn(conn.getRealConnection()) : pingConn(conn.getRealConnection());
                 if (ok) {
+                    conn.setValidatedTimestamp(System.currentTimeMillis());
                     return 0;
                 }
                 if (out) {
@@ -1004,11 +1250,35 @@ buf.append(h).append(" ---------------------------------------------------------
                  * not need closeCount ++, add to badConnectionCount
                  */
                 return -1;
+            } finally {
+                if (out) {
+                    stat.checkoutPingCount++;
+                    stat.totalCheckoutPingNanos += System.nanoTime() - time;
+                }
             }
         }
         return 0;
     }
 
+    /**
+     * Check the connection by Connection.isValid, or by the ping query if it is set or the driver has no isValid.
+     */
+    boolean validConn(Connection realConn) {
+        if (!isValidUnsupported && (poolPingQuery == null || poolPingQuery.trim().isEmpty())) {
+            try {
+                return realConn.isValid(poolValidationTimeout);
+            } catch (SQLFeatureNotSupportedException e) {
+                isValidUnsupported = true;
+            } catch (AbstractMethodError e) {
+                // a driver before JDBC 4
+                isValidUnsupported = true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+        return pingConn(realConn);
+    }
+
     /**
      * Unwraps a pooled connection to get to the 'real' connection
      *
@@ -1149,6 +1419,164 @@ buf.append(h).append(" ---------------------------------------------------------
         }
     }
 
+    /**
+     * FillThread creates the idle connections up to the minimum off the request path. A failure to connect, e.g. the
+     * database is down, stops all the fillers for a delay doubled on each failure.
+     * <p>
+     * Date: 2026-10-19
+     *
+     * @version 1.0
+     */
+    class FillThread extends Thread {
+
+        FillThread(int id, int index) {
+            setName("iBATIS Fill " + id + "-" + index);
+            setDaemon(true);
+        }
+
+        public void run() {
+            while (idle != null) {
+                try {
+                    if (reserveFill()) {
+                        fill();
+                    } else {
+                        poolLock.lock();
+                        try {
+                            forFill.await(FILL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                        } finally {
+                            poolLock.unlock();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (idle == null) {
+                        break;
+                    }
+                } catch (Throwable t) {
+                    log.error(getName() + " error: " + t.getMessage(), t);
+                }
+            }
+        }
+
+        void fill() {
+            SimplePooledConnection conn;
+            try {
+                conn = newConnection();
+                if (jdbcDefaultAutoCommit != null && jdbcDefaultAutoCommit != conn.getRealConnection().getAutoCommit()) {
+                    conn.getRealConnection().setAutoCommit(jdbcDefaultAutoCommit);
+                }
+            } catch (Throwable t) {
+                filling.decrementAndGet();
+                long delay;
+                poolLock.lock();
+                try {
+                    delay = fillRetryDelay;
+                    fillRetryAt = System.currentTimeMillis() + delay;
+                    fillRetryDelay = Math.min(delay * 2, FILL_RETRY_MAX);
+                } finally {
+                    poolLock.unlock();
+                }
+                stat.fillFailCount++;
+                log.warn(getName() + " could not connect, retry after " + delay + " ms: " + t.getMessage());
+                return;
+            }
+            try {
+                if (idle == null) {
+                    closeConn(conn);
+                    return;
+                }
+                long size = idleConnections.put(conn);
+                poolLock.lock();
+                try {
+                    if (size > maxIdleCount) {
+                        maxIdleCount = size;
+                    }
+                    fillRetryDelay = FILL_RETRY_MIN;
+                } finally {
+                    poolLock.unlock();
+                }
+                stat.fillCount++;
+                if (log.isDebugEnabled()) {
+                    log.debug("Filled idle connection " + conn.getRealHashCode());
+                }
+            } finally {
+                filling.decrementAndGet();
+            }
+            notifyPool();
+        }
+    }
+
+    /**
+     * ValidateThread checks the idle connections on a schedule, so the checkout hands out the connections validated
+     * recently without a ping while the request waits. The bad connections are closed, and the fillers make up for them.
+     * <p>
+     * Date: 2026-10-19
+     *
+     * @version 1.0
+     */
+    class ValidateThread extends Thread {
+
+        ValidateThread(int id) {
+            setName("iBATIS Validate " + id);
+            setDaemon(true);
+        }
+
+        public void run() {
+            // each idle connection is validated at most 1.5 intervals ago
+            long sleep = Math.max(poolValidationInterval / 2, 10);
+            while (idle != null) {
+                try {
+                    Thread.sleep(sleep);
+                    validateIdle();
+                } catch (InterruptedException e) {
+                    if (idle == null) {
+                        break;
+                    }
+                } catch (Throwable t) {
+                    log.error(getName() + " error: " + t.getMessage(), t);
+                }
+            }
+        }
+
+        void validateIdle() {
+            int badConnectionCount = 0;
+            try {
+                for (int i = idleConnections.size(); i > 0 && idle != null; i--) {
+                    SimplePooledConnection spc = idleConnections.take();
+                    if (spc == null) {
+                        break;
+                    }
+                    if (spc.getTimeElapsedSinceValidation() < poolValidationInterval) {
+                        idleConnections.put(spc);
+                        continue;
+                    }
+                    long time = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = !spc.getRealConnection().isClosed() && validConn(spc.getRealConnection());
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    stat.validateCount++;
+                    stat.totalValidateNanos += System.nanoTime() - time;
+                    if (ok) {
+                        spc.setValidatedTimestamp(System.currentTimeMillis());
+                        idleConnections.put(spc);
+                        notifyPool();
+                    } else {
+                        closeConn(spc);
+                        badConnectionCount++;
+                        log.debug("Erase bad idle connection " + spc.getRealHashCode() + " by validation");
+                        if (fillers != null) {
+                            signalFill();
+                        }
+                    }
+                }
+            } finally {
+                stat.badConnectionCount += badConnectionCount;
+            }
+        }
+    }
+
     boolean pingConn(Connection realConn) {
         String sql = getRealPingQuery(realConn);
         if (sql == null || sql.isEmpty()) {
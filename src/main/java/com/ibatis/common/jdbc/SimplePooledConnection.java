@@ -32,6 +32,7 @@ class SimplePooledConnection implements Connection {
     private long checkoutTimestamp;
     private long createdTimestamp;
     private long lastUsedTimestamp;
+    private volatile long validatedTimestamp;
     int logOverdue;
     int logThreshold;
 
@@ -51,6 +52,7 @@ class SimplePooledConnection implements Connection {
         this.dataSource = dataSource;
         this.createdTimestamp = System.currentTimeMillis();
         this.lastUsedTimestamp = System.currentTimeMillis();
+        this.validatedTimestamp = this.createdTimestamp;
         this.valid = true;
         this.logOverdue = dataSource.poolLogSqlOverdueThan;
         this.logThreshold = dataSource.sql_executor_threshold;
@@ -157,6 +159,34 @@ class SimplePooledConnection implements Connection {
         return System.currentTimeMillis() - lastUsedTimestamp;
     }
 
+    /**
+     * Getter for the time that the connection was last validated
+     * 
+     * @return - the timestamp
+     */
+    public long getValidatedTimestamp() {
+        return validatedTimestamp;
+    }
+
+    /**
+     * Setter for the time that the connection was last validated
+     * 
+     * @param validatedTimestamp
+     *            - the timestamp
+     */
+    public void setValidatedTimestamp(long validatedTimestamp) {
+        this.validatedTimestamp = validatedTimestamp;
+    }
+
+    /**
+     * Getter for the time since this connection was last validated or checked out
+     * 
+     * @return - the time since the last validation or use
+     */
+    long getTimeElapsedSinceValidation() {
+        return System.currentTimeMillis() - Math.max(validatedTimestamp, lastUsedTimestamp);
+    }
+
     /**
      * Getter for the age of the connection
      * 
@@ -41,11 +41,19 @@ public class NodeletParser {
      * Begins parsing from the provided Reader.
      */
     public void parse(String resource, Reader reader) throws NodeletException {
+        parse(resource, loadDocument(resource, reader));
+    }
+
+    public void parse(String resource, InputStream inputStream) throws NodeletException {
+        parse(resource, loadDocument(resource, inputStream));
+    }
+
+    /**
+     * Begins parsing from the Document loaded by {@link #loadDocument}.
+     */
+    public void parse(String resource, Document doc) throws NodeletException {
         try {
-            Document doc = createDocument(reader);
             parse(doc.getLastChild());
-        } catch (SAXParseException e) {
-            throw new NodeletException("Error parsing [" + resource + ", " + e.getLineNumber() + "].  Cause: " + e, e);
         } catch (NodeletException e) {
             throw e;
         } catch (Exception e) {
@@ -53,14 +61,24 @@ public class NodeletParser {
         }
     }
 
-    public void parse(String resource, InputStream inputStream) throws NodeletException {
+    /**
+     * Loads the Document without calling any Nodelet. It is safe to load documents in different threads.
+     */
+    public Document loadDocument(String resource, Reader reader) throws NodeletException {
         try {
-            Document doc = createDocument(inputStream);
-            parse(doc.getLastChild());
+            return createDocument(reader);
+        } catch (SAXParseException e) {
+            throw new NodeletException("Error parsing [" + resource + ", " + e.getLineNumber() + "].  Cause: " + e, e);
+        } catch (Exception e) {
+            throw new NodeletException("Error parsing [" + resource + "].  Cause: " + e, e);
+        }
+    }
+
+    public Document loadDocument(String resource, InputStream inputStream) throws NodeletException {
+        try {
+            return createDocument(inputStream);
         } catch (SAXParseException e) {
             throw new NodeletException("Error parsing [" + resource + ", " + e.getLineNumber() + "].  Cause: " + e);
-        } catch (NodeletException e) {
-            throw e;
         } catch (Exception e) {
             throw new NodeletException("Error parsing [" + resource + "].  Cause: " + e, e);
         }
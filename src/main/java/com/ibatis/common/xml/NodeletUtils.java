@@ -1,5 +1,6 @@
 package com.ibatis.common.xml;
 
+import org.w3c.dom.CharacterData;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
@@ -40,6 +41,74 @@ public class NodeletUtils {
         return attributes;
     }
 
+    /**
+     * Write the element as a compact xml without the doctype, the attributes defaulted by the DTD are written too, so
+     * the xml can be parsed again without the validation.
+     */
+    public static String toXml(Node n) {
+        StringBuilder buf = new StringBuilder(256);
+        appendXml(buf, n);
+        return buf.toString();
+    }
+
+    private static void appendXml(StringBuilder buf, Node n) {
+        switch (n.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            buf.append('<').append(n.getNodeName());
+            NamedNodeMap attributeNodes = n.getAttributes();
+            for (int i = 0; i < attributeNodes.getLength(); i++) {
+                Node attribute = attributeNodes.item(i);
+                buf.append(' ').append(attribute.getNodeName()).append("=\"");
+                appendEscaped(buf, attribute.getNodeValue());
+                buf.append('"');
+            }
+            if (n.hasChildNodes()) {
+                buf.append('>');
+                for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    appendXml(buf, child);
+                }
+                buf.append("</").append(n.getNodeName()).append('>');
+            } else {
+                buf.append("/>");
+            }
+            break;
+        case Node.CDATA_SECTION_NODE:
+            buf.append("<![CDATA[").append(((CharacterData) n).getData().replace("]]>", "]]]]><![CDATA[>"))
+                .append("]]>");
+            break;
+        case Node.TEXT_NODE:
+            appendEscaped(buf, ((CharacterData) n).getData());
+            break;
+        default:
+            // comments and processing instructions are ignored by the parser too
+        }
+    }
+
+    private static void appendEscaped(StringBuilder buf, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '<':
+                buf.append("&lt;");
+                break;
+            case '>':
+                buf.append("&gt;");
+                break;
+            case '&':
+                buf.append("&amp;");
+                break;
+            case '"':
+                buf.append("&quot;");
+                break;
+            case '\r':
+                buf.append("&#13;");
+                break;
+            default:
+                buf.append(c);
+            }
+        }
+    }
+
     public static String parsePropertyTokens(String string, Properties variables) {
         final String OPEN = "${";
         final char CLOSE = '}';
@@ -27,6 +27,8 @@ public class SqlMapConfigParser {
 
     private boolean usingStreams = false;
 
+    private SqlMapLoader loader;
+
     public XmlParserState getState() {
         return state;
     }
@@ -72,6 +74,8 @@ public class SqlMapConfigParser {
             throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error occurred.  Cause: " + e, e);
+        } finally {
+            closeLoader();
         }
     }
 
@@ -91,13 +95,30 @@ public class SqlMapConfigParser {
             throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error occurred.  Cause: " + e, e);
+        } finally {
+            closeLoader();
+        }
+    }
+
+    private void closeLoader() {
+        if (loader != null) {
+            loader.close();
+            loader = null;
         }
     }
 
     private void addSqlMapConfigNodelets() {
         parser.addNodelet("/sqlMapConfig/end()", new Nodelet() {
             public void process(Node node) throws Exception {
+                if (loader != null) {
+                    loader.saveSnapshot();
+                }
+                closeLoader();
+                state.addSqlMapNode(node);
                 state.getConfig().finalizeSqlMapConfig();
+                if ("true".equals(state.getGlobalProps().getProperty(SqlStatementParser.PROP_VALIDATE))) {
+                    state.getConfig().getDelegate().compileStatements();
+                }
             }
         });
     }
@@ -300,52 +321,16 @@ public class SqlMapConfigParser {
                 String resource = attributes.getProperty("resource");
                 String url = attributes.getProperty("url");
 
-                // ## sunsong
-                if (usingStreams || Resources.getCharset() == null) {
-                    InputStream inputStream = null;
-                    try {
-                        if (resource != null) {
-                            state.getConfig().getErrorContext().setResource(resource);
-                            inputStream = Resources.getResourceAsStream(resource);
-                        } else if (url != null) {
-                            state.getConfig().getErrorContext().setResource(url);
-                            inputStream = Resources.getUrlAsStream(url);
-                        } else {
-                            throw new SqlMapException("The <sqlMap> element requires either a resource or a url attribute.");
-                        }
-    
-                        new SqlMapParser(state).parse(resource, inputStream);
-                    } finally {
-                        if (inputStream != null) {
-                            try {
-                                inputStream.close();
-                            } catch (Exception e) {
-                            }
-                        }
-                    }
-                } else {
-                    Reader reader = null;
-                    try {
-                        if (resource != null) {
-                            state.getConfig().getErrorContext().setResource(resource);
-                            reader = Resources.getResourceAsReader(resource);
-                        } else if (url != null) {
-                            state.getConfig().getErrorContext().setResource(url);
-                            reader = Resources.getUrlAsReader(url);
-                        } else {
-                            throw new SqlMapException("The <sqlMap> element requires either a resource or a url attribute.");
-                        }
-    
-                        new SqlMapParser(state).parse(resource, reader);
-                    } finally {
-                        if (reader != null) {
-                            try {
-                                reader.close();
-                            } catch (Exception e) {
-                            }
-                        }
-                    }
+                if (resource != null) {
+                    state.getConfig().getErrorContext().setResource(resource);
+                } else if (url != null) {
+                    state.getConfig().getErrorContext().setResource(url);
                 }
+                if (loader == null) {
+                    loader = new SqlMapLoader(state, usingStreams);
+                }
+
+                new SqlMapParser(state).parse(resource, loader.load(node, resource, url));
             }
         });
     }
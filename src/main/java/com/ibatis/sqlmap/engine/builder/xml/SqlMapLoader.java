@@ -0,0 +1,250 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.builder.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.ibatis.common.resources.Resources;
+import com.ibatis.common.xml.NodeletParser;
+import com.ibatis.common.xml.NodeletUtils;
+import com.ibatis.sqlmap.client.SqlMapException;
+
+/**
+ * SqlMapLoader reads and validates the documents of the &lt;sqlMap&gt; elements of the config ahead in the loader
+ * threads. Only the documents are loaded in parallel, the nodelets of them are still called one by one in the order of
+ * the config, so the namespaces, aliases, extends and errors are the same as the sequential parsing.
+ * <p>
+ * The global property <code>sql_map_parse_threads</code> sets the count of the loader threads, the default is the
+ * count of the processors, and 1 loads the documents one by one while parsing. The documents are restored from the
+ * {@link SqlMapSnapshot} if the global property <code>sql_map_snapshot_file</code> is set.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+class SqlMapLoader {
+    static final String PROP_THREADS = "sql_map_parse_threads";
+    static final String ELEMENT = "sqlMap";
+
+    private final XmlParserState state;
+    private final boolean usingStreams;
+    private final NodeletParser documents = new NodeletParser();
+    private final int threads;
+    private final SqlMapSnapshot snapshot;
+
+    private ExecutorService executor;
+    private List<Node> sqlMaps;
+    private int submitted;
+    private final Map<Node, Future<Document>> loading = new IdentityHashMap<Node, Future<Document>>();
+
+    SqlMapLoader(XmlParserState state, boolean usingStreams) {
+        this.state = state;
+        this.usingStreams = usingStreams;
+        documents.setValidation(true);
+        documents.setEntityResolver(new SqlMapClasspathEntityResolver());
+
+        int n = Runtime.getRuntime().availableProcessors();
+        String prop = state.getGlobalProps().getProperty(PROP_THREADS);
+        if (prop != null && !prop.trim().isEmpty()) {
+            n = Integer.parseInt(prop.trim());
+        }
+        threads = n;
+        snapshot = SqlMapSnapshot.open(state);
+    }
+
+    /**
+     * Get the document of the &lt;sqlMap&gt; element, the first call starts to load the following ones ahead.
+     */
+    Document load(Node node, String resource, String url) throws Exception {
+        if (sqlMaps == null && threads > 1) {
+            start(node);
+        }
+        Future<Document> f = loading.remove(node);
+        if (f == null) {
+            return loadNow(resource, url);
+        }
+        submitAhead();
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Write the snapshot after all the sqlMaps are parsed.
+     */
+    void saveSnapshot() {
+        if (snapshot != null) {
+            snapshot.save();
+        }
+    }
+
+    void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        loading.clear();
+    }
+
+    private void start(Node first) {
+        sqlMaps = new ArrayList<Node>();
+        for (Node n = first; n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && ELEMENT.equals(n.getNodeName())) {
+                sqlMaps.add(n);
+            }
+        }
+        if (sqlMaps.size() > 1) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.min(threads, sqlMaps.size()), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "iBATIS SqlMap Loader-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            submitAhead();
+        }
+    }
+
+    /**
+     * Keep a few documents loaded ahead, not all of them, to bound the memory of the loaded documents.
+     */
+    private void submitAhead() {
+        if (executor == null) {
+            return;
+        }
+        while (submitted < sqlMaps.size() && loading.size() < threads * 2) {
+            Node node = sqlMaps.get(submitted++);
+            Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
+            final String resource = attributes.getProperty("resource");
+            final String url = attributes.getProperty("url");
+            if (resource != null || url != null) {
+                loading.put(node, executor.submit(new Callable<Document>() {
+                    public Document call() throws Exception {
+                        return loadNow(resource, url);
+                    }
+                }));
+            }
+        }
+    }
+
+    Document loadNow(String resource, String url) throws Exception {
+        if (snapshot != null) {
+            return loadSnapshot(resource, url);
+        }
+        // ## sunsong
+        if (usingStreams || Resources.getCharset() == null) {
+            InputStream inputStream = null;
+            try {
+                if (resource != null) {
+                    inputStream = Resources.getResourceAsStream(resource);
+                } else if (url != null) {
+                    inputStream = Resources.getUrlAsStream(url);
+                } else {
+                    throw new SqlMapException("The <sqlMap> element requires either a resource or a url attribute.");
+                }
+
+                return documents.loadDocument(resource != null ? resource : url, inputStream);
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (Exception e) {
+                    }
+                }
+            }
+        } else {
+            Reader reader = null;
+            try {
+                if (resource != null) {
+                    reader = Resources.getResourceAsReader(resource);
+                } else if (url != null) {
+                    reader = Resources.getUrlAsReader(url);
+                } else {
+                    throw new SqlMapException("The <sqlMap> element requires either a resource or a url attribute.");
+                }
+
+                return documents.loadDocument(resource != null ? resource : url, reader);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (Exception e) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the bytes of the sqlMap for the checksum, and parse them only if the snapshot is out of date.
+     */
+    private Document loadSnapshot(String resource, String url) throws Exception {
+        String key = resource != null ? resource : url;
+        InputStream inputStream;
+        if (resource != null) {
+            inputStream = Resources.getResourceAsStream(resource);
+        } else if (url != null) {
+            inputStream = Resources.getUrlAsStream(url);
+        } else {
+            throw new SqlMapException("The <sqlMap> element requires either a resource or a url attribute.");
+        }
+        byte[] bytes = readFully(inputStream);
+        long checksum = SqlMapSnapshot.checksum(bytes);
+        Document doc = snapshot.get(key, checksum);
+        if (doc == null) {
+            if (usingStreams || Resources.getCharset() == null) {
+                doc = documents.loadDocument(key, new ByteArrayInputStream(bytes));
+            } else if (resource != null) {
+                doc = documents.loadDocument(key, new InputStreamReader(new ByteArrayInputStream(bytes),
+                    Resources.getCharset()));
+            } else {
+                doc = documents.loadDocument(key, new InputStreamReader(new ByteArrayInputStream(bytes)));
+            }
+            snapshot.put(key, checksum, doc);
+        }
+        return doc;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buf = new byte[8192];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
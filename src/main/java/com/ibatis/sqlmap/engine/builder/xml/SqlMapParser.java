@@ -7,6 +7,7 @@ import com.ibatis.sqlmap.engine.config.*;
 import com.ibatis.sqlmap.engine.mapping.statement.*;
 import com.ibatis.sqlmap.engine.cache.*;
 
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import java.io.*;
@@ -52,11 +53,21 @@ public class SqlMapParser {
         statementParser.resetStatemetCache();
     }
 
+    /**
+     * Parse the document loaded by {@link SqlMapLoader}.
+     */
+    public void parse(String resource, Document doc) throws NodeletException {
+        state.addSqlMapResource(resource);
+        parser.parse(resource, doc);
+        statementParser.resetStatemetCache();
+    }
+
     private void addSqlMapNodelets() {
         parser.addNodelet("/sqlMap", new Nodelet() {
             public void process(Node node) throws Exception {
                 Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
                 state.setNamespace(attributes.getProperty("namespace"));
+                state.addSqlMapNode(node);
             }
         });
     }
@@ -72,6 +83,11 @@ public class SqlMapParser {
                 if (state.getSqlIncludes().containsKey(id)) {
                     throw new SqlMapException("Duplicate <sql>-include '" + id + "' found.");
                 } else {
+                    if ("true".equals(state.getGlobalProps().getProperty(SqlStatementParser.PROP_LAZY))) {
+                        // the lazy statements include a copy, the document of the sql map can be collected
+                        node = new NodeletParser().loadDocument(state.getConfig().getErrorContext().getResource(),
+                            new StringReader(NodeletUtils.toXml(node))).getDocumentElement();
+                    }
                     state.getSqlIncludes().put(id, node);
                 }
             }
@@ -397,6 +413,16 @@ public class SqlMapParser {
                 statementParser.parseGeneralStatement(node, new InsertStatement(), true, "noBatch");
             }
         });
+        parser.addNodelet("/sqlMap/upsert", new Nodelet() {
+            public void process(Node node) throws Exception {
+                Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
+                String[] keys = attributes.getProperty("keys").split(",");
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = keys[i].trim();
+                }
+                statementParser.parseGeneralStatement(node, new UpsertStatement(keys), true, "noBatch");
+            }
+        });
         parser.addNodelet("/sqlMap/update", new Nodelet() {
             public void process(Node node) throws Exception {
                 statementParser.parseGeneralStatement(node, new UpdateStatement(), true, "noBatch");
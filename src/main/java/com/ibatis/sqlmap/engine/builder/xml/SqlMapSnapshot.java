@@ -0,0 +1,275 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.builder.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.ibatis.common.logging.ILog;
+import com.ibatis.common.logging.ILogFactory;
+import com.ibatis.sqlmap.client.SqlMapException;
+
+/**
+ * SqlMapSnapshot keeps the validated documents of the sqlMap files in a binary file, the document is restored from
+ * the snapshot instead of parsing and validating the xml again while the checksum of the xml matches.
+ * <p>
+ * The snapshot holds the element trees with the attributes defaulted by the DTD, the nodelets still build the
+ * statements from them, so the properties and the dialect of the boot are applied as usual.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+class SqlMapSnapshot {
+    private static final ILog log = ILogFactory.getLog(SqlMapSnapshot.class);
+
+    static final String PROP_FILE = "sql_map_snapshot_file";
+
+    static final int MAGIC = 0x69424d53;
+    static final int VERSION = 1;
+
+    static final byte END = 0;
+    static final byte ELEMENT = 1;
+    static final byte TEXT = 2;
+    static final byte CDATA = 3;
+
+    private static final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+    private final File file;
+    private final Map<String, Entry> loaded = new ConcurrentHashMap<String, Entry>();
+    private final Map<String, Entry> used = new ConcurrentHashMap<String, Entry>();
+    private volatile boolean changed;
+
+    static class Entry {
+        final long checksum;
+        final byte[] tree;
+
+        Entry(long checksum, byte[] tree) {
+            this.checksum = checksum;
+            this.tree = tree;
+        }
+    }
+
+    SqlMapSnapshot(File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try {
+                read();
+            } catch (Exception e) {
+                log.warn("Ignore the broken sqlMap snapshot " + file + ": " + e);
+                loaded.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the snapshot of the global property, or null if not set.
+     */
+    static SqlMapSnapshot open(XmlParserState state) {
+        String name = state.getGlobalProps().getProperty(PROP_FILE);
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        return new SqlMapSnapshot(new File(name.trim()));
+    }
+
+    static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return ((long) bytes.length << 32) ^ crc.getValue();
+    }
+
+    /**
+     * Get the document of the sqlMap if the checksum matches, or null.
+     */
+    Document get(String key, long checksum) {
+        Entry entry = loaded.get(key);
+        if (entry == null || entry.checksum != checksum) {
+            return null;
+        }
+        try {
+            Document doc = decode(entry.tree);
+            used.put(key, entry);
+            return doc;
+        } catch (Exception e) {
+            log.warn("Ignore the broken snapshot of " + key + ": " + e);
+            return null;
+        }
+    }
+
+    void put(String key, long checksum, Document doc) {
+        try {
+            used.put(key, new Entry(checksum, encode(doc)));
+            changed = true;
+        } catch (IOException e) {
+            throw new SqlMapException("Error encoding the snapshot of " + key + ".  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * Write the snapshot if any sqlMap is changed, added or removed.
+     */
+    void save() {
+        if (!changed && used.size() == loaded.size()) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(used.size());
+                for (Map.Entry<String, Entry> e : used.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().checksum);
+                    out.writeInt(e.getValue().tree.length);
+                    out.write(e.getValue().tree);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Could not rename " + tmp + " to " + file);
+                }
+            }
+            log.info("Write the sqlMap snapshot " + file + " of " + used.size() + " files");
+        } catch (IOException e) {
+            tmp.delete();
+            log.warn("Error writing the sqlMap snapshot " + file + ": " + e);
+        }
+    }
+
+    private void read() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long checksum = in.readLong();
+                byte[] tree = new byte[in.readInt()];
+                in.readFully(tree);
+                loaded.put(key, new Entry(checksum, tree));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static byte[] encode(Document doc) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        DataOutputStream out = new DataOutputStream(bytes);
+        encode(out, doc.getDocumentElement());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void encode(DataOutputStream out, Node n) throws IOException {
+        switch (n.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            out.writeByte(ELEMENT);
+            writeString(out, n.getNodeName());
+            NamedNodeMap attributes = n.getAttributes();
+            out.writeShort(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                writeString(out, attribute.getNodeName());
+                writeString(out, attribute.getNodeValue());
+            }
+            for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+                encode(out, child);
+            }
+            out.writeByte(END);
+            break;
+        case Node.CDATA_SECTION_NODE:
+            out.writeByte(CDATA);
+            writeString(out, ((CharacterData) n).getData());
+            break;
+        case Node.TEXT_NODE:
+            out.writeByte(TEXT);
+            writeString(out, ((CharacterData) n).getData());
+            break;
+        default:
+            // comments are ignored by the parser too
+        }
+    }
+
+    static Document decode(byte[] tree) throws Exception {
+        Document doc;
+        synchronized (factory) {
+            doc = factory.newDocumentBuilder().newDocument();
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(tree));
+        if (in.readByte() != ELEMENT) {
+            throw new IOException("The root element is expected");
+        }
+        doc.appendChild(decodeElement(in, doc));
+        return doc;
+    }
+
+    private static Element decodeElement(DataInputStream in, Document doc) throws IOException {
+        Element e = doc.createElement(readString(in));
+        int count = in.readShort();
+        for (int i = 0; i < count; i++) {
+            e.setAttribute(readString(in), readString(in));
+        }
+        for (byte type = in.readByte(); type != END; type = in.readByte()) {
+            switch (type) {
+            case ELEMENT:
+                e.appendChild(decodeElement(in, doc));
+                break;
+            case TEXT:
+                e.appendChild(doc.createTextNode(readString(in)));
+                break;
+            case CDATA:
+                e.appendChild(doc.createCDATASection(readString(in)));
+                break;
+            default:
+                throw new IOException("Unknown node type " + type);
+            }
+        }
+        return e;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, "UTF-8");
+    }
+}
@@ -6,15 +6,26 @@ import com.ibatis.common.resources.*;
 import com.ibatis.sqlmap.engine.config.*;
 import com.ibatis.sqlmap.engine.mapping.sql.SqlText;
 import com.ibatis.sqlmap.engine.mapping.statement.*;
+import com.ibatis.sqlmap.engine.scope.ErrorContext;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.client.*;
 
 import org.w3c.dom.CharacterData;
 import org.w3c.dom.*;
 
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Properties;
 
 public class SqlStatementParser {
+    /**
+     * Register the statements at startup and compile them on first use.
+     */
+    public static final String PROP_LAZY = "sql_map_lazy_statements";
+    /**
+     * Compile all the lazy statements at the end of the config, to find the errors as the eager mode.
+     */
+    public static final String PROP_VALIDATE = "sql_map_validate_statements";
 
     private XmlParserState state;
     private boolean strict;
@@ -29,10 +40,11 @@ public class SqlStatementParser {
         statemetCache.clear();
     }
 
-    public void parseGeneralStatement(Node node, MappedStatement statement, boolean canBatch, String batchReverseAttr) {
+    public void parseGeneralStatement(final Node node, final MappedStatement statement, final boolean canBatch,
+        final String batchReverseAttr) {
 
         // get attributes
-        Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
+        final Properties attributes = NodeletUtils.parseAttributes(node, state.getGlobalProps());
         String id = attributes.getProperty("id");
         // ## sunsong
         if (strict && id.indexOf('#') >= 0) {
@@ -41,6 +53,46 @@ public class SqlStatementParser {
         if (statemetCache.put(id, "") != null) {
             throw new SqlMapException("There is already a statement: " + id);
         }
+        if (state.isUseStatementNamespaces()) {
+            id = state.applyNamespace(id);
+        }
+
+        SqlMapExecutorDelegate delegate = state.getConfig().getDelegate();
+        if (strict && isLazy() && !delegate.hasMappedStatement(id)) {
+            // keep the xml of the statement only, the document of the sql map can be collected
+            final String xml = NodeletUtils.toXml(node);
+            final String namespace = state.getNamespace();
+            delegate.addLazyStatement(new LazyStatement(id, state.getConfig().getErrorContext().getResource()) {
+                @Override
+                public void compile() {
+                    ErrorContext errorContext = state.getConfig().getErrorContext();
+                    String oldNamespace = state.getNamespace();
+                    String oldResource = errorContext.getResource();
+                    state.setNamespace(namespace);
+                    errorContext.setResource(getResource());
+                    try {
+                        Node element = new NodeletParser().loadDocument(getResource(), new StringReader(xml))
+                            .getDocumentElement();
+                        compileStatement(element, attributes, getId(), statement, canBatch, batchReverseAttr);
+                    } finally {
+                        state.setNamespace(oldNamespace);
+                        errorContext.setResource(oldResource);
+                    }
+                }
+            });
+            return;
+        }
+        // compile the lazy one to check the redefinition
+        delegate.compileStatement(id);
+        compileStatement(node, attributes, id, statement, canBatch, batchReverseAttr);
+    }
+
+    private boolean isLazy() {
+        return "true".equals(state.getGlobalProps().getProperty(PROP_LAZY));
+    }
+
+    void compileStatement(Node node, Properties attributes, String id, MappedStatement statement, boolean canBatch,
+        String batchReverseAttr) {
         String parameterMapName = state.applyNamespace(attributes.getProperty("parameterMap"));
         String parameterClassName = attributes.getProperty("parameterClass");
         String resultMapName = attributes.getProperty("resultMap");
@@ -50,10 +102,12 @@ public class SqlStatementParser {
         String fetchSize = attributes.getProperty("fetchSize");
         String allowRemapping = attributes.getProperty("remapResults");
         String timeout = attributes.getProperty("timeout");
+        String cacheTtl = attributes.getProperty("cacheTtl");
+        String route = attributes.getProperty("route");
+        String shardKey = attributes.getProperty("shardKey");
+        String shardOrder = attributes.getProperty("shardOrder");
+        String shardBroadcast = attributes.getProperty("shardBroadcast");
 
-        if (state.isUseStatementNamespaces()) {
-            id = state.applyNamespace(id);
-        }
         String[] additionalResultMapNames = null;
         if (resultMapName != null) {
             StringTokenizer st = new StringTokenizer(resultMapName, ',', true);
@@ -115,6 +169,20 @@ public class SqlStatementParser {
             new XMLSqlSource(state, node), parameterMapName, parameterClass, resultMapName, additionalResultMapNames,
             resultClass, additionalResultClasses, resultSetType, fetchSizeInt, allowRemappingBool, timeoutInt,
             cacheModelName, canBatch);
+        if (cacheTtl != null) {
+            try {
+                statementConf.setCacheTtl(Long.parseLong(cacheTtl.trim()));
+            } catch (NumberFormatException e) {
+                throw new SqlMapException("Specified cacheTtl value for statement " + id + " is not a valid long");
+            }
+        }
+        if (route != null) {
+            statementConf.setReplica("replica".equals(route));
+        }
+        if (shardKey != null) {
+            statementConf.setShard(shardKey.trim(), shardOrder);
+            statementConf.setShardBroadcast("true".equals(shardBroadcast));
+        }
 
         if (state.getConfig().getDelegate().getSqlExecutor().isCheckSql()) {
             statement.checkSql(state.getConfig().getErrorContext());
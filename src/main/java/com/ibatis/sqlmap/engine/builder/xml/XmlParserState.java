@@ -3,11 +3,15 @@ package com.ibatis.sqlmap.engine.builder.xml;
 import com.ibatis.common.logging.ILog;
 import com.ibatis.common.logging.ILogFactory;
 import com.ibatis.common.resources.*;
+import com.ibatis.sqlmap.engine.cache.CacheSnapshot;
+import com.ibatis.sqlmap.engine.cache.FingerprintKey;
 import com.ibatis.sqlmap.engine.config.*;
 
 import javax.sql.DataSource;
 
 import org.ibatis.client.Dialect;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 import java.util.*;
@@ -31,6 +35,8 @@ public class XmlParserState {
     private String namespace;
     private DataSource dataSource;
     private Dialect dialect;
+    // the fingerprint of the sqlMaps, only if the cache snapshot is used
+    private final FingerprintKey sqlMapKey = new FingerprintKey();
 
     public SqlMapConfiguration getConfig() {
         return config;
@@ -87,6 +93,10 @@ public class XmlParserState {
         return sqlIncludes;
     }
 
+    public String getNamespace() {
+        return namespace;
+    }
+
     public void setNamespace(String namespace) {
         this.namespace = namespace;
     }
@@ -166,6 +176,53 @@ public class XmlParserState {
         this.dialect = dialect;
     }
 
+    /**
+     * Fold the element tree of a sqlMap into the fingerprint of the configuration, it versions the cache snapshot.
+     */
+    public void addSqlMapNode(Node node) {
+        String file = globalProps.getProperty(CacheSnapshot.PROP_FILE);
+        if (file != null && !file.trim().isEmpty()) {
+            synchronized (sqlMapKey) {
+                fold(sqlMapKey, node);
+            }
+        }
+    }
+
+    private static void fold(FingerprintKey key, Node n) {
+        switch (n.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            key.update(n.getNodeName());
+            NamedNodeMap attributes = n.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                key.update(attribute.getNodeName());
+                key.update(attribute.getNodeValue());
+            }
+            for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+                fold(key, child);
+            }
+            key.update(-1);
+            break;
+        case Node.CDATA_SECTION_NODE:
+        case Node.TEXT_NODE:
+            String text = ((CharacterData) n).getData().trim();
+            if (!text.isEmpty()) {
+                key.update(text);
+            }
+            break;
+        default:
+        }
+    }
+
+    /**
+     * Get the fingerprint of the sqlMaps parsed.
+     */
+    public String getSqlMapKey() {
+        synchronized (sqlMapKey) {
+            return sqlMapKey.toString();
+        }
+    }
+
     Map<String, String> parsedResources = new LinkedHashMap<String, String>();
     public void addSqlMapResource(String resource) {
         if (parsedResources.put(resource, "") != null) {
@@ -0,0 +1,264 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.ibatis.common.logging.ILog;
+import com.ibatis.common.logging.ILogFactory;
+
+/**
+ * CacheCompressor keeps the large objects of a cache model serialized and deflated, and inflates a copy of them on
+ * each hit, so a cache of large result lists holds more entries in the same heap.
+ * <p>
+ * The objects serialized to at least the threshold of bytes are compressed, the smaller ones and the ones not
+ * serializable are cached as they are. The ratio of the bytes saved and the time spent inflating the hits are counted
+ * for the cache stats.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see CacheModel#PROP_COMPRESS_THRESHOLD
+ */
+public class CacheCompressor {
+    private static final ILog log = ILogFactory.getLog(CacheCompressor.class);
+
+    public static final String CODEC_DEFLATE = "deflate";
+
+    private final int threshold;
+    private final int level;
+    // the classes not serializable are cached as they are at once
+    private final Set<Class<?>> failed = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+    private long compressed, rawBytes, storedBytes;
+    private long inflates, inflateNanos;
+
+    /**
+     * @param threshold
+     *            The min bytes of the serialized object to compress
+     * @param level
+     *            The level of the deflater, 1 is the fastest and 9 the smallest
+     */
+    public CacheCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * Get the compressor of the cache properties, or null if the compression is off.
+     *
+     * @param id
+     *            The id of the cache model to log
+     */
+    public static CacheCompressor valueOf(String id, Properties props) {
+        String th = props.getProperty(CacheModel.PROP_COMPRESS_THRESHOLD);
+        if (th == null) {
+            return null;
+        }
+        int threshold;
+        try {
+            threshold = Integer.parseInt(th.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Cache '" + id + "': bad " + CacheModel.PROP_COMPRESS_THRESHOLD + " " + th);
+            return null;
+        }
+        if (threshold <= 0) {
+            return null;
+        }
+        int level = Deflater.BEST_SPEED;
+        String codec = props.getProperty(CacheModel.PROP_COMPRESS_CODEC, CODEC_DEFLATE).trim();
+        int i = codec.indexOf(':');
+        String name = i < 0 ? codec : codec.substring(0, i);
+        if (!CODEC_DEFLATE.equalsIgnoreCase(name)) {
+            log.warn("Cache '" + id + "': unknown " + CacheModel.PROP_COMPRESS_CODEC + " " + codec + ", use "
+                + CODEC_DEFLATE);
+        } else if (i > 0) {
+            try {
+                level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION,
+                    Integer.parseInt(codec.substring(i + 1))));
+            } catch (NumberFormatException e) {
+                log.warn("Cache '" + id + "': bad " + CacheModel.PROP_COMPRESS_CODEC + " " + codec);
+            }
+        }
+        return new CacheCompressor(threshold, level);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the compressed form of the object, or the object itself if it is small or not serializable.
+     */
+    public Object compress(Object value) {
+        if (value == null || value == CacheModel.NULL_OBJECT || failed.contains(value.getClass())) {
+            return value;
+        }
+        byte[] raw;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(256, threshold));
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            raw = bytes.toByteArray();
+        } catch (IOException e) {
+            failed.add(value.getClass());
+            log.debug("Cache the object of " + value.getClass().getName() + " uncompressed: " + e);
+            return value;
+        }
+        if (raw.length < threshold) {
+            return value;
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buf = new byte[Math.max(64, raw.length / 2)];
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == buf.length) {
+                    byte[] b = new byte[buf.length * 2];
+                    System.arraycopy(buf, 0, b, 0, len);
+                    buf = b;
+                }
+                len += deflater.deflate(buf, len, buf.length - len);
+            }
+            if (len >= raw.length) {
+                // not compressible, the object is cheaper as it is
+                return value;
+            }
+            byte[] data = new byte[len];
+            System.arraycopy(buf, 0, data, 0, len);
+            synchronized (this) {
+                compressed++;
+                rawBytes += raw.length;
+                storedBytes += len;
+            }
+            return new Compressed(data, raw.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Get a copy of the compressed object, other objects are returned as they are. The object not readable any more,
+     * e.g. its class is changed, is a miss.
+     */
+    public Object decompress(Object value) {
+        if (!(value instanceof Compressed)) {
+            return value;
+        }
+        long time = System.nanoTime();
+        Object o;
+        try {
+            o = inflate((Compressed) value);
+        } catch (Exception e) {
+            log.warn("Error inflating the cached object: " + e);
+            return null;
+        }
+        time = System.nanoTime() - time;
+        synchronized (this) {
+            inflates++;
+            inflateNanos += time;
+        }
+        return o;
+    }
+
+    static Object inflate(Compressed c) throws IOException, ClassNotFoundException, DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(c.data);
+            byte[] raw = new byte[c.rawLength];
+            int len = 0;
+            while (len < raw.length) {
+                int n = inflater.inflate(raw, len, raw.length - len);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("Truncated data");
+                }
+                len += n;
+            }
+            ObjectInputStream in = new CacheSnapshot.SnapshotInputStream(new ByteArrayInputStream(raw));
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Get the count of the objects compressed.
+     */
+    public synchronized long getCompressed() {
+        return compressed;
+    }
+
+    public synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Get the ratio of the serialized bytes to the compressed bytes, or 0 if nothing is compressed.
+     */
+    public synchronized double getRatio() {
+        return storedBytes > 0 ? (double) rawBytes / storedBytes : 0;
+    }
+
+    /**
+     * Get the count of the hits inflated.
+     */
+    public synchronized long getInflates() {
+        return inflates;
+    }
+
+    /**
+     * Get the average micros spent inflating a hit.
+     */
+    public synchronized long getAvgInflateMicros() {
+        return inflates > 0 ? inflateNanos / inflates / 1000L : 0;
+    }
+
+    /**
+     * The serialized and deflated object, and the length of the serialized bytes.
+     */
+    static final class Compressed implements Serializable {
+        private static final long serialVersionUID = -6318240586127398163L;
+
+        final byte[] data;
+        final int rawLength;
+
+        Compressed(byte[] data, int rawLength) {
+            this.data = data;
+            this.rawLength = rawLength;
+        }
+
+        @Override
+        public String toString() {
+            return "Compressed[" + data.length + "/" + rawLength + "]";
+        }
+    }
+}
@@ -30,9 +30,9 @@ public class CacheKey implements Cloneable, Serializable {
     private static final int DEFAULT_HASHCODE = 17;
 
     private int hashcode;
-    private long checksum;
-    private int count;
-    private List<Object> paramList = new ArrayList<Object>();
+    long checksum;
+    int count;
+    List<Object> paramList;
 
     /**
      * Default constructor
@@ -40,6 +40,14 @@ public class CacheKey implements Cloneable, Serializable {
     public CacheKey() {
         hashcode = DEFAULT_HASHCODE;
         count = 0;
+        paramList = new ArrayList<Object>();
+    }
+
+    /**
+     * Constructor of the subclasses which keep the state of the key by themselves.
+     */
+    CacheKey(List<Object> paramList) {
+        this.paramList = paramList;
     }
 
     /**
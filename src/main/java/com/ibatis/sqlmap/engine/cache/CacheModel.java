@@ -15,10 +15,21 @@
  */
 package com.ibatis.sqlmap.engine.cache;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.ibatis.client.Cache;
 
@@ -35,14 +46,46 @@ public class CacheModel implements Cache, FlushListener {
 
     private static final int MAX_OBJECT_LOG_SIZE = 32;
 
-    private long requests = 0, hits = 0, flushs = 0;
+    /**
+     * The fraction of the flush interval after which an entry is reloaded in the background, e.g. 0.75. 0 is off.
+     */
+    public static final String PROP_REFRESH_AHEAD = "cache.refresh.ahead";
+    /**
+     * The millis after the flush interval a stale entry is still served while it is reloaded.
+     */
+    public static final String PROP_STALE_GRACE = "cache.stale.grace";
+    /**
+     * The max fraction of the flush interval cut randomly from the lifetime of each entry, e.g. 0.2. 0 is off.
+     */
+    public static final String PROP_TTL_JITTER = "cache.ttl.jitter";
+    /**
+     * The min bytes of a serialized object to cache it compressed, 0 is off.
+     */
+    public static final String PROP_COMPRESS_THRESHOLD = "cache.compress.threshold";
+    /**
+     * The codec of the compressed objects, <code>deflate</code> or <code>deflate:level</code>.
+     */
+    public static final String PROP_COMPRESS_CODEC = "cache.compress.codec";
+
+    private long requests = 0, hits = 0, flushs = 0, stalePuts = 0;
+    private long refreshes = 0, refreshFailures = 0, staleServes = 0, expirations = 0;
 
     private String id;
     private int maxCacheSize = -1;
 
     private long lastFlush;
+    // breaks the cycles of the flush listeners
+    private boolean flushing;
+    // advanced by each flush, unless the controller keeps the version itself
+    private long version;
     private long flushInterval;
     private long flushIntervalSeconds;
+    private double refreshAhead;
+    private long staleGrace;
+    private double ttlJitter;
+    // the keys being reloaded in the background
+    private final Map<Object, Boolean> refreshing = new ConcurrentHashMap<Object, Boolean>();
+    private CacheCompressor compressor;
     private Set<String> flushTriggerRoots;
     private Set<String> flushTriggerStatements;
     private Set<String> flushTriggerCaches;
@@ -217,9 +260,111 @@ public class CacheModel implements Cache, FlushListener {
      * @param props
      */
     public void configure(Properties props) {
+        setRefreshProperties(props);
+        compressor = CacheCompressor.valueOf(id, props);
         controller.setProperties(this, props);
     }
 
+    void setRefreshProperties(Properties props) {
+        String ra = props.getProperty(PROP_REFRESH_AHEAD);
+        if (ra != null) {
+            try {
+                double val = Double.parseDouble(ra);
+                refreshAhead = val > 0 && val < 1 ? val : 0;
+            } catch (NumberFormatException e) {
+                log.warn("Cache '" + id + "': bad " + PROP_REFRESH_AHEAD + " " + ra);
+            }
+        }
+        String sg = props.getProperty(PROP_STALE_GRACE);
+        if (sg != null) {
+            try {
+                staleGrace = Math.max(0, Long.parseLong(sg));
+            } catch (NumberFormatException e) {
+                log.warn("Cache '" + id + "': bad " + PROP_STALE_GRACE + " " + sg);
+            }
+        }
+        String tj = props.getProperty(PROP_TTL_JITTER);
+        if (tj != null) {
+            try {
+                setTtlJitter(Double.parseDouble(tj));
+            } catch (NumberFormatException e) {
+                log.warn("Cache '" + id + "': bad " + PROP_TTL_JITTER + " " + tj);
+            }
+        }
+    }
+
+    /**
+     * The entries are reloaded in the background before the flush interval, instead of flushing the whole cache when
+     * the interval is elapsed.
+     */
+    public boolean isRefreshAhead() {
+        return refreshAhead > 0 && flushInterval > 0;
+    }
+
+    public double getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(double refreshAhead) {
+        this.refreshAhead = refreshAhead > 0 && refreshAhead < 1 ? refreshAhead : 0;
+    }
+
+    public long getStaleGrace() {
+        return staleGrace;
+    }
+
+    public void setStaleGrace(long staleGrace) {
+        this.staleGrace = Math.max(0, staleGrace);
+    }
+
+    public double getTtlJitter() {
+        return ttlJitter;
+    }
+
+    public void setTtlJitter(double ttlJitter) {
+        this.ttlJitter = ttlJitter > 0 && ttlJitter < 1 ? ttlJitter : 0;
+    }
+
+    /**
+     * The entries expire one by one, each by its own lifetime, instead of flushing the whole cache when the flush
+     * interval is elapsed.
+     */
+    public boolean isEntryExpiry() {
+        return flushInterval > 0 && (refreshAhead > 0 || ttlJitter > 0);
+    }
+
+    /**
+     * Get the millis an entry may live in the controller, the flush interval and the grace of the stale entry.
+     */
+    public long getEntryLifetime() {
+        return isRefreshAhead() ? flushInterval + staleGrace : flushInterval;
+    }
+
+    /**
+     * Get the time the stored entry may live in the controller until, the stamped entry by its own lifetime.
+     *
+     * @param value
+     *            The object stored in the controller
+     */
+    public long getExpiredTime(Object value) {
+        if (value instanceof Stamped) {
+            Stamped s = (Stamped) value;
+            return s.time + s.ttl + (isRefreshAhead() ? staleGrace : 0);
+        }
+        return System.currentTimeMillis() + getEntryLifetime();
+    }
+
+    /**
+     * Get the compressor of the large objects, or null if they are cached as they are.
+     */
+    public CacheCompressor getCompressor() {
+        return compressor;
+    }
+
+    public void setCompressor(CacheCompressor compressor) {
+        this.compressor = compressor;
+    }
+
     /**
      * Clears the cache
      */
@@ -229,20 +374,30 @@ public class CacheModel implements Cache, FlushListener {
     }
 
     synchronized void doFlush(long timestamp) {
-        controller.flush(this);
-        lastFlush = timestamp;
-        flushs++;
-        if (log.isTraceEnabled()) {
-            log("flushed", false, null);
+        if (flushing) {
+            return;
         }
-        for (FlushListener fl : flushListeners) {
-            fl.onFlush(id, timestamp);
+        flushing = true;
+        try {
+            controller.flush(this);
+            version++;
+            lastFlush = timestamp;
+            flushs++;
+            if (log.isTraceEnabled()) {
+                log("flushed", false, null);
+            }
+            for (FlushListener fl : flushListeners) {
+                fl.onFlush(id, timestamp);
+            }
+        } finally {
+            flushing = false;
         }
     }
 
     @Override
     public void onFlush(String id, long timestamp) {
-        if (lastFlush < timestamp) {
+        // the objects may be cached in the same millisecond of the last flush
+        if (lastFlush <= timestamp) {
             doFlush(timestamp);
         }
     }
@@ -258,18 +413,15 @@ public class CacheModel implements Cache, FlushListener {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T getObject(Object key) {
-        T value = null;
+        CacheCompressor c = compressor;
+        Object value = null;
         synchronized (this) {
             long curr = System.currentTimeMillis();
-            if (flushInterval > 0 && curr - lastFlush > flushInterval) {
-                controller.flush(this);
-                lastFlush = curr;
-                flushs++;
-            }
+            checkFlushInterval(curr);
 
-            value = (T) controller.getObject(this, key);
+            value = unstamp(key, controller.getObject(this, key), curr);
             requests++;
-            if (value != null) {
+            if (value != null && c == null) {
                 hits++;
             }
             if (log.isTraceEnabled()) {
@@ -280,9 +432,249 @@ public class CacheModel implements Cache, FlushListener {
                 }
             }
         }
+        if (value != null && c != null) {
+            value = c.decompress(value);
+            // a hit once it is inflated
+            synchronized (this) {
+                hits++;
+            }
+        }
+        return (T) value;
+    }
+
+    /**
+     * Check if the object of the key is in the cache, the object is neither decompressed nor counted as a request.
+     *
+     * @param key
+     *            The key of the object
+     * @return true if the object is cached
+     */
+    public synchronized boolean containsObject(Object key) {
+        long curr = System.currentTimeMillis();
+        checkFlushInterval(curr);
+        return unstamp(key, controller.getObject(this, key), curr) != null;
+    }
+
+    /**
+     * Get an object out of the cache, and reload it by the loader in the background if the cache is refreshed ahead
+     * and the object is older than the fraction of the flush interval. The stale object is served in the grace after
+     * the flush interval while it is reloaded.
+     *
+     * @param key
+     *            The key of the object to be returned
+     * @param loader
+     *            Loads the object in its own session, it must not use the state of the caller, or a {@link Snapshot}
+     *            that copies the state it needs when the reload is requested
+     * @return The cached object (or null)
+     * @see #isRefreshAhead()
+     */
+    public <T> T getObject(Object key, Callable<?> loader) {
+        return getObject(key, loader, 0);
+    }
+
+    /**
+     * Get an object out of the cache, and reload it by the loader in the background as
+     * {@link #getObject(Object, Callable)}, the object reloaded lives the ttl.
+     *
+     * @param ttl
+     *            The millis the object reloaded lives, 0 is the flush interval
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getObject(Object key, Callable<?> loader, long ttl) {
+        if (loader == null || !isRefreshAhead()) {
+            return getObject(key);
+        }
+        CacheCompressor c = compressor;
+        Object value = null;
+        boolean refresh = false;
+        synchronized (this) {
+            long curr = System.currentTimeMillis();
+            Object o = controller.getObject(this, key);
+            requests++;
+            if (o instanceof Stamped) {
+                Stamped s = (Stamped) o;
+                long age = curr - s.time;
+                if (age < s.ttl + staleGrace) {
+                    value = s.value;
+                    if (age >= s.ttl) {
+                        staleServes++;
+                    }
+                    refresh = age >= s.ttl * refreshAhead && refreshing.put(key, Boolean.TRUE) == null;
+                } else {
+                    evict(key);
+                }
+            } else {
+                value = o;
+            }
+            if (value != null && c == null) {
+                hits++;
+            }
+            if (log.isTraceEnabled()) {
+                if (value != null) {
+                    log((refresh ? "refreshing #" : "retrieved #") + key, false, null);
+                } else {
+                    log("cache miss #" + key, false, null);
+                }
+            }
+        }
+        if (refresh) {
+            refresh(key, loader, ttl);
+        }
+        if (value != null && c != null) {
+            value = c.decompress(value);
+            // a hit once it is inflated
+            synchronized (this) {
+                hits++;
+            }
+        }
+        return (T) value;
+    }
+
+    private void refresh(final Object key, Callable<?> reload, final long ttl) {
+        final Callable<?> loader;
+        try {
+            // in the thread of the caller
+            loader = reload instanceof Snapshot ? ((Snapshot) reload).snapshot() : reload;
+        } catch (Throwable e) {
+            synchronized (this) {
+                refreshFailures++;
+            }
+            refreshing.remove(key);
+            log.error("Cache '" + id + "': failed to copy the state to refresh #" + key, e);
+            return;
+        }
+        if (loader == null) {
+            // the object expires and is loaded by the next miss
+            refreshing.remove(key);
+            return;
+        }
+        // the object reloaded before a flush is dropped
+        final long version = getVersion();
+        try {
+            RefreshExecutor.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Object value = loader.call();
+                        putObject(key, value, version, ttl);
+                        synchronized (CacheModel.this) {
+                            refreshes++;
+                        }
+                    } catch (Throwable e) {
+                        synchronized (CacheModel.this) {
+                            refreshFailures++;
+                        }
+                        log.error("Cache '" + id + "': failed to refresh #" + key, e);
+                    } finally {
+                        refreshing.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the executor is busy, the next request tries again
+            refreshing.remove(key);
+        }
+    }
+
+    private void checkFlushInterval(long curr) {
+        // the entries refreshed ahead or jittered expire one by one
+        if (flushInterval > 0 && !isEntryExpiry() && curr - lastFlush > flushInterval) {
+            controller.flush(this);
+            version++;
+            lastFlush = curr;
+            flushs++;
+        }
+    }
+
+    private Object stamp(Object value, long ttl) {
+        if (ttl <= 0) {
+            if (!isEntryExpiry()) {
+                return value;
+            }
+            ttl = flushInterval;
+        }
+        if (ttlJitter > 0) {
+            // the entries put together expire apart
+            ttl -= (long) (ttl * ttlJitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return new Stamped(value, System.currentTimeMillis(), ttl);
+    }
+
+    private Object compress(Object value) {
+        CacheCompressor c = compressor;
+        return c != null ? c.compress(value) : value;
+    }
+
+    private Object unstamp(Object key, Object value, long curr) {
+        if (value instanceof Stamped) {
+            Stamped s = (Stamped) value;
+            long age = curr - s.time;
+            if (age < s.ttl) {
+                return s.value;
+            }
+            if (!isRefreshAhead() || age >= s.ttl + staleGrace) {
+                evict(key);
+            }
+            return null;
+        }
         return value;
     }
 
+    /**
+     * Remove the expired entry at the first miss, the entries never read again are left to the controller.
+     */
+    private void evict(Object key) {
+        controller.removeObject(this, key);
+        expirations++;
+    }
+
+    /**
+     * Get the objects out of the cache in one pass, the cache is locked once for all the keys.
+     *
+     * @param keys
+     *            The keys of the objects to be returned
+     * @return The cached objects (or null) in the order of the keys
+     */
+    public List<Object> getObjects(List<?> keys) {
+        CacheCompressor c = compressor;
+        List<Object> values = new ArrayList<Object>(keys.size());
+        synchronized (this) {
+            long curr = System.currentTimeMillis();
+            checkFlushInterval(curr);
+
+            for (Object key : keys) {
+                Object value = unstamp(key, controller.getObject(this, key), curr);
+                requests++;
+                if (value != null && c == null) {
+                    hits++;
+                }
+                if (log.isTraceEnabled()) {
+                    if (value != null) {
+                        log("retrieved #" + key, false, null);
+                    } else {
+                        log("cache miss #" + key, false, null);
+                    }
+                }
+                values.add(value);
+            }
+        }
+        if (c != null) {
+            int inflated = 0;
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    values.set(i, c.decompress(value));
+                    inflated++;
+                }
+            }
+            // the hits once they are inflated
+            synchronized (this) {
+                hits += inflated;
+            }
+        }
+        return values;
+    }
+
     /**
      * Add an object to the cache
      *
@@ -295,14 +687,112 @@ public class CacheModel implements Cache, FlushListener {
     public void putObject(Object key, Object value) {
         if (null == value)
             value = NULL_OBJECT;
+        // serialized out of the lock
+        Object stored = compress(value);
         synchronized (this) {
-            controller.putObject(this, key, value);
+            controller.putObject(this, key, stamp(stored, 0));
             if (log.isTraceEnabled()) {
                 log("stored object #" + key, true, value);
             }
         }
     }
 
+    /**
+     * Get the version of the cache, it is advanced by each flush. Get it before loading an object and put the object by
+     * {@link #putObject(Object, Object, long)}.
+     */
+    public synchronized long getVersion() {
+        if (controller instanceof VersionedCacheController) {
+            return ((VersionedCacheController) controller).getVersion(this);
+        }
+        return version;
+    }
+
+    /**
+     * Add an object loaded since the version to the cache. The object is dropped if the cache is flushed after the
+     * version, e.g. by an update committed while the object was loaded, so the stale object is never cached.
+     *
+     * @param key
+     *            The key of the object to be cached
+     * @param value
+     *            The object to be cached
+     * @param version
+     *            The version got before loading the object
+     * @return false if the object is dropped
+     */
+    public boolean putObject(Object key, Object value, long version) {
+        return putObject(key, value, version, 0);
+    }
+
+    /**
+     * Add an object loaded since the version to the cache, it lives the ttl instead of the flush interval.
+     *
+     * @param ttl
+     *            The millis the object lives, e.g. the cacheTtl of the statement, 0 is the flush interval
+     * @see #putObject(Object, Object, long)
+     */
+    public boolean putObject(Object key, Object value, long version, long ttl) {
+        if (null == value)
+            value = NULL_OBJECT;
+        Object stored = compress(value);
+        synchronized (this) {
+            boolean put;
+            if (controller instanceof VersionedCacheController) {
+                put = ((VersionedCacheController) controller).putObject(this, key, stamp(stored, ttl), version);
+            } else {
+                put = this.version == version;
+                if (put) {
+                    controller.putObject(this, key, stamp(stored, ttl));
+                }
+            }
+            if (!put) {
+                stalePuts++;
+            }
+            if (log.isTraceEnabled()) {
+                log(put ? "stored object #" + key : "dropped stale object #" + key, put, value);
+            }
+            return put;
+        }
+    }
+
+    /**
+     * Get the entries of the cache from the least to the most recently used, at most the max most recent ones, or null
+     * if the controller can not list them.
+     */
+    public synchronized Map<Object, Object> getEntries(int max) {
+        if (!(controller instanceof SnapshotCacheController)) {
+            return null;
+        }
+        Map<Object, Object> entries = ((SnapshotCacheController) controller).getEntries(this);
+        Iterator<Object> it = entries.keySet().iterator();
+        for (int skip = entries.size() - max; skip > 0 && it.hasNext(); skip--) {
+            it.next();
+            it.remove();
+        }
+        return entries;
+    }
+
+    /**
+     * Put back the entries got by {@link #getEntries(int)} before a restart. The flush interval goes on from the last
+     * flush before the restart, and the entries are dropped if the cache is flushed since this startup.
+     *
+     * @return false if the entries are dropped
+     */
+    public synchronized boolean restoreEntries(Map<Object, Object> entries, long lastFlush) {
+        if (flushs > 0 || !(controller instanceof SnapshotCacheController)) {
+            return false;
+        }
+        for (Map.Entry<Object, Object> e : entries.entrySet()) {
+            controller.putObject(this, e.getKey(), e.getValue());
+        }
+        this.lastFlush = Math.min(this.lastFlush, lastFlush);
+        return true;
+    }
+
+    public synchronized long getLastFlush() {
+        return lastFlush;
+    }
+
     /**
      * Get the maximum size of an object in the log output.
      *
@@ -362,6 +852,8 @@ public class CacheModel implements Cache, FlushListener {
     }
 
     public void setControllerProperties(Properties cacheProps) {
+        setRefreshProperties(cacheProps);
+        compressor = CacheCompressor.valueOf(id, cacheProps);
         controller.setProperties(this, cacheProps);
     }
 
@@ -380,6 +872,41 @@ public class CacheModel implements Cache, FlushListener {
         return flushs;
     }
 
+    /**
+     * Get the count of the objects dropped by {@link #putObject(Object, Object, long)}.
+     */
+    public long getStalePuts() {
+        return stalePuts;
+    }
+
+    /**
+     * Get the count of the objects reloaded in the background.
+     */
+    public long getRefreshes() {
+        return refreshes;
+    }
+
+    /**
+     * Get the count of the reloads failed in the background.
+     */
+    public long getRefreshFailures() {
+        return refreshFailures;
+    }
+
+    /**
+     * Get the count of the objects served in the grace after the flush interval.
+     */
+    public long getStaleServes() {
+        return staleServes;
+    }
+
+    /**
+     * Get the count of the expired entries removed one by one.
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
     @Override
     public long getPeriodMillis() {
         return System.currentTimeMillis() - lastFlush;
@@ -398,4 +925,62 @@ public class CacheModel implements Cache, FlushListener {
     public synchronized void removeFlushListener(FlushListener listener) {
         flushListeners.remove(listener);
     }
+
+    /**
+     * The loader of the object refreshed ahead that copies the state of the caller it needs, e.g. the parameter of the
+     * query, when the reload is requested, since the reload runs later in another thread.
+     */
+    public interface Snapshot {
+        /**
+         * Copy the state of the caller, it is called in the thread of the caller.
+         *
+         * @return The loader of the object run in the background, or null to skip the reload
+         */
+        Callable<?> snapshot() throws Exception;
+    }
+
+    /**
+     * The object expired by its own lifetime, the time it is loaded and the millis it lives.
+     */
+    static final class Stamped implements Serializable {
+        private static final long serialVersionUID = -3087156940272512739L;
+
+        final Object value;
+        final long time;
+        final long ttl;
+
+        Stamped(Object value, long time, long ttl) {
+            this.value = value;
+            this.time = time;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * The reloads of all the cache models share a few daemon threads, the reload is skipped when the queue is full.
+     */
+    static final class RefreshExecutor {
+        static final ThreadPoolExecutor executor;
+
+        static {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(256), new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "CacheModel Refresh-" + (++count));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
 }
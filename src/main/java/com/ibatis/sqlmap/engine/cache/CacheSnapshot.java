@@ -0,0 +1,304 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibatis.common.logging.ILog;
+import com.ibatis.common.logging.ILogFactory;
+import com.ibatis.common.resources.Resources;
+
+/**
+ * CacheSnapshot keeps the hot entries of the cache models in a binary file at shutdown, and puts them back at the next
+ * startup, so the restarted node does not begin with cold caches.
+ * <p>
+ * The snapshot is versioned by the fingerprint of the sqlMap configuration, a changed configuration ignores the whole
+ * snapshot, and a changed cache model ignores its entries. Only the cache models with a flush interval are kept, and
+ * they are restored only within the flush interval from their last flush before the shutdown, the entries are
+ * serialized one by one and the entries not serializable or not readable any more are skipped.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see SnapshotCacheController
+ */
+public class CacheSnapshot {
+    private static final ILog log = ILogFactory.getLog(CacheSnapshot.class);
+
+    public static final String PROP_FILE = "cache_snapshot_file";
+    public static final String PROP_SIZE = "cache_snapshot_size";
+
+    static final int MAGIC = 0x69424353;
+    static final int VERSION = 1;
+    static final int DEFAULT_SIZE = 1000;
+
+    private final File file;
+    private final String configKey;
+    private final int maxEntries;
+    // the models read from the file and not restored yet
+    private final Map<String, Model> loaded = new LinkedHashMap<String, Model>();
+
+    static class Model {
+        final String key;
+        final long lastFlush;
+        final List<byte[]> entries;
+
+        Model(String key, long lastFlush, List<byte[]> entries) {
+            this.key = key;
+            this.lastFlush = lastFlush;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * @param file
+     *            The snapshot file, read if it exists
+     * @param configKey
+     *            The fingerprint of the sqlMap configuration
+     * @param maxEntries
+     *            The max count of the most recent entries kept for each cache model
+     */
+    public CacheSnapshot(File file, String configKey, int maxEntries) {
+        this.file = file;
+        this.configKey = configKey;
+        this.maxEntries = maxEntries > 0 ? maxEntries : DEFAULT_SIZE;
+        if (file.isFile()) {
+            try {
+                read();
+            } catch (Exception e) {
+                log.warn("Ignore the broken cache snapshot " + file + ": " + e);
+                loaded.clear();
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the key of the cache model, the entries of a changed cache model are not restored.
+     */
+    static String modelKey(CacheModel cm) {
+        return cm.getId() + "|" + cm.getCacheController().getClass().getName() + "|" + cm.getFlushInterval() + "|"
+            + cm.getRefreshAhead() + "|" + cm.getStaleGrace();
+    }
+
+    /**
+     * Put the entries of the snapshot back into the cache model, the entries are restored once.
+     *
+     * @return the count of the entries restored
+     */
+    public synchronized int restore(CacheModel cm) {
+        Model m = loaded.remove(cm.getId());
+        if (m == null) {
+            return 0;
+        }
+        if (!m.key.equals(modelKey(cm))) {
+            log.info("Skip the snapshot of cache '" + cm.getId() + "', the cache model is changed");
+            return 0;
+        }
+        long time = System.currentTimeMillis();
+        if (cm.getFlushInterval() <= 0 || time - m.lastFlush >= cm.getFlushInterval()) {
+            log.debug("Skip the snapshot of cache '" + cm.getId() + "', the flush interval is elapsed");
+            return 0;
+        }
+        Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+        int skipped = 0;
+        for (byte[] b : m.entries) {
+            try {
+                ObjectInputStream in = new SnapshotInputStream(new ByteArrayInputStream(b));
+                try {
+                    Object key = in.readObject();
+                    entries.put(key, in.readObject());
+                } finally {
+                    in.close();
+                }
+            } catch (Exception e) {
+                skipped++;
+            }
+        }
+        if (!cm.restoreEntries(entries, m.lastFlush)) {
+            return 0;
+        }
+        log.info("Restore " + entries.size() + " entries of cache '" + cm.getId() + "' in "
+            + (System.currentTimeMillis() - time) + " ms" + (skipped > 0 ? ", skip " + skipped : ""));
+        return entries.size();
+    }
+
+    /**
+     * Write the hot entries of the cache models, the models not restored since the startup are written as they are
+     * read.
+     */
+    public synchronized void save(Collection<CacheModel> models) {
+        long time = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            Map<String, Model> saved = new LinkedHashMap<String, Model>(loaded);
+            for (CacheModel cm : models) {
+                Model m = snapshot(cm);
+                if (m != null) {
+                    saved.put(cm.getId(), m);
+                }
+            }
+            int count = 0;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(configKey);
+                out.writeInt(saved.size());
+                for (Map.Entry<String, Model> e : saved.entrySet()) {
+                    Model m = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeUTF(m.key);
+                    out.writeLong(m.lastFlush);
+                    out.writeInt(m.entries.size());
+                    for (byte[] b : m.entries) {
+                        out.writeInt(b.length);
+                        out.write(b);
+                    }
+                    count += m.entries.size();
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Could not rename " + tmp + " to " + file);
+                }
+            }
+            log.info("Write the cache snapshot " + file + " of " + count + " entries in " + saved.size()
+                + " caches in " + (System.currentTimeMillis() - time) + " ms");
+        } catch (IOException e) {
+            tmp.delete();
+            log.warn("Error writing the cache snapshot " + file + ": " + e);
+        }
+    }
+
+    private Model snapshot(CacheModel cm) {
+        if (cm.getFlushInterval() <= 0) {
+            return null;
+        }
+        long lastFlush = cm.getLastFlush();
+        Map<Object, Object> entries = cm.getEntries(maxEntries);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        List<byte[]> list = new ArrayList<byte[]>(entries.size());
+        Set<Class<?>> failed = new HashSet<Class<?>>();
+        for (Map.Entry<Object, Object> e : entries.entrySet()) {
+            Object value = e.getValue();
+            if (value != null && failed.contains(value.getClass())) {
+                continue;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(e.getKey());
+                out.writeObject(value);
+                out.close();
+                list.add(bytes.toByteArray());
+            } catch (IOException ex) {
+                // not serializable, the other values of the class are skipped at once
+                if (value != null) {
+                    failed.add(value.getClass());
+                }
+            }
+        }
+        return list.isEmpty() ? null : new Model(modelKey(cm), lastFlush, list);
+    }
+
+    private void read() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version");
+            }
+            if (!configKey.equals(in.readUTF())) {
+                log.info("Ignore the cache snapshot " + file + ", the sqlMap configuration is changed");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String key = in.readUTF();
+                long lastFlush = in.readLong();
+                int size = in.readInt();
+                List<byte[]> entries = new ArrayList<byte[]>(size);
+                for (int j = 0; j < size; j++) {
+                    byte[] b = new byte[in.readInt()];
+                    in.readFully(b);
+                    entries.add(b);
+                }
+                loaded.put(id, new Model(key, lastFlush, entries));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copy the object deeply by serializing it as the entries are.
+     *
+     * @throws java.io.NotSerializableException
+     *             if the object is not serializable
+     */
+    public static Object copy(Object o) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(o);
+        out.close();
+        ObjectInputStream in = new SnapshotInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Resolves the classes of the entries by the class loader of iBATIS resources.
+     */
+    static class SnapshotInputStream extends ObjectInputStream {
+        SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Resources.classForName(desc.getName());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * FingerprintKey is a fixed-size cache key: the statement, the sql and the parameter values are folded into a
+ * 128-bit hash while updating, so the key keeps neither the values nor the strings made from them.
+ * <p>
+ * The strings, the numbers, the dates, the enums, the arrays and the lists are hashed by their content. Other values
+ * are hashed by their hashCode, which is only 32 bits and may differ in another jvm, so every key keeps them and
+ * compares them when the fingerprints are equal. The verifying key keeps all the values as {@link CacheKey} does, so a
+ * collision can never return the cached object of another key.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class FingerprintKey extends CacheKey {
+    private static final long serialVersionUID = -2815236017486651703L;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final long NULL = 0x6e756c6c00000001L;
+    private static final long STRING = 0x7374720000000002L;
+    private static final long INTEGER = 0x696e740000000003L;
+    private static final long LONG = 0x6c6f6e6700000004L;
+    private static final long SHORT = 0x73687400000005L;
+    private static final long BYTE = 0x6279746500000006L;
+    private static final long DOUBLE = 0x64626c0000000007L;
+    private static final long FLOAT = 0x666c740000000008L;
+    private static final long BOOLEAN = 0x626f6f6c00000009L;
+    private static final long CHAR = 0x636872000000000aL;
+    private static final long ARRAY = 0x617272000000000bL;
+    private static final long LIST = 0x6c7374000000000cL;
+    private static final long BYTES = 0x627974730000000dL;
+    private static final long KEY = 0x6b6579000000000eL;
+    private static final long CLASS = 0x636c73000000000fL;
+    private static final long BIG_INTEGER = 0x6269000000000010L;
+    private static final long BIG_DECIMAL = 0x6264000000000011L;
+    private static final long ENUM = 0x656e756d00000012L;
+
+    // the high 64 bits, the low ones are kept in the checksum and the values to verify in the param list of CacheKey
+    private long h1;
+    // the values not hashed by their content, null if none
+    private List<Object> others;
+
+    public FingerprintKey() {
+        this(false);
+    }
+
+    /**
+     * @param verify
+     *            keep the values to verify the equal fingerprints
+     */
+    public FingerprintKey(boolean verify) {
+        super(verify ? new ArrayList<Object>() : null);
+    }
+
+    public boolean isVerify() {
+        return paramList != null;
+    }
+
+    public long getHigh() {
+        return h1;
+    }
+
+    public long getLow() {
+        return checksum;
+    }
+
+    @Override
+    public FingerprintKey update(Object object) {
+        if (object instanceof Object[]) {
+            return update((Object[]) object);
+        }
+        count++;
+        hash(object);
+        if (paramList != null) {
+            paramList.add(object);
+        }
+        return this;
+    }
+
+    @Override
+    public FingerprintKey update(Object[] objects) {
+        count++;
+        hash(objects);
+        if (paramList != null) {
+            paramList.add(objects == null ? null : Arrays.asList(objects));
+        }
+        return this;
+    }
+
+    /**
+     * Fold the fingerprint of the other key, e.g. the precomputed key of the statement and its sql, into this key.
+     */
+    public FingerprintKey update(FingerprintKey key) {
+        count += key.count;
+        mix(KEY);
+        mix(key.h1);
+        mix(key.checksum);
+        if (paramList != null && key.paramList != null) {
+            paramList.addAll(key.paramList);
+        }
+        if (key.others != null) {
+            addOthers(key.others);
+        }
+        return this;
+    }
+
+    private void addOthers(List<Object> values) {
+        if (others == null) {
+            others = new ArrayList<Object>(values.size());
+        }
+        others.addAll(values);
+    }
+
+    private void mix(long k) {
+        long k1 = k * C1;
+        k1 = Long.rotateLeft(k1, 31);
+        h1 ^= k1 * C2;
+        h1 = Long.rotateLeft(h1, 27) + checksum;
+        h1 = h1 * 5 + 0x52dce729;
+
+        long k2 = k * C2;
+        k2 = Long.rotateLeft(k2, 33);
+        checksum ^= k2 * C1;
+        checksum = Long.rotateLeft(checksum, 31) + h1;
+        checksum = checksum * 5 + 0x38495ab5;
+    }
+
+    private void hash(Object o) {
+        if (o == null) {
+            mix(NULL);
+        } else if (o instanceof String) {
+            hash((String) o, STRING);
+        } else if (o instanceof Integer) {
+            mix(INTEGER);
+            mix(((Integer) o).intValue());
+        } else if (o instanceof Long) {
+            mix(LONG);
+            mix(((Long) o).longValue());
+        } else if (o instanceof Date) {
+            mix(o.getClass().getName().hashCode());
+            mix(((Date) o).getTime());
+            if (o instanceof Timestamp) {
+                mix(((Timestamp) o).getNanos());
+            }
+        } else if (o instanceof Class<?>) {
+            hash(((Class<?>) o).getName(), CLASS);
+        } else if (o instanceof Short) {
+            mix(SHORT);
+            mix(((Short) o).shortValue());
+        } else if (o instanceof Byte) {
+            mix(BYTE);
+            mix(((Byte) o).byteValue());
+        } else if (o instanceof Double) {
+            mix(DOUBLE);
+            mix(Double.doubleToLongBits((Double) o));
+        } else if (o instanceof Float) {
+            mix(FLOAT);
+            mix(Float.floatToIntBits((Float) o));
+        } else if (o instanceof Boolean) {
+            mix(BOOLEAN);
+            mix(((Boolean) o).booleanValue() ? 1 : 0);
+        } else if (o instanceof Character) {
+            mix(CHAR);
+            mix(((Character) o).charValue());
+        } else if (o instanceof Object[]) {
+            Object[] a = (Object[]) o;
+            mix(ARRAY ^ a.length);
+            for (Object e : a) {
+                hash(e);
+            }
+        } else if (o instanceof byte[]) {
+            hash((byte[]) o, BYTES);
+        } else if (o instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) o;
+            mix(BIG_DECIMAL ^ d.scale());
+            hash(d.unscaledValue().toByteArray(), BIG_INTEGER);
+        } else if (o instanceof BigInteger) {
+            hash(((BigInteger) o).toByteArray(), BIG_INTEGER);
+        } else if (o instanceof Enum<?>) {
+            Enum<?> e = (Enum<?>) o;
+            hash(e.getDeclaringClass().getName(), ENUM);
+            hash(e.name(), ENUM);
+        } else if (o instanceof List<?> && o instanceof RandomAccess) {
+            List<?> list = (List<?>) o;
+            int size = list.size();
+            mix(LIST ^ size);
+            for (int i = 0; i < size; i++) {
+                hash(list.get(i));
+            }
+        } else if (o instanceof List<?>) {
+            List<?> list = (List<?>) o;
+            mix(LIST ^ list.size());
+            for (Object e : list) {
+                hash(e);
+            }
+        } else {
+            // the hashCode may collide or be the identity, the value is compared by equals
+            hash(o.getClass().getName(), CLASS);
+            mix(o.hashCode());
+            if (others == null) {
+                others = new ArrayList<Object>(2);
+            }
+            others.add(o);
+        }
+    }
+
+    private void hash(String s, long type) {
+        int len = s.length();
+        mix(type ^ len);
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            mix((long) s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32
+                | (long) s.charAt(i + 3) << 48);
+        }
+        if (i < len) {
+            long k = 0;
+            for (int shift = 0; i < len; i++, shift += 16) {
+                k |= (long) s.charAt(i) << shift;
+            }
+            mix(k);
+        }
+    }
+
+    private void hash(byte[] b, long type) {
+        int len = b.length;
+        mix(type ^ len);
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            long k = 0;
+            for (int j = 0; j < 8; j++) {
+                k |= (b[i + j] & 0xffL) << (j << 3);
+            }
+            mix(k);
+        }
+        if (i < len) {
+            long k = 0;
+            for (int shift = 0; i < len; i++, shift += 8) {
+                k |= (b[i] & 0xffL) << shift;
+            }
+            mix(k);
+        }
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof FingerprintKey))
+            return false;
+
+        final FingerprintKey key = (FingerprintKey) object;
+        if (h1 != key.h1 || checksum != key.checksum || count != key.count)
+            return false;
+        if (paramList != null && key.paramList != null) {
+            return paramList.equals(key.paramList);
+        }
+        return others == null ? key.others == null : others.equals(key.others);
+    }
+
+    @Override
+    public int hashCode() {
+        long h = fmix(h1 + checksum);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toStr() {
+        return Integer.toHexString(hashCode());
+    }
+
+    /**
+     * The 128 bits of the fingerprint and the count of the values, then the values not hashed by their content as
+     * {@link CacheKey#toString()} appends them.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(40);
+        String hex = Long.toHexString(h1);
+        for (int i = hex.length(); i < 16; i++) {
+            buf.append('0');
+        }
+        buf.append(hex);
+        hex = Long.toHexString(checksum);
+        for (int i = hex.length(); i < 16; i++) {
+            buf.append('0');
+        }
+        buf.append(hex).append('|').append(count);
+        if (others != null) {
+            for (Object o : others) {
+                buf.append('|').append(o);
+            }
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public FingerprintKey clone() throws CloneNotSupportedException {
+        FingerprintKey key = new FingerprintKey(paramList != null);
+        key.h1 = h1;
+        key.checksum = checksum;
+        key.count = count;
+        if (paramList != null) {
+            key.paramList.addAll(paramList);
+        }
+        if (others != null) {
+            key.addOthers(others);
+        }
+        return key;
+    }
+}
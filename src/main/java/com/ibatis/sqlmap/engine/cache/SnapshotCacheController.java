@@ -0,0 +1,23 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.util.Map;
+
+/**
+ * SnapshotCacheController lists its entries, so the hot entries of a cache model are written to the
+ * {@link CacheSnapshot} at shutdown and put back at the next startup.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public interface SnapshotCacheController extends CacheController {
+
+    /**
+     * Get the entries of the cache model from the least to the most recently used, the expired ones are left out.
+     */
+    Map<Object, Object> getEntries(CacheModel cacheModel);
+}
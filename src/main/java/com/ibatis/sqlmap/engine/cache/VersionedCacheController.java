@@ -0,0 +1,29 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+/**
+ * VersionedCacheController advances the version of a cache model on each flush of it, including the flushes received
+ * from the other nodes, so an object loaded before a flush is never put after it.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see CacheModel#putObject(Object, Object, long)
+ */
+public interface VersionedCacheController extends CacheController {
+
+    /**
+     * Get the current version of the cache model.
+     */
+    long getVersion(CacheModel cacheModel);
+
+    /**
+     * Put an object into the cache model if the version is still current.
+     *
+     * @return false if the object is dropped because the cache model is flushed after the version
+     */
+    boolean putObject(CacheModel cacheModel, Object key, Object object, long version);
+}
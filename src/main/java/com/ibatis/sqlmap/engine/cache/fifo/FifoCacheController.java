@@ -17,18 +17,19 @@ package com.ibatis.sqlmap.engine.cache.fifo;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import com.ibatis.sqlmap.engine.cache.CacheController;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.SnapshotCacheController;
 
 /**
  * FIFO (first in, first out) cache controller implementation
  */
-public class FifoCacheController implements CacheController {
+public class FifoCacheController implements SnapshotCacheController {
 
     private int cacheSize;
     private Map<Object, Object> cache;
@@ -112,6 +113,22 @@ public class FifoCacheController implements CacheController {
         return cache.remove(key);
     }
 
+    @Override
+    public Map<Object, Object> getEntries(CacheModel cacheModel) {
+        Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+        synchronized (keyList) {
+            for (Object key : keyList) {
+                Object value = cache.get(key);
+                if (value != null) {
+                    // a key put twice is listed at its last position
+                    entries.remove(key);
+                    entries.put(key, value);
+                }
+            }
+        }
+        return entries;
+    }
+
     /**
      * Flushes the cache.
      *
@@ -17,18 +17,19 @@ package com.ibatis.sqlmap.engine.cache.lru;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import com.ibatis.sqlmap.engine.cache.CacheController;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.SnapshotCacheController;
 
 /**
  * LRU (least recently used) cache controller implementation
  */
-public class LruCacheController implements CacheController {
+public class LruCacheController implements SnapshotCacheController {
 
     private int cacheSize;
     private Map<Object, Object> cache;
@@ -117,6 +118,22 @@ public class LruCacheController implements CacheController {
         return cache.remove(key);
     }
 
+    @Override
+    public Map<Object, Object> getEntries(CacheModel cacheModel) {
+        Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+        synchronized (keyList) {
+            for (Object key : keyList) {
+                Object value = cache.get(key);
+                if (value != null) {
+                    // a key put twice is listed at its last position
+                    entries.remove(key);
+                    entries.put(key, value);
+                }
+            }
+        }
+        return entries;
+    }
+
     /**
      * Flushes the cache.
      *
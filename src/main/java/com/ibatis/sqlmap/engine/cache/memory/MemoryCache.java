@@ -4,6 +4,7 @@ import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,7 +42,10 @@ public class MemoryCache {
         LRUMap map = cache.get(id);
         if (map == null) {
             map = new LRUMap();
-            cache.put(id, map);
+            LRUMap old = cache.putIfAbsent(id, map);
+            if (old != null) {
+                map = old;
+            }
         }
         return map;
     }
@@ -55,10 +59,26 @@ public class MemoryCache {
     }
 
     public void putEntry(CacheModel cm, MemoryCacheLevel lvl, Object key, Object value) {
-        CacheEntry ce = new CacheEntry(System.currentTimeMillis() + cm.getFlushInterval(), lvl, value);
+        CacheEntry ce = new CacheEntry(cm.getExpiredTime(value), lvl, value);
         cache(cm.getId()).put(key, ce);
     }
 
+    /**
+     * Put the entry if the cache is not flushed after the version, locally or by the other nodes.
+     */
+    public boolean putEntry(CacheModel cm, MemoryCacheLevel lvl, Object key, Object value, long version) {
+        CacheEntry ce = new CacheEntry(cm.getExpiredTime(value), lvl, value);
+        return cache(cm.getId()).put(key, ce, version);
+    }
+
+    public long getVersion(CacheModel cacheModel) {
+        return cache(cacheModel.getId()).getVersion();
+    }
+
+    public Map<Object, Object> getEntries(CacheModel cacheModel) {
+        return cache(cacheModel.getId()).getEntries();
+    }
+
     public Object removeEntry(CacheModel cacheModel, Object key) {
         CacheEntry ce = cache(cacheModel.getId()).remove(key);
         return ce == null ? null : ce.get();
@@ -74,6 +94,16 @@ public class MemoryCache {
         }
     }
 
+    /**
+     * Flush the cache by the other node, it advances the version as the local flush does.
+     */
+    void onRemoteFlush(String id) {
+        LRUMap map = cache.get(id);
+        if (map != null) {
+            map.clear();
+        }
+    }
+
     static class LRUMap extends LinkedHashMap<Object, CacheEntry> {
         /**
          * serialVersionUID
@@ -81,6 +111,8 @@ public class MemoryCache {
         private static final long serialVersionUID = 4058604680659857139L;
 
         int maxCacheSize = 512;
+        // advanced by each clear
+        long version;
 
         protected boolean removeEldestEntry(Entry<Object, CacheEntry> eldest) {
             return maxCacheSize > 0 && size() > maxCacheSize;
@@ -105,8 +137,32 @@ public class MemoryCache {
             return super.put(key, value);
         }
 
+        public synchronized boolean put(Object key, CacheEntry value, long version) {
+            if (this.version != version) {
+                return false;
+            }
+            super.put(key, value);
+            return true;
+        }
+
         public synchronized void clear() {
             super.clear();
+            version++;
+        }
+
+        public synchronized long getVersion() {
+            return version;
+        }
+
+        public synchronized Map<Object, Object> getEntries() {
+            Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+            for (Entry<Object, CacheEntry> e : entrySet()) {
+                Object value = e.getValue().get();
+                if (value != null) {
+                    entries.put(e.getKey(), value);
+                }
+            }
+            return entries;
         }
 
         public synchronized CacheEntry remove(Object key) {
@@ -15,15 +15,17 @@
  */
 package com.ibatis.sqlmap.engine.cache.memory;
 
+import java.util.Map;
 import java.util.Properties;
 
-import com.ibatis.sqlmap.engine.cache.CacheController;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.SnapshotCacheController;
+import com.ibatis.sqlmap.engine.cache.VersionedCacheController;
 
 /**
  * Memory-based implementation of CacheController
  */
-public class MemoryCacheController implements CacheController {
+public class MemoryCacheController implements VersionedCacheController, SnapshotCacheController {
 
     private MemoryCacheLevel referenceType = MemoryCacheLevel.STRONG;
 
@@ -75,6 +77,21 @@ public class MemoryCacheController implements CacheController {
         MemoryCache.getInstance().putEntry(cacheModel, referenceType, key, value);
     }
 
+    @Override
+    public boolean putObject(CacheModel cacheModel, Object key, Object value, long version) {
+        return MemoryCache.getInstance().putEntry(cacheModel, referenceType, key, value, version);
+    }
+
+    @Override
+    public long getVersion(CacheModel cacheModel) {
+        return MemoryCache.getInstance().getVersion(cacheModel);
+    }
+
+    @Override
+    public Map<Object, Object> getEntries(CacheModel cacheModel) {
+        return MemoryCache.getInstance().getEntries(cacheModel);
+    }
+
     /**
      * Get an object out of the cache.
      *
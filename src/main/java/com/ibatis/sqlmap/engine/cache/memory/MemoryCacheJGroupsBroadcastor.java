@@ -13,7 +13,12 @@ import org.jgroups.JChannel;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MemoryCacheJGroupsBroadcastor
@@ -29,6 +34,9 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
     private static final String CHANNEL_PROPERTIES = "memory.mcast.properties";
     private static final String MULTICAST_IP_PROPERTY = "memory.mcast.addr";
     private static final String MULTICAST_PORT_PROPERTY = "memory.mcast.port";
+    private static final String COALESCE_PROPERTY = "memory.mcast.coalesce";
+    private static final String COALESCE_SIZE_PROPERTY = "memory.mcast.coalesce.size";
+    private static final int DEFAULT_COALESCE_SIZE = 256;
 
     /**
      * The first half of the default channel properties.
@@ -50,15 +58,34 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
     private NotificationBus bus;
     private MemoryCache memoryCache;
 
+    /**
+     * The flushes in the window are sent in one message, 0 to send each flush at once.
+     */
+    private long coalesceMillis;
+    private int coalesceSize = DEFAULT_COALESCE_SIZE;
+    private final Set<String> pending = new LinkedHashSet<String>();
+    // guarded by pending, null once closed
+    private Timer timer;
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong receivedMessages = new AtomicLong();
+
     /**
      * Initializes the broadcasting listener by starting up a JGroups notification bus instance to handle incoming and
      * outgoing messages.
      */
     @Override
     public void init(MemoryCache memoryCache) {
+        init(memoryCache, Resources.getIbatisIniProperties());
+    }
+
+    void init(MemoryCache memoryCache, Properties p) {
         this.memoryCache = memoryCache;
 
-        Properties p = Resources.getIbatisIniProperties();
+        coalesceMillis = Long.parseLong(p.getProperty(COALESCE_PROPERTY, "0").trim());
+        coalesceSize = Integer.parseInt(p.getProperty(COALESCE_SIZE_PROPERTY, "" + DEFAULT_COALESCE_SIZE).trim());
+        if (coalesceMillis > 0) {
+            timer = new Timer(BUS_NAME + " Coalesce Thread", true);
+        }
 
         String properties = p.getProperty(CHANNEL_PROPERTIES);
         String multicastIP = p.getProperty(MULTICAST_IP_PROPERTY);
@@ -95,7 +122,7 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
             bus.setConsumer(this);
             log.info("JGroups clustering support started successfully");
         } catch (Exception e) {
-            throw new RuntimeException("Initialization failed: " + e);
+            throw new RuntimeException("Initialization failed: " + e, e);
         }
     }
 
@@ -133,9 +160,17 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
     @Override
     public void handleNotification(Serializable info) {
         if (info instanceof String) {
+            receivedMessages.incrementAndGet();
             String cacheId = (String) info;
             onMulticastFlush(cacheId);
             return;
+        } else if (info instanceof String[]) {
+            // the coalesced flushes
+            receivedMessages.incrementAndGet();
+            for (String cacheId : (String[]) info) {
+                onMulticastFlush(cacheId);
+            }
+            return;
         }
 
         log.error("An unknown cluster notification message received (class=" + info.getClass().getName()
@@ -183,8 +218,17 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
             log.info("JGroups shutting down...");
         }
 
+        Timer t;
+        synchronized (pending) {
+            t = timer;
+            timer = null;
+        }
+        if (t != null) {
+            t.cancel();
+        }
         // It's possible that the notification bus is null (CACHE-154)
         if (bus != null) {
+            sendPending();
             bus.stop();
             bus = null;
         } else {
@@ -196,16 +240,80 @@ public class MemoryCacheJGroupsBroadcastor extends MulticastorBase implements No
         }
     }
 
+    /**
+     * Send the flush of the cache, or add it to the pending flushes sent at the end of the coalescing window. The
+     * flushes of the same cache in the window are sent once, and the window is sent at once if it is full.
+     */
     @Override
     public void multicastFlush(String cacheId) {
-        if (bus != null) {
-            bus.sendNotification(cacheId);
+        if (bus == null) {
+            return;
+        }
+        if (coalesceMillis <= 0) {
+            send(new String[] { cacheId });
+            return;
         }
+        String[] ids = null;
+        synchronized (pending) {
+            if (timer == null) {
+                // closed, the pending flushes are sent already
+                return;
+            }
+            boolean first = pending.isEmpty();
+            pending.add(cacheId);
+            if (pending.size() >= coalesceSize) {
+                ids = drainPending();
+            } else if (first) {
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        sendPending();
+                    }
+                }, coalesceMillis);
+            }
+        }
+        if (ids != null) {
+            send(ids);
+        }
+    }
+
+    private String[] drainPending() {
+        String[] ids = pending.toArray(new String[pending.size()]);
+        pending.clear();
+        return ids;
+    }
+
+    void sendPending() {
+        String[] ids;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            ids = drainPending();
+        }
+        send(ids);
+    }
+
+    private void send(String[] ids) {
+        NotificationBus b = bus;
+        if (b != null) {
+            // one cache is sent as before, so the nodes of the older versions understand it
+            b.sendNotification(ids.length == 1 ? ids[0] : ids);
+            sentMessages.incrementAndGet();
+        }
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
     }
 
     @Override
     public void onMulticastFlush(String cacheId) {
-        this.memoryCache.cache(cacheId).clear();
+        this.memoryCache.onRemoteFlush(cacheId);
         if (MemoryCache.log.isDebugEnabled()) {
             MemoryCache.log.debug(cacheId + " cache flushed.");
         }
@@ -151,6 +151,7 @@ public class MappedStatementConfig {
             selectKeyStatement.setResource(errorContext.getResource());
             selectKeyStatement.setKeyProperty(keyPropName);
             selectKeyStatement.setRunAfterSQL(runAfterSQL);
+            selectKeyStatement.setShardKey(insertStatement.getShardKey());
             // process the type (pre or post) attribute
             try {
                 if (resultClassName != null) {
@@ -248,4 +249,36 @@ public class MappedStatementConfig {
     public void addFlushCacheRoot(String name) {
         mappedStatement.addFlushCacheRoot(name);
     }
+
+    /**
+     * Route the statement to the replica or the primary by the routing transaction manager.
+     */
+    public void setReplica(Boolean replica) {
+        rootStatement.setReplica(replica);
+    }
+
+    /**
+     * Route the statement to the shard of the key property by the sharding transaction manager, and merge the rows of
+     * the shards by the order when the parameter has no key.
+     */
+    public void setShard(String shardKey, String shardOrder) {
+        rootStatement.setShardKey(shardKey);
+        rootStatement.setShardOrder(shardOrder);
+    }
+
+    /**
+     * Run the write without a value of the shard key on all the shards, instead of failing it.
+     */
+    public void setShardBroadcast(boolean shardBroadcast) {
+        rootStatement.setShardBroadcast(shardBroadcast);
+    }
+
+    /**
+     * Set the millis the cached objects of the statement live instead of the flush interval of the cache model.
+     */
+    public void setCacheTtl(long cacheTtl) {
+        if (mappedStatement instanceof CachingStatement) {
+            ((CachingStatement) mappedStatement).setCacheTtl(cacheTtl);
+        }
+    }
 }
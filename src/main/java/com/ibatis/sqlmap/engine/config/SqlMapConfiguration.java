@@ -40,6 +40,22 @@ public class SqlMapConfiguration {
         registerDefaultTypeAliases();
     }
 
+    private SqlMapConfiguration(SqlMapConfiguration config) {
+        errorContext = new ErrorContext();
+        delegate = config.delegate;
+        typeHandlerFactory = config.typeHandlerFactory;
+        client = config.client;
+        defaultStatementTimeout = config.defaultStatementTimeout;
+    }
+
+    /**
+     * Get a configuration of the same sqlMap client with an error context of its own, for a builder running in
+     * parallel with the others.
+     */
+    public SqlMapConfiguration withNewErrorContext() {
+        return new SqlMapConfiguration(this);
+    }
+
     public TypeHandlerFactory getTypeHandlerFactory() {
         return typeHandlerFactory;
     }
@@ -221,6 +237,8 @@ public class SqlMapConfiguration {
         typeHandlerFactory.putTypeAlias("JDBC", "com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransactionConfig");
         typeHandlerFactory.putTypeAlias("JTA", "com.ibatis.sqlmap.engine.transaction.jta.JtaTransactionConfig");
         typeHandlerFactory.putTypeAlias("EXTERNAL", "com.ibatis.sqlmap.engine.transaction.external.ExternalTransactionConfig");
+        typeHandlerFactory.putTypeAlias("ROUTING", "com.ibatis.sqlmap.engine.transaction.routing.RoutingTransactionConfig");
+        typeHandlerFactory.putTypeAlias("SHARDING", "com.ibatis.sqlmap.engine.transaction.shard.ShardTransactionConfig");
 
         // DATA SOURCE ALIASES
         typeHandlerFactory.putTypeAlias("SIMPLE", "com.ibatis.sqlmap.engine.datasource.SimpleDataSourceFactory");
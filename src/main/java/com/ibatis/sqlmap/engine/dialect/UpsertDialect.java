@@ -0,0 +1,379 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.dialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ibatis.client.Dialect;
+
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.client.lexer.SqlLexer;
+import com.ibatis.sqlmap.client.lexer.TT;
+import com.ibatis.sqlmap.client.lexer.Token;
+import com.ibatis.sqlmap.client.lexer.Tokens;
+
+/**
+ * UpsertDialect rewrites a plain <code>INSERT INTO t (c1, c2, ...) VALUES (v1, v2, ...)</code> to the native
+ * insert-or-update form of the dialect:
+ * <ul>
+ * <li>mysql: INSERT ... ON DUPLICATE KEY UPDATE</li>
+ * <li>postgresql: INSERT ... ON CONFLICT (keys) DO UPDATE</li>
+ * <li>oracle, sqlserver, db2, hsqldb: MERGE INTO ... USING (values of the row)</li>
+ * <li>derby: MERGE INTO ... USING SYSIBM.SYSDUMMY1, the source of derby must be a table so the values are repeated
+ * and the parameters are reordered, see {@link #getParameterIndexes()}</li>
+ * </ul>
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class UpsertDialect {
+    static final String T = "UPSERT_T";
+    static final String S = "UPSERT_S";
+    static final TT[] kws = new TT[] { TT.Insert, TT.Into, TT.Values };
+
+    final Dialect dialect;
+    final SqlLexer parser;
+    String table;
+    final List<String> columns = new ArrayList<String>();
+    final List<String> values = new ArrayList<String>();
+    final List<int[]> valueParameters = new ArrayList<int[]>();
+    final boolean[] keys;
+    int parameterCount;
+
+    String sql;
+    int[] parameterIndexes;
+
+    public UpsertDialect(Dialect d, String insertSql, String[] keyColumns) {
+        if (d == null) {
+            throw new SqlMapException("The upsert statement requires a dialect of the sql map client.");
+        }
+        dialect = d;
+        parser = new SqlLexer(insertSql, kws).trim();
+        parse();
+        if (keyColumns == null || keyColumns.length == 0) {
+            throw new SqlMapException("The upsert statement requires the key columns: " + insertSql);
+        }
+        keys = new boolean[columns.size()];
+        for (String key : keyColumns) {
+            int i = indexOfColumn(key);
+            if (i < 0) {
+                throw new SqlMapException("The key column '" + key + "' is not in the insert columns " + columns);
+            }
+            keys[i] = true;
+        }
+        render();
+    }
+
+    /**
+     * Get the upsert sql of the dialect.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get the parameter indexes of the upsert sql into the parameters of the insert sql, or null if the parameters
+     * are in the same order.
+     */
+    public int[] getParameterIndexes() {
+        return parameterIndexes;
+    }
+
+    int indexOfColumn(String name) {
+        name = name.trim();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void parse() {
+        List<Token> tokens = parser.getTokens();
+        int i = next(tokens, 0);
+        if (i >= tokens.size() || tokens.get(i).type != TT.Insert) {
+            throw badSql("not an insert statement");
+        }
+        i = next(tokens, i + 1);
+        if (i >= tokens.size() || tokens.get(i).type != TT.Into) {
+            throw badSql("INTO is expected");
+        }
+        int start = next(tokens, i + 1);
+        int lp = Tokens.indexOf(tokens, TT.Lp, start);
+        if (lp < 0) {
+            throw badSql("the column list is expected");
+        }
+        table = text(tokens, start, lp);
+        int rp = split(tokens, lp, columns, null);
+
+        i = next(tokens, rp + 1);
+        if (i >= tokens.size() || tokens.get(i).type != TT.Values) {
+            throw badSql("VALUES is expected");
+        }
+        i = next(tokens, i + 1);
+        if (i >= tokens.size() || tokens.get(i).type != TT.Lp) {
+            throw badSql("VALUES (...) is expected");
+        }
+        rp = split(tokens, i, values, valueParameters);
+        if (next(tokens, rp + 1) < tokens.size()) {
+            throw badSql("only one row of VALUES is supported");
+        }
+        if (table.isEmpty() || columns.isEmpty() || columns.size() != values.size()) {
+            throw badSql("the columns do not match the values");
+        }
+    }
+
+    /**
+     * Split the top level items in the parentheses starting at lp, and return the index of the closing parenthesis.
+     */
+    int split(List<Token> tokens, int lp, List<String> items, List<int[]> params) {
+        int level = 0;
+        int start = lp + 1;
+        List<Integer> marks = new ArrayList<Integer>();
+        for (int i = lp; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            if (t.type == TT.Lp) {
+                level++;
+            } else if (t.type == TT.Rp) {
+                level--;
+                if (level == 0) {
+                    addItem(tokens, start, i, items, params, marks);
+                    return i;
+                }
+            } else if (t.type == TT.Comma && level == 1) {
+                addItem(tokens, start, i, items, params, marks);
+                start = i + 1;
+            } else if (t.type == TT.Question) {
+                marks.add(parameterCount++);
+            }
+        }
+        throw badSql("unbalanced parentheses");
+    }
+
+    void addItem(List<Token> tokens, int start, int end, List<String> items, List<int[]> params,
+        List<Integer> marks) {
+        items.add(text(tokens, start, end));
+        if (params != null) {
+            int[] a = new int[marks.size()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = marks.get(i);
+            }
+            params.add(a);
+        }
+        marks.clear();
+    }
+
+    String text(List<Token> tokens, int start, int end) {
+        if (start >= end) {
+            return "";
+        }
+        int from = tokens.get(start).offset;
+        Token last = tokens.get(end - 1);
+        int to = last.offset + last.text.length();
+        return parser.getSql().substring(from, to).trim();
+    }
+
+    static int next(List<Token> tokens, int i) {
+        while (i < tokens.size() && tokens.get(i).type == TT.Space) {
+            i++;
+        }
+        return i;
+    }
+
+    SqlMapException badSql(String reason) {
+        return new SqlMapException("The upsert statement requires 'INSERT INTO t (c1, ...) VALUES (v1, ...)', "
+            + reason + ": " + parser.getSql());
+    }
+
+    void render() {
+        StringBuilder buf = new StringBuilder(parser.getSql().length() * 2);
+        switch (dialect) {
+        case mysql:
+            renderMysql(buf);
+            break;
+        case postgresql:
+            renderPostgresql(buf);
+            break;
+        case oracle:
+            renderMerge(buf, "MERGE INTO " + table + " " + T + " USING (SELECT ", " FROM DUAL) " + S, true);
+            break;
+        case sqlserver:
+            renderMerge(buf, "MERGE INTO " + table + " AS " + T + " USING (VALUES (", ")) AS " + S, false);
+            // sql server requires the MERGE statement to be terminated by a semicolon
+            buf.append(';');
+            break;
+        case db2:
+        case hsqldb:
+            renderMerge(buf, "MERGE INTO " + table + " AS " + T + " USING (VALUES (", ")) AS " + S, false);
+            break;
+        case derby:
+            renderDerby(buf);
+            break;
+        default:
+            throw new SqlMapException("The upsert statement is not supported by the dialect " + dialect);
+        }
+        sql = buf.toString();
+    }
+
+    void renderMysql(StringBuilder buf) {
+        buf.append(insertSql()).append(" ON DUPLICATE KEY UPDATE ");
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys[i]) {
+                first = comma(buf, first);
+                buf.append(columns.get(i)).append(" = VALUES(").append(columns.get(i)).append(')');
+            }
+        }
+        if (first) {
+            // nothing to update, but the duplicated row must be ignored.
+            int k = firstKey();
+            buf.append(columns.get(k)).append(" = ").append(columns.get(k));
+        }
+    }
+
+    void renderPostgresql(StringBuilder buf) {
+        buf.append(insertSql()).append(" ON CONFLICT (");
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (keys[i]) {
+                first = comma(buf, first);
+                buf.append(columns.get(i));
+            }
+        }
+        buf.append(") DO ");
+        first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys[i]) {
+                buf.append(first ? "UPDATE SET " : ", ");
+                buf.append(columns.get(i)).append(" = EXCLUDED.").append(columns.get(i));
+                first = false;
+            }
+        }
+        if (first) {
+            buf.append("NOTHING");
+        }
+    }
+
+    void renderMerge(StringBuilder buf, String head, String tail, boolean selectFromDual) {
+        buf.append(head);
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(values.get(i));
+            if (selectFromDual) {
+                buf.append(' ').append(columns.get(i));
+            }
+        }
+        buf.append(tail);
+        if (!selectFromDual) {
+            buf.append(" (");
+            for (int i = 0; i < columns.size(); i++) {
+                comma(buf, i == 0);
+                buf.append(columns.get(i));
+            }
+            buf.append(')');
+        }
+        buf.append(selectFromDual ? " ON (" : " ON ");
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (keys[i]) {
+                buf.append(first ? "" : " AND ");
+                buf.append(T).append('.').append(columns.get(i)).append(" = ").append(S).append('.')
+                    .append(columns.get(i));
+                first = false;
+            }
+        }
+        buf.append(selectFromDual ? ")" : "");
+        first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys[i]) {
+                buf.append(first ? " WHEN MATCHED THEN UPDATE SET " : ", ");
+                buf.append(columns.get(i)).append(" = ").append(S).append('.').append(columns.get(i));
+                first = false;
+            }
+        }
+        buf.append(" WHEN NOT MATCHED THEN INSERT (");
+        for (int i = 0; i < columns.size(); i++) {
+            comma(buf, i == 0);
+            buf.append(columns.get(i));
+        }
+        buf.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            comma(buf, i == 0);
+            buf.append(S).append('.').append(columns.get(i));
+        }
+        buf.append(')');
+    }
+
+    void renderDerby(StringBuilder buf) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        buf.append("MERGE INTO ").append(table).append(' ').append(T).append(" USING SYSIBM.SYSDUMMY1 ON ");
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (keys[i]) {
+                buf.append(first ? "" : " AND ");
+                buf.append(T).append('.').append(columns.get(i)).append(" = ").append(values.get(i));
+                addIndexes(indexes, i);
+                first = false;
+            }
+        }
+        first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys[i]) {
+                buf.append(first ? " WHEN MATCHED THEN UPDATE SET " : ", ");
+                buf.append(columns.get(i)).append(" = ").append(values.get(i));
+                addIndexes(indexes, i);
+                first = false;
+            }
+        }
+        buf.append(" WHEN NOT MATCHED THEN INSERT (");
+        for (int i = 0; i < columns.size(); i++) {
+            comma(buf, i == 0);
+            buf.append(columns.get(i));
+        }
+        buf.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            comma(buf, i == 0);
+            buf.append(values.get(i));
+            addIndexes(indexes, i);
+        }
+        buf.append(')');
+        parameterIndexes = new int[indexes.size()];
+        for (int i = 0; i < parameterIndexes.length; i++) {
+            parameterIndexes[i] = indexes.get(i);
+        }
+    }
+
+    void addIndexes(List<Integer> indexes, int column) {
+        for (int p : valueParameters.get(column)) {
+            indexes.add(p);
+        }
+    }
+
+    String insertSql() {
+        List<Token> tokens = parser.getTokens();
+        return text(tokens, 0, tokens.size());
+    }
+
+    int firstKey() {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i]) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    static boolean comma(StringBuilder buf, boolean first) {
+        if (!first) {
+            buf.append(", ");
+        }
+        return false;
+    }
+}
@@ -32,7 +32,7 @@ public abstract class BaseDataExchange implements DataExchange {
 
     @Override
     public CacheKey getCacheKey(StatementScope statementScope, ParameterMap parameterMap, Object parameterObject) {
-        CacheKey key = new CacheKey();
+        CacheKey key = parameterMap.getDelegate().newCacheKey();
         Object[] data = getData(statementScope, parameterMap, parameterObject);
         for (int i = 0; i < data.length; i++) {
             if (data[i] != null) {
@@ -65,6 +65,15 @@ public class Batch {
         return cleanup;
     }
 
+    /**
+     * Getter for the number of distinct sql (sub-batches) in the batch
+     *
+     * @return - the sql count
+     */
+    public int getSqlCount() {
+        return batchResultList.size();
+    }
+
     /**
      * Add a prepared statement to the batch
      * 
@@ -85,7 +94,7 @@ public class Batch {
         MappedStatement ms = statementScope.getStatement();
         boolean isCall = ms.getStatementType() == StatementType.PROCEDURE;
         statementSqls.put(ms, sql);
-        Object key = Objects.getKey(ms.getId(), sql);
+        Object key = Objects.getKey(conn, ms.getId(), sql);
 
         BatchResult br = batchResultList.get(key);
         if (br == null) {
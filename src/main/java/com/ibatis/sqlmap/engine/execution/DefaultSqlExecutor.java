@@ -768,7 +768,8 @@ public class DefaultSqlExecutor implements SqlExecutor {
 
     private static PreparedStatement prepareStatement(SessionScope sessionScope, Connection conn, String sql,
         Integer rsType) throws SQLException {
-        Object key = Objects.getKey(sql, rsType, ResultSet.CONCUR_READ_ONLY);
+        // the transaction of the session may use more connections, e.g. the shards
+        Object key = Objects.getKey(conn, sql, rsType, ResultSet.CONCUR_READ_ONLY);
         SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
         if (sessionScope.hasPreparedStatementFor(key)) {
             return sessionScope.getPreparedStatement(key);
@@ -781,7 +782,7 @@ public class DefaultSqlExecutor implements SqlExecutor {
 
     private static CallableStatement prepareCall(SessionScope sessionScope, Connection conn, String sql, Integer rsType)
         throws SQLException {
-        Object key = Objects.getKey("call", sql, rsType, ResultSet.CONCUR_READ_ONLY);
+        Object key = Objects.getKey(conn, "call", sql, rsType, ResultSet.CONCUR_READ_ONLY);
         SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
         if (sessionScope.hasPreparedStatementFor(key)) {
             return (CallableStatement) sessionScope.getPreparedStatement(key);
@@ -794,7 +795,7 @@ public class DefaultSqlExecutor implements SqlExecutor {
 
     static PreparedStatement prepareStatement(SessionScope sessionScope, Connection conn, String sql, boolean genKey)
         throws SQLException {
-        Object key = Objects.getKey(sql, genKey);
+        Object key = Objects.getKey(conn, sql, genKey);
         SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
         if (sessionScope.hasPreparedStatementFor(key)) {
             return sessionScope.getPreparedStatement(key);
@@ -807,7 +808,7 @@ public class DefaultSqlExecutor implements SqlExecutor {
     }
 
     static CallableStatement prepareCall(SessionScope sessionScope, Connection conn, String sql) throws SQLException {
-        Object key = Objects.getKey("call", sql);
+        Object key = Objects.getKey(conn, "call", sql);
         SqlMapExecutorDelegate delegate = ((SqlMapClientImpl) sessionScope.getSqlMapExecutor()).getDelegate();
         if (sessionScope.hasPreparedStatementFor(key)) {
             return (CallableStatement) sessionScope.getPreparedStatement(key);
@@ -18,11 +18,15 @@ package com.ibatis.sqlmap.engine.impl;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
 import org.ibatis.client.Cache;
 import org.ibatis.client.Dialect;
 import org.ibatis.persist.criteria.CriteriaBuilder;
@@ -274,6 +278,10 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient, org
         return getLocalSqlMapSession().updateEntity(cls, entity);
     }
 
+    public <E> int upsertEntity(Class<E> cls, E entity) throws SQLException {
+        return getLocalSqlMapSession().upsertEntity(cls, entity);
+    }
+
     public <E, K> int deleteEntity(Class<E> cls, K key) throws SQLException {
         return getLocalSqlMapSession().deleteEntity(cls, key);
     }
@@ -282,6 +290,10 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient, org
         return getLocalSqlMapSession().findEntity(cls, key);
     }
 
+    public <E, K> List<E> findEntities(Class<E> cls, Collection<K> keys) throws SQLException {
+        return getLocalSqlMapSession().findEntities(cls, keys);
+    }
+
     @Override
     public <E> EntityType<E> initEntityClass(Class<E> entityClass) {
         return getLocalSqlMapSession().initEntityClass(entityClass);
@@ -409,6 +421,11 @@ public class SqlMapClientImpl implements SqlMapClient, ExtendedSqlMapClient, org
         return getLocalSqlMapSession().queryForResultSet(id);
     }
 
+    @Override
+    public BulkResult bulkInsert(String id, Iterator<?> rows, BulkOptions options) throws SQLException {
+        return getLocalSqlMapSession().bulkInsert(id, rows, options);
+    }
+
     @Override
     public String getGlobalProperty(String name) {
         return getDelegate().getState().getGlobalProps().getProperty(name);
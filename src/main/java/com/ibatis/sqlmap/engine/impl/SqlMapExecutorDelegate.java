@@ -21,23 +21,32 @@ import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
 import org.ibatis.persist.impl.ExecuteContext;
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
 import org.ibatis.client.Cache;
 import org.ibatis.client.Dialect;
 import org.ibatis.persist.impl.EntityManager;
 
 import com.ibatis.common.Objects;
 import com.ibatis.common.RunStats;
+import com.ibatis.common.Stoppable;
 import com.ibatis.common.Touchable;
 import com.ibatis.common.beans.Probe;
 import com.ibatis.common.beans.ProbeFactory;
@@ -50,15 +59,19 @@ import com.ibatis.sqlmap.client.SqlMapException;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.builder.xml.XmlParserState;
 import com.ibatis.sqlmap.engine.cache.CacheController;
+import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
 import com.ibatis.sqlmap.engine.cache.CacheRoot;
 import com.ibatis.sqlmap.engine.cache.CacheRoots;
+import com.ibatis.sqlmap.engine.cache.CacheSnapshot;
+import com.ibatis.sqlmap.engine.cache.FingerprintKey;
 import com.ibatis.sqlmap.engine.cache.FlushListener;
 import com.ibatis.sqlmap.engine.cache.NoneCacheController;
 import com.ibatis.sqlmap.engine.dialect.LimitOffsetPageDialect;
 import com.ibatis.sqlmap.engine.dialect.PageDialect;
 import com.ibatis.sqlmap.engine.dialect.OffsetFetchPageDialect;
 import com.ibatis.sqlmap.engine.exchange.DataExchangeFactory;
+import com.ibatis.sqlmap.engine.execution.Batch;
 import com.ibatis.sqlmap.engine.execution.BatchException;
 import com.ibatis.sqlmap.engine.execution.DefaultSqlExecutor;
 import com.ibatis.sqlmap.engine.execution.SqlExecutor;
@@ -66,27 +79,37 @@ import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.result.Discriminator;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultObjectFactory;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.CompiledConditions;
 import com.ibatis.sqlmap.engine.mapping.statement.InsertStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.LazyStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedRowHandler;
 import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.SelectKeyStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.StatementType;
 import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
 import com.ibatis.sqlmap.engine.transaction.TransactionException;
 import com.ibatis.sqlmap.engine.transaction.TransactionManager;
 import com.ibatis.sqlmap.engine.transaction.TransactionState;
+import com.ibatis.sqlmap.engine.transaction.routing.RoutingTransaction;
 import com.ibatis.sqlmap.engine.transaction.user.UserProvidedTransaction;
 import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
 
 /**
  * The workhorse that really runs the SQL
  */
-public class SqlMapExecutorDelegate implements Touchable {
+public class SqlMapExecutorDelegate implements Touchable, Stoppable {
     static final ILog log = ILogFactory.getLog(SqlMapExecutorDelegate.class);
 
     private static final Probe PROBE = ProbeFactory.getProbe();
 
+    /**
+     * The cache keys of the statements: <code>false</code> by default, <code>true</code> for the 128-bit
+     * fingerprints, or <code>verify</code> for the fingerprints verified by the values.
+     */
+    public static final String PROP_CACHE_KEY = "cache_key_fingerprint";
+
     private boolean lazyLoadingEnabled = false;
     private boolean cacheModelsEnabled = true;
     private boolean enhancementEnabled = true;
@@ -101,30 +124,37 @@ public class SqlMapExecutorDelegate implements Touchable {
 
     private TransactionManager txManager;
 
-    private HashMap<String, MappedStatement> mappedStatements;
+    private final Map<String, MappedStatement> mappedStatements;
+    private final Map<String, LazyStatement> lazyStatements;
     private final Map<String, CacheModel> cacheModels;
     private final CacheRoots cacheRoots = new CacheRoots();
-    private HashMap<String, ResultMap> resultMaps;
-    private HashMap<String, ParameterMap> parameterMaps;
+    private final Map<String, ResultMap> resultMaps;
+    private final Map<String, ParameterMap> parameterMaps;
 
     protected SqlExecutor sqlExecutor;
     private TypeHandlerFactory typeHandlerFactory;
     private DataExchangeFactory dataExchangeFactory;
 
     private ResultObjectFactory resultObjectFactory;
+    private final CompiledConditions.Loaders conditionLoaders = new CompiledConditions.Loaders();
     private boolean statementCacheEnabled = true;
 
     private final EntityManager entityManager;
     final XmlParserState state;
+    private volatile int cacheKeyMode = -1;
+    private CacheSnapshot cacheSnapshot;
 
     /**
      * Default constructor
      */
     public SqlMapExecutorDelegate(XmlParserState state) {
-        mappedStatements = new HashMap<String, MappedStatement>();
+        // the lazy statements are compiled into the map at runtime
+        mappedStatements = new ConcurrentHashMap<String, MappedStatement>();
+        lazyStatements = new ConcurrentHashMap<String, LazyStatement>();
         cacheModels = new HashMap<String, CacheModel>();
-        resultMaps = new HashMap<String, ResultMap>();
-        parameterMaps = new HashMap<String, ParameterMap>();
+        // the entities and the lazy statements add their maps at runtime
+        resultMaps = new ConcurrentHashMap<String, ResultMap>();
+        parameterMaps = new ConcurrentHashMap<String, ParameterMap>();
 
         sqlExecutor = new DefaultSqlExecutor(this);
         typeHandlerFactory = new TypeHandlerFactory();
@@ -302,13 +332,86 @@ public class SqlMapExecutorDelegate implements Touchable {
         mappedStatements.put(ms.getId(), ms);
     }
 
+    /**
+     * Add a statement to be compiled on its first use
+     *
+     * @param lazy
+     *            - the lazy statement to add
+     */
+    public void addLazyStatement(LazyStatement lazy) {
+        if (hasMappedStatement(lazy.getId())) {
+            throw new SqlMapException("There is already a statement named " + lazy.getId());
+        }
+        lazyStatements.put(lazy.getId(), lazy);
+    }
+
+    /**
+     * Check if the statement is registered, compiled or not
+     */
+    public boolean hasMappedStatement(String id) {
+        return mappedStatements.containsKey(id) || lazyStatements.containsKey(id);
+    }
+
+    /**
+     * Compile the lazy statement of the id, the failed statement is left to fail again on next use.
+     *
+     * @param id
+     *            - the statement ID
+     * @return - the mapped statement, or null if no such statement
+     */
+    public MappedStatement compileStatement(String id) {
+        LazyStatement lazy = lazyStatements.get(id);
+        if (lazy == null) {
+            return mappedStatements.get(id);
+        }
+        synchronized (state) {
+            if (lazyStatements.containsKey(id)) {
+                try {
+                    lazy.compile();
+                } catch (RuntimeException e) {
+                    mappedStatements.remove(id);
+                    throw e;
+                }
+                lazyStatements.remove(id);
+            }
+            return mappedStatements.get(id);
+        }
+    }
+
+    /**
+     * Compile all the lazy statements, used to validate the sql maps in the lazy mode.
+     *
+     * @return - the count of the compiled statements
+     */
+    public int compileStatements() {
+        int count = 0;
+        for (String id : new ArrayList<String>(lazyStatements.keySet())) {
+            if (compileStatement(id) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the count of the statements not compiled yet.
+     */
+    public int getLazyStatementCount() {
+        return lazyStatements.size();
+    }
+
     /**
      * Get an iterator of the mapped statements
      *
      * @return - the set
      */
     public Set<String> getMappedStatementNames() {
-        return mappedStatements.keySet();
+        if (lazyStatements.isEmpty()) {
+            return mappedStatements.keySet();
+        }
+        Set<String> names = new LinkedHashSet<String>(mappedStatements.keySet());
+        names.addAll(lazyStatements.keySet());
+        return names;
     }
 
     /**
@@ -322,12 +425,15 @@ public class SqlMapExecutorDelegate implements Touchable {
         // ## sunsong - dialect
         if (state.getDialect() != null) {
             String did = id + "." + state.getDialect();
-            if (mappedStatements.containsKey(did)) {
+            if (hasMappedStatement(did)) {
                 id = did;
             }
         }
 
         MappedStatement ms = mappedStatements.get(id);
+        if (ms == null && !lazyStatements.isEmpty()) {
+            ms = compileStatement(id);
+        }
         if (ms == null) {
             throw new SqlMapException("There is no statement named " + id + " in this SqlMap.");
         }
@@ -360,7 +466,7 @@ public class SqlMapExecutorDelegate implements Touchable {
      *            - the ID
      * @return - the cache model
      */
-    public CacheModel getCacheModel(String id) {
+    public synchronized CacheModel getCacheModel(String id) {
         CacheModel model = (CacheModel) cacheModels.get(id);
         if (model == null) {
             throw new SqlMapException("There is no cache model named " + id + " in this SqlMap.");
@@ -878,6 +984,10 @@ public class SqlMapExecutorDelegate implements Touchable {
 
     private void initProduct(Transaction tx) {
         if (productName == null && tx != null) {
+            if (tx instanceof RoutingTransaction) {
+                // reads the primary without keeping the transaction on it
+                ((RoutingTransaction) tx).route(false);
+            }
             try {
                 DatabaseMetaData meta = tx.getConnection().getMetaData();
                 majorVersion = meta.getDatabaseMajorVersion();
@@ -885,6 +995,10 @@ public class SqlMapExecutorDelegate implements Touchable {
                 productName = meta.getDatabaseProductName().toLowerCase();
             } catch (Exception e) {
                 log.warn(e.toString());
+            } finally {
+                if (tx instanceof RoutingTransaction) {
+                    ((RoutingTransaction) tx).unroute();
+                }
             }
             if (productName == null) {
                 productName = "";
@@ -903,6 +1017,7 @@ public class SqlMapExecutorDelegate implements Touchable {
      */
     public void startTransaction(SessionScope sessionScope) throws SQLException {
         try {
+            sessionScope.clearIdentityMap();
             txManager.begin(sessionScope);
         } catch (TransactionException e) {
             throw new NestedSQLException("Could not start transaction.  Cause: " + e, e);
@@ -919,6 +1034,7 @@ public class SqlMapExecutorDelegate implements Touchable {
      */
     public void startTransaction(SessionScope sessionScope, int transactionIsolation) throws SQLException {
         try {
+            sessionScope.clearIdentityMap();
             txManager.begin(sessionScope, transactionIsolation);
         } catch (TransactionException e) {
             throw new NestedSQLException("Could not start transaction.  Cause: " + e, e);
@@ -935,11 +1051,14 @@ public class SqlMapExecutorDelegate implements Touchable {
      */
     public void commitTransaction(SessionScope sessionScope) throws SQLException {
         try {
+            // the changed entities of the transaction
+            getEntityManager().flushEntities(sessionScope);
             // Auto batch execution
             if (sessionScope.isInBatch()) {
                 executeBatch(sessionScope);
             }
             sqlExecutor.cleanup(sessionScope);
+            sessionScope.clearIdentityMap();
             txManager.commit(sessionScope);
         } catch (TransactionException e) {
             throw new NestedSQLException("Could not commit transaction.  Cause: " + e, e);
@@ -959,6 +1078,7 @@ public class SqlMapExecutorDelegate implements Touchable {
             try {
                 sqlExecutor.cleanup(sessionScope);
             } finally {
+                sessionScope.clearIdentityMap();
                 txManager.end(sessionScope);
             }
         } catch (TransactionException e) {
@@ -1059,6 +1179,180 @@ public class SqlMapExecutorDelegate implements Touchable {
         return anwser;
     }
 
+    /**
+     * Stream the rows through the statement in jdbc batches.
+     *
+     * @param sessionScope
+     *            - the session
+     * @param id
+     *            - the statement ID
+     * @param rows
+     *            - the parameter objects
+     * @param options
+     *            - the bulk options
+     * @return - the bulk result
+     * @throws SQLException
+     *             - if a row fails and the options do not continue on error
+     */
+    public BulkResult bulkInsert(SessionScope sessionScope, String id, Iterator<?> rows, BulkOptions options)
+        throws SQLException {
+        if (options == null) {
+            options = new BulkOptions();
+        }
+        if (sessionScope.isInBatch()) {
+            throw new SQLException("Incorrect batch mode.\n  +-- Already in batch");
+        }
+
+        MappedStatement ms = getMappedStatement(id);
+        Transaction trans = getTransaction(sessionScope);
+        boolean autoStart = trans == null;
+        int batchSize = options.getBatchSize();
+        int commitInterval = autoStart ? options.getCommitInterval() : 0;
+        BulkResult result = new BulkResult(ms.getId());
+
+        try {
+            trans = autoStartTransaction(sessionScope, autoStart, trans);
+            List<Object> chunk = new ArrayList<Object>(Math.min(batchSize, 1024));
+            int uncommitted = 0;
+            while (rows.hasNext()) {
+                chunk.add(rows.next());
+                if (chunk.size() >= batchSize || (commitInterval > 0 && uncommitted + chunk.size() >= commitInterval)) {
+                    bulkExecute(sessionScope, ms, trans, chunk, result, options);
+                    uncommitted += chunk.size();
+                    chunk.clear();
+                    if (commitInterval > 0 && uncommitted >= commitInterval) {
+                        commitTransaction(sessionScope);
+                        // the same transaction goes on with the next rows
+                        sessionScope.setTransactionState(TransactionState.STATE_STARTED);
+                        result.addCommit();
+                        uncommitted = 0;
+                    }
+                    if (options.getListener() != null) {
+                        options.getListener().onProgress(result);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                bulkExecute(sessionScope, ms, trans, chunk, result, options);
+                uncommitted += chunk.size();
+                chunk.clear();
+            }
+            if (autoStart && uncommitted > 0) {
+                result.addCommit();
+            }
+            autoCommitTransaction(sessionScope, autoStart);
+            if (options.getListener() != null && uncommitted > 0) {
+                options.getListener().onProgress(result);
+            }
+        } finally {
+            sessionScope.setInBatch(0);
+            autoEndTransaction(sessionScope, autoStart);
+        }
+        return result;
+    }
+
+    /**
+     * Execute one chunk of the bulk insert, the chunk is re-driven after a failed row of the batch.
+     */
+    private void bulkExecute(SessionScope sessionScope, MappedStatement ms, Transaction trans, List<Object> chunk,
+        BulkResult result, BulkOptions options) throws SQLException {
+        int base = result.getRows();
+        List<Integer> todo = new ArrayList<Integer>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            todo.add(i);
+        }
+        while (!todo.isEmpty()) {
+            // rows in the jdbc batch, in order; a new sql (dynamic statement) splits the batch in two groups.
+            List<Integer> batched = new ArrayList<Integer>(todo.size());
+            int split = -1;
+            int next = 0;
+            sessionScope.setInBatch(-1);
+            try {
+                while (next < todo.size()) {
+                    int i = todo.get(next++);
+                    StatementScope statementScope = beginStatementScope(sessionScope, ms);
+                    try {
+                        int rows = ms.executeUpdate(statementScope, trans, chunk.get(i));
+                        Batch batch = sessionScope.getBatch();
+                        if (batch == null || batch.isCleanup()) {
+                            // not batched, already executed
+                            result.addAffectedRows(rows);
+                            continue;
+                        }
+                        batched.add(i);
+                        if (batch.getSqlCount() > 1) {
+                            split = batched.size() - 1;
+                            break;
+                        }
+                    } catch (SQLException e) {
+                        bulkFailed(sessionScope, base + i, e, result, options);
+                    } finally {
+                        endStatementScope(statementScope);
+                    }
+                }
+            } finally {
+                sessionScope.setInBatch(0);
+            }
+
+            int resume = batched.size();
+            try {
+                List<BatchResult> brs = sqlExecutor.executeBatchDetailed(sessionScope);
+                if (brs != null) {
+                    for (BatchResult br : brs) {
+                        result.addAffectedRows(br.totalRows);
+                    }
+                }
+            } catch (BatchException e) {
+                int done = 0;
+                for (BatchResult br : e.getSuccessfulBatchResults()) {
+                    result.addAffectedRows(br.totalRows);
+                    done += br.total;
+                }
+                int groupSize = (split < 0 || done > 0) ? batched.size() - done : split;
+                int[] uc = e.getBatchUpdateException().getUpdateCounts();
+                SQLException cause = new NestedSQLException(e.getMessage(), e.getBatchUpdateException());
+                if (uc != null && uc.length == groupSize) {
+                    // the driver continues to process commands after an error
+                    for (int j = 0; j < uc.length; j++) {
+                        if (uc[j] == Statement.EXECUTE_FAILED) {
+                            bulkFailed(sessionScope, base + batched.get(done + j), cause, result, options);
+                        } else if (uc[j] > 0) {
+                            result.addAffectedRows(uc[j]);
+                        }
+                    }
+                    resume = done + groupSize;
+                } else {
+                    int ok = uc == null ? 0 : uc.length;
+                    for (int j = 0; j < ok; j++) {
+                        if (uc[j] > 0) {
+                            result.addAffectedRows(uc[j]);
+                        }
+                    }
+                    bulkFailed(sessionScope, base + batched.get(done + ok), cause, result, options);
+                    resume = done + ok + 1;
+                }
+            } finally {
+                sqlExecutor.cleanup(sessionScope);
+            }
+            result.addBatch();
+
+            List<Integer> rest = new ArrayList<Integer>(batched.subList(resume, batched.size()));
+            rest.addAll(todo.subList(next, todo.size()));
+            todo = rest;
+        }
+        result.addRows(chunk.size());
+    }
+
+    private void bulkFailed(SessionScope sessionScope, int position, SQLException e, BulkResult result,
+        BulkOptions options) throws SQLException {
+        result.addFailedRow(position);
+        if (!options.isContinueOnError()) {
+            sqlExecutor.cleanup(sessionScope);
+            throw new NestedSQLException("Bulk insert '" + result.getStatementId() + "' failed at row " + position
+                + ".  Cause: " + e, e.getSQLState(), e.getErrorCode(), e);
+        }
+    }
+
     /**
      * Use a user-provided transaction for a session
      *
@@ -1151,11 +1445,33 @@ public class SqlMapExecutorDelegate implements Touchable {
         StatementScope statementScope = new StatementScope(sessionScope);
         if (mappedStatement != null) { // ## sunsong - callback
             mappedStatement.initRequest(statementScope);
+            Transaction trans = sessionScope.getTransaction();
+            if (trans instanceof RoutingTransaction) {
+                route((RoutingTransaction) trans, mappedStatement);
+            }
         }
         return statementScope;
     }
 
     protected void endStatementScope(StatementScope statementScope) {
+        Transaction trans = statementScope.getSession().getTransaction();
+        if (trans instanceof RoutingTransaction) {
+            ((RoutingTransaction) trans).unroute();
+        }
+    }
+
+    /**
+     * The selects read the replica unless the statement routes them to the primary. The other statements may write, so
+     * they are not routed and keep the transaction on the primary, unless they are declared read-only by
+     * <code>route="replica"</code>.
+     */
+    private void route(RoutingTransaction trans, MappedStatement ms) {
+        Boolean replica = ms.getReplica();
+        if (ms.getStatementType() == StatementType.SELECT && !(ms instanceof SelectKeyStatement)) {
+            trans.route(replica == null || replica.booleanValue());
+        } else if (Boolean.TRUE.equals(replica)) {
+            trans.route(true);
+        }
     }
 
     protected SessionScope beginSessionScope() {
@@ -1170,6 +1486,13 @@ public class SqlMapExecutorDelegate implements Touchable {
         return resultObjectFactory;
     }
 
+    /**
+     * The loaders of the compiled conditions of the dynamic sql, shared by all the statements.
+     */
+    public CompiledConditions.Loaders getConditionLoaders() {
+        return conditionLoaders;
+    }
+
     public void setResultObjectFactory(ResultObjectFactory resultObjectFactory) {
         this.resultObjectFactory = resultObjectFactory;
     }
@@ -1247,55 +1570,152 @@ public class SqlMapExecutorDelegate implements Touchable {
         return state.getGlobalProps().getProperty(name);
     }
 
-    public synchronized void finalizeSqlMapConfig() {
-        wireUpCacheModels();
-        bindResultMapDiscriminators();
+    /**
+     * Create an empty cache key of the kind set by {@link #PROP_CACHE_KEY}.
+     */
+    public CacheKey newCacheKey() {
+        int mode = cacheKeyMode;
+        if (mode < 0) {
+            String kind = getGlobalProperty(PROP_CACHE_KEY);
+            mode = "verify".equals(kind) ? 2 : "true".equals(kind) ? 1 : 0;
+            cacheKeyMode = mode;
+        }
+        return mode == 0 ? new CacheKey() : new FingerprintKey(mode == 2);
+    }
+
+    public void finalizeSqlMapConfig() {
+        // the lazy statements compile under the lock of the parser state and then lock the delegate, so the same order
+        synchronized (state) {
+            synchronized (this) {
+                wireUpCacheModels();
+                bindResultMapDiscriminators();
+                restoreCacheSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Wire up the statements and the cache model of an entity built at runtime, instead of finalizing all the sqlMaps
+     * again for each entity.
+     *
+     * @param entityClass
+     *            - the entity class
+     * @param statementIds
+     *            - the IDs of the statements of the entity
+     * @param cacheModel
+     *            - the cache model of the entity, or null
+     */
+    public void finalizeEntity(Class<?> entityClass, Collection<String> statementIds, CacheModel cacheModel) {
+        synchronized (state) {
+            synchronized (this) {
+                if (cacheModel != null) {
+                    wireUpCacheModel(cacheModel);
+                    if (cacheSnapshot != null) {
+                        cacheSnapshot.restore(cacheModel);
+                    }
+                }
+                // the other cache models flushed by the statements or the cache of the entity
+                for (CacheModel cm : cacheModels.values()) {
+                    if (cm == cacheModel) {
+                        continue;
+                    }
+                    for (String id : statementIds) {
+                        if (cm.getFlushTriggerStatementNames().contains(id)) {
+                            getMappedStatement(id).addExecuteListener(cm);
+                        }
+                    }
+                    if (cacheModel != null && cm.getFlushTriggerEntityClasses().contains(entityClass)) {
+                        cacheModel.addFlushListener(cm);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Restore the cache models from the snapshot of the global property <code>cache_snapshot_file</code>, the snapshot
+     * is read at the end of the sqlMap configuration, and the entity caches are restored when they are built.
+     */
+    void restoreCacheSnapshot() {
+        if (cacheSnapshot == null) {
+            String file = getGlobalProperty(CacheSnapshot.PROP_FILE);
+            if (file == null || file.trim().isEmpty()) {
+                return;
+            }
+            int size = 0;
+            String prop = getGlobalProperty(CacheSnapshot.PROP_SIZE);
+            if (prop != null && !prop.trim().isEmpty()) {
+                size = Integer.parseInt(prop.trim());
+            }
+            cacheSnapshot = new CacheSnapshot(new File(file.trim()), state.getSqlMapKey(), size);
+            RunStats.getInstance().addStoppable(this);
+        }
+        for (CacheModel cm : cacheModels.values()) {
+            cacheSnapshot.restore(cm);
+        }
+    }
+
+    /**
+     * Write the hot entries of the cache models to the snapshot, called at shutdown.
+     */
+    public synchronized void saveCacheSnapshot() {
+        if (cacheSnapshot != null) {
+            cacheSnapshot.save(new ArrayList<CacheModel>(cacheModels.values()));
+        }
+    }
+
+    @Override
+    public void onStop() {
+        saveCacheSnapshot();
     }
 
     void wireUpCacheModels() {
         // Wire Up Cache Models
         Set<String> cacheNames = getCacheModelNames();
         for (String cacheName : cacheNames) {
-            CacheModel cacheModel = getCacheModel(cacheName);
+            wireUpCacheModel(getCacheModel(cacheName));
+        }
+    }
 
-            Set<String> triggerCacheRoots = cacheModel.getFlushTriggerCacheRoots();
-            for (String triggerCacheRoot : triggerCacheRoots) {
-                CacheRoot cacheRoot = getCacheRoots().makeRoot(triggerCacheRoot);
-                cacheRoot.addFlushListener(cacheModel);
-            }
+    void wireUpCacheModel(CacheModel cacheModel) {
+        String cacheName = cacheModel.getId();
+        Set<String> triggerCacheRoots = cacheModel.getFlushTriggerCacheRoots();
+        for (String triggerCacheRoot : triggerCacheRoots) {
+            CacheRoot cacheRoot = getCacheRoots().makeRoot(triggerCacheRoot);
+            cacheRoot.addFlushListener(cacheModel);
+        }
 
-            Set<String> statementNames = cacheModel.getFlushTriggerStatementNames();
-            for (String statementName : statementNames) {
-                MappedStatement statement = null;
-                try {
-                    statement = getMappedStatement(statementName);
-                } catch (Exception e) {
-                }
-                if (statement != null) {
-                    statement.addExecuteListener(cacheModel);
-                } else {
-                    log.warn("Could not find statement named '" + statementName
-                        + "' for use as a flush trigger for the cache model named '" + cacheName + "'.");
-                }
+        Set<String> statementNames = cacheModel.getFlushTriggerStatementNames();
+        for (String statementName : statementNames) {
+            MappedStatement statement = null;
+            try {
+                statement = getMappedStatement(statementName);
+            } catch (Exception e) {
             }
+            if (statement != null) {
+                statement.addExecuteListener(cacheModel);
+            } else {
+                log.warn("Could not find statement named '" + statementName
+                    + "' for use as a flush trigger for the cache model named '" + cacheName + "'.");
+            }
+        }
 
-            Set<String> triggerCacheNames = cacheModel.getFlushTriggerCacheNames();
-            for (String triggerCacheName : triggerCacheNames) {
-                CacheModel triggerCacheModel = findCacheModel(triggerCacheName);
-                if (triggerCacheModel != null) {
-                    triggerCacheModel.addFlushListener(cacheModel);
-                } else {
-                    log.warn("Could not find cache named '" + triggerCacheName
-                        + "' for use as a flush trigger for the cache model named '" + cacheName + "'.");
-                }
+        Set<String> triggerCacheNames = cacheModel.getFlushTriggerCacheNames();
+        for (String triggerCacheName : triggerCacheNames) {
+            CacheModel triggerCacheModel = findCacheModel(triggerCacheName);
+            if (triggerCacheModel != null) {
+                triggerCacheModel.addFlushListener(cacheModel);
+            } else {
+                log.warn("Could not find cache named '" + triggerCacheName
+                    + "' for use as a flush trigger for the cache model named '" + cacheName + "'.");
             }
+        }
 
-            Set<Class<?>> triggerEntityClasses = cacheModel.getFlushTriggerEntityClasses();
-            for (Class<?> triggerEntityClass : triggerEntityClasses) {
-                Cache triggerCache = getEntityManager().findEntityCache(triggerEntityClass);
-                if (triggerCache instanceof CacheModel) {
-                    ((CacheModel) triggerCache).addFlushListener(cacheModel);
-                }
+        Set<Class<?>> triggerEntityClasses = cacheModel.getFlushTriggerEntityClasses();
+        for (Class<?> triggerEntityClass : triggerEntityClasses) {
+            Cache triggerCache = getEntityManager().findEntityCache(triggerEntityClass);
+            if (triggerCache instanceof CacheModel) {
+                ((CacheModel) triggerCache).addFlushListener(cacheModel);
             }
         }
     }
@@ -18,12 +18,16 @@ package com.ibatis.sqlmap.engine.impl;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
 import org.ibatis.persist.criteria.CriteriaBuilder;
 import org.ibatis.persist.criteria.CriteriaDelete;
 import org.ibatis.persist.criteria.CriteriaQuery;
@@ -300,6 +304,10 @@ public class SqlMapSessionImpl implements SqlMapSession {
         return delegate.getEntityManager().updateEntity(sessionScope, cls, entity);
     }
 
+    public <E> int upsertEntity(Class<E> cls, E entity) throws SQLException {
+        return delegate.getEntityManager().upsertEntity(sessionScope, cls, entity);
+    }
+
     public <E, K> int deleteEntity(Class<E> cls, K key) throws SQLException {
         return delegate.getEntityManager().deleteEntity(sessionScope, cls, key);
     }
@@ -308,6 +316,10 @@ public class SqlMapSessionImpl implements SqlMapSession {
         return delegate.getEntityManager().findEntity(sessionScope, cls, key);
     }
 
+    public <E, K> List<E> findEntities(Class<E> cls, Collection<K> keys) throws SQLException {
+        return delegate.getEntityManager().findEntities(sessionScope, cls, keys);
+    }
+
     @Override
     public <E> EntityType<E> initEntityClass(Class<E> entityClass) {
         return delegate.getEntityManager().initEntityClass(entityClass);
@@ -436,4 +448,9 @@ public class SqlMapSessionImpl implements SqlMapSession {
     public ResultSet queryForResultSet(String id) throws SQLException {
         return queryForResultSet(id, null);
     }
+
+    @Override
+    public BulkResult bulkInsert(String id, Iterator<?> rows, BulkOptions options) throws SQLException {
+        return delegate.bulkInsert(sessionScope, id, rows, options);
+    }
 }
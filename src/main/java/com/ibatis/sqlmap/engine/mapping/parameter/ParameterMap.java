@@ -95,6 +95,27 @@ public class ParameterMap {
         return this.parameterMappings.length;
     }
 
+    /**
+     * Create a copy of this parameter map with the mappings at the given indexes, for the sql whose parameters are
+     * repeated or reordered (e.g. the upsert of derby).
+     * 
+     * @param indexes
+     *            - the index of the mapping for each parameter of the new map
+     * @return the new parameter map
+     */
+    public ParameterMap reorder(int[] indexes) {
+        ParameterMap map = new ParameterMap(delegate);
+        map.id = id;
+        map.parameterClass = parameterClass;
+        map.resource = resource;
+        map.dataExchange = dataExchange;
+        map.parameterMappings = new ParameterMapping[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            map.parameterMappings[i] = parameterMappings[indexes[i]];
+        }
+        return map;
+    }
+
     /**
      * @param ps
      * @param parameters
@@ -208,5 +208,27 @@ public class ParameterMapping {
     public void setQuickName(String quickName) {
         this.quickName = quickName;
     }
+
+    /**
+     * Copy this mapping without the quick name and value of an iteration, the copy is reusable by the later
+     * executions and the value is probed by the property name.
+     */
+    public ParameterMapping copyWithoutQuick() {
+        ParameterMapping pm = new ParameterMapping();
+        pm.propertyName = propertyName;
+        pm.typeHandler = typeHandler;
+        pm.typeName = typeName;
+        pm.jdbcType = jdbcType;
+        pm.jdbcTypeName = jdbcTypeName;
+        pm.nullValue = nullValue;
+        pm.mode = mode;
+        pm.inputAllowed = inputAllowed;
+        pm.outputAllowed = outputAllowed;
+        pm.javaType = javaType;
+        pm.resultMapName = resultMapName;
+        pm.numericScale = numericScale;
+        pm.errorString = errorString;
+        return pm;
+    }
     
 }
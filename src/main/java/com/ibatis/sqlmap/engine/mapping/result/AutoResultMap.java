@@ -36,6 +36,9 @@ import com.ibatis.sqlmap.engine.scope.StatementScope;
 public class AutoResultMap extends ResultMap {
     private static final ILog log = ILogFactory.getLog(AutoResultMap.class);
 
+    // the mappings are built once and never changed unless remapping is enabled
+    private volatile boolean initialized;
+
     /**
      * Constructor to pass in the SqlMapExecutorDelegate
      *
@@ -48,9 +51,22 @@ public class AutoResultMap extends ResultMap {
     }
 
     @Override
-    public synchronized Object[] getResults(StatementScope statementScope, ResultSet rs) throws SQLException {
-        if (allowRemapping || getResultMappings() == null) {
-            initialize(rs);
+    public Object[] getResults(StatementScope statementScope, ResultSet rs) throws SQLException {
+        if (allowRemapping) {
+            synchronized (this) {
+                initialize(rs);
+                return super.getResults(statementScope, rs);
+            }
+        }
+        if (!initialized) {
+            synchronized (this) {
+                if (!initialized) {
+                    if (getResultMappings() == null) {
+                        initialize(rs);
+                    }
+                    initialized = true;
+                }
+            }
         }
         return super.getResults(statementScope, rs);
     }
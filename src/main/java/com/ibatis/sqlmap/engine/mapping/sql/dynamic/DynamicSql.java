@@ -30,20 +30,129 @@ import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DynamicSql implements Sql, DynamicParent {
 
     private static final InlineParameterMapParser PARAM_PARSER = new InlineParameterMapParser();
+    /**
+     * The max count of the render plans of each dynamic sql, 0 disables the plans.
+     */
+    public static final String PROP_PLANS = "sql_dynamic_plans";
+    static final int MAX_PLANS = 64;
+    /**
+     * Compile the conditions of each dynamic sql for the parameter classes, false by default.
+     */
+    public static final String PROP_COMPILE = "sql_dynamic_compile";
+    static final int MAX_COMPILED = 8;
+    /**
+     * Pad the IN lists rendered by the iterate tags to the bucket sizes, false by default.
+     */
+    public static final String PROP_IN_PADDING = "sql_in_padding";
 
     private final List<SqlChild> children = new ArrayList<SqlChild>(3);
     private SqlMapExecutorDelegate delegate;
+    private final Map<String, RenderPlan> plans = new ConcurrentHashMap<String, RenderPlan>();
+    private final int maxPlans;
+    private final boolean compile;
+    private final Map<Class<?>, CompiledConditions> compiled = new ConcurrentHashMap<Class<?>, CompiledConditions>();
+    // the classes of which nothing can be compiled
+    private final Set<Class<?>> interpreted = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    private final boolean inPadding;
+    private volatile boolean inListsMarked;
+
+    /**
+     * The rendered sql and parameter map of a shape of the tags, see {@link DynamicSql#shape}.
+     */
+    static class RenderPlan {
+        final String sql;
+        final SimpleDynamicSql simpleDynamic;
+        final ParameterMap parameterMap;
+
+        RenderPlan(SqlMapExecutorDelegate delegate, String sql, ParameterMap parameterMap) {
+            this.sql = sql;
+            this.simpleDynamic = SimpleDynamicSql.isSimpleDynamicSql(sql) ? new SimpleDynamicSql(delegate, sql) : null;
+            this.parameterMap = parameterMap;
+        }
+    }
 
     public DynamicSql(SqlMapExecutorDelegate delegate) {
         this.delegate = delegate;
+        String max = delegate.getGlobalProperty(PROP_PLANS);
+        this.maxPlans = max == null ? MAX_PLANS : Integer.parseInt(max.trim());
+        this.compile = "true".equals(delegate.getGlobalProperty(PROP_COMPILE));
+        this.inPadding = "true".equals(delegate.getGlobalProperty(PROP_IN_PADDING));
+    }
+
+    /**
+     * Mark the iterate tags which render an IN list of one parameter, like
+     * <code>&lt;iterate open="(" close=")" conjunction=","&gt;#ids[]#&lt;/iterate&gt;</code>; repeating the last item
+     * of the other iterations, e.g. the rows of an insert, would change the result.
+     */
+    static void markInLists(Iterator<SqlChild> children) {
+        while (children.hasNext()) {
+            SqlChild child = children.next();
+            if (child instanceof SqlTag) {
+                SqlTag tag = (SqlTag) child;
+                if (tag.getHandler() instanceof IterateTagHandler) {
+                    tag.setInList(isInList(tag));
+                }
+                markInLists(tag.getChildren());
+            }
+        }
+    }
+
+    static boolean isInList(SqlTag tag) {
+        if (!tag.isOpenAvailable() || !tag.isCloseAvailable() || !tag.isConjunctionAvailable()
+            || !tag.getOpenAttr().trim().endsWith("(") || !tag.getCloseAttr().trim().startsWith(")")
+            || !",".equals(tag.getConjunctionAttr().trim())) {
+            return false;
+        }
+        Iterator<SqlChild> it = tag.getChildren();
+        if (!it.hasNext()) {
+            return false;
+        }
+        SqlChild body = it.next();
+        if (it.hasNext() || !(body instanceof SqlText)) {
+            return false;
+        }
+        String text = ((SqlText) body).getText().trim();
+        return text.length() > 2 && text.charAt(0) == '#' && text.indexOf('#', 1) == text.length() - 1
+            && text.contains("[]");
+    }
+
+    /**
+     * Get the compiled conditions for the class of the parameter, or null if the conditions are interpreted.
+     */
+    public CompiledConditions getCompiledConditions(Object parameterObject) {
+        if (!compile || parameterObject == null) {
+            return null;
+        }
+        Class<?> type = parameterObject.getClass();
+        CompiledConditions conditions = compiled.get(type);
+        if (conditions == null && !interpreted.contains(type)) {
+            synchronized (compiled) {
+                conditions = compiled.get(type);
+                if (conditions == null && !interpreted.contains(type)) {
+                    if (compiled.size() + interpreted.size() >= MAX_COMPILED) {
+                        return null;
+                    }
+                    conditions = CompiledConditions.compile(children, type, delegate.getConditionLoaders());
+                    if (conditions != null) {
+                        compiled.put(type, conditions);
+                    } else {
+                        interpreted.add(type);
+                    }
+                }
+            }
+        }
+        return conditions;
     }
 
     @Override
@@ -78,16 +187,49 @@ public class DynamicSql implements Sql, DynamicParent {
     }
 
     private void process(StatementScope statementScope, Object parameterObject) {
+        if (inPadding && !inListsMarked) {
+            markInLists(children.iterator());
+            inListsMarked = true;
+        }
+        CompiledConditions conditions = getCompiledConditions(parameterObject);
+        StringBuilder key = null;
+        if (maxPlans > 0) {
+            key = new StringBuilder();
+            if (!shape(new SqlTagContext(), conditions, parameterObject, children.iterator(), key,
+                new StringBuilder(0))) {
+                key = null;
+            }
+        }
+        RenderPlan plan = key == null ? null : plans.get(key.toString());
+        if (plan != null) {
+            String dynSql = plan.sql;
+            if (plan.simpleDynamic != null) {
+                // the template of the plan is parsed once
+                dynSql = plan.simpleDynamic.getSql(statementScope, parameterObject);
+            }
+            statementScope.setDynamicSql(dynSql);
+            statementScope.setDynamicParameterMap(plan.parameterMap);
+            return;
+        }
+
         SqlTagContext ctx = new SqlTagContext();
         List<SqlChild> localChildren = children;
-        processBodyChildren(statementScope, ctx, parameterObject, localChildren.iterator());
+        processBodyChildren(statementScope, ctx, conditions, parameterObject, localChildren.iterator(),
+            ctx.getStringBuilder());
 
-        ParameterMap map = new ParameterMap(delegate);
-        map.setId(statementScope.getStatement().getId() + "-InlineParameterMap");
-        map.setParameterClass(((MappedStatement) statementScope.getStatement()).getParameterClass());
-        map.setParameterMappingList(ctx.getParameterMappings());
+        ParameterMap map = newParameterMap(statementScope, ctx.getParameterMappings());
 
         String dynSql = ctx.getBodyText();
+        if (key != null && plans.size() < maxPlans) {
+            // the quick values belong to this execution
+            List<ParameterMapping> mappings = new ArrayList<ParameterMapping>(ctx.getParameterMappings());
+            for (int i = 0; i < mappings.size(); i++) {
+                if (mappings.get(i).getQuickName() != null) {
+                    mappings.set(i, mappings.get(i).copyWithoutQuick());
+                }
+            }
+            plans.put(key.toString(), new RenderPlan(delegate, dynSql, newParameterMap(statementScope, mappings)));
+        }
 
         // Processes $substitutions$ after DynamicSql
         if (SimpleDynamicSql.isSimpleDynamicSql(dynSql)) {
@@ -98,13 +240,89 @@ public class DynamicSql implements Sql, DynamicParent {
         statementScope.setDynamicParameterMap(map);
     }
 
-    private void processBodyChildren(StatementScope statementScope, SqlTagContext ctx, Object parameterObject,
-        Iterator<SqlChild> localChildren) {
-        processBodyChildren(statementScope, ctx, parameterObject, localChildren, ctx.getStringBuilder());
+    private ParameterMap newParameterMap(StatementScope statementScope, List<ParameterMapping> mappings) {
+        ParameterMap map = new ParameterMap(delegate);
+        map.setId(statementScope.getStatement().getId() + "-InlineParameterMap");
+        map.setParameterClass(((MappedStatement) statementScope.getStatement()).getParameterClass());
+        map.setParameterMappingList(mappings);
+        return map;
+    }
+
+    /**
+     * Walk the tags as {@link #processBodyChildren} does but render nothing. The key records the response of each start
+     * fragment and a ';' at the end of each tag, so it covers the conditions and the lengths of the iterations. The
+     * texts are static and the body of a tag is empty only if its children are, so the same key renders the same sql
+     * and parameter mappings, only the values of the parameters and the $substitutions$ differ.
+     * <p>
+     * Returns false without walking further if the iterated collection is not a list or an array: an iterator can not
+     * be walked twice, and the items of both can not be probed by the indexed properties of a plan.
+     */
+    private boolean shape(SqlTagContext ctx, CompiledConditions conditions, Object parameterObject,
+        Iterator<SqlChild> localChildren, StringBuilder key, StringBuilder empty) {
+        while (localChildren.hasNext()) {
+            SqlChild child = localChildren.next();
+            if (child instanceof SqlText) {
+                SqlText sqlText = (SqlText) child;
+                if (!sqlText.isWhiteSpace() && sqlText.isPostParseRequired()) {
+                    IterateContext itCtx = ctx.peekIterateContext();
+                    if (null != itCtx && itCtx.isAllowNext()) {
+                        itCtx.next();
+                        itCtx.setAllowNext(false);
+                        if (!itCtx.hasNext()) {
+                            itCtx.setFinal(true);
+                        }
+                    }
+                }
+            } else if (child instanceof SqlTag) {
+                SqlTag tag = (SqlTag) child;
+                SqlTagHandler handler = tag.getHandler();
+                int response = SqlTagHandler.INCLUDE_BODY;
+                int rfpDepth = ctx.removeFirtPrependStackSize();
+                do {
+                    response = doStartFragment(ctx, conditions, tag, parameterObject);
+                    IterateContext it = ctx.getAttribute(tag);
+                    if (it != null && !it.isIndexed()) {
+                        return false;
+                    }
+                    if (it != null && it.getIndex() < 0 && it.getUnpaddedSize() >= 0) {
+                        // the padded items are bound to the last one, so the real size is a part of the shape
+                        key.append('#').append(it.getUnpaddedSize()).append('#');
+                    }
+                    key.append((char) ('0' + response));
+                    if (response != SqlTagHandler.SKIP_BODY) {
+                        if (!shape(ctx, conditions, parameterObject, tag.getChildren(), key, empty)) {
+                            return false;
+                        }
+                        response = handler.doEndFragment(ctx, tag, parameterObject, empty);
+                        handler.doPrepend(ctx, tag, parameterObject, empty);
+                    }
+                } while (response == SqlTagHandler.REPEAT_BODY);
+                key.append(';');
+
+                if (ctx.removeFirtPrependStackSize() > rfpDepth) {
+                    ctx.popRemoveFirstPrependMarker();
+                }
+
+                IterateContext ic = ctx.peekIterateContext();
+                if (ic != null && ic.getTag() == tag) {
+                    ctx.setAttribute(tag, null);
+                    ctx.popIterateContext();
+                }
+            }
+        }
+        return true;
+    }
+
+    private int doStartFragment(SqlTagContext ctx, CompiledConditions conditions, SqlTag tag,
+        Object parameterObject) {
+        if (conditions != null) {
+            return conditions.doStartFragment(ctx, tag, parameterObject);
+        }
+        return tag.getHandler().doStartFragment(ctx, tag, parameterObject);
     }
 
-    private void processBodyChildren(StatementScope statementScope, SqlTagContext ctx, Object parameterObject,
-        Iterator<SqlChild> localChildren, StringBuilder buf) {
+    private void processBodyChildren(StatementScope statementScope, SqlTagContext ctx,
+        CompiledConditions conditions, Object parameterObject, Iterator<SqlChild> localChildren, StringBuilder buf) {
         while (localChildren.hasNext()) {
             SqlChild child = localChildren.next();
             if (child instanceof SqlText) {
@@ -168,10 +386,11 @@ public class DynamicSql implements Sql, DynamicParent {
                 do {
                     StringBuilder body = new StringBuilder();
 
-                    response = handler.doStartFragment(ctx, tag, parameterObject);
+                    response = doStartFragment(ctx, conditions, tag, parameterObject);
                     if (response != SqlTagHandler.SKIP_BODY) {
 
-                        processBodyChildren(statementScope, ctx, parameterObject, tag.getChildren(), body);
+                        processBodyChildren(statementScope, ctx, conditions, parameterObject, tag.getChildren(),
+                            body);
                         response = handler.doEndFragment(ctx, tag, parameterObject, body);
                         handler.doPrepend(ctx, tag, parameterObject, body);
 
@@ -47,6 +47,14 @@ public abstract class ConditionalTagHandler extends BaseTagHandler {
         }
     }
 
+    /**
+     * Start the fragment with the condition evaluated elsewhere, see {@link CompiledConditions}.
+     */
+    public int doStartFragment(SqlTagContext ctx, SqlTag tag, boolean condition) {
+        ctx.pushRemoveFirstPrependMarker(tag);
+        return condition ? SqlTagHandler.INCLUDE_BODY : SqlTagHandler.SKIP_BODY;
+    }
+
     @Override
     public int doEndFragment(SqlTagContext ctx, SqlTag tag, Object parameterObject, StringBuilder bodyContent) {
 
@@ -37,13 +37,17 @@ public class IsEmptyTagHandler extends ConditionalTagHandler {
             } else {
                 value = parameterObject;
             }
-            if (value instanceof Collection<?>) {
-                return value == null || ((Collection<?>) value).size() < 1;
-            } else if (value != null && value.getClass().isArray()) {
-                return Array.getLength(value) == 0;
-            } else {
-                return value == null || String.valueOf(value).isEmpty();
-            }
+            return isEmpty(value);
+        }
+    }
+
+    static boolean isEmpty(Object value) {
+        if (value instanceof Collection<?>) {
+            return ((Collection<?>) value).size() < 1;
+        } else if (value != null && value.getClass().isArray()) {
+            return Array.getLength(value) == 0;
+        } else {
+            return value == null || String.valueOf(value).isEmpty();
         }
     }
 
@@ -18,9 +18,19 @@ import com.ibatis.sqlmap.client.SqlMapException;
  */
 public class IterateContext implements Iterator<Object> {
 
+    /**
+     * The IN lists longer than this are padded to this size at most, some databases do not accept more items.
+     */
+    public static final int MAX_PADDED_SIZE = 1000;
+
     private Iterator<?> iterator;
     private int index = -1;
 
+    /**
+     * The size of the collection before padding, -1 if not padded.
+     */
+    private int unpaddedSize = -1;
+
     private String property;
     private boolean allowNext = true;
 
@@ -29,6 +39,11 @@ public class IterateContext implements Iterator<Object> {
 
     private IterateContext parent;
 
+    /**
+     * The collection is a list or an array, so the items are also reachable by the indexed properties.
+     */
+    private boolean indexed;
+
     /**
      * This variable is true if some of the sub elements have actually produced content. This is used to test whether to
      * add the open and conjunction text to the generated statement.
@@ -50,14 +65,60 @@ public class IterateContext implements Iterator<Object> {
         this.tag = tag;
         if (collection instanceof Collection<?>) {
             this.iterator = ((Collection<?>) collection).iterator();
+            this.indexed = collection instanceof List;
         } else if (collection instanceof Iterator) {
             this.iterator = ((Iterator<?>) collection);
         } else if (collection.getClass().isArray()) {
             List<?> list = arrayToList(collection);
             this.iterator = list.iterator();
+            this.indexed = true;
+            collection = list;
         } else {
             throw new SqlMapException("ParameterObject or property was not a Collection, Array or Iterator.");
         }
+        if (indexed && tag != null && tag.isInList()) {
+            pad((List<?>) collection);
+        }
+    }
+
+    /**
+     * Get the padded size of an IN list: the next power of two, at most {@link #MAX_PADDED_SIZE} unless the list is
+     * longer.
+     */
+    public static int paddedSize(int size) {
+        if (size <= 1) {
+            return size;
+        }
+        int padded = Integer.highestOneBit(size - 1) << 1;
+        if (padded > MAX_PADDED_SIZE) {
+            padded = Math.max(size, MAX_PADDED_SIZE);
+        }
+        return padded;
+    }
+
+    /**
+     * Repeat the last item up to the padded size, so the IN lists of the sizes in a bucket render the same sql.
+     */
+    private void pad(List<?> list) {
+        int size = list.size();
+        int padded = paddedSize(size);
+        if (padded > size) {
+            List<Object> all = new ArrayList<Object>(padded);
+            all.addAll(list);
+            Object last = list.get(size - 1);
+            while (all.size() < padded) {
+                all.add(last);
+            }
+            this.iterator = all.iterator();
+            this.unpaddedSize = size;
+        }
+    }
+
+    /**
+     * Get the size of the collection before padding, or -1 if it is not padded.
+     */
+    public int getUnpaddedSize() {
+        return unpaddedSize;
     }
 
     @Override
@@ -84,7 +145,8 @@ public class IterateContext implements Iterator<Object> {
     }
 
     public int getIndex() {
-        return index;
+        // the padded items are the last one
+        return unpaddedSize >= 0 && index >= unpaddedSize ? unpaddedSize - 1 : index;
     }
 
     public boolean isLast() {
@@ -255,6 +317,10 @@ public class IterateContext implements Iterator<Object> {
         return ret;
     }
 
+    public boolean isIndexed() {
+        return indexed;
+    }
+
     public IterateContext getParent() {
         return parent;
     }
@@ -50,6 +50,10 @@ public class SqlTag implements SqlChild, DynamicParent {
 
     private boolean postParseRequired = false;
 
+    private int conditionIndex = -1;
+
+    private boolean inList;
+
     private final int attrCode;
 
     public SqlTag(int attrCode) {
@@ -183,6 +187,28 @@ public class SqlTag implements SqlChild, DynamicParent {
         this.postParseRequired = iterateAncestor;
     }
 
+    /**
+     * The index of the condition in the dynamic sql, -1 if the tag is not compiled, see {@link CompiledConditions}.
+     */
+    public int getConditionIndex() {
+        return conditionIndex;
+    }
+
+    public void setConditionIndex(int conditionIndex) {
+        this.conditionIndex = conditionIndex;
+    }
+
+    /**
+     * Whether the iterate renders an IN list of one parameter, which is padded, see {@link IterateContext#paddedSize}.
+     */
+    public boolean isInList() {
+        return inList;
+    }
+
+    public void setInList(boolean inList) {
+        this.inList = inList;
+    }
+
     @Override
     public String toString() {
         return children.toString();
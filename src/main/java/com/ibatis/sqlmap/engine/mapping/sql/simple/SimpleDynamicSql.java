@@ -15,7 +15,14 @@
  */
 package com.ibatis.sqlmap.engine.mapping.sql.simple;
 
-import com.ibatis.common.Objects;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ibatis.cglib.ClassInfo;
+import org.ibatis.cglib.Invoker;
+
 import com.ibatis.common.beans.Probe;
 import com.ibatis.common.beans.ProbeFactory;
 import com.ibatis.sqlmap.client.SqlMapException;
@@ -31,10 +38,107 @@ public class SimpleDynamicSql implements Sql {
 
     private static final char ELEMENT_TOKEN_CHAR = '$';
 
+    static final int MAX_CACHED_SQLS = 64;
+
     private String sqlStatement;
 
     private SqlMapExecutorDelegate delegate;
 
+    private volatile Template template;
+
+    /**
+     * A $substitution$ of the template, the property is read by the getter of the last class or the probe.
+     */
+    static class Element {
+        final String token;
+        final String name;
+        final boolean global;
+        final boolean simple;
+        volatile Object[] getter;
+
+        Element(String token) {
+            this.token = token;
+            this.global = token.startsWith("@");
+            this.name = global ? token.substring(1) : token;
+            this.simple = token.indexOf('.') < 0 && token.indexOf('[') < 0;
+        }
+
+        Object getValue(Object parameterObject) {
+            if (!simple) {
+                return PROBE.getObject(parameterObject, token);
+            } else if (parameterObject instanceof Map<?, ?>) {
+                return ((Map<?, ?>) parameterObject).get(token);
+            }
+            Object[] g = getter;
+            try {
+                if (g == null || g[0] != parameterObject.getClass()) {
+                    ClassInfo classInfo = ClassInfo.getInstance(parameterObject.getClass());
+                    if (!classInfo.hasReadableProperty(token)) {
+                        return PROBE.getObject(parameterObject, token);
+                    }
+                    g = new Object[] { parameterObject.getClass(), classInfo.getGetInvoker(token) };
+                    getter = g;
+                }
+                return ((Invoker) g[1]).invoke(parameterObject);
+            } catch (Throwable t) {
+                // the probe reports the failure
+                return PROBE.getObject(parameterObject, token);
+            }
+        }
+    }
+
+    /**
+     * The statement parsed into the literal texts and the elements, texts[i] is followed by elements[i].
+     */
+    static class Template {
+        final String[] texts;
+        final Element[] elements;
+        final int length;
+        final boolean hasGlobal;
+        /**
+         * The rendered sql and the sql of the error context by the substituted values.
+         */
+        final Map<String, String[]> sqls = new ConcurrentHashMap<String, String[]>();
+
+        Template(String sql) {
+            List<String> texts = new ArrayList<String>();
+            List<Element> elements = new ArrayList<Element>();
+            StringBuilder text = new StringBuilder(sql.length());
+            boolean hasGlobal = false;
+            int length = 0;
+            int endIndex = -1;
+            while (true) {
+                int startIndex = sql.indexOf(ELEMENT_TOKEN_CHAR, endIndex + 1);
+                if (startIndex < 0) {
+                    text.append(sql, endIndex + 1, sql.length());
+                    break;
+                }
+                text.append(sql, endIndex + 1, startIndex);
+                endIndex = sql.indexOf(ELEMENT_TOKEN_CHAR, startIndex + 1);
+                if (endIndex < 0) {
+                    throw new SqlMapException("Unterminated dynamic element in near '" + sql.substring(startIndex) + "'");
+                }
+                String token = sql.substring(startIndex + 1, endIndex);
+                if (token.isEmpty()) { // $$ -> $
+                    text.append(ELEMENT_TOKEN_CHAR);
+                } else {
+                    Element e = new Element(token);
+                    hasGlobal |= e.global;
+                    length += text.length();
+                    texts.add(text.toString());
+                    elements.add(e);
+                    text.setLength(0);
+                }
+            }
+            length += text.length();
+            texts.add(text.toString());
+            this.texts = texts.toArray(new String[texts.size()]);
+            this.elements = elements.toArray(new Element[elements.size()]);
+            this.length = length;
+            this.hasGlobal = hasGlobal;
+        }
+    }
+
     public SimpleDynamicSql(SqlMapExecutorDelegate delegate, String sqlStatement) {
         this.delegate = delegate;
         this.sqlStatement = sqlStatement;
@@ -44,7 +148,7 @@ public class SimpleDynamicSql implements Sql {
     public String getSql(StatementScope statementScope, Object parameterObject) {
         String sql = statementScope.getSimpleDynamicSql();
         if (sql == null) {
-            sql = processDynamicElements(statementScope, sqlStatement, parameterObject);
+            sql = processDynamicElements(statementScope, parameterObject);
             statementScope.setSimpleDynamicSql(sql);
         }
         return sql;
@@ -88,67 +192,71 @@ public class SimpleDynamicSql implements Sql {
         return false;
     }
 
-    private String processDynamicElements(StatementScope statementScope, String sql, Object parameterObject) {
-        StringBuilder buf = new StringBuilder(sql);
-        StringBuilder sqlPeer = new StringBuilder();
+    Template getTemplate() {
+        Template t = template;
+        if (t == null) {
+            t = new Template(sqlStatement);
+            template = t;
+        }
+        return t;
+    }
 
-        {
-            // ## sunsong
-            int startIndex = 0;
-            int endIndex = -1;
-            while (startIndex >= 0 && startIndex < buf.length()) {
-                startIndex = Objects.indexOf(buf, ELEMENT_TOKEN_CHAR, endIndex + 1);
-                if (startIndex > endIndex + 1) {
-                    sqlPeer.append(buf.substring(endIndex + 1, startIndex));
-                }
-                if (startIndex >= 0) {
-                    endIndex = Objects.indexOf(buf, ELEMENT_TOKEN_CHAR, startIndex + 1);
-                    if (endIndex < 0) {
-                        throw new SqlMapException(
-                            "Unterminated dynamic element in near '" + buf.substring(startIndex) + "'");
-                    }
+    /**
+     * Substitute the elements of the template in one pass, the sql of the same values is rendered once and shared so
+     * that the statement caches of the driver and the pool see the same sql.
+     */
+    private String processDynamicElements(StatementScope statementScope, Object parameterObject) {
+        Template t = getTemplate();
+        Element[] elements = t.elements;
+        String[] values = new String[elements.length];
+        boolean isSimpleValue = parameterObject != null
+            && delegate.getTypeHandlerFactory().hasTypeHandler(parameterObject.getClass());
+        int length = t.length;
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < elements.length; i++) {
+            Element e = elements[i];
+            Object value = null;
+            if (e.global) {
+                // $@propertyName$ -> propertyValue
+                value = delegate.getGlobalProperty(e.name);
+            } else if (parameterObject != null) {
+                // $propertyName$ -> propertyValue
+                value = isSimpleValue ? parameterObject : e.getValue(parameterObject);
+            }
+            String str = value != null ? String.valueOf(value) : "";
+            values[i] = str;
+            length += str.length();
+            key.append(str.length()).append(':').append(str);
+        }
 
-                    String token = buf.substring(startIndex + 1, endIndex);
-
-                    Object value = null;
-                    if (token.isEmpty()) { // $$ -> $
-                        buf.deleteCharAt(endIndex);
-                        sqlPeer.append(ELEMENT_TOKEN_CHAR);
-                        endIndex--;
-                    } else {
-                        if (token.startsWith("@")) {
-                            // $@propertyName$ -> propertyValue
-                            value = delegate.getGlobalProperty(token.substring(1));
-                        } else if (parameterObject != null) {
-                            // $propertyName$ -> propertyValue
-                            if (delegate.getTypeHandlerFactory().hasTypeHandler(parameterObject.getClass())) {
-                                value = parameterObject;
-                            } else {
-                                value = PROBE.getObject(parameterObject, token);
-                            }
-                        }
-
-                        String str = value != null ? String.valueOf(value) : "";
-                        buf.replace(startIndex, endIndex + 1, str);
-                        endIndex = startIndex + str.length() - 1;
-
-                        if (token.startsWith("@")) {
-                            sqlPeer.append(token);
-                        } else {
-                            sqlPeer.append(str);
-                        }
-                    }
-                } else {
-                    sqlPeer.append(buf.substring(endIndex + 1));
+        String[] sqls = t.sqls.get(key.toString());
+        if (sqls == null) {
+            StringBuilder buf = new StringBuilder(length);
+            StringBuilder sqlPeer = t.hasGlobal ? new StringBuilder(length) : null;
+            String[] texts = t.texts;
+            for (int i = 0; i < elements.length; i++) {
+                buf.append(texts[i]).append(values[i]);
+                if (sqlPeer != null) {
+                    sqlPeer.append(texts[i]).append(elements[i].global ? elements[i].token : values[i]);
                 }
             }
+            buf.append(texts[elements.length]);
+            String sql = buf.toString();
+            String peer = sql;
+            if (sqlPeer != null) {
+                peer = sqlPeer.append(texts[elements.length]).toString();
+            }
+            sqls = new String[] { sql, peer };
+            if (t.sqls.size() < MAX_CACHED_SQLS) {
+                t.sqls.put(key.toString(), sqls);
+            }
         }
 
         if (statementScope != null && statementScope.getErrorContext() != null) {
-            statementScope.getErrorContext().setSql(sqlPeer.toString());
+            statementScope.getErrorContext().setSql(sqls[1]);
         }
 
-        return buf.toString();
+        return sqls[0];
     }
 
     @Override
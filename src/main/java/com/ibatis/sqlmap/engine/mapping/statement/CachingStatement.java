@@ -15,33 +15,54 @@
  */
 package com.ibatis.sqlmap.engine.mapping.statement;
 
+import org.ibatis.persist.impl.ExecuteContext;
+
 import com.ibatis.common.Objects;
 import com.ibatis.common.Page;
+import com.ibatis.sqlmap.client.SqlMapClient;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.CacheSnapshot;
 import com.ibatis.sqlmap.engine.cache.FlushListener;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapSessionImpl;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 import com.ibatis.sqlmap.engine.mapping.sql.Sql;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
 
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class CachingStatement extends MappedStatement {
 
     private MappedStatement statement;
     private CacheModel cacheModel;
+    // the millis the objects of this statement live, 0 is the flush interval
+    private long cacheTtl;
 
     public CachingStatement(MappedStatement statement, CacheModel cacheModel) {
         this.statement = statement;
         this.cacheModel = cacheModel;
     }
 
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(long cacheTtl) {
+        this.cacheTtl = Math.max(0, cacheTtl);
+    }
+
     @Override
     public String getId() {
         return statement.getId();
@@ -80,17 +101,23 @@ public class CachingStatement extends MappedStatement {
     }
 
     @Override
-    public <T> T executeQueryForObject(StatementScope statementScope, Transaction trans, Object parameterObject,
+    public <T> T executeQueryForObject(StatementScope statementScope, Transaction trans, final Object parameterObject,
         Object resultObject) throws SQLException {
-        CacheKey cacheKey = getCacheKey(statementScope, parameterObject);
-        cacheKey.update("executeQueryForObject");
-        Object old = cacheModel.getObject(cacheKey);
+        CacheKey cacheKey = getObjectCacheKey(statementScope, parameterObject);
+        Object old = cacheModel.getObject(cacheKey, loader(statementScope, parameterObject, new Query() {
+            @Override
+            public Object execute(StatementScope scope, Transaction tx, Object param) throws SQLException {
+                return statement.executeQueryForObject(scope, tx, param, null);
+            }
+        }), cacheTtl);
         if (old == CacheModel.NULL_OBJECT) {
             // This was cached, but null
             return null;
         } else if (old == null) {
+            // the object loaded before a flush is dropped
+            long version = cacheModel.getVersion();
             T t = statement.<T>executeQueryForObject(statementScope, trans, parameterObject, resultObject);
-            cacheModel.putObject(cacheKey, t);
+            cacheModel.putObject(cacheKey, t, version, cacheTtl);
             return t;
         }
         return Objects.uncheckedCast(old);
@@ -98,13 +125,20 @@ public class CachingStatement extends MappedStatement {
 
     @Override
     public <T> int executeQueryForPage(StatementScope statementScope, List<T> page, Transaction trans,
-        Object paramObject, int skipResults, int maxResults) throws SQLException {
+        final Object paramObject, final int skipResults, final int maxResults) throws SQLException {
         CacheKey cacheKey = getCacheKey(statementScope, paramObject);
         cacheKey.update("executeQueryForPage");
         cacheKey.update(page != null);
         cacheKey.update(skipResults);
         cacheKey.update(maxResults);
-        Object old = cacheModel.getObject(cacheKey);
+        Object old = cacheModel.getObject(cacheKey, loader(statementScope, paramObject, new Query() {
+            @Override
+            public Object execute(StatementScope scope, Transaction tx, Object param) throws SQLException {
+                ArrayList<T> p = new ArrayList<T>();
+                int t = statement.executeQueryForPage(scope, p, tx, param, skipResults, maxResults);
+                return new Page<T>(t, p);
+            }
+        }), cacheTtl);
         Page<T> pageObject = null;
         if (old instanceof Page<?>) {
             pageObject = Objects.uncheckedCast(old);
@@ -113,30 +147,37 @@ public class CachingStatement extends MappedStatement {
             }
             return pageObject.total;
         } else {
+            long version = cacheModel.getVersion();
             ArrayList<T> p = new ArrayList<T>();
             int t = statement.executeQueryForPage(statementScope, p, trans, paramObject, skipResults, maxResults);
             if (page != null) {
                 page.addAll(p);
             }
-            cacheModel.putObject(cacheKey, new Page<T>(t, p));
+            cacheModel.putObject(cacheKey, new Page<T>(t, p), version, cacheTtl);
             return t;
         }
     }
 
     @Override
-    public <T> List<T> executeQueryForList(StatementScope statementScope, Transaction trans, Object parameterObject,
-        int skipResults, int maxResults) throws SQLException {
+    public <T> List<T> executeQueryForList(StatementScope statementScope, Transaction trans,
+        final Object parameterObject, final int skipResults, final int maxResults) throws SQLException {
         CacheKey cacheKey = getCacheKey(statementScope, parameterObject);
         cacheKey.update("executeQueryForList");
         cacheKey.update(skipResults);
         cacheKey.update(maxResults);
-        Object old = cacheModel.getObject(cacheKey);
+        Object old = cacheModel.getObject(cacheKey, loader(statementScope, parameterObject, new Query() {
+            @Override
+            public Object execute(StatementScope scope, Transaction tx, Object param) throws SQLException {
+                return statement.executeQueryForList(scope, tx, param, skipResults, maxResults);
+            }
+        }), cacheTtl);
         if (old == CacheModel.NULL_OBJECT) {
             // The cached object was null
             return null;
         } else if (old == null) {
+            long version = cacheModel.getVersion();
             List<T> list = statement.executeQueryForList(statementScope, trans, parameterObject, skipResults, maxResults);
-            cacheModel.putObject(cacheKey, list);
+            cacheModel.putObject(cacheKey, list, version, cacheTtl);
             return list;
         }
         return Objects.<List<T>>uncheckedCast(old);
@@ -159,19 +200,109 @@ public class CachingStatement extends MappedStatement {
         if (old == CacheModel.NULL_OBJECT) {
             mapHandler.setMap(null);
         } else if (old == null) {
+            long version = cacheModel.getVersion();
             statement.executeQueryWithMapHandler(statementScope, trans, parameterObject, skipResults, maxResults, mapHandler);
-            cacheModel.putObject(cacheKey, mapHandler.getMap());
+            cacheModel.putObject(cacheKey, mapHandler.getMap(), version, cacheTtl);
         } else {
             mapHandler.setMap(Objects.<Map<K, V>>uncheckedCast(old));
         }
     }
 
+    /**
+     * The query of the loader, run by the copy of the parameter.
+     */
+    private interface Query {
+        Object execute(StatementScope scope, Transaction tx, Object param) throws SQLException;
+    }
+
+    /**
+     * Get the loader of the cache refreshed ahead, it runs the query in a session of its own.
+     */
+    private Callable<Object> loader(StatementScope statementScope, Object parameterObject, Query query) {
+        if (!cacheModel.isRefreshAhead()) {
+            return null;
+        }
+        SqlMapClient client = statementScope.getSession().getSqlMapClient();
+        if (!(client instanceof SqlMapClientImpl)) {
+            return null;
+        }
+        return new Loader((SqlMapClientImpl) client, parameterObject, query);
+    }
+
+    /**
+     * The parameter of the caller may be changed or reused after the reload is requested, so the reload runs by a
+     * copy of it taken at the request, and the object is reloaded for the key it is cached by.
+     */
+    private class Loader implements Callable<Object>, CacheModel.Snapshot {
+        private final SqlMapClientImpl client;
+        private final Object param;
+        private final Query query;
+
+        Loader(SqlMapClientImpl client, Object param, Query query) {
+            this.client = client;
+            this.param = param;
+            this.query = query;
+        }
+
+        @Override
+        public Callable<?> snapshot() throws Exception {
+            if (isImmutable(param)) {
+                return this;
+            }
+            if (!(param instanceof Serializable)) {
+                // can not be copied, the object expires and is loaded by the next miss
+                return null;
+            }
+            try {
+                return new Loader(client, CacheSnapshot.copy(param), query);
+            } catch (NotSerializableException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public Object call() throws Exception {
+            SqlMapSessionImpl session = (SqlMapSessionImpl) client.openSession();
+            try {
+                return client.getDelegate().executeCallback(session.getSessionScope(), new ExecuteContext<Object>() {
+                    @Override
+                    public Object execute(StatementScope scope, Transaction tx) throws SQLException {
+                        statement.initRequest(scope);
+                        return query.execute(scope, tx, param);
+                    }
+                });
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    static boolean isImmutable(Object o) {
+        return o == null || o instanceof String || o instanceof Integer || o instanceof Long || o instanceof Short
+            || o instanceof Byte || o instanceof Double || o instanceof Float || o instanceof Boolean
+            || o instanceof Character || o instanceof BigDecimal || o instanceof BigInteger || o instanceof Enum<?>
+            || o instanceof Class<?>;
+    }
+
     @Override
     public CacheKey getCacheKey(StatementScope statementScope, Object parameterObject) {
         CacheKey key = statement.getCacheKey(statementScope, parameterObject);
         return key;
     }
 
+    /**
+     * Get the cache key of the object cached by {@link #executeQueryForObject}.
+     */
+    public CacheKey getObjectCacheKey(StatementScope statementScope, Object parameterObject) {
+        CacheKey cacheKey = getCacheKey(statementScope, parameterObject);
+        cacheKey.update("executeQueryForObject");
+        return cacheKey;
+    }
+
+    public CacheModel getCacheModel() {
+        return cacheModel;
+    }
+
     @Override
     public int getBaseCacheKey() {
         return statement.getBaseCacheKey();
@@ -212,6 +343,26 @@ public class CachingStatement extends MappedStatement {
         return statement.getTimeout();
     }
 
+    @Override
+    public Boolean getReplica() {
+        return statement.getReplica();
+    }
+
+    @Override
+    public String getShardKey() {
+        return statement.getShardKey();
+    }
+
+    @Override
+    public boolean isShardBroadcast() {
+        return statement.isShardBroadcast();
+    }
+
+    @Override
+    public String getShardOrder() {
+        return statement.getShardOrder();
+    }
+
     @Override
     public boolean hasMultipleResultMaps() {
         return statement.hasMultipleResultMaps();
@@ -72,8 +72,29 @@ public class InsertStatement extends MappedStatement {
         this.selectKeyStatement = selectKeyStatement;
     }
 
+    @Override
+    public int executeUpdate(StatementScope statementScope, Transaction trans, Object parameterObject)
+        throws SQLException {
+        return super.executeUpdate(statementScope, insertShard(statementScope, trans, parameterObject),
+            parameterObject);
+    }
+
+    /**
+     * Get the transaction of the shard to insert into, the row without a value of the shard key is not inserted into
+     * all the shards.
+     */
+    private Transaction insertShard(StatementScope statementScope, Transaction trans, Object parameterObject)
+        throws SQLException {
+        Transaction shard = shardTransaction(trans, parameterObject);
+        if (shard == null) {
+            throw shardKeyMissing(statementScope);
+        }
+        return shard;
+    }
+
     public Object executeInsert(StatementScope statementScope, Transaction trans, Object parameterObject)
         throws SQLException {
+        trans = insertShard(statementScope, trans, parameterObject);
         ErrorContext errorContext = statementScope.getErrorContext();
         errorContext.setActivity("preparing the mapped statement for execution");
         errorContext.setObjectId(this.getId());
@@ -0,0 +1,42 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+/**
+ * LazyStatement is the id of a statement registered at startup in the lazy mode, the sql, the inline parameter map
+ * and the result maps of it are compiled on its first use.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate#compileStatement(String)
+ */
+public abstract class LazyStatement {
+    private final String id;
+    private final String resource;
+
+    protected LazyStatement(String id, String resource) {
+        this.id = id;
+        this.resource = resource;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Compile and register the mapped statement, called once under the lock of the parser state.
+     */
+    public abstract void compile();
+
+    @Override
+    public String toString() {
+        return "LazyStatement " + id + " in " + resource;
+    }
+}
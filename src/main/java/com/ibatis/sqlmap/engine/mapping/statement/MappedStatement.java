@@ -19,9 +19,11 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ibatis.client.TooManyResultException;
 
@@ -29,6 +31,7 @@ import com.ibatis.common.jdbc.exception.NestedSQLException;
 import com.ibatis.sqlmap.client.event.PageHandler;
 import com.ibatis.sqlmap.client.event.RowHandler;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
+import com.ibatis.sqlmap.engine.cache.FingerprintKey;
 import com.ibatis.sqlmap.engine.cache.FlushListener;
 import com.ibatis.sqlmap.engine.execution.Batch;
 import com.ibatis.sqlmap.engine.execution.ExecuteNotifier;
@@ -42,8 +45,11 @@ import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
 import com.ibatis.sqlmap.engine.transaction.TransactionException;
+import com.ibatis.sqlmap.engine.transaction.shard.ShardTransaction;
 
 public class MappedStatement implements ExecuteNotifier {
+    static final int MAX_SQL_KEYS = 64;
+
     private String id;
     private Integer resultSetType;
     private Integer fetchSize;
@@ -52,8 +58,13 @@ public class MappedStatement implements ExecuteNotifier {
     private Class<?> parameterClass;
     private Sql sql;
     private int baseCacheKey;
+    private final Map<String, FingerprintKey> sqlKeys = new ConcurrentHashMap<String, FingerprintKey>();
     private SqlMapExecutorDelegate delegate;
     private Integer timeout;
+    private Boolean replica;
+    private String shardKey;
+    private boolean shardBroadcast;
+    private ShardRouter.RowComparator shardOrder;
     private ResultMap[] additionalResultMaps = new ResultMap[0];
     private List<FlushListener> executeListeners = new ArrayList<FlushListener>();
     private Map<Class<?>, FlushListener> flushEntitys = new HashMap<Class<?>, FlushListener>();
@@ -75,6 +86,15 @@ public class MappedStatement implements ExecuteNotifier {
 
         statementScope.getSession().setCommitRequired(true);
 
+        Transaction shard = shardTransaction(trans, parameterObject);
+        if (shard == null) {
+            if (!isShardBroadcast()) {
+                throw shardKeyMissing(statementScope);
+            }
+            return ShardRouter.update(this, statementScope, (ShardTransaction) trans, parameterObject);
+        }
+        trans = shard;
+
         try {
             parameterObject = validateParameter(parameterObject);
 
@@ -125,10 +145,17 @@ public class MappedStatement implements ExecuteNotifier {
         try {
             T object = null;
 
-            DefaultRowHandler rowHandler = new DefaultRowHandler();
-            executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, resultObject, rowHandler,
-                SqlExecutor.ZERO, SqlExecutor.TWO);
-            List<T> list = rowHandler.getList();
+            List<T> list;
+            Transaction shard = shardTransaction(trans, parameterObject);
+            if (shard == null) {
+                list = ShardRouter.queryForList(this, statementScope, (ShardTransaction) trans, parameterObject,
+                    SqlExecutor.ZERO, SqlExecutor.TWO);
+            } else {
+                DefaultRowHandler rowHandler = new DefaultRowHandler();
+                executeQueryWithCallback(statementScope, shard.getConnection(), parameterObject, resultObject,
+                    rowHandler, SqlExecutor.ZERO, SqlExecutor.TWO);
+                list = rowHandler.getList();
+            }
 
             if (list.size() > 1) {
                 ErrorContext errorContext = statementScope.getErrorContext();
@@ -149,8 +176,13 @@ public class MappedStatement implements ExecuteNotifier {
     public <T> List<T> executeQueryForList(StatementScope statementScope, Transaction trans, Object parameterObject,
         int skipResults, int maxResults) throws SQLException {
         try {
+            Transaction shard = shardTransaction(trans, parameterObject);
+            if (shard == null) {
+                return ShardRouter.queryForList(this, statementScope, (ShardTransaction) trans, parameterObject,
+                    skipResults, maxResults);
+            }
             DefaultRowHandler rowHandler = new DefaultRowHandler();
-            executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, null, rowHandler,
+            executeQueryWithCallback(statementScope, shard.getConnection(), parameterObject, null, rowHandler,
                 skipResults, maxResults);
             return rowHandler.getList();
         } catch (TransactionException e) {
@@ -161,7 +193,13 @@ public class MappedStatement implements ExecuteNotifier {
     public void executeQueryWithRowHandler(StatementScope statementScope, Transaction trans, Object parameterObject,
         RowHandler rowHandler) throws SQLException {
         try {
-            executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, null, rowHandler,
+            Transaction shard = shardTransaction(trans, parameterObject);
+            if (shard == null) {
+                ShardRouter.queryWithRowHandler(this, statementScope, (ShardTransaction) trans, parameterObject,
+                    rowHandler);
+                return;
+            }
+            executeQueryWithCallback(statementScope, shard.getConnection(), parameterObject, null, rowHandler,
                 SqlExecutor.ZERO, SqlExecutor.NO_LIMIT);
         } catch (TransactionException e) {
             throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
@@ -222,6 +260,34 @@ public class MappedStatement implements ExecuteNotifier {
         }
     }
 
+    /**
+     * Get the transaction of the shard of the parameter, or the transaction itself if the statement is not sharded or
+     * the transaction manager is not sharding.
+     *
+     * @return null if the parameter has no value of the shard key, the statement runs on all the shards
+     */
+    protected Transaction shardTransaction(Transaction trans, Object parameterObject) {
+        String key = getShardKey();
+        if (key == null || !(trans instanceof ShardTransaction)) {
+            return trans;
+        }
+        ShardTransaction st = (ShardTransaction) trans;
+        int shard = ShardRouter.shardOf(key, st.getShardCount(), parameterObject);
+        return shard < 0 ? null : st.getShard(shard);
+    }
+
+    /**
+     * Get the error of the write without a value of the shard key, it does not run on all the shards unless the
+     * statement broadcasts.
+     */
+    protected SQLException shardKeyMissing(StatementScope statementScope) {
+        ErrorContext errorContext = statementScope.getErrorContext();
+        errorContext.setObjectId(this.getId());
+        errorContext.setResource(this.getResource());
+        errorContext.setMoreInfo("Check the shard key '" + getShardKey() + "' of the parameter.");
+        return new NestedSQLException(errorContext.toString());
+    }
+
     protected void postProcessParameterObject(StatementScope statementScope, Object parameterObject,
         Object[] parameters) {
     }
@@ -335,18 +401,42 @@ public class MappedStatement implements ExecuteNotifier {
         Sql sql = statementScope.getSql();
         ParameterMap pmap = sql.getParameterMap(statementScope, parameterObject);
         CacheKey cacheKey = pmap.getCacheKey(statementScope, parameterObject);
-        cacheKey.update(id);
-        cacheKey.update(baseCacheKey);
-        cacheKey.update(sql.getSql(statementScope, parameterObject)); // Fixes bug 953001
+        String sqlString = sql.getSql(statementScope, parameterObject); // Fixes bug 953001
+        if (cacheKey instanceof FingerprintKey) {
+            FingerprintKey key = (FingerprintKey) cacheKey;
+            key.update(getSqlKey(sqlString, key.isVerify()));
+        } else {
+            cacheKey.update(id);
+            cacheKey.update(baseCacheKey);
+            cacheKey.update(sqlString);
+        }
         return cacheKey;
     }
 
+    /**
+     * Get the precomputed fingerprint of the statement and the sql, the dynamic sql may have more than one.
+     */
+    FingerprintKey getSqlKey(String sqlString, boolean verify) {
+        FingerprintKey key = sqlKeys.get(sqlString);
+        if (key == null || key.isVerify() != verify) {
+            key = new FingerprintKey(verify);
+            key.update(id);
+            key.update(baseCacheKey);
+            key.update(sqlString);
+            if (sqlKeys.size() < MAX_SQL_KEYS) {
+                sqlKeys.put(sqlString, key);
+            }
+        }
+        return key;
+    }
+
     public int getBaseCacheKey() {
         return baseCacheKey;
     }
 
     public void setBaseCacheKey(int base) {
         this.baseCacheKey = base;
+        sqlKeys.clear();
     }
 
     public synchronized void addExecuteListener(FlushListener listener) {
@@ -430,6 +520,58 @@ public class MappedStatement implements ExecuteNotifier {
         this.timeout = timeout;
     }
 
+    /**
+     * Get the route of the statement by the routing transaction manager: true reads the replica, false the primary,
+     * and null is the default, the selects read the replica.
+     */
+    public Boolean getReplica() {
+        return replica;
+    }
+
+    public void setReplica(Boolean replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Get the property of the parameter holding the shard key by the sharding transaction manager, or null if the
+     * statement is not sharded.
+     */
+    public String getShardKey() {
+        return shardKey;
+    }
+
+    public void setShardKey(String shardKey) {
+        this.shardKey = shardKey;
+    }
+
+    /**
+     * The write without a value of the shard key runs on all the shards one after another, not atomically, instead of
+     * failing.
+     */
+    public boolean isShardBroadcast() {
+        return shardBroadcast;
+    }
+
+    public void setShardBroadcast(boolean shardBroadcast) {
+        this.shardBroadcast = shardBroadcast;
+    }
+
+    /**
+     * Get the properties the rows of the shards are merged by, e.g. <code>lastName, id desc</code>.
+     */
+    public String getShardOrder() {
+        return shardOrder == null ? null : shardOrder.toString();
+    }
+
+    public void setShardOrder(String shardOrder) {
+        this.shardOrder = shardOrder == null || shardOrder.trim().length() == 0 ? null
+                : new ShardRouter.RowComparator(shardOrder);
+    }
+
+    Comparator<Object> getShardComparator() {
+        return shardOrder;
+    }
+
     public void addResultMap(ResultMap resultMap) {
         ResultMap[] resultMaps = Arrays.copyOf(additionalResultMaps, additionalResultMaps.length + 1);
         resultMaps[additionalResultMaps.length] = resultMap;
@@ -447,8 +589,13 @@ public class MappedStatement implements ExecuteNotifier {
     public <T> int executeQueryForPage(StatementScope statementScope, List<T> page, Transaction trans,
         Object paramObject, int skipResults, int maxResults) throws SQLException {
         try {
+            Transaction shard = shardTransaction(trans, paramObject);
+            if (shard == null) {
+                return ShardRouter.queryForPage(this, statementScope, page, (ShardTransaction) trans, paramObject,
+                    skipResults, maxResults);
+            }
             PageHandler rowHandler = new PageHandler(page);
-            executeQueryWithCallback(statementScope, trans.getConnection(), paramObject, null, rowHandler, skipResults,
+            executeQueryWithCallback(statementScope, shard.getConnection(), paramObject, null, rowHandler, skipResults,
                 maxResults);
             return rowHandler.getTotal();
         } catch (TransactionException e) {
@@ -460,7 +607,13 @@ public class MappedStatement implements ExecuteNotifier {
         Object parameterObject, int skipResults, int maxResults, MappedRowHandler<K, V> mapHandler)
         throws SQLException {
         try {
-            executeQueryWithCallback(statementScope, trans.getConnection(), parameterObject, null, mapHandler,
+            Transaction shard = shardTransaction(trans, parameterObject);
+            if (shard == null) {
+                ShardRouter.queryWithMapHandler(this, statementScope, (ShardTransaction) trans, parameterObject,
+                    skipResults, maxResults, mapHandler);
+                return;
+            }
+            executeQueryWithCallback(statementScope, shard.getConnection(), parameterObject, null, mapHandler,
                 skipResults, maxResults);
         } catch (TransactionException e) {
             throw new NestedSQLException("Error getting Connection from Transaction.  Cause: " + e, e);
@@ -0,0 +1,369 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.ibatis.common.Objects;
+import com.ibatis.common.beans.Probe;
+import com.ibatis.common.beans.ProbeFactory;
+import com.ibatis.common.jdbc.exception.NestedSQLException;
+import com.ibatis.sqlmap.client.event.RowHandler;
+import com.ibatis.sqlmap.engine.execution.SqlExecutor;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.shard.ShardTransaction;
+
+/**
+ * ShardRouter finds the shard of the parameter of a sharded statement, and runs the statement on all the shards when
+ * the parameter has no value of the shard key.
+ * <p>
+ * The lists and the pages are queried on all the shards in parallel, each shard reads the rows up to the end of the
+ * page, and the rows are merged by the <code>shardOrder</code> of the statement, or appended in the order of the shards
+ * without it, before the page is cut. The row handlers and the map handlers run on the shards one after another, and
+ * so do the updates of the statements declaring <code>shardBroadcast="true"</code>, the other writes without a key
+ * fail.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see ShardTransaction
+ */
+final class ShardRouter {
+    private static final Probe PROBE = ProbeFactory.getProbe();
+
+    private ShardRouter() {
+    }
+
+    /**
+     * Get the index of the shard of the parameter: the integral key is taken modulo the count of the shards, other keys
+     * by their hash code.
+     *
+     * @return -1 if the parameter has no value of the shard key
+     */
+    static int shardOf(String shardKey, int count, Object param) {
+        Object value = valueOf(param, shardKey);
+        if (value == null) {
+            return -1;
+        }
+        long hash;
+        if (value instanceof Number && !(value instanceof Double || value instanceof Float)) {
+            hash = ((Number) value).longValue();
+        } else {
+            hash = value.hashCode();
+        }
+        return (int) (((hash % count) + count) % count);
+    }
+
+    private static Object valueOf(Object object, String property) {
+        if (object == null) {
+            return null;
+        }
+        if (object instanceof Number || object instanceof String || object instanceof Date
+            || object instanceof Character) {
+            return object;
+        }
+        return PROBE.hasReadableProperty(object, property) ? PROBE.getObject(object, property) : null;
+    }
+
+    static int update(MappedStatement ms, StatementScope scope, ShardTransaction trans, Object param)
+        throws SQLException {
+        int rows = 0;
+        for (int i = 0; i < trans.getShardCount(); i++) {
+            rows += ms.executeUpdate(newScope(ms, scope.getSession()), trans.getShard(i), param);
+        }
+        return rows;
+    }
+
+    static <T> List<T> queryForList(MappedStatement ms, StatementScope scope, ShardTransaction trans, Object param,
+        int skipResults, int maxResults) throws SQLException {
+        List<Part> parts = fanOut(ms, scope, trans, param, limitOf(skipResults, maxResults), false);
+        List<T> list = new ArrayList<T>();
+        merge(parts, ms.getShardComparator(), skipResults, maxResults, list);
+        return list;
+    }
+
+    static <T> int queryForPage(MappedStatement ms, StatementScope scope, List<T> page, ShardTransaction trans,
+        Object param, int skipResults, int maxResults) throws SQLException {
+        List<Part> parts = fanOut(ms, scope, trans, param, limitOf(skipResults, maxResults), true);
+        int total = 0;
+        for (Part part : parts) {
+            total += part.total;
+        }
+        if (page != null) {
+            merge(parts, ms.getShardComparator(), skipResults, maxResults, page);
+        }
+        return total;
+    }
+
+    static void queryWithRowHandler(MappedStatement ms, StatementScope scope, ShardTransaction trans, Object param,
+        RowHandler rowHandler) throws SQLException {
+        for (int i = 0; i < trans.getShardCount(); i++) {
+            ms.executeQueryWithRowHandler(newScope(ms, scope.getSession()), trans.getShard(i), param, rowHandler);
+        }
+    }
+
+    /**
+     * The skip and the max results are applied to each shard.
+     */
+    static <K, V> void queryWithMapHandler(MappedStatement ms, StatementScope scope, ShardTransaction trans,
+        Object param, int skipResults, int maxResults, MappedRowHandler<K, V> mapHandler) throws SQLException {
+        for (int i = 0; i < trans.getShardCount(); i++) {
+            ms.executeQueryWithMapHandler(newScope(ms, scope.getSession()), trans.getShard(i), param, skipResults,
+                maxResults, mapHandler);
+        }
+    }
+
+    private static StatementScope newScope(MappedStatement ms, SessionScope session) {
+        StatementScope scope = new StatementScope(session);
+        ms.initRequest(scope);
+        return scope;
+    }
+
+    private static int limitOf(int skipResults, int maxResults) {
+        if (maxResults < 0) {
+            return SqlExecutor.NO_LIMIT;
+        }
+        long limit = (long) Math.max(0, skipResults) + maxResults;
+        return limit > Integer.MAX_VALUE ? SqlExecutor.NO_LIMIT : (int) limit;
+    }
+
+    /**
+     * The rows and the total of the query on a shard.
+     */
+    private static final class Part {
+        final int shard;
+        final List<Object> rows;
+        final int total;
+
+        Part(int shard, List<Object> rows, int total) {
+            this.shard = shard;
+            this.rows = rows;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Query the first rows of all the shards in parallel. Each shard has a session of its own, so the shards do not
+     * share the prepared statements of the session.
+     */
+    private static List<Part> fanOut(final MappedStatement ms, StatementScope scope, ShardTransaction trans,
+        final Object param, final int limit, final boolean paged) throws SQLException {
+        final SessionScope parent = scope.getSession();
+        int count = trans.getShardCount();
+        List<Callable<Part>> tasks = new ArrayList<Callable<Part>>(count);
+        for (int i = 0; i < count; i++) {
+            final int shard = i;
+            final Transaction tx = trans.getShard(i);
+            tasks.add(new Callable<Part>() {
+                @Override
+                public Part call() throws Exception {
+                    SessionScope session = new SessionScope();
+                    session.setSqlMapClient(parent.getSqlMapClient());
+                    session.setSqlMapExecutor(parent.getSqlMapExecutor());
+                    session.setSqlMapTxMgr(parent.getSqlMapTxMgr());
+                    session.setTransaction(tx);
+                    session.setTransactionState(parent.getTransactionState());
+                    try {
+                        StatementScope s = newScope(ms, session);
+                        if (paged) {
+                            List<Object> rows = new ArrayList<Object>();
+                            int total = ms.executeQueryForPage(s, rows, tx, param, SqlExecutor.ZERO, limit);
+                            return new Part(shard, rows, total);
+                        }
+                        List<Object> rows = ms.executeQueryForList(s, tx, param, SqlExecutor.ZERO, limit);
+                        return new Part(shard, rows, rows.size());
+                    } finally {
+                        session.cleanup();
+                    }
+                }
+            });
+        }
+
+        List<Future<Part>> futures = new ArrayList<Future<Part>>(count);
+        for (int i = 1; i < count; i++) {
+            futures.add(trans.getConfig().getExecutor().submit(tasks.get(i)));
+        }
+        List<Part> parts = new ArrayList<Part>(count);
+        Throwable error = null;
+        // the first shard runs in the calling thread
+        try {
+            if (count > 0) {
+                parts.add(tasks.get(0).call());
+            }
+        } catch (Throwable e) {
+            error = e;
+        }
+        // wait for all the shards, none of them is left running on the transaction
+        boolean interrupted = false;
+        for (Future<Part> f : futures) {
+            while (true) {
+                try {
+                    parts.add(f.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new NestedSQLException("Error querying the shards.  Cause: " + error, error);
+        }
+        return parts;
+    }
+
+    /**
+     * Merge the rows of the shards, sorted by the comparator or appended in the order of the shards, and add the rows
+     * of the page to the list.
+     */
+    private static <T> void merge(List<Part> parts, Comparator<Object> order, int skipResults, int maxResults,
+        List<T> list) {
+        int skip = Math.max(0, skipResults);
+        int limit = limitOf(skipResults, maxResults);
+        List<Object> merged = new ArrayList<Object>();
+        if (order == null) {
+            for (Part part : parts) {
+                merged.addAll(part.rows);
+            }
+        } else {
+            PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(Math.max(1, parts.size()), new CursorComparator(
+                order));
+            for (Part part : parts) {
+                if (!part.rows.isEmpty()) {
+                    queue.add(new Cursor(part));
+                }
+            }
+            while (!queue.isEmpty() && (limit < 0 || merged.size() < limit)) {
+                Cursor c = queue.poll();
+                merged.add(c.row());
+                if (++c.index < c.part.rows.size()) {
+                    queue.add(c);
+                }
+            }
+        }
+        int end = limit < 0 ? merged.size() : Math.min(limit, merged.size());
+        if (skip < end) {
+            List<T> rows = Objects.uncheckedCast(merged.subList(skip, end));
+            list.addAll(rows);
+        }
+    }
+
+    private static final class Cursor {
+        final Part part;
+        int index;
+
+        Cursor(Part part) {
+            this.part = part;
+        }
+
+        Object row() {
+            return part.rows.get(index);
+        }
+    }
+
+    /**
+     * Orders the cursors by their rows, and the equal rows by the index of the shard.
+     */
+    private static final class CursorComparator implements Comparator<Cursor> {
+        private final Comparator<Object> order;
+
+        CursorComparator(Comparator<Object> order) {
+            this.order = order;
+        }
+
+        @Override
+        public int compare(Cursor a, Cursor b) {
+            int c = order.compare(a.row(), b.row());
+            return c != 0 ? c : a.part.shard - b.part.shard;
+        }
+    }
+
+    /**
+     * Compares the rows by the properties of a <code>shardOrder</code>, e.g. <code>lastName, id desc</code>. The null
+     * values are the first, and the values not comparable are compared by their strings.
+     */
+    static final class RowComparator implements Comparator<Object> {
+        private final String[] properties;
+        private final boolean[] descending;
+
+        RowComparator(String shardOrder) {
+            List<String> props = new ArrayList<String>();
+            List<Boolean> desc = new ArrayList<Boolean>();
+            for (String item : shardOrder.split(",")) {
+                String[] words = item.trim().split("\\s+");
+                if (words[0].length() == 0) {
+                    continue;
+                }
+                props.add(words[0]);
+                desc.add(words.length > 1 && "desc".equalsIgnoreCase(words[1]));
+            }
+            properties = props.toArray(new String[props.size()]);
+            descending = new boolean[desc.size()];
+            for (int i = 0; i < descending.length; i++) {
+                descending[i] = desc.get(i);
+            }
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            for (int i = 0; i < properties.length; i++) {
+                int c = compareValues(valueOf(a, properties[i]), valueOf(b, properties[i]));
+                if (c != 0) {
+                    return descending[i] ? -c : c;
+                }
+            }
+            return 0;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static int compareValues(Object x, Object y) {
+            if (x == y) {
+                return 0;
+            } else if (x == null) {
+                return -1;
+            } else if (y == null) {
+                return 1;
+            } else if (x instanceof Comparable && x.getClass().isInstance(y)) {
+                return ((Comparable) x).compareTo(y);
+            }
+            return x.toString().compareTo(y.toString());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < properties.length; i++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                buf.append(properties[i]).append(descending[i] ? " desc" : "");
+            }
+            return buf.toString();
+        }
+    }
+}
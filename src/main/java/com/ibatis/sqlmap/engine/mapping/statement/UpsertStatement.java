@@ -0,0 +1,86 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.mapping.statement;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ibatis.client.Dialect;
+
+import com.ibatis.common.logging.ILog;
+import com.ibatis.common.logging.ILogFactory;
+import com.ibatis.sqlmap.engine.dialect.UpsertDialect;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.scope.ErrorContext;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+/**
+ * UpsertStatement: the sql is written as a plain insert, and rewritten to the insert-or-update form of the dialect
+ * while executing.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see UpsertDialect
+ */
+public class UpsertStatement extends UpdateStatement {
+    static final ILog log = ILogFactory.getLog(UpsertStatement.class);
+    static final int MAX_CACHED_SQLS = 64;
+
+    private final String[] keyColumns;
+    private final Map<String, UpsertDialect> upserts = new ConcurrentHashMap<String, UpsertDialect>();
+
+    public UpsertStatement(String[] keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    public String[] getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * Get the upsert of the insert sql, the dynamic sql may have more than one.
+     */
+    public UpsertDialect getUpsert(String insertSql) {
+        UpsertDialect upsert = upserts.get(insertSql);
+        if (upsert == null) {
+            Dialect d = getDelegate().getState().getDialect();
+            upsert = new UpsertDialect(d, insertSql, keyColumns);
+            if (upserts.size() < MAX_CACHED_SQLS) {
+                upserts.put(insertSql, upsert);
+            }
+        }
+        return upsert;
+    }
+
+    @Override
+    protected int sqlExecuteUpdate(StatementScope statementScope, Connection conn, String sqlString,
+        Object[] parameters) throws SQLException {
+        UpsertDialect upsert = getUpsert(sqlString);
+        int[] indexes = upsert.getParameterIndexes();
+        if (indexes != null) {
+            Object[] args = new Object[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                args[i] = parameters[indexes[i]];
+            }
+            statementScope.setParameterMap(statementScope.getParameterMap().reorder(indexes));
+            parameters = args;
+        }
+        return super.sqlExecuteUpdate(statementScope, conn, upsert.getSql(), parameters);
+    }
+
+    @Override
+    public void checkSql(ErrorContext ec) {
+        Sql sql = getSql();
+        String txt = sql.headText();
+        if (txt != null && !txt.contains("insert") && !txt.contains("INSERT")) {
+            ec.setObjectId(getId());
+            ec.setDebugInfo("Maybe not insert clause.");
+            log.warn(ec.toStr());
+        }
+    }
+}
@@ -17,8 +17,10 @@ package com.ibatis.sqlmap.engine.scope;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.ibatis.sqlmap.client.SqlMapClient;
 import com.ibatis.sqlmap.client.SqlMapException;
@@ -50,6 +52,8 @@ public class SessionScope {
     private Batch batch;
     private boolean commitRequired;
     private Map<Object, PreparedStatement> preparedStatements;
+    // Used by EntityManager, the entities of the transaction by the entity class and the id
+    private Map<Class<?>, Map<Object, Object>> identityMap;
 
     /**
      * Default constructor
@@ -256,6 +260,45 @@ public class SessionScope {
         preparedStatements.clear();
     }
 
+    /**
+     * Get the identity map of the entity class in the transaction of the session.
+     *
+     * @param create
+     *            - create the map if it does not exist
+     * @return - the entities by the id, or null
+     */
+    public Map<Object, Object> getIdentityMap(Class<?> entityClass, boolean create) {
+        if (identityMap == null) {
+            if (!create) {
+                return null;
+            }
+            identityMap = new HashMap<Class<?>, Map<Object, Object>>();
+        }
+        Map<Object, Object> map = identityMap.get(entityClass);
+        if (map == null && create) {
+            map = new HashMap<Object, Object>();
+            identityMap.put(entityClass, map);
+        }
+        return map;
+    }
+
+    /**
+     * Get the entity classes in the identity map of the transaction.
+     */
+    public Set<Class<?>> getIdentityClasses() {
+        if (identityMap == null) {
+            return Collections.emptySet();
+        }
+        return identityMap.keySet();
+    }
+
+    /**
+     * Clear the identity map at the end of the transaction.
+     */
+    public void clearIdentityMap() {
+        identityMap = null;
+    }
+
     /**
      * Saves the current transaction state
      */
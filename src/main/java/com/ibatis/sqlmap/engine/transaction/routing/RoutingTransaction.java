@@ -0,0 +1,133 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.transaction.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransaction;
+
+/**
+ * RoutingTransaction holds a JDBC transaction on the primary and one on a replica, both opened on the first use.
+ * <p>
+ * The statement routed to the replica by {@link #route(boolean)} reads the replica until the transaction writes. Any
+ * other use of the connection, a write or a statement not routed, goes to the primary and keeps the rest of the
+ * transaction on the primary, so the transaction reads its own writes.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class RoutingTransaction implements Transaction {
+    private static final int ROUTE_NONE = 0;
+    private static final int ROUTE_PRIMARY = 1;
+    private static final int ROUTE_REPLICA = 2;
+
+    private final RoutingTransactionConfig config;
+    private final int isolationLevel;
+    private final JdbcTransaction primary;
+    private JdbcTransaction replica;
+    private int route;
+    private boolean written;
+
+    public RoutingTransaction(RoutingTransactionConfig config, int isolationLevel) throws TransactionException {
+        this.config = config;
+        this.isolationLevel = isolationLevel;
+        this.primary = new JdbcTransaction(config.getDataSource(), isolationLevel);
+    }
+
+    /**
+     * Route the reads of the next statement.
+     *
+     * @param toReplica
+     *            read the replica, or read the primary without keeping the transaction on it
+     */
+    public void route(boolean toReplica) {
+        route = toReplica ? ROUTE_REPLICA : ROUTE_PRIMARY;
+    }
+
+    /**
+     * End the route of the statement, the connection is of the primary again.
+     */
+    public void unroute() {
+        route = ROUTE_NONE;
+    }
+
+    /**
+     * The transaction used the primary for a statement not routed, e.g. a write.
+     */
+    public boolean isWritten() {
+        return written;
+    }
+
+    /**
+     * The transaction is reading the replica.
+     */
+    public boolean isReplica() {
+        return route == ROUTE_REPLICA && !written;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException, TransactionException {
+        if (route == ROUTE_REPLICA && !written) {
+            Connection conn = replicaConnection();
+            if (conn != null) {
+                return conn;
+            }
+        } else if (route == ROUTE_NONE) {
+            written = true;
+        }
+        return primary.getConnection();
+    }
+
+    private Connection replicaConnection() throws SQLException, TransactionException {
+        if (replica != null) {
+            return replica.getConnection();
+        }
+        for (RoutingTransactionConfig.Replica r : config.nextReplicas()) {
+            JdbcTransaction tx = new JdbcTransaction(r.getDataSource(), isolationLevel);
+            try {
+                Connection conn = tx.getConnection();
+                r.up();
+                replica = tx;
+                return conn;
+            } catch (SQLException e) {
+                r.down(config.getRecheck(), e);
+            }
+        }
+        // all the replicas are down
+        return null;
+    }
+
+    @Override
+    public void commit() throws SQLException, TransactionException {
+        primary.commit();
+        if (replica != null) {
+            replica.commit();
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException, TransactionException {
+        primary.rollback();
+        if (replica != null) {
+            replica.rollback();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException, TransactionException {
+        try {
+            primary.close();
+        } finally {
+            if (replica != null) {
+                replica.close();
+                replica = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.transaction.routing;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.ibatis.common.jdbc.SimpleDataSource;
+import com.ibatis.common.logging.ILog;
+import com.ibatis.common.logging.ILogFactory;
+import com.ibatis.sqlmap.engine.transaction.BaseTransactionConfig;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+
+/**
+ * RoutingTransactionConfig splits the reads and the writes: the selects go to a pool of replica
+ * {@link SimpleDataSource}s, the writes and everything after a write in the same transaction go to the primary data
+ * source of the transaction manager.
+ * <p>
+ * The replicas are listed by their urls in the property <code>replicas</code>, and the properties prefixed by
+ * <code>replica.</code> configure all of them, e.g. <code>replica.Pool.MaximumActiveConnections</code>. The driver, the
+ * username and the password are the ones of the primary {@link SimpleDataSource} by default. A replica failing to
+ * connect is skipped until it is checked again after <code>replica.recheck</code> millis, and the primary serves the
+ * reads when all the replicas are down.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see RoutingTransaction
+ */
+public class RoutingTransactionConfig extends BaseTransactionConfig {
+    private static final ILog log = ILogFactory.getLog(RoutingTransactionConfig.class);
+
+    public static final String PROP_REPLICAS = "replicas";
+    public static final String PROP_REPLICA_PREFIX = "replica.";
+    public static final String PROP_RECHECK = "replica.recheck";
+
+    static final long DEFAULT_RECHECK = 30000L;
+
+    private List<Replica> replicas = Collections.emptyList();
+    private long recheck = DEFAULT_RECHECK;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * A replica data source and its health.
+     */
+    public static class Replica {
+        private final String url;
+        private final DataSource dataSource;
+        private volatile long downUntil;
+        private volatile long failures;
+
+        Replica(String url, DataSource dataSource) {
+            this.url = url;
+            this.dataSource = dataSource;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        /**
+         * The replica is up, or down and due to be checked again.
+         */
+        public boolean isUp() {
+            return downUntil <= System.currentTimeMillis();
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        void down(long recheck, SQLException e) {
+            failures++;
+            downUntil = System.currentTimeMillis() + recheck;
+            log.warn("Replica " + url + " is down for " + recheck + " ms: " + e);
+        }
+
+        void up() {
+            if (downUntil > 0) {
+                downUntil = 0;
+                log.info("Replica " + url + " is up");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+    @Override
+    public Transaction newTransaction(int transactionIsolation) throws SQLException, TransactionException {
+        return new RoutingTransaction(this, transactionIsolation);
+    }
+
+    @Override
+    public void setProperties(Properties props) throws SQLException, TransactionException {
+        String urls = props.getProperty(PROP_REPLICAS);
+        if (urls == null || urls.trim().length() == 0) {
+            throw new TransactionException("RoutingTransactionConfig requires the property '" + PROP_REPLICAS + "'.");
+        }
+        String r = props.getProperty(PROP_RECHECK);
+        if (r != null) {
+            recheck = Long.parseLong(r.trim());
+        }
+
+        Map<Object, Object> common = new HashMap<Object, Object>();
+        if (dataSource instanceof SimpleDataSource) {
+            SimpleDataSource ds = (SimpleDataSource) dataSource;
+            common.put("JDBC.Driver", ds.getJdbcDriver());
+            common.put("JDBC.Username", ds.getJdbcUsername());
+            common.put("JDBC.Password", ds.getJdbcPassword());
+        }
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(PROP_REPLICA_PREFIX) && !name.equals(PROP_RECHECK)) {
+                common.put(name.substring(PROP_REPLICA_PREFIX.length()), props.getProperty(name));
+            }
+        }
+        List<Replica> list = new ArrayList<Replica>();
+        for (String url : urls.split(",")) {
+            url = url.trim();
+            if (url.length() > 0) {
+                Map<Object, Object> map = new HashMap<Object, Object>(common);
+                map.put("JDBC.ConnectionURL", url);
+                list.add(new Replica(url, new SimpleDataSource(map)));
+            }
+        }
+        replicas = Collections.unmodifiableList(list);
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public long getRecheck() {
+        return recheck;
+    }
+
+    /**
+     * Get the replicas up in the round-robin order, the ones down are skipped.
+     */
+    List<Replica> nextReplicas() {
+        int size = replicas.size();
+        List<Replica> list = new ArrayList<Replica>(size);
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % Math.max(1, size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isUp()) {
+                list.add(replica);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,123 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.transaction.shard;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+import com.ibatis.sqlmap.engine.transaction.jdbc.JdbcTransaction;
+
+/**
+ * ShardTransaction holds a JDBC transaction on the primary data source and one on each shard, all opened on the first
+ * use, and commits or rolls back all of them together.
+ * <p>
+ * The connection of the transaction itself is the one of the primary, the sharded statements get the transaction of
+ * their shard by {@link #getShard(int)}. The commit is not atomic across the shards, a shard failing to commit leaves
+ * the shards committed before it.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class ShardTransaction implements Transaction {
+    private final ShardTransactionConfig config;
+    private final int isolationLevel;
+    private final JdbcTransaction primary;
+    private final JdbcTransaction[] shards;
+
+    public ShardTransaction(ShardTransactionConfig config, int isolationLevel) throws TransactionException {
+        this.config = config;
+        this.isolationLevel = isolationLevel;
+        this.primary = new JdbcTransaction(config.getDataSource(), isolationLevel);
+        this.shards = new JdbcTransaction[config.getShardCount()];
+    }
+
+    public ShardTransactionConfig getConfig() {
+        return config;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Get the transaction of the shard, the queries run on all the shards get them in parallel.
+     *
+     * @param index
+     *            The index of the shard, from 0
+     */
+    public synchronized Transaction getShard(int index) throws TransactionException {
+        JdbcTransaction tx = shards[index];
+        if (tx == null) {
+            tx = new JdbcTransaction(config.getShards().get(index), isolationLevel);
+            shards[index] = tx;
+        }
+        return tx;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException, TransactionException {
+        return primary.getConnection();
+    }
+
+    @Override
+    public void commit() throws SQLException, TransactionException {
+        primary.commit();
+        for (JdbcTransaction tx : opened()) {
+            tx.commit();
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException, TransactionException {
+        SQLException error = null;
+        primary.rollback();
+        for (JdbcTransaction tx : opened()) {
+            try {
+                tx.rollback();
+            } catch (SQLException e) {
+                // roll back the other shards anyway
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException, TransactionException {
+        try {
+            primary.close();
+        } finally {
+            for (JdbcTransaction tx : opened()) {
+                try {
+                    tx.close();
+                } catch (SQLException e) {
+                    // close the other shards anyway
+                }
+            }
+            synchronized (this) {
+                for (int i = 0; i < shards.length; i++) {
+                    shards[i] = null;
+                }
+            }
+        }
+    }
+
+    private synchronized List<JdbcTransaction> opened() {
+        List<JdbcTransaction> list = new ArrayList<JdbcTransaction>(shards.length);
+        for (JdbcTransaction tx : shards) {
+            if (tx != null) {
+                list.add(tx);
+            }
+        }
+        return list;
+    }
+}
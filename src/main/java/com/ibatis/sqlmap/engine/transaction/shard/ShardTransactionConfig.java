@@ -0,0 +1,130 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.transaction.shard;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.ibatis.common.jdbc.SimpleDataSource;
+import com.ibatis.sqlmap.engine.transaction.BaseTransactionConfig;
+import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionException;
+
+/**
+ * ShardTransactionConfig splits the sharded tables across a list of shard {@link SimpleDataSource}s, the statements
+ * declaring a <code>shardKey</code> go to the shard of the key value in their parameter, and the other statements go
+ * to the data source of the transaction manager.
+ * <p>
+ * The shards are listed by their urls in the property <code>shards</code>, in the order of the shard index, and the
+ * properties prefixed by <code>shard.</code> configure all of them, e.g. <code>shard.Pool.MaximumActiveConnections</code>.
+ * The driver, the username and the password are the ones of the primary {@link SimpleDataSource} by default. The
+ * queries without a shard key run on all the shards in parallel on at most <code>shard.threads</code> threads, the count
+ * of the shards by default.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see ShardTransaction
+ */
+public class ShardTransactionConfig extends BaseTransactionConfig {
+    public static final String PROP_SHARDS = "shards";
+    public static final String PROP_SHARD_PREFIX = "shard.";
+    public static final String PROP_THREADS = "shard.threads";
+
+    private List<DataSource> shards = Collections.emptyList();
+    private List<String> urls = Collections.emptyList();
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public Transaction newTransaction(int transactionIsolation) throws SQLException, TransactionException {
+        return new ShardTransaction(this, transactionIsolation);
+    }
+
+    @Override
+    public void setProperties(Properties props) throws SQLException, TransactionException {
+        String list = props.getProperty(PROP_SHARDS);
+        if (list == null || list.trim().length() == 0) {
+            throw new TransactionException("ShardTransactionConfig requires the property '" + PROP_SHARDS + "'.");
+        }
+
+        Map<Object, Object> common = new HashMap<Object, Object>();
+        if (dataSource instanceof SimpleDataSource) {
+            SimpleDataSource ds = (SimpleDataSource) dataSource;
+            common.put("JDBC.Driver", ds.getJdbcDriver());
+            common.put("JDBC.Username", ds.getJdbcUsername());
+            common.put("JDBC.Password", ds.getJdbcPassword());
+        }
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(PROP_SHARD_PREFIX) && !name.equals(PROP_THREADS)) {
+                common.put(name.substring(PROP_SHARD_PREFIX.length()), props.getProperty(name));
+            }
+        }
+        List<DataSource> dataSources = new ArrayList<DataSource>();
+        List<String> names = new ArrayList<String>();
+        for (String url : list.split(",")) {
+            url = url.trim();
+            if (url.length() > 0) {
+                Map<Object, Object> map = new HashMap<Object, Object>(common);
+                map.put("JDBC.ConnectionURL", url);
+                dataSources.add(new SimpleDataSource(map));
+                names.add(url);
+            }
+        }
+        shards = Collections.unmodifiableList(dataSources);
+        urls = Collections.unmodifiableList(names);
+
+        String t = props.getProperty(PROP_THREADS);
+        int threads = t == null ? shards.size() : Integer.parseInt(t.trim());
+        if (executor != null) {
+            executor.shutdown();
+        }
+        // the queries beyond the threads run in the calling thread
+        executor = new ThreadPoolExecutor(0, Math.max(1, threads), 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Shard Query-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Get the data sources of the shards in the order of the shard index.
+     */
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Get the executor of the queries run on all the shards.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+}
@@ -0,0 +1,106 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.type;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * SqlArray is bound as one {@link java.sql.Array} parameter, e.g. <code>ACC_ID = ANY(#ids#)</code> of postgresql
+ * instead of an IN list of each size. The sql type name of the elements is the one of the first non null element if
+ * not given, the names are the ones of postgresql.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see SqlArrayTypeHandler
+ */
+public class SqlArray {
+    private final String typeName;
+    private final Object[] values;
+
+    public SqlArray(Object[] values) {
+        this(null, values);
+    }
+
+    public SqlArray(Collection<?> values) {
+        this(null, values.toArray());
+    }
+
+    public SqlArray(String typeName, Object[] values) {
+        this.values = values;
+        this.typeName = typeName != null ? typeName : typeNameOf(values);
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    static String typeNameOf(Object[] values) {
+        for (Object value : values) {
+            if (value != null) {
+                return typeNameOf(value.getClass());
+            }
+        }
+        return "varchar";
+    }
+
+    static String typeNameOf(Class<?> type) {
+        if (type == Integer.class) {
+            return "integer";
+        } else if (type == Long.class) {
+            return "bigint";
+        } else if (type == Short.class || type == Byte.class) {
+            return "smallint";
+        } else if (type == BigDecimal.class || type == BigInteger.class) {
+            return "numeric";
+        } else if (type == Double.class) {
+            return "float8";
+        } else if (type == Float.class) {
+            return "float4";
+        } else if (type == Boolean.class) {
+            return "boolean";
+        } else if (type == java.sql.Date.class) {
+            return "date";
+        } else if (type == java.sql.Time.class) {
+            return "time";
+        } else if (Date.class.isAssignableFrom(type)) {
+            return "timestamp";
+        } else if (type == UUID.class) {
+            return "uuid";
+        }
+        return "varchar";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SqlArray)) {
+            return false;
+        }
+        SqlArray other = (SqlArray) obj;
+        return typeName.equals(other.typeName) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return typeName.hashCode() * 31 + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
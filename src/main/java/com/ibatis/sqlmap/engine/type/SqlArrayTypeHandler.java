@@ -0,0 +1,62 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package com.ibatis.sqlmap.engine.type;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * SqlArray implementation of TypeHandler, the array is created by the connection of the statement.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class SqlArrayTypeHandler extends BaseTypeHandler<SqlArray> {
+
+    public void setParameter(PreparedStatement ps, int i, SqlArray parameter, String jdbcType) throws SQLException {
+        Array array = ps.getConnection().createArrayOf(parameter.getTypeName(), parameter.getValues());
+        ps.setArray(i, array);
+    }
+
+    public SqlArray getResult(ResultSet rs, String columnName) throws SQLException {
+        return toSqlArray(rs.getArray(columnName));
+    }
+
+    public SqlArray getResult(ResultSet rs, int columnIndex) throws SQLException {
+        return toSqlArray(rs.getArray(columnIndex));
+    }
+
+    public SqlArray getResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return toSqlArray(cs.getArray(columnIndex));
+    }
+
+    static SqlArray toSqlArray(Array array) throws SQLException {
+        if (array == null) {
+            return null;
+        }
+        try {
+            return new SqlArray(array.getBaseTypeName(), (Object[]) array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+
+    public SqlArray valueOf(Object s) {
+        if (s == null || s instanceof SqlArray) {
+            return (SqlArray) s;
+        } else if (s instanceof Object[]) {
+            return new SqlArray((Object[]) s);
+        } else if (s instanceof Collection<?>) {
+            return new SqlArray((Collection<?>) s);
+        }
+        return new SqlArray(new Object[] { s });
+    }
+
+}
@@ -101,6 +101,8 @@ public class TypeHandlerFactory {
         register(Object.class, new ObjectTypeHandler());
         register(Object.class, "OBJECT", new ObjectTypeHandler());
 
+        register(SqlArray.class, new SqlArrayTypeHandler());
+
         register(Date.class, new DateTypeHandler());
         register(Date.class, "DATE", new DateOnlyTypeHandler());
         register(Date.class, "TIME", new TimeOnlyTypeHandler());
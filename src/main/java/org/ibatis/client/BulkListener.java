@@ -0,0 +1,29 @@
+/*-
+ * Copyright 2012 Owl Group
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.ibatis.client;
+
+/**
+ * Progress callback of the bulk insert.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see BulkOptions#setListener(BulkListener)
+ */
+public interface BulkListener {
+
+    /**
+     * Called after each executed batch (and commit, if any) with the result so far.
+     */
+    void onProgress(BulkResult result);
+
+}
@@ -0,0 +1,107 @@
+/*-
+ * Copyright 2012 Owl Group
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.ibatis.client;
+
+/**
+ * Options of the streaming bulk insert.
+ * <p>
+ * Rows are pulled from the iterator in chunks of <code>batchSize</code>, each chunk is sent as one jdbc batch and
+ * released before the next one is read, so the memory used does not depend on the number of rows.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see SqlMapExecutor2#bulkInsert(String, java.util.Iterator, BulkOptions)
+ */
+public class BulkOptions {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int commitInterval;
+    private boolean continueOnError;
+    private BulkListener listener;
+
+    public BulkOptions() {
+    }
+
+    public BulkOptions(int batchSize, int commitInterval) {
+        setBatchSize(batchSize);
+        setCommitInterval(commitInterval);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of rows sent to the database in one jdbc batch.
+     */
+    public BulkOptions setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Illegal batchSize: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Set the number of rows after which the transaction is committed, 0 means commit once at the end.
+     * <p>
+     * Only used when the bulk insert starts the transaction itself. Inside a transaction of the caller (or a spring
+     * managed connection) the batches are flushed but committing is left to the owner of the transaction.
+     */
+    public BulkOptions setCommitInterval(int commitInterval) {
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("Illegal commitInterval: " + commitInterval);
+        }
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    public boolean isContinueOnError() {
+        return continueOnError;
+    }
+
+    /**
+     * If true, failed rows are recorded in the {@link BulkResult} and the load goes on, otherwise the first failure
+     * is thrown.
+     * <p>
+     * Note: some databases (e.g. postgresql) abort the whole transaction on the first failed statement.
+     */
+    public BulkOptions setContinueOnError(boolean continueOnError) {
+        this.continueOnError = continueOnError;
+        return this;
+    }
+
+    public BulkListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Set the callback notified after each executed batch.
+     */
+    public BulkOptions setListener(BulkListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOptions[batchSize=" + batchSize + ", commitInterval=" + commitInterval + ", continueOnError="
+            + continueOnError + "]";
+    }
+}
@@ -0,0 +1,111 @@
+/*-
+ * Copyright 2012 Owl Group
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.ibatis.client;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the bulk insert.
+ * <p>
+ * Failed rows are reported by their 0-based position in the source iterator.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+public class BulkResult implements Serializable {
+    /**
+     * serialVersionUID
+     */
+    private static final long serialVersionUID = -2610198357135718476L;
+
+    private final String statementId;
+    private int rows;
+    private int affectedRows;
+    private int batches;
+    private int commits;
+    private final List<Integer> failedRows = new ArrayList<Integer>();
+
+    public BulkResult(String statementId) {
+        this.statementId = statementId;
+    }
+
+    public String getStatementId() {
+        return statementId;
+    }
+
+    /**
+     * Get the number of rows read from the iterator and processed so far.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the affected rows reported by the driver (rows of SUCCESS_NO_INFO are not counted).
+     */
+    public int getAffectedRows() {
+        return affectedRows;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * Get the positions of the failed rows in the source iterator, in ascending order.
+     */
+    public List<Integer> getFailedRows() {
+        return Collections.unmodifiableList(failedRows);
+    }
+
+    public boolean hasFailures() {
+        return !failedRows.isEmpty();
+    }
+
+    public void addRows(int n) {
+        rows += n;
+    }
+
+    public void addAffectedRows(int n) {
+        affectedRows += n;
+    }
+
+    public void addBatch() {
+        batches++;
+    }
+
+    public void addCommit() {
+        commits++;
+    }
+
+    public void addFailedRow(int position) {
+        int i = failedRows.size();
+        while (i > 0 && failedRows.get(i - 1) > position) {
+            i--;
+        }
+        failedRows.add(i, position);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult[" + statementId + ": rows=" + rows + ", affected=" + affectedRows + ", batches=" + batches
+            + ", commits=" + commits + ", failed=" + failedRows.size() + "]";
+    }
+}
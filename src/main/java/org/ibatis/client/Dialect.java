@@ -17,7 +17,9 @@ public enum Dialect {
     oracle,
     sqlserver,
     postgresql,
-    db2;
+    db2,
+    derby,
+    hsqldb;
 
     public static Dialect forName(String dialect) {
         try {
@@ -24,6 +24,7 @@ import com.ibatis.common.logging.ILog;
 import com.ibatis.common.logging.ILogFactory;
 import com.ibatis.sqlmap.client.BatchResult;
 import com.ibatis.sqlmap.client.event.PageHandler;
+import com.ibatis.sqlmap.engine.cache.CacheCompressor;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
 import com.ibatis.sqlmap.engine.cache.CacheRoot;
 import com.ibatis.sqlmap.engine.config.SqlMapConfiguration;
@@ -425,17 +426,24 @@ public class SqlExecutor implements com.ibatis.sqlmap.engine.execution.SqlExecut
         });
         if (caches.length > 0 && caches[0].getRequests() > 0) {
             buf.append(h).append(String.format(f, "cache stats", caches.length));
-            String th = " %9s %9s %9s %9s %9s  %s";
-            buf.append(h).append(String.format(th, "requests", "hits", "flushs", "age", "age.max", "id"));
-            String tr = " %9d %9d %9d %9d %9d  %s";
+            String th = " %9s %9s %9s %9s %9s %9s %9s  %s";
+            buf.append(h).append(
+                String.format(th, "requests", "hits", "flushs", "age", "age.max", "ratio", "inflate", "id"));
+            String tr = " %9d %9d %9d %9d %9d %9s %9s  %s";
             for (Cache c : caches) {
                 long max = 0;
+                String ratio = "-", inflate = "-";
                 if (c instanceof CacheModel) {
                     max = ((CacheModel) c).getFlushIntervalSeconds();
+                    CacheCompressor cc = ((CacheModel) c).getCompressor();
+                    if (cc != null) {
+                        ratio = String.format("%.1f", cc.getRatio());
+                        inflate = cc.getAvgInflateMicros() + "us";
+                    }
                 }
                 buf.append(h);
                 buf.append(String.format(tr, c.getRequests(), c.getHits(), c.getFlushs(), c.getPeriodMillis() / 1000L,
-                    max, c.getId()));
+                    max, ratio, inflate, c.getId()));
             }
         }
 
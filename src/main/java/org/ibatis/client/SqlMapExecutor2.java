@@ -9,6 +9,7 @@ package org.ibatis.client;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -152,4 +153,22 @@ public interface SqlMapExecutor2 {
      */
     ResultSet queryForResultSet(String id, Object parameterObject) throws SQLException;
 
+    /**
+     * Stream the rows of the iterator through the insert (or update) statement in jdbc batches.
+     * <p>
+     * Only one batch of rows is held in memory at any time. If no transaction is started, the bulk insert runs in its
+     * own transaction and commits every {@link BulkOptions#getCommitInterval()} rows, otherwise the batches join the
+     * current transaction.
+     *
+     * @param id
+     *            the statement id.
+     * @param rows
+     *            the parameter objects, one per row.
+     * @param options
+     *            the options, null for defaults.
+     * @return the bulk result, with the positions of the failed rows.
+     * @see com.ibatis.sqlmap.client.SqlMapExecutor#startBatch(int)
+     */
+    BulkResult bulkInsert(String id, Iterator<?> rows, BulkOptions options) throws SQLException;
+
 }
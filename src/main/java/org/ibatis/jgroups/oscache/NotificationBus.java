@@ -343,7 +343,8 @@ public class NotificationBus implements Receiver {
         return v != null ? (Address) v.get(0) : null;
     }
 
-    FastMethod getMembers = null;
+    Method getMembers = null;
+    FastMethod fastGetMembers = null;
     
     @SuppressWarnings("unchecked")
     List<Address> getMembers(View view) {
@@ -351,9 +352,15 @@ public class NotificationBus implements Receiver {
             // view.getMembers();
             if (getMembers == null) {
                 Method m = view.getClass().getMethod("getMembers");
-                getMembers = FastMethod.create(m);
+                try {
+                    fastGetMembers = FastMethod.create(m);
+                } catch (Throwable e) {
+                    // no class generation on the newer jvms, invoked by the reflection
+                }
+                getMembers = m;
             }
-            return (List<Address>) getMembers.invoke(view);
+            FastMethod fm = fastGetMembers;
+            return (List<Address>) (fm != null ? fm.invoke(view) : getMembers.invoke(view));
         } catch (Exception e) {
             return Collections.emptyList();
         }
@@ -1,6 +1,7 @@
 package org.ibatis.persist;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 import org.ibatis.persist.criteria.CriteriaBuilder;
@@ -53,11 +54,24 @@ public interface EntityManager {
      *            the entity object
      * @param key
      *            the key of the entity.
-     * @return the count of rows updated.
+     * @return the count of rows updated, 0 if the dirty check finds nothing changed and writes nothing.
      * @throws SQLException
      */
     <E, K> int updateEntity(Class<E> cls, E entity) throws SQLException;
 
+    /**
+     * Insert an entity object, or update it if the entity with the same primary keys exists. The native upsert of
+     * the dialect is used, so the dialect of the sql map client is required.
+     * 
+     * @param cls
+     *            the entity class object with annotation {@link Entity}
+     * @param entity
+     *            the entity object
+     * @return the count of rows affected, it depends on the driver.
+     * @throws SQLException
+     */
+    <E> int upsertEntity(Class<E> cls, E entity) throws SQLException;
+
     /**
      * Delete an entity by primary keys.
      * 
@@ -82,6 +96,19 @@ public interface EntityManager {
      */
     <E, K> E findEntity(Class<E> cls, K key) throws SQLException;
 
+    /**
+     * Find the entities by the keys. The entity cache is probed for all the keys at once, and the missed entities are
+     * loaded by <code>IN (...)</code> queries of at most 100 keys.
+     * 
+     * @param cls
+     *            the entity class object with annotation {@link Entity}
+     * @param keys
+     *            the keys of the entities.
+     * @return the entities in the order of the keys, null for the key not found.
+     * @throws SQLException
+     */
+    <E, K> List<E> findEntities(Class<E> cls, Collection<K> keys) throws SQLException;
+
     /**
      * Query the first object by the CriteriaQuery object.
      * 
@@ -16,6 +16,7 @@ import org.ibatis.persist.meta.EntityType;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 
 @SuppressWarnings("unchecked")
 public abstract class CriteriaManipulation<T> implements CriteriaStatement, CommonAbstractCriteria {
@@ -103,7 +104,7 @@ public abstract class CriteriaManipulation<T> implements CriteriaStatement, Comm
     public synchronized void prepare() {
         if (rc == null) {
             validate();
-            rc = new RenderingContext();
+            rc = new RenderingContext(criteriaBuilder().getEntityManager().getDelegate());
             rc.setQuery(false);
             renderQuery(rc);
         }
@@ -184,6 +185,11 @@ public abstract class CriteriaManipulation<T> implements CriteriaStatement, Comm
         return parameterMap;
     }
 
+    @Override
+    public ResultMap makeResultMap(SqlMapExecutorDelegate delegate) {
+        return null;
+    }
+
     @Override
     public void flushCache(SqlMapExecutorDelegate delegate) {
         if (root != null && root.getEntityType().isCacheable()) {
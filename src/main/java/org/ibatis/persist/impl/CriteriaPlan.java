@@ -0,0 +1,41 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package org.ibatis.persist.impl;
+
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+
+/**
+ * CriteriaPlan keeps the compiled sql, parameter map and result map of a criteria query, shared by all the queries
+ * of the same structure whatever their parameter values are.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ * @see EntityManager#getCriteriaPlan
+ */
+public class CriteriaPlan {
+    final String sql;
+    final ParameterMap parameterMap;
+    final ResultMap resultMap;
+
+    public CriteriaPlan(String sql, ParameterMap parameterMap, ResultMap resultMap) {
+        this.sql = sql;
+        this.parameterMap = parameterMap;
+        this.resultMap = resultMap;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public ParameterMap getParameterMap() {
+        return parameterMap;
+    }
+
+    public ResultMap getResultMap() {
+        return resultMap;
+    }
+}
@@ -17,9 +17,12 @@ import org.ibatis.persist.criteria.Selection;
 import org.ibatis.persist.criteria.Subquery;
 import org.ibatis.persist.meta.EntityType;
 
+import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
+import com.ibatis.sqlmap.engine.mapping.result.AutoResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 
 /**
  * The Hibernate implementation of the JPA {@link CriteriaQuery} contract. Mostly a set of delegation to its internal
@@ -292,23 +295,47 @@ public class CriteriaQueryImpl<T> extends AbstractNode implements CriteriaQuery<
     }
 
     RenderingContext rc;
+    CriteriaPlan plan;
     @Override
     public synchronized void prepare() {
         if (rc == null) {
-            rc = new RenderingContext();
+            EntityManager em = criteriaBuilder().getEntityManager();
+            SqlMapExecutorDelegate delegate = em.getDelegate();
             validate();
-            queryStructure.render(rc);
-
-            if (!getOrderList().isEmpty()) {
-                rc.append(" order by ");
-                String sep = "";
-                for (Order orderSpec : getOrderList()) {
-                    rc.append(sep);
-                    ((Renderable) orderSpec.getExpression()).render(rc);
-                    rc.append(orderSpec.isAscending() ? " asc" : " desc");
-                    sep = ", ";
+            CacheKey planKey = null;
+            if (em.getMaxCriteriaPlans() > 0) {
+                // the structure is rendered into the key, the sql is rendered only for a new plan
+                planKey = delegate.newCacheKey();
+                planKey.update(returnType);
+                RenderingContext keyed = new RenderingContext(delegate, planKey);
+                render(keyed);
+                plan = em.getCriteriaPlan(planKey);
+                if (plan != null) {
+                    rc = keyed;
+                    return;
                 }
             }
+            rc = new RenderingContext(delegate);
+            render(rc);
+            if (planKey != null) {
+                plan = new CriteriaPlan(rc.getSql(), makeParameterMap(delegate), makeResultMap(delegate));
+                em.putCriteriaPlan(planKey, plan);
+            }
+        }
+    }
+
+    void render(RenderingContext rc) {
+        queryStructure.render(rc);
+
+        if (!getOrderList().isEmpty()) {
+            rc.append(" order by ");
+            String sep = "";
+            for (Order orderSpec : getOrderList()) {
+                rc.append(sep);
+                ((Renderable) orderSpec.getExpression()).render(rc);
+                rc.append(orderSpec.isAscending() ? " asc" : " desc");
+                sep = ", ";
+            }
         }
     }
 
@@ -320,7 +347,7 @@ public class CriteriaQueryImpl<T> extends AbstractNode implements CriteriaQuery<
     @Override
     public String getSql() {
         prepare();
-        return rc.getSql();
+        return plan != null ? plan.getSql() : rc.getSql();
     }
 
     @Override
@@ -332,6 +359,9 @@ public class CriteriaQueryImpl<T> extends AbstractNode implements CriteriaQuery<
     ParameterMap parameterMap;
     @Override
     public ParameterMap makeParameterMap(SqlMapExecutorDelegate delegate) {
+        if (plan != null) {
+            return plan.getParameterMap();
+        }
         if (parameterMap == null) {
             parameterMap = new ParameterMap(delegate);
             List<ParameterMapping> maps = new ArrayList<ParameterMapping>();
@@ -347,6 +377,16 @@ public class CriteriaQueryImpl<T> extends AbstractNode implements CriteriaQuery<
         return parameterMap;
     }
 
+    @Override
+    public ResultMap makeResultMap(SqlMapExecutorDelegate delegate) {
+        if (plan != null) {
+            return plan.getResultMap();
+        }
+        AutoResultMap arm = new AutoResultMap(delegate, false);
+        arm.setResultClass(returnType);
+        return arm;
+    }
+
     @Override
     public void flushCache(SqlMapExecutorDelegate delegate) {
         // ## do nothing
@@ -15,6 +15,7 @@ import org.ibatis.persist.meta.EntityType;
 
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
 
 /**
  * CriteriaStatement
@@ -38,6 +39,11 @@ public interface CriteriaStatement {
 
     ParameterMap makeParameterMap(SqlMapExecutorDelegate delegate);
 
+    /**
+     * Make the result map of the query, or null if the statement is not a query.
+     */
+    ResultMap makeResultMap(SqlMapExecutorDelegate delegate);
+
     void flushCache(SqlMapExecutorDelegate delegate);
     
     EntityType<?> getQueryCacheType();
@@ -11,12 +11,17 @@
 
 package org.ibatis.persist.impl;
 
-import java.io.StringReader;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ibatis.client.Cache;
 import org.ibatis.client.SqlExecutor;
@@ -25,6 +30,7 @@ import org.ibatis.persist.criteria.CriteriaBuilder;
 import org.ibatis.persist.criteria.CriteriaDelete;
 import org.ibatis.persist.criteria.CriteriaQuery;
 import org.ibatis.persist.criteria.CriteriaUpdate;
+import org.ibatis.persist.meta.Attribute;
 import org.ibatis.persist.meta.EntityType;
 
 import com.ibatis.common.Objects;
@@ -32,18 +38,20 @@ import com.ibatis.common.Page;
 import com.ibatis.common.logging.ILog;
 import com.ibatis.common.logging.ILogFactory;
 import com.ibatis.sqlmap.client.event.PageHandler;
-import com.ibatis.sqlmap.engine.builder.xml.SqlMapParser;
 import com.ibatis.sqlmap.engine.builder.xml.XmlParserState;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
 import com.ibatis.sqlmap.engine.cache.CacheModel;
 import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
-import com.ibatis.sqlmap.engine.mapping.result.AutoResultMap;
+import com.ibatis.sqlmap.engine.mapping.result.ResultMap;
+import com.ibatis.sqlmap.engine.mapping.statement.CachingStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.DefaultRowHandler;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
 import com.ibatis.sqlmap.engine.mapping.statement.RowHandlerCallback;
 import com.ibatis.sqlmap.engine.scope.SessionScope;
 import com.ibatis.sqlmap.engine.scope.StatementScope;
 import com.ibatis.sqlmap.engine.transaction.Transaction;
+import com.ibatis.sqlmap.engine.transaction.TransactionState;
 
 /**
  * EntityManagerImpl
@@ -56,10 +64,62 @@ import com.ibatis.sqlmap.engine.transaction.Transaction;
 @SuppressWarnings("unchecked")
 public class EntityManager {
     static final ILog log = ILogFactory.getLog(EntityManager.class);
+    static final int MAX_FIND_IN_KEYS = 100;
+
+    /**
+     * The max count of the compiled plans of the criteria queries, 256 by default and 0 disables them.
+     */
+    public static final String PROP_CRITERIA_PLANS = "criteria_plans";
+    static final int DEFAULT_CRITERIA_PLANS = 256;
+    /**
+     * The identity map of the entities in the transaction of a session: <code>false</code> by default,
+     * <code>true</code> to check the hits by the entity cache, or <code>direct</code> to return the hits without
+     * probing the entity cache.
+     */
+    public static final String PROP_IDENTITY_MAP = "entity_identity_map";
+    static final int IDENTITY_NONE = 0;
+    static final int IDENTITY_CHECKED = 1;
+    static final int IDENTITY_DIRECT = 2;
+    /**
+     * The dirty checking of the entities in the identity map: <code>false</code> by default, or <code>true</code>
+     * to update only the changed attributes of them, see {@link #flushEntities(SessionScope)}.
+     */
+    public static final String PROP_DIRTY_CHECK = "entity_dirty_check";
+
+    /**
+     * The entity in the identity map, the written one is put by the session itself and never checked. The managed one
+     * has the snapshot of its attributes to find the changed ones.
+     */
+    static final class Identity {
+        final Object entity;
+        final boolean written;
+        final Object[] snapshot;
+
+        Identity(Object entity, boolean written, Object[] snapshot) {
+            this.entity = entity;
+            this.written = written;
+            this.snapshot = snapshot;
+        }
+
+        boolean isTrusted() {
+            return written || snapshot != null;
+        }
+    }
 
     SqlMapExecutorDelegate delegate;
     XmlParserState state;
     CriteriaBuilderImpl criteriaBuilderImpl;
+    // the least recently used plan is evicted, so the shapes of the startup do not lock out the later ones
+    @SuppressWarnings("serial")
+    final Map<CacheKey, CriteriaPlan> criteriaPlans = new LinkedHashMap<CacheKey, CriteriaPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CriteriaPlan> eldest) {
+            return size() > getMaxCriteriaPlans();
+        }
+    };
+    volatile int maxCriteriaPlans = -1;
+    volatile int identityMode = -1;
+    volatile int dirtyCheck = -1;
 
     public EntityManager(SqlMapExecutorDelegate delegate, XmlParserState state) {
         this.delegate = delegate;
@@ -70,6 +130,250 @@ public class EntityManager {
         return delegate;
     }
 
+    public int getMaxCriteriaPlans() {
+        int max = maxCriteriaPlans;
+        if (max < 0) {
+            String value = delegate.getGlobalProperty(PROP_CRITERIA_PLANS);
+            max = value == null ? DEFAULT_CRITERIA_PLANS : Math.max(0, Integer.parseInt(value.trim()));
+            maxCriteriaPlans = max;
+        }
+        return max;
+    }
+
+    /**
+     * Get the compiled plan of the criteria queries by the key of their structure, or null if it is not compiled.
+     */
+    public CriteriaPlan getCriteriaPlan(CacheKey planKey) {
+        synchronized (criteriaPlans) {
+            return criteriaPlans.get(planKey);
+        }
+    }
+
+    /**
+     * Keep the plan, and evict the least recently used one beyond the max count.
+     */
+    public void putCriteriaPlan(CacheKey planKey, CriteriaPlan plan) {
+        if (getMaxCriteriaPlans() > 0) {
+            synchronized (criteriaPlans) {
+                criteriaPlans.put(planKey, plan);
+            }
+        }
+    }
+
+    public int getCriteriaPlanCount() {
+        synchronized (criteriaPlans) {
+            return criteriaPlans.size();
+        }
+    }
+
+    int getIdentityMode() {
+        int mode = identityMode;
+        if (mode < 0) {
+            String value = delegate.getGlobalProperty(PROP_IDENTITY_MAP);
+            mode = "direct".equals(value) ? IDENTITY_DIRECT : "true".equals(value) ? IDENTITY_CHECKED : IDENTITY_NONE;
+            if (mode == IDENTITY_NONE && isDirtyCheck()) {
+                // the managed entities are kept in the identity map
+                mode = IDENTITY_CHECKED;
+            }
+            identityMode = mode;
+        }
+        return mode;
+    }
+
+    boolean isDirtyCheck() {
+        int check = dirtyCheck;
+        if (check < 0) {
+            check = "true".equals(delegate.getGlobalProperty(PROP_DIRTY_CHECK)) ? 1 : 0;
+            dirtyCheck = check;
+        }
+        return check == 1;
+    }
+
+    /**
+     * Make the entry of the identity map, the entity is managed if the dirty checking is enabled.
+     */
+    <E> Identity newIdentity(EntityType<E> ep, E entity, boolean written) {
+        Object[] snapshot = null;
+        if (entity != null && isDirtyCheck() && ep.getFindInStatementId() != null) {
+            snapshot = snapshot(ep, entity);
+        }
+        return new Identity(entity, written, snapshot);
+    }
+
+    static <E> Object[] snapshot(EntityType<E> ep, E entity) {
+        Object[] values = new Object[ep.getAttributes().size()];
+        int i = 0;
+        for (Attribute<E, ?> pa : ep.getAttributes().values()) {
+            Object value = pa.getValue(entity);
+            // the mutable values are copied
+            if (value instanceof Date) {
+                value = ((Date) value).clone();
+            } else if (value instanceof byte[]) {
+                value = ((byte[]) value).clone();
+            }
+            values[i++] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Get the parameter of the dirty update of the entity: the changed attributes and the ids of the snapshot, or null
+     * if nothing is changed.
+     */
+    static <E> Map<String, Object> getDirtyParameter(EntityType<E> ep, E entity, Object[] snapshot) {
+        Map<String, Object> param = null;
+        Map<String, Attribute<E, ?>> keys = ep.getIdAttributes();
+        int i = 0;
+        for (Attribute<E, ?> pa : ep.getAttributes().values()) {
+            Object old = snapshot[i++];
+            if (keys.containsKey(pa.getName())) {
+                continue;
+            }
+            Object value = pa.getValue(entity);
+            boolean same = value == null ? old == null : value instanceof byte[] && old instanceof byte[]
+                ? Arrays.equals((byte[]) value, (byte[]) old) : value.equals(old);
+            if (!same) {
+                if (param == null) {
+                    param = new LinkedHashMap<String, Object>();
+                }
+                param.put(pa.getName(), value);
+            }
+        }
+        if (param != null) {
+            i = 0;
+            for (Attribute<E, ?> pa : ep.getAttributes().values()) {
+                if (keys.containsKey(pa.getName())) {
+                    param.put(pa.getName(), snapshot[i]);
+                }
+                i++;
+            }
+        }
+        return param;
+    }
+
+    /**
+     * Write the changed attributes of the managed entities in the transaction of the session, the updates of the same
+     * changed attributes are executed in one jdbc batch. It is called before the transaction is committed.
+     *
+     * @return the count of the updated entities
+     */
+    public int flushEntities(SessionScope sessionScope) throws SQLException {
+        if (!isDirtyCheck() || sessionScope.getTransactionState() != TransactionState.STATE_STARTED) {
+            return 0;
+        }
+        // the updates by the statement and the changed attributes
+        Map<List<Object>, List<Map<String, Object>>> updates =
+            new LinkedHashMap<List<Object>, List<Map<String, Object>>>();
+        List<Object[]> flushed = new ArrayList<Object[]>();
+        for (Class<?> cls : sessionScope.getIdentityClasses()) {
+            EntityType<Object> ep = Objects.uncheckedCast(initEntityClass(cls));
+            Map<Object, Object> identities = sessionScope.getIdentityMap(cls, false);
+            for (Map.Entry<Object, Object> en : identities.entrySet()) {
+                Identity identity = (Identity) en.getValue();
+                if (identity.snapshot == null) {
+                    continue;
+                }
+                Map<String, Object> param = getDirtyParameter(ep, identity.entity, identity.snapshot);
+                if (param != null) {
+                    List<Object> group = Arrays.<Object> asList(ep.getUpdateDirtyStatementId(), param.keySet());
+                    List<Map<String, Object>> list = updates.get(group);
+                    if (list == null) {
+                        list = new ArrayList<Map<String, Object>>();
+                        updates.put(group, list);
+                    }
+                    list.add(param);
+                    flushed.add(new Object[] { ep, identities, en.getKey(), identity.entity });
+                }
+            }
+        }
+        if (flushed.isEmpty()) {
+            return 0;
+        }
+
+        boolean batch = flushed.size() > 1 && !sessionScope.isInBatch();
+        if (batch) {
+            delegate.startBatch(sessionScope, -1);
+        }
+        try {
+            for (Map.Entry<List<Object>, List<Map<String, Object>>> en : updates.entrySet()) {
+                String statId = (String) en.getKey().get(0);
+                for (Map<String, Object> param : en.getValue()) {
+                    delegate.update(sessionScope, statId, param);
+                }
+            }
+            if (batch) {
+                batch = false;
+                delegate.executeBatch(sessionScope);
+            }
+        } finally {
+            if (batch) {
+                sessionScope.setInBatch(0);
+            }
+        }
+        for (Object[] f : flushed) {
+            EntityType<Object> ep = Objects.uncheckedCast(f[0]);
+            Map<Object, Object> identities = Objects.uncheckedCast(f[1]);
+            identities.put(f[2], new Identity(f[3], true, snapshot(ep, f[3])));
+        }
+        return flushed.size();
+    }
+
+    /**
+     * Get the identity map of the entity class, or null if it is disabled or the session is not in a transaction
+     * started by the user.
+     */
+    Map<Object, Object> getIdentityMap(SessionScope sessionScope, Class<?> cls) {
+        if (getIdentityMode() == IDENTITY_NONE
+            || sessionScope.getTransactionState() != TransactionState.STATE_STARTED) {
+            return null;
+        }
+        return sessionScope.getIdentityMap(cls, true);
+    }
+
+    /**
+     * Get the id of the entity in the identity map, or null if the id is composite.
+     */
+    static <E> Object getIdentity(EntityType<E> ep, E entity) {
+        if (ep.getFindInStatementId() == null) {
+            return null;
+        }
+        return idKey(ep.getIdAttributes().values().iterator().next().getValue(entity));
+    }
+
+    /**
+     * Put the entity written by the session into the identity map, or remove it if it is not written.
+     */
+    <E> void putIdentity(SessionScope sessionScope, EntityType<E> ep, Class<E> cls, E entity, boolean written) {
+        Map<Object, Object> identities = getIdentityMap(sessionScope, cls);
+        if (identities != null) {
+            Object id = getIdentity(ep, entity);
+            if (id == null) {
+                identities.clear();
+            } else if (written) {
+                identities.put(id, newIdentity(ep, entity, true));
+            } else {
+                identities.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Check the entity in the identity map by the entity cache, it is stale if the entity cache is flushed.
+     */
+    boolean isIdentityValid(SessionScope sessionScope, Identity identity, String statId, Object param) {
+        if (identity.isTrusted() || getIdentityMode() == IDENTITY_DIRECT) {
+            return true;
+        }
+        MappedStatement ms = delegate.getMappedStatement(statId);
+        if (!(ms instanceof CachingStatement)) {
+            return true;
+        }
+        CachingStatement cs = (CachingStatement) ms;
+        StatementScope statementScope = new StatementScope(sessionScope);
+        cs.initRequest(statementScope);
+        return cs.getCacheModel().containsObject(cs.getObjectCacheKey(statementScope, param));
+    }
+
     public <E> E insertEntity(SessionScope sessionScope, Class<E> cls, E entity) throws SQLException {
         EntityType<E> ep = initEntityClass(cls);
         if (ep == null || ep.isFailed()) {
@@ -77,6 +381,7 @@ public class EntityManager {
         }
         String statId = ep.getInsertStatementId();
         delegate.insert(sessionScope, statId, ep.getInsertParameter(entity));
+        putIdentity(sessionScope, ep, cls, entity, true);
         return entity;
     }
 
@@ -85,8 +390,35 @@ public class EntityManager {
         if (ep == null || ep.isFailed()) {
             throw new RuntimeException(ep.getErrorMessage());
         }
+        Map<Object, Object> identities = getIdentityMap(sessionScope, cls);
+        Object id = identities == null ? null : getIdentity(ep, entity);
+        Identity identity = id == null ? null : (Identity) identities.get(id);
+        if (identity != null && identity.snapshot != null) {
+            // the managed entity, or a copy of it, updates only the changed attributes
+            Map<String, Object> param = getDirtyParameter(ep, entity, identity.snapshot);
+            if (param == null) {
+                // nothing written, so no row is updated; the managed entity stays as it is
+                return 0;
+            }
+            int rows = delegate.update(sessionScope, ep.getUpdateDirtyStatementId(), param);
+            putIdentity(sessionScope, ep, cls, entity, rows > 0);
+            return rows;
+        }
         String statId = ep.getUpdateStatementId();
-        return delegate.update(sessionScope, statId, ep.getUpdateParameter(entity));
+        int rows = delegate.update(sessionScope, statId, ep.getUpdateParameter(entity));
+        putIdentity(sessionScope, ep, cls, entity, rows > 0);
+        return rows;
+    }
+
+    public <E> int upsertEntity(SessionScope sessionScope, Class<E> cls, E entity) throws SQLException {
+        EntityType<E> ep = initEntityClass(cls);
+        if (ep == null || ep.isFailed()) {
+            throw new RuntimeException(ep.getErrorMessage());
+        }
+        String statId = ep.getUpsertStatementId();
+        int rows = delegate.update(sessionScope, statId, ep.getUpsertParameter(entity));
+        putIdentity(sessionScope, ep, cls, entity, true);
+        return rows;
     }
 
     public <E, K> int deleteEntity(SessionScope sessionScope, Class<E> cls, K key) throws SQLException {
@@ -95,7 +427,13 @@ public class EntityManager {
             throw new RuntimeException(ep.getErrorMessage());
         }
         String statId = ep.getDeleteStatementId();
-        return delegate.update(sessionScope, statId, ep.getDeleteParameter(key));
+        Object param = ep.getDeleteParameter(key);
+        int rows = delegate.update(sessionScope, statId, param);
+        Map<Object, Object> identities = getIdentityMap(sessionScope, cls);
+        if (identities != null) {
+            identities.remove(idKey(param));
+        }
+        return rows;
     }
 
     public <E, K> E findEntity(SessionScope sessionScope, Class<E> cls, K key) throws SQLException {
@@ -104,7 +442,141 @@ public class EntityManager {
             throw new RuntimeException(ep.getErrorMessage());
         }
         String statId = ep.getFindStatementId();
-        return delegate.<E>queryForObject(sessionScope, statId, ep.getFindParameter(key));
+        Object param = ep.getFindParameter(key);
+        Map<Object, Object> identities = getIdentityMap(sessionScope, cls);
+        if (identities == null) {
+            return delegate.<E>queryForObject(sessionScope, statId, param);
+        }
+        Object id = idKey(param);
+        Identity identity = (Identity) identities.get(id);
+        if (identity != null && isIdentityValid(sessionScope, identity, statId, param)) {
+            return (E) identity.entity;
+        }
+        E e = delegate.<E>queryForObject(sessionScope, statId, param);
+        identities.put(id, newIdentity(ep, e, false));
+        return e;
+    }
+
+    /**
+     * Find the entities of the keys in the order of the keys, null for the missed one. The entity cache is probed
+     * for all the keys in one pass, and only the misses are loaded by chunked <code>IN (...)</code> queries.
+     */
+    public <E, K> List<E> findEntities(final SessionScope sessionScope, final Class<E> cls,
+        final Collection<K> keys) throws SQLException {
+        EntityType<E> ep = initEntityClass(cls);
+        if (ep.isFailed()) {
+            throw new RuntimeException(ep.getErrorMessage());
+        }
+        final List<E> list = new ArrayList<E>(keys.size());
+        String findInId = ep.getFindInStatementId();
+        if (findInId == null) {
+            // composite id, find them one by one in one transaction
+            delegate.executeCallback(sessionScope, new ExecuteContext<Object>() {
+                public Object execute(StatementScope scope, Transaction trans) throws SQLException {
+                    for (K key : keys) {
+                        list.add(findEntity(sessionScope, cls, key));
+                    }
+                    return null;
+                }
+            });
+            return list;
+        }
+
+        final Map<Object, E> found = new HashMap<Object, E>();
+        Map<Object, Object> identities = getIdentityMap(sessionScope, cls);
+        boolean direct = getIdentityMode() == IDENTITY_DIRECT;
+        MappedStatement ms = delegate.getMappedStatement(ep.getFindStatementId());
+        CachingStatement cs = ms instanceof CachingStatement ? (CachingStatement) ms : null;
+        CacheModel cm = null;
+        StatementScope statementScope = null;
+        if (cs != null) {
+            cm = cs.getCacheModel();
+            statementScope = new StatementScope(sessionScope);
+            cs.initRequest(statementScope);
+        }
+        Map<Object, Object> params = new LinkedHashMap<Object, Object>();
+        final Map<Object, CacheKey> cacheKeys = new LinkedHashMap<Object, CacheKey>();
+        for (K key : keys) {
+            Object param = ep.getFindParameter(key);
+            Object id = idKey(param);
+            if (found.containsKey(id) || params.containsKey(id)) {
+                continue;
+            }
+            Identity identity = identities == null ? null : (Identity) identities.get(id);
+            CacheKey cacheKey = null;
+            if (identity != null && (identity.isTrusted() || direct || cm == null
+                || cm.containsObject(cacheKey = cs.getObjectCacheKey(statementScope, param)))) {
+                // the mapped instance as findEntity returns it
+                found.put(id, (E) identity.entity);
+            } else {
+                params.put(id, param);
+                if (cm != null) {
+                    cacheKeys.put(id, cacheKey != null ? cacheKey : cs.getObjectCacheKey(statementScope, param));
+                }
+            }
+        }
+        final List<Object> misses = new ArrayList<Object>(params.size());
+        if (cm != null) {
+            List<Object> cached = cm.getObjects(new ArrayList<CacheKey>(cacheKeys.values()));
+            int i = 0;
+            for (Map.Entry<Object, Object> en : params.entrySet()) {
+                Object old = cached.get(i++);
+                if (old == null) {
+                    misses.add(en.getValue());
+                } else if (old != CacheModel.NULL_OBJECT) {
+                    found.put(en.getKey(), (E) old);
+                }
+            }
+        } else {
+            misses.addAll(params.values());
+        }
+
+        if (!misses.isEmpty()) {
+            final String statId = findInId;
+            final Attribute<E, ?> idAttr = ep.getIdAttributes().values().iterator().next();
+            final CacheModel cache = cm;
+            final long version = cm == null ? 0 : cm.getVersion();
+            // all the chunks in one transaction
+            delegate.executeCallback(sessionScope, new ExecuteContext<Object>() {
+                public Object execute(StatementScope scope, Transaction trans) throws SQLException {
+                    for (int i = 0; i < misses.size(); i += MAX_FIND_IN_KEYS) {
+                        List<Object> chunk = misses.subList(i, Math.min(i + MAX_FIND_IN_KEYS, misses.size()));
+                        List<E> entities = delegate.queryForList(sessionScope, statId, chunk);
+                        for (E e : entities) {
+                            found.put(idKey(idAttr.getValue(e)), e);
+                        }
+                        if (cache != null) {
+                            for (Object param : chunk) {
+                                Object id = idKey(param);
+                                cache.putObject(cacheKeys.get(id), found.get(id), version);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (identities != null) {
+            // only the new and the stale ones, the mapped instances are kept with their snapshots
+            for (Object id : params.keySet()) {
+                identities.put(id, newIdentity(ep, found.get(id), false));
+            }
+        }
+        for (K key : keys) {
+            list.add(found.get(idKey(ep.getFindParameter(key))));
+        }
+        return list;
+    }
+
+    /**
+     * The integral ids are compared by value, so the int key finds the entity of long id and so on.
+     */
+    static Object idKey(Object id) {
+        if (id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
     }
 
     public <T> T executeQueryObject(final SessionScope sessionScope, final CriteriaQuery<T> criteriaQuery) {
@@ -141,7 +613,7 @@ public class EntityManager {
                 CacheModel cm = null;
                 CacheKey key = null;
                 if (cacheType != null) {
-                    key = new CacheKey();
+                    key = getDelegate().newCacheKey();
                     key.update("executeCriteriaQuery");
                     key.update(skip);
                     key.update(max);
@@ -162,18 +634,18 @@ public class EntityManager {
                 }
 
                 ParameterMap pm = exec.makeParameterMap(delegate);
-                AutoResultMap arm = new AutoResultMap(getDelegate(), false);
-                arm.setResultClass(resultClass);
+                ResultMap arm = exec.makeResultMap(delegate);
                 DefaultRowHandler rowHandler = new DefaultRowHandler();
                 RowHandlerCallback callback = new RowHandlerCallback(arm, null, rowHandler);
                 statementScope.setParameterMap(pm);
                 statementScope.setResultMap(arm);
 
                 if (cm != null) {
+                    long version = cm.getVersion();
                     delegate.getSqlExecutor().executeQuery(null, statementScope, trans.getConnection(), sql, parameters,
                         skip, max, callback);
                     List<T> list = rowHandler.getList();
-                    cm.putObject(key, list);
+                    cm.putObject(key, list, version);
                     return list;
                 } else {
                     delegate.getSqlExecutor().executeQuery(null, statementScope, trans.getConnection(), sql, parameters,
@@ -208,7 +680,7 @@ public class EntityManager {
                 CacheModel cm = null;
                 CacheKey key = null;
                 if (cacheType != null) {
-                    key = new CacheKey();
+                    key = getDelegate().newCacheKey();
                     key.update("executeCriteriaQueryPage");
                     key.update(page != null);
                     key.update(skip);
@@ -233,19 +705,19 @@ public class EntityManager {
                     }
                 }
                 ParameterMap pm = exec.makeParameterMap(delegate);
-                AutoResultMap arm = new AutoResultMap(getDelegate(), false);
-                arm.setResultClass(resultClass);
+                ResultMap arm = exec.makeResultMap(delegate);
                 statementScope.setParameterMap(pm);
                 statementScope.setResultMap(arm);
 
                 if (cm != null) {
+                    long version = cm.getVersion();
                     ArrayList<T> p = new ArrayList<T>();
                     PageHandler pageHandler = new PageHandler(p);
                     RowHandlerCallback callback = new RowHandlerCallback(arm, null, pageHandler);
                     delegate.getSqlExecutor().executeQueryPage(null, statementScope, trans.getConnection(), sql,
                         parameters, skip, max, callback, pageHandler);
                     int total = pageHandler.getTotal();
-                    cm.putObject(key, new Page<T>(total, p));
+                    cm.putObject(key, new Page<T>(total, p), version);
                     if (page != null) {
                         page.addAll(p);
                     }
@@ -329,36 +801,38 @@ public class EntityManager {
         return criteriaBuilderImpl;
     }
 
-    private Map<Class<?>, EntityType<?>> entityClassMap = new LinkedHashMap<Class<?>, EntityType<?>>();
+    private final ConcurrentMap<Class<?>, EntityType<?>> entityClassMap =
+        new ConcurrentHashMap<Class<?>, EntityType<?>>();
+    private final ConcurrentMap<Class<?>, Object> entityClassLocks = new ConcurrentHashMap<Class<?>, Object>();
 
     public <E> EntityType<E> initEntityClass(Class<E> cls) {
         EntityType<E> ep = Objects.uncheckedCast(entityClassMap.get(cls));
         if (ep == null) {
-            synchronized (entityClassMap) {
+            // lock the class only, the different entity classes are initialized in parallel
+            Object lock = new Object();
+            Object old = entityClassLocks.putIfAbsent(cls, lock);
+            if (old != null) {
+                lock = old;
+            }
+            synchronized (lock) {
                 ep = Objects.uncheckedCast(entityClassMap.get(cls));
                 if (ep == null) {
                     EntityTypeImpl<E> epi = new EntityTypeImpl<E>(cls, this);
                     if (!epi.isFailed()) {
                         long time = System.currentTimeMillis();
-                        SqlMapParser mapParser = new SqlMapParser(state, false);
-                        String xml = epi.buildSqlMapXml();
                         try {
-                            state.getConfig().getErrorContext().setResource(epi.getResourceLocation());
                             ILog log = ILogFactory.getLog(delegate.getSqlExecutor().getClass());
-                            mapParser.parse(epi.getResourceLocation(), new StringReader(xml));
-                            state.getConfig().finalizeSqlMapConfig();
+                            new EntityStatementBuilder<E>(epi, state).buildAndFinalize();
 
-                            log.info("Load entity " + cls + " elapsed time " + (System.currentTimeMillis() -  time));
+                            log.info("Load entity " + cls + " elapsed time " + (System.currentTimeMillis() - time));
                         } catch (Exception ex) {
                             log.error(ex.getMessage(), ex);
-                            if (delegate.getSqlExecutor().isDebugSql()) {
-                                log.info(xml);
-                            }
                             epi.setError(ex);
                         }
                     }
                     ep = epi;
                     entityClassMap.put(cls, ep);
+                    entityClassLocks.remove(cls);
                 }
             }
         }
@@ -0,0 +1,263 @@
+/*-
+ * Copyright 2009-2017 Owl Group
+ * All rights reserved.
+ */
+package org.ibatis.persist.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.ibatis.persist.meta.Attribute;
+
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.builder.xml.XmlParserState;
+import com.ibatis.sqlmap.engine.cache.CacheController;
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.config.CacheModelConfig;
+import com.ibatis.sqlmap.engine.config.MappedStatementConfig;
+import com.ibatis.sqlmap.engine.config.SqlMapConfiguration;
+import com.ibatis.sqlmap.engine.config.SqlSource;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.parameter.InlineParameterMapParser;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.mapping.sql.SqlText;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.DynamicSql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.SqlTag;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.SqlTagHandlerFactory;
+import com.ibatis.sqlmap.engine.mapping.sql.raw.RawSql;
+import com.ibatis.sqlmap.engine.mapping.statement.DeleteStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.InsertStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.SelectStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.UpdateStatement;
+import com.ibatis.sqlmap.engine.mapping.statement.UpsertStatement;
+import com.ibatis.sqlmap.engine.type.TypeHandlerFactory;
+
+/**
+ * EntityStatementBuilder registers the statements and the cache model of an entity directly through the
+ * {@link SqlMapConfiguration}, the same as a sqlMap of the entity but without writing and parsing the xml. It touches
+ * no parser state and has an error context of its own, so the different entities can be built in parallel.
+ * <p>
+ * Date: 2026-10-19
+ *
+ * @version 1.0
+ */
+class EntityStatementBuilder<E> {
+    private static final InlineParameterMapParser PARAM_PARSER = new InlineParameterMapParser();
+
+    final EntityTypeImpl<E> type;
+    final XmlParserState state;
+    final SqlMapConfiguration config;
+    final SqlMapExecutorDelegate delegate;
+    final String resource;
+    final List<String> statementIds = new ArrayList<String>();
+    CacheModel cacheModel;
+
+    EntityStatementBuilder(EntityTypeImpl<E> type, XmlParserState state) {
+        this.type = type;
+        this.state = state;
+        this.config = state.getConfig().withNewErrorContext();
+        this.delegate = config.getDelegate();
+        this.resource = type.getResourceLocation();
+    }
+
+    /**
+     * Build the statements and the cache model, and wire them up with the other cache models.
+     */
+    void buildAndFinalize() {
+        build();
+        delegate.finalizeEntity(type.entityClass, statementIds, cacheModel);
+    }
+
+    void build() {
+        Attribute<E, ?> genKey = type.getGeneratedKey();
+        MappedStatementConfig insert = statement(type.getInsertStatementId(), new InsertStatement(),
+            type.buildInsertSql(), type.entityClass, null, null, true);
+        if (genKey != null) {
+            insert.setSelectKeyStatement(raw(""), genKey.getType().getName(), genKey.getName(), true, true);
+        }
+        if (type.getIdAttributes().isEmpty()) {
+            return;
+        }
+        statement(type.getUpdateStatementId(), new UpdateStatement(), type.buildUpdateSql(), type.entityClass, null,
+            null, true);
+        statement(type.getUpdateDirtyStatementId(), new UpdateStatement(), updateDirty(), Map.class, null, null, true);
+        statement(type.getUpsertStatementId(), new UpsertStatement(type.getKeyColumns()), type.buildUpsertSql(),
+            type.entityClass, null, null, true);
+        Class<?> keyClass = resolveClass(type.getKeyClass());
+        statement(type.getDeleteStatementId(), new DeleteStatement(), type.buildDeleteSql(), keyClass, null, null,
+            false);
+
+        String cacheModelId = null;
+        if (type.cacheable) {
+            cacheModelId = buildCacheModel();
+        }
+        statement(type.getFindStatementId(), new SelectStatement(), type.buildFindSql(), keyClass, type.entityClass,
+            cacheModelId, false);
+        if (type.getFindInStatementId() != null) {
+            // no cacheModel, the entities are cached one by one as the find statement
+            statement(type.getFindInStatementId(), new SelectStatement(), findIn(type.buildFindInSql()), List.class,
+                type.entityClass, null, false);
+        }
+    }
+
+    private String buildCacheModel() {
+        String id = namespace(type.getEntityCacheModelId());
+        CacheController controller;
+        try {
+            controller = delegate.newCacheController(type.cacheType);
+        } catch (Exception e) {
+            throw new RuntimeException("Error creating the cache model " + id + ".  Cause: " + e, e);
+        }
+        config.getErrorContext().setResource(resource);
+        CacheModelConfig cacheConfig = config.newCacheModelConfig(id, controller);
+        cacheModel = cacheConfig.getCacheModel();
+        cacheModel.setResource(resource);
+        cacheConfig.setFlushInterval(0, type.cacheMinutes, 0, 0);
+        cacheConfig.addFlushTriggerStatement(type.getInsertStatementId());
+        cacheConfig.addFlushTriggerStatement(type.getDeleteStatementId());
+        cacheConfig.addFlushTriggerStatement(type.getUpdateStatementId());
+        cacheConfig.addFlushTriggerStatement(type.getUpdateDirtyStatementId());
+        cacheConfig.addFlushTriggerStatement(type.getUpsertStatementId());
+        for (Class<?> root : type.cacheRoots) {
+            cacheConfig.addFlushTriggerEntityClass(root);
+        }
+        Properties props = new Properties();
+        props.putAll(state.getGlobalProps());
+        cacheConfig.setControllerProperties(props);
+        return id;
+    }
+
+    private MappedStatementConfig statement(String id, MappedStatement statement, String sql,
+        Class<?> parameterClass, Class<?> resultClass, String cacheModelName, boolean canBatch) {
+        return statement(id, statement, raw(SqlText.cleanSql(sql, true)), parameterClass, resultClass,
+            cacheModelName, canBatch);
+    }
+
+    private MappedStatementConfig statement(String id, MappedStatement statement, SqlSource sql,
+        Class<?> parameterClass, Class<?> resultClass, String cacheModelName, boolean canBatch) {
+        if (state.isUseStatementNamespaces()) {
+            id = namespace(id);
+        }
+        config.getErrorContext().setResource(resource);
+        MappedStatementConfig statementConf = config.newMappedStatementConfig(id, statement, sql, null,
+            parameterClass, null, null, resultClass, null, null, null, false, null, cacheModelName, canBatch);
+        statementIds.add(id);
+        if (delegate.getSqlExecutor().isCheckSql()) {
+            statement.checkSql(config.getErrorContext());
+        }
+        return statementConf;
+    }
+
+    /**
+     * The primitive key types are boxed by the type aliases, as the parameterClass of a sqlMap.
+     */
+    private Class<?> resolveClass(Class<?> cls) {
+        try {
+            return Resources.classForName(config.getTypeHandlerFactory().resolveAlias(cls.getName()));
+        } catch (ClassNotFoundException e) {
+            throw new SqlMapException("Error.  Could not initialize class.  Cause: " + e, e);
+        }
+    }
+
+    private String namespace(String id) {
+        String namespace = type.namespace;
+        if (namespace != null && namespace.length() > 0 && id.indexOf('.') < 0) {
+            return namespace + "." + id;
+        }
+        return id;
+    }
+
+    private static SqlSource raw(final String sql) {
+        return new SqlSource() {
+            public Sql getSql() {
+                return new RawSql(sql);
+            }
+        };
+    }
+
+    /**
+     * <code>UPDATE t &lt;dynamic prepend='SET'&gt;&lt;isPropertyAvailable property='a' prepend=','&gt;A = #a#
+     * ...&lt;/dynamic&gt; WHERE ...</code>, the map parameter has the changed attributes and the ids.
+     */
+    private SqlSource updateDirty() {
+        return new SqlSource() {
+            public Sql getSql() {
+                TypeHandlerFactory thf = delegate.getTypeHandlerFactory();
+                Map<String, Attribute<E, ?>> keys = type.getIdAttributes();
+                DynamicSql dynamic = new DynamicSql(delegate);
+                dynamic.addChild(PARAM_PARSER.parseInlineParameterMap(thf, "UPDATE " + type.tableQName, Map.class));
+
+                SqlTag set = tag("dynamic", " SET", null);
+                for (Attribute<E, ?> pa : type.getAttributes().values()) {
+                    if (keys.containsValue(pa)) {
+                        continue;
+                    }
+                    SqlTag available = tag("isPropertyAvailable", ",", pa.getName());
+                    available.addChild(PARAM_PARSER.parseInlineParameterMap(thf,
+                        " " + pa.getColumn() + " = " + mapParameter(pa), Map.class));
+                    set.addChild(available);
+                }
+                dynamic.addChild(set);
+
+                StringBuilder where = new StringBuilder(" WHERE ");
+                boolean first = true;
+                for (Attribute<E, ?> pa : keys.values()) {
+                    if (!first) {
+                        where.append(" AND ");
+                    }
+                    where.append(pa.getColumn()).append(" = ").append(mapParameter(pa));
+                    first = false;
+                }
+                dynamic.addChild(PARAM_PARSER.parseInlineParameterMap(thf, where.toString(), Map.class));
+                return dynamic;
+            }
+        };
+    }
+
+    /**
+     * The java type of the map value is the type of the attribute, so a null value is bound as well.
+     */
+    private String mapParameter(Attribute<E, ?> pa) {
+        return "#" + pa.getName() + ",javaType=" + resolveClass(pa.getType()).getName() + "#";
+    }
+
+    private static SqlTag tag(String name, String prepend, String property) {
+        SqlTag tag = new SqlTag((name + prepend + property).hashCode());
+        tag.setName(name);
+        tag.setHandler(SqlTagHandlerFactory.getSqlTagHandler(name));
+        tag.setPrependAttr(prepend);
+        tag.setPropertyAttr(property);
+        return tag;
+    }
+
+    /**
+     * <code>head &lt;iterate open='(' close=')' conjunction=','&gt;#[]#&lt;/iterate&gt;</code>
+     */
+    private SqlSource findIn(final String head) {
+        return new SqlSource() {
+            public Sql getSql() {
+                DynamicSql dynamic = new DynamicSql(delegate);
+                dynamic.addChild(PARAM_PARSER.parseInlineParameterMap(delegate.getTypeHandlerFactory(),
+                    SqlText.cleanSql(head, true), null));
+
+                SqlTag iterate = new SqlTag(head.hashCode());
+                iterate.setName("iterate");
+                iterate.setHandler(SqlTagHandlerFactory.getSqlTagHandler("iterate"));
+                iterate.setOpenAttr("(");
+                iterate.setCloseAttr(")");
+                iterate.setConjunctionAttr(",");
+                iterate.setPostParseRequired(true);
+                SqlText item = new SqlText();
+                item.setPostParseRequired(true);
+                item.setText("#[]#");
+                iterate.addChild(item);
+                dynamic.addChild(iterate);
+                return dynamic;
+            }
+        };
+    }
+}
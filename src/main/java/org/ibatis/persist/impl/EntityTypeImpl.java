@@ -260,6 +260,18 @@ public class EntityTypeImpl<E> implements EntityType<E> {
         return e;
     }
 
+    public String getUpdateDirtyStatementId() {
+        return entityName + "#updateDirty";
+    }
+
+    public String getUpsertStatementId() {
+        return entityName + "#upsert";
+    }
+
+    public Object getUpsertParameter(E e) {
+        return e;
+    }
+
     public String getDeleteStatementId() {
         return entityName + "#delete";
     }
@@ -280,6 +292,13 @@ public class EntityTypeImpl<E> implements EntityType<E> {
         return entityName + "#find";
     }
 
+    public String getFindInStatementId() {
+        if (idClass != null || keys.size() != 1) {
+            return null;
+        }
+        return entityName + "#findIn";
+    }
+
     public String getEntityCacheModelId() {
         return entityName + "#cache";
     }
@@ -296,187 +315,129 @@ public class EntityTypeImpl<E> implements EntityType<E> {
         throw new IllegalArgumentException("bad id " + key + " for entity " + entityClass);
     }
 
-    public String buildSqlMapXml() {
-        StringBuilder pw = new StringBuilder(4096);
-        pw.append("<?xml version='1.0' encoding='UTF-8'?>\n");
-        pw.append("<!DOCTYPE sqlMap PUBLIC '-//iBATIS.org//DTD SQL Map 2.4//EN' 'sql-map-2.4.dtd'>\n");
-        pw.append("\n");
-        pw.append("<sqlMap namespace='").append(namespace).append("'>\n");
-        buildInsertXml(pw);
-        buildUpdateXml(pw);
-        buildDeleteXml(pw);
-        buildFindXml(pw);
-        pw.append("</sqlMap>");
-        return pw.toString();
+    /**
+     * Get the auto generated key of the insert statement, or null.
+     */
+    Attribute<E, ?> getGeneratedKey() {
+        if (idAttr != null && idAttr.getAnnotation(Id.class).auto()) {
+            return idAttr;
+        }
+        return null;
     }
 
-    void buildInsertXml(StringBuilder pw) {
-        Attribute<E, ?> genKey = null;
-        if (idAttr != null) {
-            if (idAttr.getAnnotation(Id.class).auto()) {
-                genKey = idAttr;
-            }
-        }
-        pw.append("\n");
-        pw.append("  <insert id='").append(getInsertStatementId()).append("' parameterClass='").append(entityClass.getName()).append("'>\n");
-        pw.append("    INSERT INTO ").append(tableQName).append(" (");
-        boolean first = true;
-        for (Attribute<E, ?> pa : attributes.values()) {
-            if (genKey == pa) {
-                continue;
-            }
-            if (first) {
-                pw.append("\n");
-            } else {
-                pw.append(",\n");
-            }
-            pw.append("      ").append(pa.getColumn());
-            first = false;
+    /**
+     * Get the parameter class of the delete and find statements.
+     */
+    Class<?> getKeyClass() {
+        return idClass != null ? idClass : idAttr.getType();
+    }
+
+    String[] getKeyColumns() {
+        String[] columns = new String[keys.size()];
+        int i = 0;
+        for (Attribute<E, ?> pa : keys.values()) {
+            columns[i++] = pa.getColumn();
         }
-        pw.append("\n");
-        pw.append("    ) VALUES (");
-        first = true;
+        return columns;
+    }
+
+    String buildInsertSql() {
+        Attribute<E, ?> genKey = getGeneratedKey();
+        StringBuilder columns = new StringBuilder(256);
+        StringBuilder values = new StringBuilder(256);
         for (Attribute<E, ?> pa : attributes.values()) {
             if (genKey == pa) {
                 continue;
             }
-            if (first) {
-                pw.append("\n");
-            } else {
-                pw.append(",\n");
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
             }
-            pw.append("      #").append(pa.getName()).append("#");
-            first = false;
-        }
-        pw.append("\n");
-        pw.append("    )\n");
-        if (genKey != null) {
-            String rc = genKey.getType().getName();
-            pw.append("    <selectKey resultClass='").append(rc).append("' keyProperty='").append(genKey.getName()).append("'/>\n");
+            columns.append(pa.getColumn());
+            values.append('#').append(pa.getName()).append('#');
         }
-        pw.append("  </insert>\n");
+        return "INSERT INTO " + tableQName + " (" + columns + ") VALUES (" + values + ")";
     }
 
-    void buildUpdateXml(StringBuilder pw) {
-        if (keys.isEmpty()) {
-            return;
-        }
-        pw.append("\n");
-        pw.append("  <update id='").append(getUpdateStatementId()).append("' parameterClass='").append(entityClass.getName()).append("'>\n");
-        pw.append("    UPDATE ").append(tableQName).append(" SET");
+    String buildUpdateSql() {
+        StringBuilder pw = new StringBuilder(256);
+        pw.append("UPDATE ").append(tableQName).append(" SET ");
         boolean first = true;
         for (Attribute<E, ?> pa : attributes.values()) {
             if (keys.containsValue(pa)) {
                 continue;
             }
-            if (first) {
-                pw.append("\n");
-            } else {
-                pw.append(",\n");
-            }
-            pw.append("      ").append(pa.getColumn()).append(" = #").append(pa.getName()).append("#");
-            first = false;
-        }
-        pw.append("\n");
-        pw.append("    WHERE ");
-        first = true;
-        for (Attribute<E, ?> pa : keys.values()) {
             if (!first) {
-                pw.append("\n");
-                pw.append("      AND ");
+                pw.append(", ");
             }
-            pw.append(pa.getColumn()).append(" = #").append(pa.getName()).append("#\n");
+            pw.append(pa.getColumn()).append(" = #").append(pa.getName()).append('#');
             first = false;
         }
-        pw.append("\n");
-        pw.append("  </update>\n");
+        buildWhereKeys(pw);
+        return pw.toString();
     }
 
-    void buildDeleteXml(StringBuilder pw) {
-        if (keys.isEmpty()) {
-            return;
-        }
-        pw.append("\n");
-        if (idClass != null) {
-            pw.append("  <delete id='").append(getDeleteStatementId()).append("' parameterClass='").append(idClass.getName()).append("'>\n");
-        } else {
-            pw.append(
-                "  <delete id='").append(getDeleteStatementId()).append("' parameterClass='").append(idAttr.getType().getName()).append("'>\n");
+    String buildUpsertSql() {
+        StringBuilder columns = new StringBuilder(256);
+        StringBuilder values = new StringBuilder(256);
+        for (Attribute<E, ?> pa : attributes.values()) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(pa.getColumn());
+            values.append('#').append(pa.getName()).append('#');
         }
-        pw.append("    DELETE FROM ").append(tableQName);
-        pw.append("\n");
-        pw.append("    WHERE ");
+        return "INSERT INTO " + tableQName + " (" + columns + ") VALUES (" + values + ")";
+    }
+
+    String buildDeleteSql() {
+        StringBuilder pw = new StringBuilder(128);
+        pw.append("DELETE FROM ").append(tableQName);
+        buildWhereKeys(pw);
+        return pw.toString();
+    }
+
+    String buildFindSql() {
+        StringBuilder pw = new StringBuilder(256);
+        buildSelectFrom(pw);
+        buildWhereKeys(pw);
+        return pw.toString();
+    }
+
+    /**
+     * The head of the findIn statement, the ids are iterated after it.
+     */
+    String buildFindInSql() {
+        StringBuilder pw = new StringBuilder(256);
+        buildSelectFrom(pw);
+        pw.append(" WHERE ").append(idAttr.getColumn()).append(" IN");
+        return pw.toString();
+    }
+
+    void buildWhereKeys(StringBuilder pw) {
+        pw.append(" WHERE ");
         boolean first = true;
         for (Attribute<E, ?> pa : keys.values()) {
             if (!first) {
-                pw.append("\n");
-                pw.append("      AND ");
+                pw.append(" AND ");
             }
-            pw.append(pa.getColumn()).append(" = #").append(pa.getName()).append("#");
+            pw.append(pa.getColumn()).append(" = #").append(pa.getName()).append('#');
             first = false;
         }
-        pw.append("\n");
-        pw.append("  </delete>\n");
     }
 
-    void buildFindXml(StringBuilder pw) {
-        if (keys.isEmpty()) {
-            return;
-        }
-        if (cacheable) {
-            pw.append("\n");
-            pw.append("  <cacheModel id='").append(getEntityCacheModelId()).append("' type='").append(cacheType).append("'>\n");
-            pw.append("    <flushInterval minutes='").append(cacheMinutes).append("' />\n");
-            pw.append("    <flushOnExecute statement='").append(getInsertStatementId()).append("' />\n");
-            pw.append("    <flushOnExecute statement='").append(getDeleteStatementId()).append("' />\n");
-            pw.append("    <flushOnExecute statement='").append(getUpdateStatementId()).append("' />\n");
-            for (Class<?> clazz : cacheRoots) {
-                pw.append("    <flushOnFlash entityClass='").append(clazz.getName()).append("' />\n");
-            }
-            pw.append("  </cacheModel>\n");
-        }
-        pw.append("\n");
-        if (idClass != null) {
-            pw.append("  <select id='").append(getFindStatementId()).append("' ");
-            if (cacheable) {
-                pw.append("cacheModel='").append(getEntityCacheModelId()).append("' ");
-            }
-            pw.append("parameterClass='").append(idClass.getName()).append("' resultClass='")
-                .append(entityClass.getName()).append("'>\n");
-        } else {
-            pw.append("  <select id='").append(getFindStatementId()).append("' ");
-            if (cacheable) {
-                pw.append("cacheModel='").append(getEntityCacheModelId()).append("' ");
-            }
-            pw.append("parameterClass='").append(idAttr.getType().getName()).append("' resultClass='")
-                .append(entityClass.getName()).append("'>\n");
-        }
-        pw.append("    SELECT ");
+    void buildSelectFrom(StringBuilder pw) {
+        pw.append("SELECT ");
         boolean first = true;
         for (Attribute<E, ?> pa : attributes.values()) {
-            if (first) {
-                pw.append("\n");
-            } else {
-                pw.append(",\n");
-            }
-            pw.append("      ").append(pa.getColumn()).append(" AS ").append(pa.getName());
-            first = false;
-        }
-        pw.append("\n");
-        pw.append("    FROM ").append(tableQName);
-        pw.append("\n");
-        pw.append("    WHERE ");
-        first = true;
-        for (Attribute<E, ?> pa : keys.values()) {
             if (!first) {
-                pw.append("\n");
-                pw.append("      AND ");
+                pw.append(", ");
             }
-            pw.append(pa.getColumn()).append(" = #").append(pa.getName()).append("#");
+            pw.append(pa.getColumn()).append(" AS ").append(pa.getName());
             first = false;
         }
-        pw.append("\n");
-        pw.append("  </select>\n");
+        pw.append(" FROM ").append(tableQName);
     }
 
     @Override
@@ -7,23 +7,70 @@ import java.util.List;
 import java.util.Set;
 import java.util.Stack;
 
+import org.ibatis.client.Dialect;
 import org.ibatis.persist.criteria.ParameterExpression;
 
+import com.ibatis.sqlmap.engine.cache.CacheKey;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.DynamicSql;
+
 /**
  * Used to provide a context and services to the rendering.
  */
 public class RenderingContext {
+    /**
+     * Bind the literal values of an IN list as one array on postgresql, false by default.
+     */
+    public static final String PROP_IN_ARRAY = "sql_in_array";
+    static final Object PARAMETER = Integer.valueOf(-1);
 
     Stack<Object> stack = new Stack<Object>();
     private int aliasCount = 1;
     ParameterInfo<?>[] parameterInfos;
     Set<ParameterExpression<?>> parameterExpressions;
     boolean query;
+    boolean inPadding;
+    boolean inArray;
+    CacheKey planKey;
     
     public RenderingContext() {
         query = true;
     }
 
+    public RenderingContext(SqlMapExecutorDelegate delegate) {
+        this();
+        inPadding = "true".equals(delegate.getGlobalProperty(DynamicSql.PROP_IN_PADDING));
+        inArray = delegate.getState().getDialect() == Dialect.postgresql
+            && "true".equals(delegate.getGlobalProperty(PROP_IN_ARRAY));
+    }
+
+    /**
+     * Render the structure of the statement into the plan key instead of the sql, the parameters are kept as usual
+     * but only their types are put into the key.
+     */
+    public RenderingContext(SqlMapExecutorDelegate delegate, CacheKey planKey) {
+        this(delegate);
+        this.planKey = planKey;
+    }
+
+    public CacheKey getPlanKey() {
+        return planKey;
+    }
+
+    /**
+     * Whether the IN lists are padded to the bucket sizes.
+     */
+    public boolean isInPadding() {
+        return inPadding;
+    }
+
+    /**
+     * Whether the literal IN lists are bound as one array.
+     */
+    public boolean isInArray() {
+        return inArray;
+    }
+
     public boolean isQuery() {
         return query;
     }
@@ -36,6 +83,10 @@ public class RenderingContext {
         return "_t" + aliasCount++;
     }
     public RenderingContext append(String str) {
+        if (planKey != null) {
+            planKey.update(str);
+            return this;
+        }
         StringBuilder buf = buffer();
         buf.append(str);
         return this;
@@ -54,10 +105,18 @@ public class RenderingContext {
 
     public synchronized RenderingContext append(ParameterInfo<?> parameter) {
         stack.push(parameter);
+        if (planKey != null) {
+            planKey.update(PARAMETER);
+            planKey.update(parameter.getParameterType());
+        }
         return this;
     }
 
     public RenderingContext append(char c) {
+        if (planKey != null) {
+            planKey.update(c);
+            return this;
+        }
         StringBuilder buf = buffer();
         buf.append(c);
         return this;
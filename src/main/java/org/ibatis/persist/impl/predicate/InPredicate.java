@@ -12,6 +12,9 @@ import org.ibatis.persist.impl.Renderable;
 import org.ibatis.persist.impl.RenderingContext;
 import org.ibatis.persist.impl.expression.LiteralExpression;
 
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.IterateContext;
+import com.ibatis.sqlmap.engine.type.SqlArray;
+
 /**
  * Models an <tt>[NOT] IN</tt> restriction
  */
@@ -125,6 +128,19 @@ public class InPredicate<T>
     public void render(boolean isNegated, RenderingContext rc) {
         ((Renderable) getExpression()).render(rc);
 
+        List<Expression<? extends T>> values = getValues();
+        if (rc.isInArray() && isLiteralList(values)) {
+            // one array parameter for any count of values
+            rc.append(isNegated ? " <> all(" : " = any(");
+            Object[] array = new Object[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ((LiteralExpression<?>) values.get(i)).getLiteral();
+            }
+            new LiteralExpression<SqlArray>(criteriaBuilder(), SqlArray.class, new SqlArray(array)).render(rc);
+            rc.append(')');
+            return;
+        }
+
         if (isNegated) {
             rc.append(" not");
         }
@@ -132,18 +148,33 @@ public class InPredicate<T>
 
         // subquery expressions are already wrapped in parenthesis, so we only need to
         // render the parenthesis here if the values represent an explicit value list
-        boolean isInSubqueryPredicate = getValues().size() == 1 && Subquery.class.isInstance(getValues().get(0));
+        boolean isInSubqueryPredicate = values.size() == 1 && Subquery.class.isInstance(values.get(0));
         if (isInSubqueryPredicate) {
-            ((Renderable) getValues().get(0)).render(rc);
+            ((Renderable) values.get(0)).render(rc);
         } else {
             rc.append('(');
+            // the padded values repeat the last one
+            int size = values.size();
+            int padded = rc.isInPadding() ? IterateContext.paddedSize(size) : size;
             String sep = "";
-            for (Expression value : getValues()) {
+            for (int i = 0; i < padded; i++) {
                 rc.append(sep);
-                ((Renderable) value).render(rc);
+                ((Renderable) values.get(Math.min(i, size - 1))).render(rc);
                 sep = ", ";
             }
             rc.append(')');
         }
     }
+
+    static boolean isLiteralList(List<?> values) {
+        if (values.isEmpty()) {
+            return false;
+        }
+        for (Object value : values) {
+            if (!(value instanceof LiteralExpression<?>)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
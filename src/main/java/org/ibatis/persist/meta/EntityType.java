@@ -40,6 +40,16 @@ public interface EntityType<E> {
 
     Object getUpdateParameter(E e);
 
+    /**
+     * Return the id of the statement that updates only the attributes in its map parameter, the map must have the ids
+     * too.
+     */
+    String getUpdateDirtyStatementId();
+
+    String getUpsertStatementId();
+
+    Object getUpsertParameter(E e);
+
     String getDeleteStatementId();
 
     Object getDeleteParameter(Object key);
@@ -48,6 +58,12 @@ public interface EntityType<E> {
 
     Object getFindParameter(Object key);
 
+    /**
+     * Return the id of the statement that finds the entities by a list of ids, or null if the entity has a composite
+     * id.
+     */
+    String getFindInStatementId();
+
     Class<E> getJavaType();
 
     Attribute<E, ?> locateAttribute(String name);
@@ -17,9 +17,13 @@
 package org.ibatis.spring;
 
 import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
 import org.ibatis.client.PropertyProvider;
 import org.ibatis.persist.criteria.CriteriaBuilder;
 import org.ibatis.persist.criteria.CriteriaDelete;
@@ -202,6 +206,15 @@ public interface SqlMapClientOperations extends PropertyProvider {
      */
     void delete(String statementName, Object parameterObject, int requiredRowsAffected) throws DataAccessException;
 
+    /**
+     * Stream the rows through the statement in jdbc batches, joining the spring managed transaction if any.
+     * 
+     * @see org.ibatis.client.SqlMapExecutor2#bulkInsert(String, Iterator, BulkOptions)
+     * @throws org.springframework.dao.DataAccessException
+     *             in case of errors
+     */
+    BulkResult bulkInsert(String statementName, Iterator<?> rows, BulkOptions options) throws DataAccessException;
+
     /**
      * Do insert operation by var-args paramenters as #1# to #n#
      * 
@@ -385,6 +398,13 @@ public interface SqlMapClientOperations extends PropertyProvider {
      */
     <E, K> int updateEntity(Class<E> cls, E entity) throws DataAccessException;
 
+    /**
+     * Insert or update an entity object.
+     * 
+     * @see org.ibatis.persist.EntityManager#upsertEntity(Class, Object)
+     */
+    <E> int upsertEntity(Class<E> cls, E entity) throws DataAccessException;
+
     /**
      * Update an entity object by its key.
      * 
@@ -399,6 +419,13 @@ public interface SqlMapClientOperations extends PropertyProvider {
      */
     <E, K> E findEntity(Class<E> cls, K key) throws DataAccessException;
 
+    /**
+     * Find the entity objects by their keys.
+     * 
+     * @see org.ibatis.persist.EntityManager#findEntities(Class, Collection)
+     */
+    <E, K> List<E> findEntities(Class<E> cls, Collection<K> keys) throws DataAccessException;
+
     /**
      * Query the first object by the CriteriaQuery object.
      * 
@@ -19,12 +19,16 @@ package org.ibatis.spring;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
 import org.ibatis.client.Dialect;
 import org.ibatis.client.SqlMapClient;
 import org.ibatis.persist.criteria.CriteriaBuilder;
@@ -456,6 +460,19 @@ public class SqlMapClientTemplate extends JdbcAccessor implements SqlMapClientOp
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.ibatis.spring.SqlMapClientOperations#bulkInsert(java.lang.String, java.util.Iterator, org.ibatis.client.BulkOptions)
+     */
+    public BulkResult bulkInsert(final String id, final Iterator<?> rows, final BulkOptions options)
+        throws DataAccessException {
+        return execute(new SqlMapClientCallback<BulkResult>() {
+            public BulkResult doInSqlMapClient(SqlMapExecutor executor) throws SQLException {
+                return executor.bulkInsert(id, rows, options);
+            }
+        });
+    }
+
     /*
      * (non-Javadoc)
      * @see org.ibatis.spring.SqlMapClientOperations#insertArgs(java.lang.String, java.lang.Object[])
@@ -638,6 +655,18 @@ public class SqlMapClientTemplate extends JdbcAccessor implements SqlMapClientOp
         });
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.ibatis.spring.SqlMapClientOperations#upsertEntity(java.lang.Class, java.lang.Object)
+     */
+    public <E> int upsertEntity(final Class<E> cls, final E entity) throws DataAccessException {
+        return execute(new SqlMapClientCallback<Integer>() {
+            public Integer doInSqlMapClient(SqlMapExecutor executor) throws SQLException {
+                return executor.upsertEntity(cls, entity);
+            }
+        });
+    }
+
     /*
      * (non-Javadoc)
      * @see org.ibatis.spring.SqlMapClientOperations#deleteEntity(java.lang.Class, java.lang.Object)
@@ -662,6 +691,18 @@ public class SqlMapClientTemplate extends JdbcAccessor implements SqlMapClientOp
         });
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.ibatis.spring.SqlMapClientOperations#findEntities(java.lang.Class, java.util.Collection)
+     */
+    public <E, K> List<E> findEntities(final Class<E> cls, final Collection<K> keys) throws DataAccessException {
+        return execute(new SqlMapClientCallback<List<E>>() {
+            public List<E> doInSqlMapClient(SqlMapExecutor executor) throws SQLException {
+                return executor.findEntities(cls, keys);
+            }
+        });
+    }
+
     /*
      * (non-Javadoc)
      * @see org.ibatis.spring.SqlMapClientOperations#executeQueryObject(org.ibatis.persist.criteria.CriteriaQuery)
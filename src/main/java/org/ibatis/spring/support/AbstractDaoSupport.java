@@ -13,6 +13,8 @@ package org.ibatis.spring.support;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * DaoSupport
@@ -65,6 +67,17 @@ public abstract class AbstractDaoSupport<E> extends SqlMapClientDaoSupport {
         return getSqlMapClientTemplate().updateEntity(getEntityClass(), entity);
     }
 
+    /**
+     * Insert or update the entity by its primary key.
+     * 
+     * @param entity
+     *            the entity object
+     * @return the count of rows affected.
+     */
+    public int upsertEntity(E entity) {
+        return getSqlMapClientTemplate().upsertEntity(getEntityClass(), entity);
+    }
+
     /**
      * Delete the entity.
      * 
@@ -86,4 +99,15 @@ public abstract class AbstractDaoSupport<E> extends SqlMapClientDaoSupport {
     public E findEntity(Object key) {
         return getSqlMapClientTemplate().findEntity(getEntityClass(), key);
     }
+
+    /**
+     * Find the entities.
+     * 
+     * @param keys
+     *            the primary keys of the entities.
+     * @return the entity objects in the order of the keys, <code>null</code> for the one not exists.
+     */
+    public List<E> findEntities(Collection<?> keys) {
+        return getSqlMapClientTemplate().findEntities(getEntityClass(), keys);
+    }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.common.jdbc;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class SimpleDataSourceTest extends TestCase {
+
+  private SimpleDataSource ds;
+
+  private static Map<Object, Object> props(String url) {
+    Map<Object, Object> props = new HashMap<Object, Object>();
+    props.put("JDBC.Driver", "org.hsqldb.jdbcDriver");
+    props.put("JDBC.ConnectionURL", url);
+    props.put("JDBC.Username", "sa");
+    props.put("JDBC.Password", "");
+    props.put("JDBC.DefaultAutoCommit", "true");
+    props.put("Pool.MaximumActiveConnections", "5");
+    props.put("Pool.MaximumIdleConnections", "4");
+    props.put("Pool.ShutdownDelay", "1");
+    return props;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (ds != null) {
+      ds.forceCloseAll();
+    }
+  }
+
+  private static void waitFor(SimpleDataSource ds, int idle) throws InterruptedException {
+    for (int i = 0; i < 100 && ds.getIdleConnectionCount() != idle; i++) {
+      Thread.sleep(50);
+    }
+  }
+
+  public void testFillMinimumIdleConnections() throws Exception {
+    Map<Object, Object> props = props("jdbc:hsqldb:mem:fill");
+    props.put("Pool.MinimumIdleConnections", "3");
+    ds = new SimpleDataSource(props);
+    assertEquals(3, ds.getPoolMinimumIdleConnections());
+
+    waitFor(ds, 3);
+    assertEquals(3, ds.getIdleConnectionCount());
+    assertEquals(3, ds.getFillCount());
+
+    // the checkout takes a filled connection, and the fillers make up for it
+    Connection conn = ds.getConnection();
+    try {
+      waitFor(ds, 3);
+      assertEquals(3, ds.getIdleConnectionCount());
+      assertEquals(4, ds.getFillCount());
+      assertEquals(1, ds.getRequestCount());
+    } finally {
+      conn.close();
+    }
+    assertEquals(4, ds.getIdleConnectionCount());
+  }
+
+  public void testFillNeverExceedsMaximumActive() throws Exception {
+    Map<Object, Object> props = props("jdbc:hsqldb:mem:fill");
+    props.put("Pool.MinimumIdleConnections", "4");
+    ds = new SimpleDataSource(props);
+    waitFor(ds, 4);
+
+    Connection[] conns = new Connection[3];
+    for (int i = 0; i < conns.length; i++) {
+      conns[i] = ds.getConnection();
+    }
+    try {
+      Thread.sleep(300);
+      // 3 active and 2 idle connections are the maximum 5
+      assertEquals(2, ds.getIdleConnectionCount());
+      assertEquals(5, ds.getFillCount());
+    } finally {
+      for (Connection conn : conns) {
+        conn.close();
+      }
+    }
+  }
+
+  public void testRequestCountsConnectionBeingFilled() throws Exception {
+    ds = new SimpleDataSource(props("jdbc:hsqldb:mem:fill"));
+    Connection[] conns = new Connection[4];
+    for (int i = 0; i < conns.length; i++) {
+      conns[i] = ds.getConnection();
+    }
+    // a filler is connecting the 5th connection
+    ds.filling.incrementAndGet();
+    final Connection[] got = new Connection[1];
+    Thread request = new Thread() {
+      @Override
+      public void run() {
+        try {
+          got[0] = ds.getConnection();
+        } catch (Exception e) {
+          // not got
+        }
+      }
+    };
+    request.setDaemon(true);
+    request.start();
+    try {
+      request.join(300);
+      assertTrue(request.isAlive());
+      assertEquals(4, ds.getRequestCount());
+    } finally {
+      ds.filling.decrementAndGet();
+      request.join(5000);
+      for (Connection conn : conns) {
+        conn.close();
+      }
+    }
+    assertNotNull(got[0]);
+    got[0].close();
+  }
+
+  public void testFillBacksOffWhileDatabaseIsDown() throws Exception {
+    Map<Object, Object> props = props("jdbc:hsqldb:hsql://127.0.0.1:1/down");
+    props.put("Pool.MinimumIdleConnections", "2");
+    ds = new SimpleDataSource(props);
+    Thread.sleep(1500);
+
+    assertEquals(0, ds.getFillCount());
+    long failures = ds.getFillFailCount();
+    // the fillers retry after 1 and then 2 seconds, not in a loop
+    assertTrue("failures " + failures, failures >= 1 && failures <= 4);
+  }
+
+  public void testValidateIdleConnections() throws Exception {
+    Map<Object, Object> props = props("jdbc:hsqldb:mem:validate");
+    props.put("Pool.PingQuery", "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS");
+    props.put("Pool.ValidationInterval", "100");
+    ds = new SimpleDataSource(props);
+    assertEquals(100, ds.getPoolValidationInterval());
+
+    Connection[] conns = new Connection[2];
+    for (int i = 0; i < conns.length; i++) {
+      conns[i] = ds.getConnection();
+    }
+    for (Connection conn : conns) {
+      conn.close();
+    }
+    Thread.sleep(400);
+
+    // both idle connections are validated again and again, and stay in the pool
+    assertTrue("validated " + ds.getValidateCount(), ds.getValidateCount() >= 2);
+    assertEquals(2, ds.getIdleConnectionCount());
+    assertEquals(0, ds.getBadConnectionCount());
+  }
+
+  public void testCheckoutSkipsPingOfValidatedConnection() throws Exception {
+    Map<Object, Object> props = props("jdbc:hsqldb:mem:validate");
+    props.put("Pool.PingQuery", "select 1 from INFORMATION_SCHEMA.SYSTEM_USERS");
+    props.put("Pool.PingEnabled", "true");
+    props.put("Pool.PingConnectionsNotUsedFor", "1");
+    props.put("Pool.ValidationInterval", "100");
+    ds = new SimpleDataSource(props);
+
+    ds.getConnection().close();
+    for (int i = 0; i < 3; i++) {
+      Thread.sleep(150);
+      // the connection is due to the ping, but the validator checked it already
+      ds.getConnection().close();
+    }
+    assertEquals(3, ds.getPingSkippedCount());
+    assertEquals(0, ds.getCheckoutPingCount());
+    assertTrue(ds.getValidateCount() >= 1);
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.ibatis.client.BulkListener;
+import org.ibatis.client.BulkOptions;
+import org.ibatis.client.BulkResult;
+
+import testdomain.Account;
+
+public class BulkInsertTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  /**
+   * Generates the accounts on the fly, the rows at the bad positions miss the not null first name.
+   */
+  static class AccountSource implements Iterator<Account> {
+    final int first;
+    final int count;
+    final int[] bad;
+    int i;
+
+    AccountSource(int first, int count, int... bad) {
+      this.first = first;
+      this.count = count;
+      this.bad = bad;
+    }
+
+    public boolean hasNext() {
+      return i < count;
+    }
+
+    public Account next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Account account = new Account();
+      account.setId(first + i);
+      account.setLastName("flintstone");
+      account.setFirstName("fred");
+      for (int b : bad) {
+        if (b == i) {
+          account.setFirstName(null);
+        }
+      }
+      i++;
+      return account;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private int countAccounts() throws SQLException {
+    Connection conn = sqlMap.getDataSource().getConnection();
+    try {
+      ResultSet rs = conn.createStatement().executeQuery("select count(*) from ACCOUNT");
+      rs.next();
+      return rs.getInt(1);
+    } finally {
+      conn.close();
+    }
+  }
+
+  public void testBulkInsertCommitsEveryInterval() throws SQLException {
+    final List<Integer> progress = new ArrayList<Integer>();
+    BulkOptions options = new BulkOptions(7, 20).setListener(new BulkListener() {
+      public void onProgress(BulkResult result) {
+        progress.add(result.getRows());
+      }
+    });
+
+    BulkResult result = sqlMap.bulkInsert("insertAccountViaInlineParameters", new AccountSource(100, 50), options);
+
+    assertEquals(50, result.getRows());
+    assertEquals(50, result.getAffectedRows());
+    assertFalse(result.hasFailures());
+    assertEquals(3, result.getCommits());
+    assertEquals(Integer.valueOf(50), progress.get(progress.size() - 1));
+    assertEquals(55, countAccounts());
+  }
+
+  public void testBulkInsertReportsFailedRows() throws SQLException {
+    BulkOptions options = new BulkOptions(10, 0).setContinueOnError(true);
+
+    BulkResult result = sqlMap.bulkInsert("insertAccountViaInlineParameters", new AccountSource(100, 30, 3, 12, 29),
+        options);
+
+    assertEquals(30, result.getRows());
+    assertEquals(27, result.getAffectedRows());
+    assertEquals(3, result.getFailedRows().size());
+    assertEquals(Integer.valueOf(3), result.getFailedRows().get(0));
+    assertEquals(Integer.valueOf(12), result.getFailedRows().get(1));
+    assertEquals(Integer.valueOf(29), result.getFailedRows().get(2));
+    assertEquals(32, countAccounts());
+  }
+
+  public void testBulkInsertStopsOnError() throws SQLException {
+    try {
+      sqlMap.bulkInsert("insertAccountViaInlineParameters", new AccountSource(100, 30, 12), new BulkOptions(10, 10));
+      fail("Expected the failure of row 12.");
+    } catch (SQLException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("failed at row 12"));
+    }
+    // the first interval is committed, the failed one is rolled back
+    assertEquals(15, countAccounts());
+  }
+
+  public void testBulkInsertJoinsTransaction() throws SQLException {
+    sqlMap.startTransaction();
+    try {
+      BulkResult result = sqlMap.bulkInsert("insertAccountViaInlineParameters", new AccountSource(100, 25),
+          new BulkOptions(10, 5));
+      assertEquals(25, result.getRows());
+      assertEquals(0, result.getCommits());
+    } finally {
+      sqlMap.endTransaction();
+    }
+    // not committed by the caller
+    assertEquals(5, countAccounts());
+  }
+
+}
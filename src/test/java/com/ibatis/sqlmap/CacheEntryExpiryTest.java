@@ -0,0 +1,100 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.util.Map;
+import java.util.Properties;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.lru.LruCacheController;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.statement.CachingStatement;
+
+import testdomain.Account;
+
+public class CacheEntryExpiryTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static CacheModel newCacheModel(long flushInterval, String jitter) {
+    CacheModel cm = new CacheModel();
+    cm.setId("jitter");
+    cm.setFlushInterval(flushInterval);
+    cm.setCacheController(new LruCacheController());
+    Properties props = new Properties();
+    props.setProperty("cache-size", "1000");
+    props.setProperty(CacheModel.PROP_TTL_JITTER, jitter);
+    cm.setControllerProperties(props);
+    return cm;
+  }
+
+  public void testJitterSpreadsExpiry() {
+    CacheModel cm = newCacheModel(1000, "0.5");
+    assertTrue(cm.isEntryExpiry());
+    long time = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      cm.putObject(i, "value" + i);
+    }
+    Map<Object, Object> entries = cm.getEntries(1000);
+    assertEquals(100, entries.size());
+    long min = Long.MAX_VALUE, max = 0;
+    for (Object stored : entries.values()) {
+      long ttl = cm.getExpiredTime(stored) - time;
+      min = Math.min(min, ttl);
+      max = Math.max(max, ttl);
+    }
+    assertTrue(min >= 500);
+    assertTrue(max <= 1000 + System.currentTimeMillis() - time);
+    assertTrue(max - min > 100);
+  }
+
+  public void testExpiredEntryEvictedLazily() throws Exception {
+    CacheModel cm = newCacheModel(100, "0.1");
+    cm.putObject("a", "A");
+    assertEquals("A", cm.getObject("a"));
+    Thread.sleep(150);
+    cm.putObject("b", "B");
+    assertNull(cm.getObject("a"));
+    assertEquals("B", cm.getObject("b"));
+    // no flush of the whole cache, only the expired entry is removed
+    assertEquals(0, cm.getFlushs());
+    assertEquals(1, cm.getExpirations());
+    assertEquals(1, cm.getEntries(1000).size());
+  }
+
+  public void testStatementTtl() throws Exception {
+    SqlMapClientImpl client = (SqlMapClientImpl) sqlMap;
+    CacheModel cm = client.getDelegate().findCacheModel("jitter-account-cache");
+    assertEquals(0.2, cm.getTtlJitter());
+    CachingStatement ms = (CachingStatement) client.getDelegate().getMappedStatement(
+        "getShortLivedAccountViaColumnName");
+    assertEquals(200, ms.getCacheTtl());
+
+    Account account = sqlMap.queryForObject("getShortLivedAccountViaColumnName", 1);
+    assertSame(account, sqlMap.queryForObject("getShortLivedAccountViaColumnName", 1));
+    Thread.sleep(250);
+    Account reloaded = sqlMap.queryForObject("getShortLivedAccountViaColumnName", 1);
+    assertNotSame(account, reloaded);
+    assertEquals(account.getId(), reloaded.getId());
+    assertEquals(0, cm.getFlushs());
+    assertEquals(1, cm.getExpirations());
+  }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.lru.LruCacheController;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+
+import testdomain.Account;
+
+public class CacheRefreshAheadTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static void waitFor(CacheModel cm, long refreshes, long failures) throws InterruptedException {
+    for (int i = 0; i < 500 && (cm.getRefreshes() < refreshes || cm.getRefreshFailures() < failures); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(refreshes, cm.getRefreshes());
+    assertEquals(failures, cm.getRefreshFailures());
+  }
+
+  public void testStatementRefreshedAhead() throws Exception {
+    CacheModel cm = ((SqlMapClientImpl) sqlMap).getDelegate().findCacheModel("refresh-account-cache");
+    assertTrue(cm.isRefreshAhead());
+
+    Account account = sqlMap.queryForObject("getRefreshedAccountViaColumnName", 1);
+    assertSame(account, sqlMap.queryForObject("getRefreshedAccountViaColumnName", 1));
+    String email = account.getEmailAddress();
+
+    Account changed = sqlMap.queryForObject("getAccountViaColumnName", 1);
+    changed.setEmailAddress("refreshed@ibatis.com");
+    sqlMap.update("updateAccountViaInlineParameters", changed);
+
+    // older than the half of the flush interval, served at once and reloaded in the background
+    Thread.sleep(350);
+    Account old = sqlMap.queryForObject("getRefreshedAccountViaColumnName", 1);
+    assertSame(account, old);
+    assertEquals(email, old.getEmailAddress());
+    waitFor(cm, 1, 0);
+
+    Account refreshed = sqlMap.queryForObject("getRefreshedAccountViaColumnName", 1);
+    assertEquals("refreshed@ibatis.com", refreshed.getEmailAddress());
+    assertEquals(0, cm.getStaleServes());
+  }
+
+  public void testReloadedByTheParameterOfTheRequest() throws Exception {
+    CacheModel cm = ((SqlMapClientImpl) sqlMap).getDelegate().findCacheModel("refresh-account-cache");
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("id", 1);
+    Account account = sqlMap.queryForObject("getRefreshedAccountViaMap", param);
+    assertEquals(1, account.getId());
+
+    // the refresh threads are busy, so the reload waits in the queue
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<Object> blocking = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        release.await();
+        return "v";
+      }
+    };
+    CacheModel busy = new CacheModel();
+    busy.setId("CacheRefreshAheadTest#busy");
+    busy.setCacheController(new LruCacheController());
+    busy.setFlushInterval(10000);
+    busy.setRefreshAhead(0.01);
+    int threads = Runtime.getRuntime().availableProcessors() + 2;
+    for (int i = 0; i < threads; i++) {
+      busy.putObject("k" + i, "v");
+    }
+    Thread.sleep(350);
+    try {
+      for (int i = 0; i < threads; i++) {
+        assertEquals("v", busy.getObject("k" + i, blocking));
+      }
+      assertSame(account, sqlMap.queryForObject("getRefreshedAccountViaMap", param));
+      // the parameter is reused after the reload is requested
+      param.put("id", 2);
+    } finally {
+      release.countDown();
+    }
+    waitFor(cm, 1, 0);
+
+    param.put("id", 1);
+    assertEquals(1, sqlMap.<Account> queryForObject("getRefreshedAccountViaMap", param).getId());
+  }
+
+  public void testStaleServedWhileReloadFails() throws Exception {
+    CacheModel cm = new CacheModel();
+    cm.setId("CacheRefreshAheadTest#stale");
+    cm.setCacheController(new LruCacheController());
+    cm.setFlushInterval(200);
+    cm.setRefreshAhead(0.5);
+    cm.setStaleGrace(400);
+    Callable<Object> failing = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        throw new IllegalStateException("database is down");
+      }
+    };
+
+    cm.putObject("k", "v");
+    assertEquals("v", cm.getObject("k", failing));
+    assertEquals(0, cm.getRefreshFailures());
+
+    // expired, but the stale object is served in the grace
+    Thread.sleep(250);
+    assertNull(cm.getObject("k"));
+    assertEquals("v", cm.getObject("k", failing));
+    assertEquals(1, cm.getStaleServes());
+    waitFor(cm, 0, 1);
+    assertEquals("v", cm.getObject("k", failing));
+    assertEquals(2, cm.getStaleServes());
+    waitFor(cm, 0, 2);
+
+    // out of the grace
+    Thread.sleep(400);
+    assertNull(cm.getObject("k", failing));
+    assertEquals(2, cm.getStaleServes());
+  }
+}
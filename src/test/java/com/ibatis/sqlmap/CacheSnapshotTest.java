@@ -0,0 +1,105 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import org.ibatis.client.SqlMapClient;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.CacheSnapshot;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+
+import testdomain.Account;
+
+public class CacheSnapshotTest extends BaseSqlMapTest {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("ibatis-cache", ".snapshot");
+    file.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  private SqlMapClient init() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(CacheSnapshot.PROP_FILE, file.getPath());
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+    return sqlMap;
+  }
+
+  private static SqlMapExecutorDelegate delegate(SqlMapClient client) {
+    return ((SqlMapClientImpl) client).getDelegate();
+  }
+
+  public void testRestoredAfterRestart() throws Exception {
+    SqlMapClient first = init();
+    List<Account> list = first.queryForList("getCachedAccountsViaResultMap");
+    delegate(first).saveCacheSnapshot();
+    assertTrue(file.isFile());
+
+    SqlMapClient second = init();
+    CacheModel cm = delegate(second).findCacheModel("account-cache");
+    List<Account> restored = second.queryForList("getCachedAccountsViaResultMap");
+    assertEquals(1, cm.getHits());
+    assertNotSame(list, restored);
+    assertEquals(list.size(), restored.size());
+    assertEquals(list.get(1).getEmailAddress(), restored.get(1).getEmailAddress());
+
+    // a flush before the restart is kept by the flush interval of the restored cache
+    assertTrue(cm.getLastFlush() <= delegate(first).findCacheModel("account-cache").getLastFlush());
+  }
+
+  public void testChangedConfigurationIgnored() throws Exception {
+    SqlMapClient client = init();
+    client.queryForList("getCachedAccountsViaResultMap");
+    SqlMapExecutorDelegate delegate = delegate(client);
+    delegate.saveCacheSnapshot();
+
+    CacheModel cm = delegate.findCacheModel("account-cache");
+    String id = cm.getId();
+    cm.flush();
+    CacheSnapshot other = new CacheSnapshot(file, "changed", 0);
+    assertEquals(0, other.restore(new CacheModel()));
+
+    cm = new CacheModel();
+    cm.setId(id);
+    cm.setCacheController(delegate.newCacheController("LRU"));
+    cm.setFlushInterval(24 * 3600 * 1000L);
+    CacheSnapshot same = new CacheSnapshot(file, delegate.getState().getSqlMapKey(), 0);
+    assertEquals(1, same.restore(cm));
+    // restored once
+    assertEquals(0, same.restore(cm));
+
+    // the cache model is changed
+    cm = new CacheModel();
+    cm.setId(id);
+    cm.setCacheController(delegate.newCacheController("FIFO"));
+    cm.setFlushInterval(24 * 3600 * 1000L);
+    same = new CacheSnapshot(file, delegate.getState().getSqlMapKey(), 0);
+    assertEquals(0, same.restore(cm));
+  }
+}
@@ -17,12 +17,14 @@ package com.ibatis.sqlmap;
 
 import com.ibatis.sqlmap.client.SqlMapSession;
 import com.ibatis.sqlmap.engine.cache.CacheKey;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
 import testdomain.Account;
 
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.ibatis.client.SqlMapClient;
 
@@ -238,6 +240,35 @@ public class CacheStatementTest extends BaseSqlMapTest {
 
   }
 
+  public void testFingerprintCacheKeys() throws Exception {
+    for (String kind : new String[] { "true", "verify" }) {
+      Properties props = new Properties();
+      props.setProperty(SqlMapExecutorDelegate.PROP_CACHE_KEY, kind);
+      initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+      initScript("scripts/account-init.sql");
+
+      Account clinton = new Account();
+      clinton.setFirstName("Clinton");
+      List list = sqlMap.queryForList("complexDynamicStatement", clinton);
+      assertEquals(1, list.size());
+      Account same = new Account();
+      same.setFirstName(new String("Clinton"));
+      assertSame(kind, list, sqlMap.queryForList("complexDynamicStatement", same));
+
+      Account jim = new Account();
+      jim.setFirstName("Jim");
+      List other = sqlMap.queryForList("complexDynamicStatement", jim);
+      assertNotSame(kind, list, other);
+      assertEquals("Jim", ((Account) other.get(0)).getFirstName());
+
+      // another sql of the same statement
+      clinton.setEmailAddress("clinton.begin@ibatis.com");
+      other = sqlMap.queryForList("complexDynamicStatement", clinton);
+      assertNotSame(kind, list, other);
+      assertEquals(1, other.size());
+    }
+  }
+
   public void testCacheKeyWithSameHashcode() {
     CacheKey key1 = new CacheKey();
     CacheKey key2 = new CacheKey();
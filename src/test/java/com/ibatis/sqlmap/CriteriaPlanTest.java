@@ -0,0 +1,227 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ibatis.client.SqlMapClient;
+import org.ibatis.persist.criteria.CriteriaBuilder;
+import org.ibatis.persist.criteria.CriteriaQuery;
+import org.ibatis.persist.criteria.Predicate;
+import org.ibatis.persist.criteria.Root;
+import org.ibatis.persist.impl.CriteriaQueryImpl;
+import org.ibatis.persist.impl.EntityManager;
+import org.ibatis.persist.impl.path.RootImpl;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+
+import testdomain.AccountEntity;
+
+public class CriteriaPlanTest extends BaseSqlMapTest {
+
+  private static SqlMapClient init(String plans) throws Exception {
+    Properties props = new Properties();
+    if (plans != null) {
+      props.setProperty(EntityManager.PROP_CRITERIA_PLANS, plans);
+    }
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+    return sqlMap;
+  }
+
+  private static EntityManager entityManager(SqlMapClient client) {
+    return ((SqlMapClientImpl) client).getDelegate().getEntityManager();
+  }
+
+  /**
+   * The getter proxy of r.$() needs cglib, so the attributes are located by name.
+   */
+  private static CriteriaQuery<AccountEntity> query(SqlMapClient client, int minId, String name, boolean asc) {
+    CriteriaBuilder cb = client.getCriteriaBuilder();
+    CriteriaQuery<AccountEntity> cq = cb.createQuery(AccountEntity.class);
+    RootImpl<AccountEntity> r = (RootImpl<AccountEntity>) cq.from(AccountEntity.class);
+    cq.where(cb.and(cb.gt(r.<Integer> getAttr("id"), minId), cb.like(r.<String> getAttr("firstName"), name + "%")));
+    cq.orderBy(asc ? cb.asc(r.getAttr("id")) : cb.desc(r.getAttr("id")));
+    return cq;
+  }
+
+  /**
+   * The query of k conditions is a shape of its own, as an IN list of k values.
+   */
+  private static String sqlOfShape(SqlMapClient client, int k) {
+    CriteriaBuilder cb = client.getCriteriaBuilder();
+    CriteriaQuery<AccountEntity> cq = cb.createQuery(AccountEntity.class);
+    RootImpl<AccountEntity> r = (RootImpl<AccountEntity>) cq.from(AccountEntity.class);
+    Predicate[] conditions = new Predicate[k];
+    for (int i = 0; i < k; i++) {
+      conditions[i] = cb.gt(r.<Integer> getAttr("id"), i);
+    }
+    cq.where(cb.and(conditions));
+    return ((CriteriaQueryImpl<?>) cq).getSql();
+  }
+
+  public void testLeastRecentlyUsedPlanIsEvicted() throws Exception {
+    SqlMapClient client = init(null);
+    EntityManager em = entityManager(client);
+    String[] sqls = new String[258];
+    for (int k = 1; k <= 256; k++) {
+      sqls[k] = sqlOfShape(client, k);
+    }
+    assertEquals(256, em.getCriteriaPlanCount());
+    // the first shape is used again, so the second is the least recently used
+    assertSame(sqls[1], sqlOfShape(client, 1));
+
+    sqls[257] = sqlOfShape(client, 257);
+    assertEquals(256, em.getCriteriaPlanCount());
+    assertSame(sqls[257], sqlOfShape(client, 257));
+    assertSame(sqls[1], sqlOfShape(client, 1));
+    String second = sqlOfShape(client, 2);
+    assertEquals(sqls[2], second);
+    assertNotSame(sqls[2], second);
+    assertEquals(256, em.getCriteriaPlanCount());
+  }
+
+  public void testPlansAreShared() throws Exception {
+    SqlMapClient client = init(null);
+    EntityManager em = entityManager(client);
+    SqlMapExecutorDelegate delegate = em.getDelegate();
+    assertEquals(0, em.getCriteriaPlanCount());
+
+    CriteriaQueryImpl<?> first = (CriteriaQueryImpl<?>) query(client, 0, "C", true);
+    CriteriaQueryImpl<?> second = (CriteriaQueryImpl<?>) query(client, 2, "J", true);
+    assertSame(first.getSql(), second.getSql());
+    assertSame(first.makeParameterMap(delegate), second.makeParameterMap(delegate));
+    assertSame(first.makeResultMap(delegate), second.makeResultMap(delegate));
+    assertEquals(1, em.getCriteriaPlanCount());
+    // the values are bound by the query itself
+    assertEquals(0, first.getParameterInfos()[0].getParameterValue());
+    assertEquals(2, second.getParameterInfos()[0].getParameterValue());
+    assertEquals("J%", second.getParameterInfos()[1].getParameterValue());
+
+    CriteriaQueryImpl<?> desc = (CriteriaQueryImpl<?>) query(client, 0, "C", false);
+    assertFalse(first.getSql().equals(desc.getSql()));
+    assertEquals(2, em.getCriteriaPlanCount());
+  }
+
+  public void testQueriesByPlans() throws Exception {
+    SqlMapClient client = init(null);
+    List<AccountEntity> list = client.executeQuery(query(client, 0, "Clinton", true));
+    assertEquals(1, list.size());
+    assertEquals("clinton.begin@ibatis.com", list.get(0).getEmailAddress());
+
+    list = client.executeQuery(query(client, 1, "", true));
+    assertEquals(4, list.size());
+    assertEquals(2, list.get(0).getId());
+    list = client.executeQuery(query(client, 1, "", false));
+    assertEquals(5, list.get(0).getId());
+    list = client.executeQuery(query(client, 4, "", true));
+    assertEquals(1, list.size());
+    assertEquals(5, list.get(0).getId());
+    assertEquals(2, entityManager(client).getCriteriaPlanCount());
+  }
+
+  /**
+   * The result map of a plan is shared, it is locked only to build the mappings at the first query.
+   */
+  public void testSharedResultMapIsNotLocked() throws Exception {
+    final SqlMapClient client = init(null);
+    assertEquals(4, client.executeQuery(query(client, 1, "", true)).size());
+    CriteriaQueryImpl<?> cq = (CriteriaQueryImpl<?>) query(client, 1, "", true);
+    cq.getSql();
+    final Object resultMap = cq.makeResultMap(entityManager(client).getDelegate());
+
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        synchronized (resultMap) {
+          locked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            // exit
+          }
+        }
+      }
+    };
+    holder.start();
+    locked.await();
+    final AtomicInteger size = new AtomicInteger(-1);
+    Thread query = new Thread() {
+      @Override
+      public void run() {
+        try {
+          size.set(client.executeQuery(query(client, 2, "", true)).size());
+        } catch (Exception e) {
+          size.set(-2);
+        }
+      }
+    };
+    query.start();
+    query.join(5000);
+    boolean finished = !query.isAlive();
+    release.countDown();
+    holder.join();
+    query.join();
+    assertTrue("the query waited for the lock", finished);
+    assertEquals(3, size.get());
+  }
+
+  public void testPlansDisabled() throws Exception {
+    SqlMapClient client = init("0");
+    CriteriaQueryImpl<?> first = (CriteriaQueryImpl<?>) query(client, 0, "C", true);
+    CriteriaQueryImpl<?> second = (CriteriaQueryImpl<?>) query(client, 2, "J", true);
+    assertEquals(first.getSql(), second.getSql());
+    assertNotSame(first.getSql(), second.getSql());
+    assertEquals(0, entityManager(client).getCriteriaPlanCount());
+    assertEquals(4, client.executeQuery(query(client, 1, "", true)).size());
+  }
+
+  private static long prepare(SqlMapClient client, int n) {
+    SqlMapExecutorDelegate delegate = entityManager(client).getDelegate();
+    long start = System.nanoTime();
+    for (int i = 0; i < n; i++) {
+      CriteriaQueryImpl<?> cq = (CriteriaQueryImpl<?>) query(client, i, "C", true);
+      cq.getSql();
+      cq.makeParameterMap(delegate);
+      cq.makeResultMap(delegate);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Compares the cost of preparing the same shape of query with and without the plans.
+   */
+  public void testBenchmark() throws Exception {
+    final int n = 20000;
+    SqlMapClient planned = init(null);
+    SqlMapClient rendered = init("0");
+    long withPlans = Long.MAX_VALUE;
+    long withoutPlans = Long.MAX_VALUE;
+    for (int round = 0; round < 3; round++) {
+      withPlans = Math.min(withPlans, prepare(planned, n));
+      withoutPlans = Math.min(withoutPlans, prepare(rendered, n));
+    }
+    System.out.println("prepare a criteria query: " + withoutPlans / n + " ns rendered, " + withPlans / n
+        + " ns by the plan");
+  }
+
+}
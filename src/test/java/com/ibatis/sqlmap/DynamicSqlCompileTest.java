@@ -0,0 +1,204 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import com.ibatis.sqlmap.client.SqlMapClient;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMapping;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.DynamicSql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.CompiledConditions;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import testdomain.Account;
+
+public class DynamicSqlCompileTest extends BaseSqlMapTest {
+
+  private static final String[] NAMES = { null, "", "Clinton", "Jim", "clinton", "x@ibatis.com" };
+
+  private SqlMapClient interpreted;
+  private SqlMapClient compiled;
+  private SqlMapClient planned;
+
+  @Override
+  protected void setUp() throws Exception {
+    interpreted = init("false", "0");
+    planned = init("true", "64");
+    compiled = init("true", "0");
+    initScript("scripts/account-init.sql");
+  }
+
+  private static SqlMapClient init(String compile, String plans) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(DynamicSql.PROP_COMPILE, compile);
+    props.setProperty(DynamicSql.PROP_PLANS, plans);
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    return sqlMap;
+  }
+
+  private static MappedStatement statement(SqlMapClient client, String id) {
+    return ((SqlMapClientImpl) client).getDelegate().getMappedStatement(id);
+  }
+
+  /**
+   * Render the sql and the parameter properties of the statement as an execution does.
+   */
+  private static String render(SqlMapClient client, String id, Object param) {
+    MappedStatement ms = statement(client, id);
+    StatementScope scope = new StatementScope(new SessionScope());
+    scope.setStatement(ms);
+    Sql sql = ms.getSql();
+    try {
+      StringBuilder buf = new StringBuilder(sql.getSql(scope, param));
+      ParameterMap map = sql.getParameterMap(scope, param);
+      for (ParameterMapping pm : map.getParameterMappings()) {
+        buf.append(" | ").append(pm.getPropertyName());
+      }
+      return buf.toString();
+    } finally {
+      sql.cleanup(scope);
+    }
+  }
+
+  private void assertSameRendering(String id, Object param) {
+    String expected = render(interpreted, id, param);
+    assertEquals(String.valueOf(param), expected, render(compiled, id, param));
+    assertEquals(String.valueOf(param), expected, render(planned, id, param));
+  }
+
+  private static <T> T pick(Random random, T[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  private static Account randomAccount(Random random) {
+    Account account = new Account();
+    account.setId(random.nextInt(7) - 1);
+    account.setFirstName(pick(random, NAMES));
+    account.setLastName(pick(random, NAMES));
+    account.setEmailAddress(pick(random, NAMES));
+    account.setAge(random.nextInt(3));
+    if (random.nextBoolean()) {
+      int[] ids = new int[random.nextInt(4)];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = random.nextInt(5) + 1;
+      }
+      account.setIds(ids);
+    }
+    return account;
+  }
+
+  private static Map<String, Object> randomSearch(Random random) {
+    Map<String, Object> map = new HashMap<String, Object>();
+    String[] strings = { "firstName", "firstNameLike", "lastName", "lastNameLike", "email", "banner" };
+    for (String key : strings) {
+      if (random.nextBoolean()) {
+        map.put(key, pick(random, NAMES));
+      }
+    }
+    String[] ints = { "id", "minId", "maxId", "age", "cart" };
+    for (String key : ints) {
+      if (random.nextBoolean()) {
+        map.put(key, random.nextInt(3) == 0 ? null : Integer.valueOf(random.nextInt(5)));
+      }
+    }
+    if (random.nextBoolean()) {
+      map.put("minAge", pick(random, new Object[] { null, -1, 0, 2, "0", "5" }));
+    }
+    if (random.nextBoolean()) {
+      map.put("noEmail", pick(random, new Object[] { null, Boolean.TRUE, Boolean.FALSE, "true", "no" }));
+    }
+    if (random.nextBoolean()) {
+      map.put("addedAfter", random.nextBoolean() ? null : new Date(0));
+    }
+    if (random.nextBoolean()) {
+      List<Integer> ids = new ArrayList<Integer>();
+      for (int i = random.nextInt(4); i > 0; i--) {
+        ids.add(random.nextInt(5) + 1);
+      }
+      map.put("ids", ids);
+    }
+    return map;
+  }
+
+  public void testConditionsAreCompiled() {
+    DynamicSql search = (DynamicSql) statement(compiled, "dynamicSearch").getSql();
+    CompiledConditions conditions = search.getCompiledConditions(new HashMap<String, Object>());
+    assertNotNull(conditions);
+    assertEquals(HashMap.class, conditions.getParameterClass());
+    assertEquals(15, conditions.getCompiledCount());
+
+    DynamicSql example = (DynamicSql) statement(compiled, "complexDynamicQueryByExample").getSql();
+    conditions = example.getCompiledConditions(new Account());
+    // the property available tags are interpreted
+    assertEquals(7, conditions.getCompiledCount());
+    // one loader for all the statements
+    DynamicSql example2 = (DynamicSql) statement(compiled, "dynamicQueryByExample").getSql();
+    CompiledConditions conditions2 = example2.getCompiledConditions(new Account());
+    assertNotSame(conditions.getClass(), conditions2.getClass());
+    assertSame(conditions.getClass().getClassLoader(), conditions2.getClass().getClassLoader());
+
+    // the conditions inside an iterate are interpreted
+    DynamicSql iterate = (DynamicSql) statement(compiled, "dynamicQueryByExample2").getSql();
+    assertNull(iterate.getCompiledConditions(new Account()));
+    // and remembered as interpreted
+    assertNull(iterate.getCompiledConditions(new Account()));
+    assertNull(((DynamicSql) statement(interpreted, "dynamicSearch").getSql())
+        .getCompiledConditions(new HashMap<String, Object>()));
+  }
+
+  /**
+   * Runs the compiled and the interpreted conditions over the randomized parameters.
+   */
+  public void testCompiledRendersAsInterpreted() {
+    Random random = new Random(20261019L);
+    for (int i = 0; i < 500; i++) {
+      assertSameRendering("dynamicSearch", randomSearch(random));
+      Account account = randomAccount(random);
+      assertSameRendering("dynamicQueryByExample", account);
+      assertSameRendering("complexDynamicQueryByExample", account);
+    }
+  }
+
+  public void testCompiledQueries() throws SQLException {
+    Map<String, Object> search = new HashMap<String, Object>();
+    search.put("firstName", "Clinton");
+    search.put("minAge", "0");
+    search.put("ids", Arrays.asList(1, 2));
+    List<?> list = compiled.queryForList("dynamicSearch", search);
+    assertEquals(1, list.size());
+    assertEquals(1, ((Account) list.get(0)).getId());
+
+    Account example = new Account();
+    example.setEmailAddress("clinton");
+    list = compiled.queryForList("dynamicQueryByExample", example);
+    assertEquals(1, list.size());
+    assertEquals("Clinton", ((Account) list.get(0)).getFirstName());
+  }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.parameter.ParameterMap;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.DynamicSql;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import testdomain.Account;
+
+public class DynamicSqlPlanTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static Map<String, Object> search(Object... keyValues) {
+    Map<String, Object> map = new HashMap<String, Object>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      map.put((String) keyValues[i], keyValues[i + 1]);
+    }
+    return map;
+  }
+
+  /**
+   * Render the sql and the parameter map of the statement as an execution does.
+   */
+  private Object[] render(String id, Object param) {
+    MappedStatement ms = ((SqlMapClientImpl) sqlMap).getDelegate().getMappedStatement(id);
+    StatementScope scope = new StatementScope(new SessionScope());
+    scope.setStatement(ms);
+    Sql sql = ms.getSql();
+    try {
+      return new Object[] { sql.getSql(scope, param), sql.getParameterMap(scope, param) };
+    } finally {
+      sql.cleanup(scope);
+    }
+  }
+
+  private static int ids(List<?> list) {
+    int ids = 0;
+    for (Object o : list) {
+      ids = ids * 10 + ((Account) o).getId();
+    }
+    return ids;
+  }
+
+  public void testSameShapeReusesThePlan() throws SQLException {
+    Object[] first = render("dynamicSearch", search("firstName", "Clinton", "minAge", 0));
+    Object[] second = render("dynamicSearch", search("firstName", "Jim", "minAge", -1));
+    assertEquals(first[0], second[0]);
+    assertNotSame(first[1], second[1]);
+    // the first one renders the plan, the later ones share its parameter map
+    Object[] third = render("dynamicSearch", search("firstName", "Elizabeth"));
+    assertSame(second[1], third[1]);
+    assertEquals(1, ((ParameterMap) third[1]).getParameterCount());
+
+    Object[] other = render("dynamicSearch", search("lastName", "Begin"));
+    assertFalse(first[0].equals(other[0]));
+    assertEquals(3, ids(sqlMap.queryForList("dynamicSearch", search("firstName", "Elizabeth"))));
+    assertEquals(1, ids(sqlMap.queryForList("dynamicSearch", search("firstName", "Clinton"))));
+  }
+
+  public void testIterateLengthIsPartOfTheShape() throws SQLException {
+    assertEquals(12, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(1, 2)))));
+    assertEquals(34, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(4, 3)))));
+    assertEquals(235, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(5, 2, 3)))));
+    assertEquals(14, ids(sqlMap.queryForList("dynamicSearch", search("ids", new int[] { 1, 4 }))));
+    assertEquals(4, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(4), "minId", 2))));
+    assertEquals(0, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(1), "minId", 2))));
+  }
+
+  public void testIteratorIsNotPlanned() throws SQLException {
+    for (int i = 0; i < 2; i++) {
+      assertEquals(12, ids(sqlMap.queryForList("dynamicSearch", search("ids", Arrays.asList(1, 2).iterator()))));
+      assertEquals(35, ids(sqlMap.queryForList("dynamicSearch",
+          search("ids", new TreeSet<Integer>(Arrays.asList(5, 3))))));
+    }
+  }
+
+  private long renderLoop(int count) {
+    Map<String, Object> param = search("id", 1, "minId", 0, "maxId", 10, "ids", Arrays.asList(1, 2, 3, 4, 5),
+        "firstName", "Clinton", "lastNameLike", "Be", "minAge", 1, "banner", "Aye", "cart", 200);
+    long time = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      param.put("id", i);
+      render("dynamicSearch", param);
+    }
+    return System.nanoTime() - time;
+  }
+
+  /**
+   * Render the 15 conditions search with the plans and without them.
+   */
+  public void testRenderBenchmark() throws Exception {
+    renderLoop(2000);
+    long planned = renderLoop(20000);
+    assertEquals(1, ids(sqlMap.queryForList("dynamicSearch", search("firstName", "Clinton", "lastNameLike", "Be",
+        "ids", Arrays.asList(1, 2), "banner", "Aye"))));
+
+    Properties props = new Properties();
+    props.setProperty(DynamicSql.PROP_PLANS, "0");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    renderLoop(2000);
+    long rendered = renderLoop(20000);
+    System.out.println("Render the 15 conditions search 20000 times: with plans " + planned / 1000000
+        + "ms, without plans " + rendered / 1000000 + "ms");
+  }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.ibatis.persist.criteria.CriteriaBuilder;
+import org.ibatis.persist.criteria.CriteriaUpdate;
+import org.ibatis.persist.impl.EntityManager;
+import org.ibatis.persist.impl.path.RootImpl;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+
+import testdomain.AccountEntity;
+
+public class EntityDirtyCheckTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(EntityManager.PROP_DIRTY_CHECK, "true");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static CacheModel entityCache() {
+    String id = sqlMap.initEntityClass(AccountEntity.class).getEntityCacheModelId();
+    return ((SqlMapClientImpl) sqlMap).getDelegate().findCacheModel(id);
+  }
+
+  private static AccountEntity load(int id) throws Exception {
+    entityCache().flush();
+    return sqlMap.findEntity(AccountEntity.class, id);
+  }
+
+  /**
+   * Change the last name behind the managed entity, the dirty update must not write it back.
+   */
+  private static void setLastName(int id, String lastName) {
+    CriteriaBuilder cb = sqlMap.getCriteriaBuilder();
+    CriteriaUpdate<AccountEntity> cu = cb.createCriteriaUpdate(AccountEntity.class);
+    RootImpl<AccountEntity> r = (RootImpl<AccountEntity>) cu.from(AccountEntity.class);
+    cu.set(r.<String> getAttr("lastName"), lastName);
+    cu.where(cb.equal(r.getAttr("id"), id));
+    assertEquals(1, sqlMap.executeUpdate(cu));
+  }
+
+  public void testChangedAttributesWrittenOnCommit() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      AccountEntity account = sqlMap.findEntity(AccountEntity.class, 1);
+      setLastName(1, "Changed");
+      account.setFirstName("Fred");
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    AccountEntity account = load(1);
+    assertEquals("Fred", account.getFirstName());
+    assertEquals("Changed", account.getLastName());
+    assertEquals("clinton.begin@ibatis.com", account.getEmailAddress());
+  }
+
+  public void testUpdatesGroupedByChangedAttributes() throws Exception {
+    String fifth = load(5).getFirstName();
+    sqlMap.startTransaction();
+    try {
+      List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, Arrays.asList(1, 2, 3, 4, 5));
+      list.get(0).setFirstName("A");
+      list.get(1).setEmailAddress(null);
+      list.get(2).setFirstName("C");
+      list.get(3).setFirstName("D");
+      list.get(3).setEmailAddress("d@ibatis.com");
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertEquals("A", load(1).getFirstName());
+    assertNull(load(2).getEmailAddress());
+    assertEquals("C", load(3).getFirstName());
+    assertEquals("D", load(4).getFirstName());
+    assertEquals("d@ibatis.com", load(4).getEmailAddress());
+    assertEquals(fifth, load(5).getFirstName());
+  }
+
+  public void testCleanEntitiesNotWritten() throws Exception {
+    CacheModel cache = entityCache();
+    sqlMap.startTransaction();
+    try {
+      AccountEntity account = sqlMap.findEntity(AccountEntity.class, 1);
+      sqlMap.findEntity(AccountEntity.class, 2);
+      long flushs = cache.getFlushs();
+      // nothing changed, nothing written
+      assertEquals(0, sqlMap.updateEntity(AccountEntity.class, account));
+      assertSame(account, sqlMap.findEntity(AccountEntity.class, 1));
+      sqlMap.commitTransaction();
+      assertEquals(flushs, cache.getFlushs());
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testUpdateEntityWritesChangedAttributes() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      AccountEntity account = sqlMap.findEntity(AccountEntity.class, 2);
+      setLastName(2, "Changed");
+      // a copy of the managed entity is checked by the same snapshot
+      AccountEntity copy = new AccountEntity(2, "Barney", account.getLastName(), account.getEmailAddress());
+      assertEquals(1, sqlMap.updateEntity(AccountEntity.class, copy));
+      assertSame(copy, sqlMap.findEntity(AccountEntity.class, 2));
+      // written already, the commit has nothing to write
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    AccountEntity account = load(2);
+    assertEquals("Barney", account.getFirstName());
+    assertEquals("Changed", account.getLastName());
+  }
+}
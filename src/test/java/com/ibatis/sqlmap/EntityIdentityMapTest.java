@@ -0,0 +1,159 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.ibatis.persist.impl.EntityManager;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+
+import testdomain.AccountEmail;
+import testdomain.AccountEntity;
+
+public class EntityIdentityMapTest extends BaseSqlMapTest {
+
+  private static void init(String mode) throws Exception {
+    Properties props = new Properties();
+    if (mode != null) {
+      props.setProperty(EntityManager.PROP_IDENTITY_MAP, mode);
+    }
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static CacheModel entityCache() {
+    String id = sqlMap.initEntityClass(AccountEntity.class).getEntityCacheModelId();
+    return ((SqlMapClientImpl) sqlMap).getDelegate().findCacheModel(id);
+  }
+
+  public void testDisabledByDefault() throws Exception {
+    init(null);
+    sqlMap.startTransaction();
+    try {
+      AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+      entityCache().flush();
+      assertNotSame(first, sqlMap.findEntity(AccountEntity.class, 1));
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testSameInstanceInTransaction() throws Exception {
+    init("true");
+    sqlMap.startTransaction();
+    try {
+      AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+      assertEquals("Clinton", first.getFirstName());
+      assertSame(first, sqlMap.findEntity(AccountEntity.class, 1));
+      List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, Arrays.asList(2, 1));
+      assertSame(first, list.get(1));
+      assertSame(list.get(0), sqlMap.findEntity(AccountEntity.class, 2));
+
+      // the flushed entity cache makes the identity stale
+      entityCache().flush();
+      AccountEntity reloaded = sqlMap.findEntity(AccountEntity.class, 1);
+      assertNotSame(first, reloaded);
+      assertSame(reloaded, sqlMap.findEntity(AccountEntity.class, 1));
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testNotCachedEntities() throws Exception {
+    init("true");
+    sqlMap.startTransaction();
+    try {
+      AccountEmail first = sqlMap.findEntity(AccountEmail.class, 1);
+      first.setEmailAddress("changed@ibatis.com");
+      List<AccountEmail> list = sqlMap.findEntities(AccountEmail.class, Arrays.asList(2, 1));
+      // the mapped instance is returned as findEntity does, not reloaded over it
+      assertSame(first, list.get(1));
+      assertEquals("changed@ibatis.com", list.get(1).getEmailAddress());
+      assertSame(first, sqlMap.findEntity(AccountEmail.class, 1));
+      assertSame(list.get(0), sqlMap.findEntity(AccountEmail.class, 2));
+      assertSame(list.get(0), sqlMap.findEntities(AccountEmail.class, Arrays.asList(2)).get(0));
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testIdentityCheckIsNotARequest() throws Exception {
+    init("true");
+    sqlMap.startTransaction();
+    try {
+      AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+      long requests = entityCache().getRequests();
+      assertSame(first, sqlMap.findEntity(AccountEntity.class, 1));
+      assertSame(first, sqlMap.findEntities(AccountEntity.class, Arrays.asList(1)).get(0));
+      assertEquals(requests, entityCache().getRequests());
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testWrittenEntities() throws Exception {
+    init("true");
+    sqlMap.startTransaction();
+    try {
+      sqlMap.findEntity(AccountEntity.class, 2);
+      sqlMap.findEntity(AccountEntity.class, 3);
+      AccountEntity barney = new AccountEntity(2, "Barney", "Rubble", null);
+      assertEquals(1, sqlMap.updateEntity(AccountEntity.class, barney));
+      assertSame(barney, sqlMap.findEntity(AccountEntity.class, 2));
+      assertSame(barney, sqlMap.findEntities(AccountEntity.class, Arrays.asList(2)).get(0));
+
+      assertEquals(1, sqlMap.deleteEntity(AccountEntity.class, 3));
+      assertNull(sqlMap.findEntity(AccountEntity.class, 3));
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    // a new transaction starts with an empty identity map
+    sqlMap.startTransaction();
+    try {
+      AccountEntity found = sqlMap.findEntity(AccountEntity.class, 2);
+      assertEquals("Barney", found.getFirstName());
+      entityCache().flush();
+      assertNotSame(found, sqlMap.findEntity(AccountEntity.class, 2));
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+  public void testDirectMode() throws Exception {
+    init("direct");
+    sqlMap.startTransaction();
+    try {
+      AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+      entityCache().flush();
+      long requests = entityCache().getRequests();
+      assertSame(first, sqlMap.findEntity(AccountEntity.class, 1));
+      assertSame(first, sqlMap.findEntities(AccountEntity.class, Arrays.asList(1)).get(0));
+      // the hits never probe the entity cache
+      assertEquals(requests, entityCache().getRequests());
+    } finally {
+      sqlMap.endTransaction();
+    }
+    // no identity map out of the transaction
+    AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+    entityCache().flush();
+    assertNotSame(first, sqlMap.findEntity(AccountEntity.class, 1));
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ibatis.persist.meta.EntityType;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+
+import testdomain.AccountEmail;
+import testdomain.AccountEntity;
+import testdomain.AccountName;
+
+public class EntityInitTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  private SqlMapExecutorDelegate delegate() {
+    return ((SqlMapClientImpl) sqlMap).getDelegate();
+  }
+
+  public void testEntityStatements() throws SQLException {
+    EntityType<AccountEntity> type = sqlMap.initEntityClass(AccountEntity.class);
+    assertFalse(type.isFailed());
+    MappedStatement find = delegate().getMappedStatement(type.getFindStatementId());
+    assertEquals(AccountEntity.class, find.getResultMap().getResultClass());
+    MappedStatement update = delegate().getMappedStatement(type.getUpdateStatementId());
+    assertEquals("ibatis-entity/" + AccountEntity.class.getName() + ".xml", update.getResource());
+
+    AccountEntity account = sqlMap.findEntity(AccountEntity.class, 1);
+    assertEquals("Clinton", account.getFirstName());
+    sqlMap.insertEntity(AccountEntity.class, new AccountEntity(10, "Fred", "Flintstone", "fred@flintstone.com"));
+    sqlMap.updateEntity(AccountEntity.class, new AccountEntity(10, "Barney", "Rubble", null));
+    assertEquals("Barney", sqlMap.findEntity(AccountEntity.class, 10).getFirstName());
+    assertEquals(1, sqlMap.deleteEntity(AccountEntity.class, 10));
+    assertEquals(0, sqlMap.deleteEntity(AccountEntity.class, 10));
+  }
+
+  public void testCacheRootFlushesEntityCache() throws SQLException {
+    sqlMap.initEntityClass(AccountEntity.class);
+    EntityType<AccountName> type = sqlMap.initEntityClass(AccountName.class);
+    CacheModel cache = delegate().findCacheModel(type.getEntityCacheModelId());
+    assertTrue(cache.getFlushTriggerEntityClasses().contains(AccountEntity.class));
+
+    sqlMap.findEntity(AccountName.class, 1);
+    sqlMap.findEntity(AccountName.class, 1);
+    assertEquals(1, cache.getHits());
+
+    sqlMap.flushEntityCache(AccountEntity.class);
+    assertEquals("Clinton", sqlMap.findEntity(AccountName.class, 1).getFirstName());
+    assertEquals(1, cache.getHits());
+  }
+
+  public void testCacheRootInitializedLater() throws SQLException {
+    EntityType<AccountName> type = sqlMap.initEntityClass(AccountName.class);
+    sqlMap.initEntityClass(AccountEntity.class);
+    CacheModel cache = delegate().findCacheModel(type.getEntityCacheModelId());
+    // the memory caches of the same id are shared by the sqlMaps of the tests
+    cache.flush();
+
+    sqlMap.findEntity(AccountName.class, 1);
+    sqlMap.flushEntityCache(AccountEntity.class);
+    sqlMap.findEntity(AccountName.class, 1);
+    assertEquals(0, cache.getHits());
+    cache.flush();
+  }
+
+  /**
+   * The threads initialize the same entity classes at once, each class is built once and the different classes do
+   * not wait for each other.
+   */
+  public void testParallelInit() throws Exception {
+    final Class<?>[] classes = { AccountEntity.class, AccountName.class, AccountEmail.class };
+    ExecutorService pool = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<EntityType<?>>> futures = new ArrayList<Future<EntityType<?>>>();
+      long time = System.nanoTime();
+      for (int i = 0; i < 12; i++) {
+        final Class<?> cls = classes[i % classes.length];
+        futures.add(pool.submit(new Callable<EntityType<?>>() {
+          public EntityType<?> call() throws Exception {
+            return sqlMap.initEntityClass(cls);
+          }
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        EntityType<?> type = futures.get(i).get();
+        assertFalse(type.isFailed());
+        assertSame(sqlMap.initEntityClass(classes[i % classes.length]), type);
+        // each builder has an error context of its own
+        assertEquals("ibatis-entity/" + classes[i % classes.length].getName() + ".xml",
+            delegate().getMappedStatement(type.getUpdateStatementId()).getResource());
+        if (type.isCacheable()) {
+          assertEquals("ibatis-entity/" + classes[i % classes.length].getName() + ".xml",
+              delegate().findCacheModel(type.getEntityCacheModelId()).getResource());
+        }
+      }
+      System.out.println("Init " + classes.length + " entity classes in parallel: " + (System.nanoTime() - time)
+          / 1000 + "us");
+    } finally {
+      pool.shutdown();
+    }
+    AccountEmail email = sqlMap.findEntity(AccountEmail.class, 1);
+    assertEquals("clinton.begin@ibatis.com", email.getEmailAddress());
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+
+import testdomain.AccountEntity;
+
+public class FindEntitiesTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+  }
+
+  private CacheModel entityCache() {
+    String id = sqlMap.initEntityClass(AccountEntity.class).getEntityCacheModelId();
+    return ((SqlMapClientImpl) sqlMap).getDelegate().findCacheModel(id);
+  }
+
+  private static List<String> firstNames(List<AccountEntity> list) {
+    List<String> names = new ArrayList<String>();
+    for (AccountEntity e : list) {
+      names.add(e == null ? null : e.getFirstName());
+    }
+    return names;
+  }
+
+  public void testFindEntitiesInOrderOfKeys() throws SQLException {
+    List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, Arrays.asList(3, 1, 99, 3, 2));
+    assertEquals(Arrays.asList("Elizabeth", "Clinton", null, "Elizabeth", "Jim"), firstNames(list));
+    assertSame(list.get(0), list.get(3));
+
+    assertTrue(sqlMap.findEntities(AccountEntity.class, Collections.<Integer>emptyList()).isEmpty());
+  }
+
+  public void testFindEntitiesShareTheEntityCache() throws SQLException {
+    CacheModel cache = entityCache();
+    AccountEntity first = sqlMap.findEntity(AccountEntity.class, 1);
+    assertEquals(1, cache.getRequests());
+
+    List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, Arrays.asList(1, 2, 99));
+    assertSame(first, list.get(0));
+    assertNull(list.get(2));
+    assertEquals(4, cache.getRequests());
+    assertEquals(1, cache.getHits());
+
+    // the loaded and the missed ones are cached for findEntity
+    assertSame(list.get(1), sqlMap.findEntity(AccountEntity.class, 2));
+    assertNull(sqlMap.findEntity(AccountEntity.class, 99));
+    assertEquals(3, cache.getHits());
+  }
+
+  public void testFindEntitiesFlushedByUpdate() throws SQLException {
+    sqlMap.findEntities(AccountEntity.class, Arrays.asList(1, 2));
+    sqlMap.updateEntity(AccountEntity.class, new AccountEntity(2, "Barney", "Rubble", null));
+    List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, Arrays.asList(1, 2));
+    assertEquals(Arrays.asList("Clinton", "Barney"), firstNames(list));
+  }
+
+  /**
+   * 500 ids with 90% of them in the entity cache: one cache pass and one IN query for the misses, instead of 500
+   * probes and 50 single row queries.
+   */
+  public void testFindEntitiesBenchmark() throws SQLException {
+    sqlMap.startTransaction();
+    try {
+      sqlMap.startBatch();
+      for (int i = 100; i < 600; i++) {
+        sqlMap.insertEntity(AccountEntity.class, new AccountEntity(i, "First" + i, "Last" + i, null));
+      }
+      sqlMap.executeBatch();
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+
+    List<Integer> ids = new ArrayList<Integer>();
+    for (int i = 100; i < 600; i++) {
+      ids.add(i);
+    }
+    Collections.shuffle(ids, new Random(7));
+    sqlMap.findEntities(AccountEntity.class, ids.subList(0, 450));
+
+    CacheModel cache = entityCache();
+    long hits = cache.getHits();
+    long time = System.nanoTime();
+    List<AccountEntity> list = sqlMap.findEntities(AccountEntity.class, ids);
+    long multi = System.nanoTime() - time;
+    assertEquals(450, cache.getHits() - hits);
+    for (int i = 0; i < ids.size(); i++) {
+      assertEquals(ids.get(i).intValue(), list.get(i).getId());
+    }
+
+    cache.flush();
+    sqlMap.findEntities(AccountEntity.class, ids.subList(0, 450));
+    time = System.nanoTime();
+    for (Integer id : ids) {
+      assertNotNull(sqlMap.findEntity(AccountEntity.class, id));
+    }
+    long single = System.nanoTime() - time;
+    System.out.println("findEntities of 500 ids (90% cached): " + multi / 1000 + "us, findEntity one by one: "
+        + single / 1000 + "us");
+  }
+
+}
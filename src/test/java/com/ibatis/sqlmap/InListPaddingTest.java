@@ -0,0 +1,169 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.ibatis.client.SqlMapClient;
+import org.ibatis.client.SqlMapClientBuilder;
+import org.ibatis.persist.criteria.CriteriaBuilder;
+import org.ibatis.persist.criteria.CriteriaQuery;
+import org.ibatis.persist.criteria.Root;
+import org.ibatis.persist.impl.CriteriaQueryImpl;
+import org.ibatis.persist.impl.RenderingContext;
+import org.ibatis.persist.impl.path.RootImpl;
+
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.sql.Sql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.DynamicSql;
+import com.ibatis.sqlmap.engine.mapping.sql.dynamic.elements.IterateContext;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import testdomain.Account;
+import testdomain.AccountEntity;
+
+public class InListPaddingTest extends BaseSqlMapTest {
+
+  private static SqlMapClient init(boolean padding) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(DynamicSql.PROP_IN_PADDING, String.valueOf(padding));
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+    return sqlMap;
+  }
+
+  private static String render(SqlMapClient client, String id, Object param) {
+    MappedStatement ms = ((SqlMapClientImpl) client).getDelegate().getMappedStatement(id);
+    StatementScope scope = new StatementScope(new SessionScope());
+    scope.setStatement(ms);
+    Sql sql = ms.getSql();
+    try {
+      return sql.getSql(scope, param) + " | " + sql.getParameterMap(scope, param).getParameterMappings().length;
+    } finally {
+      sql.cleanup(scope);
+    }
+  }
+
+  private static Map<String, Object> search(int size) {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (int i = 1; i <= size; i++) {
+      ids.add(i);
+    }
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("ids", ids);
+    return map;
+  }
+
+  private static Set<String> distinctSqls(SqlMapClient client) {
+    Set<String> sqls = new HashSet<String>();
+    for (int size = 1; size <= 20; size++) {
+      sqls.add(render(client, "dynamicSearch", search(size)));
+    }
+    return sqls;
+  }
+
+  private static Set<Integer> ids(List<?> accounts) {
+    Set<Integer> ids = new HashSet<Integer>();
+    for (Object o : accounts) {
+      ids.add(o instanceof Account ? ((Account) o).getId() : ((AccountEntity) o).getId());
+    }
+    return ids;
+  }
+
+  public void testPaddedSize() {
+    assertEquals(0, IterateContext.paddedSize(0));
+    assertEquals(1, IterateContext.paddedSize(1));
+    assertEquals(2, IterateContext.paddedSize(2));
+    assertEquals(4, IterateContext.paddedSize(3));
+    assertEquals(8, IterateContext.paddedSize(5));
+    assertEquals(16, IterateContext.paddedSize(16));
+    assertEquals(512, IterateContext.paddedSize(300));
+    assertEquals(1000, IterateContext.paddedSize(600));
+    assertEquals(1500, IterateContext.paddedSize(1500));
+  }
+
+  public void testDistinctSqlsPerStatement() throws Exception {
+    Set<String> unpadded = distinctSqls(init(false));
+    Set<String> padded = distinctSqls(init(true));
+    System.out.println("distinct sqls of dynamicSearch for 1..20 ids: " + unpadded.size() + " unpadded, "
+        + padded.size() + " padded");
+    assertEquals(20, unpadded.size());
+    // 1, 2, 4, 8, 16, 32
+    assertEquals(6, padded.size());
+  }
+
+  public void testPaddedQueries() throws Exception {
+    init(true);
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("ids", Arrays.asList(1, 2, 3));
+    assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)), ids(sqlMap.queryForList("dynamicSearch", map)));
+    map.put("ids", Arrays.asList(1, 2, 3, 4));
+    assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 4)), ids(sqlMap.queryForList("dynamicSearch", map)));
+    map.put("ids", Arrays.asList(5, 2, 3));
+    assertEquals(new HashSet<Integer>(Arrays.asList(2, 3, 5)), ids(sqlMap.queryForList("dynamicSearch", map)));
+    map.put("ids", new int[] { 4, 5, 1 });
+    assertEquals(new HashSet<Integer>(Arrays.asList(1, 4, 5)), ids(sqlMap.queryForList("dynamicSearch", map)));
+  }
+
+  private static CriteriaQuery<AccountEntity> findByIds(SqlMapClient client, Integer... ids) {
+    CriteriaBuilder cb = client.getCriteriaBuilder();
+    CriteriaQuery<AccountEntity> cq = cb.createQuery(AccountEntity.class);
+    Root<AccountEntity> r = cq.from(AccountEntity.class);
+    // the getter proxy of r.$() needs cglib, so the attribute is located by name
+    CriteriaBuilder.In<Integer> in = cb.in(((RootImpl<AccountEntity>) r).<Integer> getAttr("id"));
+    for (Integer id : ids) {
+      in.value(id);
+    }
+    cq.where(in);
+    return cq;
+  }
+
+  public void testPaddedCriteria() throws Exception {
+    init(true);
+    Set<String> sqls = new HashSet<String>();
+    sqls.add(((CriteriaQueryImpl<?>) findByIds(sqlMap, 1, 2, 3)).getSql());
+    sqls.add(((CriteriaQueryImpl<?>) findByIds(sqlMap, 1, 2, 3, 4)).getSql());
+    sqls.add(((CriteriaQueryImpl<?>) findByIds(sqlMap, 5)).getSql());
+    assertEquals(2, sqls.size());
+    assertEquals(new HashSet<Integer>(Arrays.asList(2, 3, 5)), ids(sqlMap.executeQuery(findByIds(sqlMap, 5, 2, 3))));
+  }
+
+  public void testArrayOnPostgresql() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(RenderingContext.PROP_IN_ARRAY, "true");
+    Reader reader = Resources.getResourceAsReader("com/ibatis/sqlmap/maps/SqlMapConfig.xml");
+    SqlMapClient client = SqlMapClientBuilder.buildSqlMapClient(reader, props, "postgresql");
+    reader.close();
+    CriteriaQueryImpl<?> cq = (CriteriaQueryImpl<?>) findByIds(client, 1, 2, 3);
+    assertTrue(cq.getSql(), cq.getSql().contains(" = any(?)"));
+    assertEquals(1, cq.getParameterInfos().length);
+    CriteriaQueryImpl<?> other = (CriteriaQueryImpl<?>) findByIds(client, 1, 2, 3, 4, 5, 6, 7);
+    assertEquals(cq.getSql(), other.getSql());
+  }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.ibatis.client.SqlMapClient;
+import org.ibatis.client.SqlMapClientBuilder;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.impl.SqlMapExecutorDelegate;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+
+import testdomain.Account;
+
+public class LazyStatementTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("sql_map_lazy_statements", "true");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    initScript("scripts/account-init.sql");
+  }
+
+  private static SqlMapExecutorDelegate delegate(SqlMapClient client) {
+    return ((SqlMapClientImpl) client).getDelegate();
+  }
+
+  public void testStatementIsCompiledOnFirstUse() throws Exception {
+    SqlMapExecutorDelegate delegate = delegate(sqlMap);
+    int lazy = delegate.getLazyStatementCount();
+    assertTrue(lazy > 0);
+    assertTrue(delegate.getMappedStatementNames().contains("getAccountViaColumnName"));
+
+    Account account = (Account) sqlMap.queryForObject("getAccountViaColumnName", Integer.valueOf(1));
+    assertEquals("Clinton", account.getFirstName());
+    assertEquals(lazy - 1, delegate.getLazyStatementCount());
+
+    assertEquals(lazy - 1, delegate.compileStatements());
+    assertEquals(0, delegate.getLazyStatementCount());
+  }
+
+  public void testFlushTriggerIsWiredWhenLazy() throws Exception {
+    List<?> first = sqlMap.queryForList("getCachedAccountsViaResultMap", null);
+    assertSame(first, sqlMap.queryForList("getCachedAccountsViaResultMap", null));
+
+    Account account = (Account) first.get(1);
+    account.setEmailAddress("new.clinton@ibatis.com");
+    sqlMap.update("updateAccountViaInlineParameters", account);
+    assertNotSame(first, sqlMap.queryForList("getCachedAccountsViaResultMap", null));
+  }
+
+  public void testConcurrentFirstUseCompilesOnce() throws Exception {
+    final MappedStatement[] statements = new MappedStatement[8];
+    final Throwable[] errors = new Throwable[1];
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < statements.length; i++) {
+      final int n = i;
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            statements[n] = delegate(sqlMap).getMappedStatement("getAccountViaResultClass");
+            sqlMap.queryForObject("getAccountViaResultClass", Integer.valueOf(1));
+          } catch (Throwable e) {
+            errors[0] = e;
+          }
+        }
+      };
+      threads.add(t);
+      t.start();
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(String.valueOf(errors[0]), errors[0]);
+    for (MappedStatement ms : statements) {
+      assertSame(statements[0], ms);
+    }
+  }
+
+  public void testIncludeIsCompiledFromDetachedCopy() throws Exception {
+    Account param = new Account();
+    param.setId(1);
+    List<?> list = sqlMap.queryForList("dynamicWithPrepend", param);
+    assertEquals(1, list.size());
+    assertEquals("Clinton", ((Account) list.get(0)).getFirstName());
+  }
+
+  public void testFinalizeDuringFirstUseDoesNotDeadlock() throws Exception {
+    final SqlMapExecutorDelegate delegate = delegate(sqlMap);
+    final List<String> names = new ArrayList<String>(delegate.getMappedStatementNames());
+    final Throwable[] errors = new Throwable[1];
+    Thread compiler = new Thread() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          try {
+            delegate.getMappedStatement(name);
+          } catch (RuntimeException e) {
+            // a statement of a bad sql map, not the point here
+          } catch (Throwable e) {
+            errors[0] = e;
+          }
+        }
+      }
+    };
+    compiler.setDaemon(true);
+    compiler.start();
+    while (compiler.isAlive()) {
+      delegate.finalizeSqlMapConfig();
+    }
+    compiler.join(10000);
+    assertFalse(compiler.isAlive());
+    assertNull(String.valueOf(errors[0]), errors[0]);
+  }
+
+  public void testValidationCompilesAllStatements() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("sql_map_lazy_statements", "true");
+    props.setProperty("sql_map_validate_statements", "true");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+    assertEquals(0, delegate(sqlMap).getLazyStatementCount());
+  }
+
+  public void testLazyStartupOnLargeConfig() throws Exception {
+    File dir = new File("target/lazy-statements");
+    dir.mkdirs();
+    StringBuilder config = new StringBuilder();
+    config.append("<?xml version='1.0' encoding='UTF-8' ?>\n");
+    config.append("<!DOCTYPE sqlMapConfig PUBLIC '-//ibatis.apache.org//DTD SQL Map Config 2.0//EN'"
+        + " 'http://ibatis.apache.org/dtd/sql-map-config-2.dtd'>\n");
+    config.append("<sqlMapConfig>\n  <settings useStatementNamespaces='true'/>\n");
+    for (int i = 0; i < 200; i++) {
+      writeMap(new File(dir, "Lazy" + i + ".xml"), i);
+      config.append("  <sqlMap url='").append(new File(dir, "Lazy" + i + ".xml").toURI()).append("'/>\n");
+    }
+    config.append("</sqlMapConfig>\n");
+
+    // warm up the class loading
+    build(config.toString(), "false");
+    long[] eager = measure(config.toString(), "false");
+    long[] lazy = measure(config.toString(), "true");
+    System.out.println("Startup of 4000 statements: eager " + eager[0] + " ms, " + eager[1] / 1024 + " KB, lazy "
+        + lazy[0] + " ms, " + lazy[1] / 1024 + " KB");
+  }
+
+  private long[] measure(String config, String lazy) {
+    long before = usedMemory();
+    long t0 = System.nanoTime();
+    SqlMapClient client = build(config, lazy);
+    long time = (System.nanoTime() - t0) / 1000000;
+    long heap = usedMemory() - before;
+    assertEquals(4000, delegate(client).getMappedStatementNames().size());
+    return new long[] { time, heap };
+  }
+
+  private static long usedMemory() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static SqlMapClient build(String config, String lazy) {
+    Properties props = new Properties();
+    props.setProperty("sql_map_lazy_statements", lazy);
+    return SqlMapClientBuilder.buildSqlMapClient(new StringReader(config), props);
+  }
+
+  private static void writeMap(File file, int n) throws IOException {
+    PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      pw.println("<?xml version='1.0' encoding='UTF-8' ?>");
+      pw.println("<!DOCTYPE sqlMap PUBLIC '-//ibatis.apache.org//DTD SQL Map 2.0//EN'"
+          + " 'http://ibatis.apache.org/dtd/sql-map-2.dtd'>");
+      pw.println("<sqlMap namespace='Lazy" + n + "'>");
+      for (int j = 0; j < 10; j++) {
+        pw.println("  <select id='find" + j + "' parameterClass='testdomain.Account' resultClass='testdomain.Account'>");
+        pw.println("    select * from ACCOUNT where ACC_ID = #id#");
+        pw.println("    <dynamic prepend='and'>");
+        pw.println("      <isNotNull property='firstName' prepend='and'>ACC_FIRST_NAME = #firstName#</isNotNull>");
+        pw.println("      <isNotNull property='emailAddress' prepend='and'>ACC_EMAIL = #emailAddress#</isNotNull>");
+        pw.println("    </dynamic>");
+        pw.println("  </select>");
+        pw.println("  <update id='update" + j + "' parameterClass='testdomain.Account'>");
+        pw.println("    update ACCOUNT set ACC_FIRST_NAME = #firstName#, ACC_LAST_NAME = #lastName#,"
+            + " ACC_EMAIL = #emailAddress# where ACC_ID = #id#");
+        pw.println("  </update>");
+      }
+      pw.println("</sqlMap>");
+    } finally {
+      pw.close();
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.ibatis.common.jdbc.ScriptRunner;
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.transaction.routing.RoutingTransactionConfig;
+import com.ibatis.sqlmap.engine.transaction.routing.RoutingTransactionConfig.Replica;
+
+import testdomain.Account;
+
+/**
+ * The primary is the usual in-memory HSQLDB, the replica another one with a changed account, and the first replica is
+ * down.
+ */
+public class ReadWriteRoutingTest extends BaseSqlMapTest {
+
+  private RoutingTransactionConfig config;
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/RoutingSqlMapConfig.xml", null);
+    initScript("scripts/account-init.sql");
+    config = (RoutingTransactionConfig) ((SqlMapClientImpl) sqlMap).getDelegate().getTxManager().getConfig();
+
+    Connection primary = config.getDataSource().getConnection();
+    try {
+      Statement st = primary.createStatement();
+      st.execute("create alias SET_LAST_NAME for \"" + ReadWriteRoutingTest.class.getName() + ".setLastName\"");
+      st.close();
+    } finally {
+      primary.close();
+    }
+
+    DataSource replica = config.getReplicas().get(1).getDataSource();
+    Connection conn = replica.getConnection();
+    try {
+      Reader reader = Resources.getResourceAsReader("scripts/account-init.sql");
+      ScriptRunner runner = new ScriptRunner(conn, false, false);
+      runner.setLogWriter(null);
+      runner.setErrorLogWriter(null);
+      runner.runScript(reader);
+      reader.close();
+      Statement st = conn.createStatement();
+      st.executeUpdate("update ACCOUNT set ACC_FIRST_NAME = 'Replica' where ACC_ID = 1");
+      st.close();
+      conn.commit();
+    } finally {
+      conn.close();
+    }
+  }
+
+  /**
+   * The procedure SET_LAST_NAME of the primary.
+   */
+  public static void setLastName(Connection conn, int id, String lastName) throws SQLException {
+    PreparedStatement ps = conn.prepareStatement("update ACCOUNT set ACC_LAST_NAME = ? where ACC_ID = ?");
+    try {
+      ps.setString(1, lastName);
+      ps.setInt(2, id);
+      ps.executeUpdate();
+    } finally {
+      ps.close();
+    }
+  }
+
+  private String firstName(String statement) throws Exception {
+    Account account = sqlMap.queryForObject(statement, 1);
+    return account.getFirstName();
+  }
+
+  public void testSelectReadsReplica() throws Exception {
+    assertEquals("Replica", firstName("getAccountViaColumnName"));
+    assertEquals("Replica", firstName("getAccountViaColumnName"));
+
+    List<Replica> replicas = config.getReplicas();
+    assertEquals(2, replicas.size());
+    assertFalse(replicas.get(0).isUp());
+    assertEquals(1, replicas.get(0).getFailures());
+    assertTrue(replicas.get(1).isUp());
+  }
+
+  public void testStatementRoutedToPrimary() throws Exception {
+    assertEquals("Clinton", firstName("getPrimaryAccountViaColumnName"));
+    assertEquals("Replica", firstName("getAccountViaColumnName"));
+  }
+
+  public void testTransactionReadsPrimaryAfterWrite() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      assertEquals("Replica", firstName("getAccountViaColumnName"));
+
+      Account account = sqlMap.queryForObject("getPrimaryAccountViaColumnName", 1);
+      account.setLastName("Written");
+      assertEquals(1, sqlMap.update("updateAccountViaInlineParameters", account));
+
+      // read its own write on the primary
+      Account written = sqlMap.queryForObject("getAccountViaColumnName", 1);
+      assertEquals("Clinton", written.getFirstName());
+      assertEquals("Written", written.getLastName());
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    // the next transaction reads the replica again
+    assertEquals("Replica", firstName("getAccountViaColumnName"));
+    Account account = sqlMap.queryForObject("getPrimaryAccountViaColumnName", 1);
+    assertEquals("Written", account.getLastName());
+  }
+
+  public void testTransactionReadsPrimaryAfterProcedure() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      assertEquals("Replica", firstName("getAccountViaColumnName"));
+
+      Account account = new Account();
+      account.setId(1);
+      account.setLastName("Called");
+      // routed to the primary, but it writes
+      sqlMap.update("updateAccountLastNameViaProcedure", account);
+
+      Account written = sqlMap.queryForObject("getAccountViaColumnName", 1);
+      assertEquals("Clinton", written.getFirstName());
+      assertEquals("Called", written.getLastName());
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+  }
+
+}
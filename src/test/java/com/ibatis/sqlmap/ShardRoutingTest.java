@@ -0,0 +1,194 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.ibatis.common.jdbc.ScriptRunner;
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.transaction.shard.ShardTransactionConfig;
+
+import testdomain.Account;
+
+/**
+ * The accounts are split across three embedded derby databases by their id modulo 3.
+ */
+public class ShardRoutingTest extends BaseSqlMapTest {
+
+  private static final String[] LAST_NAMES = { "Adams", "Baker", "Clark", "Davis", "Evans", "Fox", "Green" };
+
+  private ShardTransactionConfig config;
+
+  @Override
+  protected void setUp() throws Exception {
+    initSqlMap("com/ibatis/sqlmap/maps/ShardSqlMapConfig.xml", null);
+    config = (ShardTransactionConfig) ((SqlMapClientImpl) sqlMap).getDelegate().getTxManager().getConfig();
+    for (DataSource shard : config.getShards()) {
+      Connection conn = shard.getConnection();
+      try {
+        Reader reader = Resources.getResourceAsReader("scripts/account-init.sql");
+        ScriptRunner runner = new ScriptRunner(conn, false, false);
+        runner.setLogWriter(null);
+        runner.setErrorLogWriter(null);
+        runner.runScript(reader);
+        reader.close();
+        Statement st = conn.createStatement();
+        st.executeUpdate("delete from ACCOUNT");
+        st.close();
+        conn.commit();
+      } finally {
+        conn.close();
+      }
+    }
+    for (int id = 1; id <= LAST_NAMES.length; id++) {
+      sqlMap.insert("insertShardAccount", newAccount(id));
+    }
+  }
+
+  private Account newAccount(int id) {
+    Account account = new Account();
+    account.setId(id);
+    account.setFirstName("First" + id);
+    account.setLastName(LAST_NAMES[id - 1]);
+    account.setEmailAddress("user" + id + "@shard.com");
+    return account;
+  }
+
+  private List<Integer> idsOf(int shard) throws Exception {
+    List<Integer> ids = new ArrayList<Integer>();
+    Connection conn = config.getShards().get(shard).getConnection();
+    try {
+      // derby keeps the locks of an open result set, even in auto commit
+      Statement st = conn.createStatement();
+      try {
+        ResultSet rs = st.executeQuery("select ACC_ID from ACCOUNT order by ACC_ID");
+        while (rs.next()) {
+          ids.add(rs.getInt(1));
+        }
+      } finally {
+        st.close();
+      }
+    } finally {
+      conn.close();
+    }
+    return ids;
+  }
+
+  private static List<Integer> ids(List<Account> accounts) {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (Account account : accounts) {
+      ids.add(account.getId());
+    }
+    return ids;
+  }
+
+  public void testStatementsRouteByShardKey() throws Exception {
+    assertEquals("[3, 6]", idsOf(0).toString());
+    assertEquals("[1, 4, 7]", idsOf(1).toString());
+    assertEquals("[2, 5]", idsOf(2).toString());
+
+    Account account = sqlMap.queryForObject("getShardAccount", 5);
+    assertEquals("Evans", account.getLastName());
+    assertNull(sqlMap.queryForObject("getShardAccount", 8));
+
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("id", 4);
+    param.put("email", "four@shard.com");
+    assertEquals(1, sqlMap.update("updateShardAccountEmail", param));
+    account = sqlMap.queryForObject("getShardAccount", 4);
+    assertEquals("four@shard.com", account.getEmailAddress());
+  }
+
+  public void testQueryWithoutKeyMergesShards() throws Exception {
+    Map<String, Object> param = new HashMap<String, Object>();
+    List<Account> all = sqlMap.queryForList("getShardAccounts", param);
+    // sorted by the last name descending across the shards
+    assertEquals("[7, 6, 5, 4, 3, 2, 1]", ids(all).toString());
+
+    List<Account> list = sqlMap.queryForList("getShardAccounts", param, 2, 3);
+    assertEquals("[5, 4, 3]", ids(list).toString());
+
+    List<Account> page = new ArrayList<Account>();
+    assertEquals(7, sqlMap.queryForPage(page, "getShardAccounts", param, 5, 10));
+    assertEquals("[2, 1]", ids(page).toString());
+
+    param.put("email", "user6@%");
+    Account account = sqlMap.queryForObject("getShardAccounts", param);
+    assertEquals("Fox", account.getLastName());
+  }
+
+  public void testWriteWithoutKeyFails() throws Exception {
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("email", "all@shard.com");
+    // e.g. a typo of the key
+    param.put("ID", 4);
+    try {
+      sqlMap.update("updateShardAccountEmail", param);
+      fail();
+    } catch (SQLException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("shard key 'id'"));
+    }
+    try {
+      sqlMap.delete("deleteShardAccount", param);
+      fail();
+    } catch (SQLException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("shard key 'id'"));
+    }
+
+    param.put("email", "%");
+    assertEquals(7, sqlMap.queryForList("getShardAccounts", param).size());
+    param.put("email", "all@%");
+    assertEquals(0, sqlMap.queryForList("getShardAccounts", param).size());
+  }
+
+  public void testBroadcastUpdateRunsOnAllShards() throws Exception {
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("email", "all@shard.com");
+    assertEquals(7, sqlMap.update("updateAllShardAccountEmail", param));
+
+    param.put("email", "all@%");
+    assertEquals(7, sqlMap.queryForList("getShardAccounts", param).size());
+  }
+
+  public void testRollbackAllShards() throws Exception {
+    sqlMap.startTransaction();
+    try {
+      Account account = newAccount(7);
+      account.setId(8);
+      sqlMap.insert("insertShardAccount", account);
+      Map<String, Object> param = new HashMap<String, Object>();
+      param.put("email", "rolled@shard.com");
+      sqlMap.update("updateAllShardAccountEmail", param);
+      assertEquals(8, sqlMap.queryForList("getShardAccounts", new HashMap<String, Object>()).size());
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertNull(sqlMap.queryForObject("getShardAccount", 8));
+    Account account = sqlMap.queryForObject("getShardAccount", 1);
+    assertEquals("user1@shard.com", account.getEmailAddress());
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.ibatis.client.Dialect;
+import org.ibatis.client.SqlMapClientBuilder;
+
+import com.ibatis.common.resources.Resources;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.dialect.UpsertDialect;
+
+import testdomain.Account;
+import testdomain.AccountEntity;
+
+/**
+ * The upsert statements are executed by derby, the hsqldb 1.8 of the tests has no MERGE so only the rendered sql of
+ * the other dialects is verified.
+ */
+public class UpsertTest extends BaseSqlMapTest {
+
+  static final String INSERT = "INSERT INTO ACCOUNT (ACC_ID, ACC_FIRST_NAME, ACC_LAST_NAME) VALUES (?, upper(?), ?)";
+
+  @Override
+  protected void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("com/ibatis/sqlmap/maps/DerbySqlMapConfig.xml");
+    sqlMap = SqlMapClientBuilder.buildSqlMapClient(reader, "derby");
+    reader.close();
+    initScript("scripts/account-init.sql");
+  }
+
+  private String queryString(String sql) throws SQLException {
+    Connection conn = sqlMap.getDataSource().getConnection();
+    try {
+      // derby keeps the locks of an open result set, even in auto commit
+      Statement st = conn.createStatement();
+      try {
+        ResultSet rs = st.executeQuery(sql);
+        return rs.next() ? rs.getString(1) : null;
+      } finally {
+        st.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  private Account newAccount(int id, String firstName, String email) {
+    Account account = new Account();
+    account.setId(id);
+    account.setFirstName(firstName);
+    account.setLastName("Flintstone");
+    account.setEmailAddress(email);
+    return account;
+  }
+
+  public void testUpsertInsertsAndUpdates() throws SQLException {
+    sqlMap.update("upsertAccount", newAccount(6, "Fred", "fred@bedrock.com"));
+    assertEquals("6", queryString("select count(*) from ACCOUNT"));
+
+    sqlMap.update("upsertAccount", newAccount(1, "Barney", null));
+    assertEquals("6", queryString("select count(*) from ACCOUNT"));
+    assertEquals("Barney", queryString("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = 1"));
+    assertNull(queryString("select ACC_EMAIL from ACCOUNT where ACC_ID = 1"));
+  }
+
+  public void testUpsertWithDynamic() throws SQLException {
+    sqlMap.update("upsertAccountWithDynamic", newAccount(2, "wilma", null));
+    sqlMap.update("upsertAccountWithDynamic", newAccount(7, "pebbles", "pebbles@bedrock.com"));
+    assertEquals("WILMA", queryString("select ACC_FIRST_NAME from ACCOUNT where ACC_ID = 2"));
+    // the email is not in the sql, so it is kept
+    assertEquals("jim.smith@somewhere.com", queryString("select ACC_EMAIL from ACCOUNT where ACC_ID = 2"));
+    assertEquals("pebbles@bedrock.com", queryString("select ACC_EMAIL from ACCOUNT where ACC_ID = 7"));
+  }
+
+  public void testUpsertInBatch() throws SQLException {
+    sqlMap.startTransaction();
+    try {
+      sqlMap.startBatch();
+      for (int id = 1; id <= 10; id++) {
+        sqlMap.update("upsertAccount", newAccount(id, "Batch" + id, null));
+      }
+      sqlMap.executeBatch();
+      sqlMap.commitTransaction();
+    } finally {
+      sqlMap.endTransaction();
+    }
+    assertEquals("10", queryString("select count(*) from ACCOUNT"));
+    assertEquals("10", queryString("select count(*) from ACCOUNT where ACC_FIRST_NAME like 'Batch%'"));
+  }
+
+  public void testUpsertEntity() throws SQLException {
+    assertEquals(1, sqlMap.upsertEntity(AccountEntity.class, new AccountEntity(8, "Dino", "Flintstone", null)));
+    assertEquals(1, sqlMap.upsertEntity(AccountEntity.class, new AccountEntity(3, "Betty", "Rubble", "betty@bedrock.com")));
+    assertEquals("6", queryString("select count(*) from ACCOUNT"));
+    assertEquals("Rubble", queryString("select ACC_LAST_NAME from ACCOUNT where ACC_ID = 3"));
+
+    AccountEntity found = sqlMap.findEntity(AccountEntity.class, 3);
+    assertEquals("betty@bedrock.com", found.getEmailAddress());
+  }
+
+  public void testUpsertSqlOfDialects() {
+    String[] keys = { "acc_id" };
+    assertEquals(INSERT + " ON DUPLICATE KEY UPDATE ACC_FIRST_NAME = VALUES(ACC_FIRST_NAME),"
+        + " ACC_LAST_NAME = VALUES(ACC_LAST_NAME)", new UpsertDialect(Dialect.mysql, INSERT, keys).getSql());
+    assertEquals(INSERT + " ON CONFLICT (ACC_ID) DO UPDATE SET ACC_FIRST_NAME = EXCLUDED.ACC_FIRST_NAME,"
+        + " ACC_LAST_NAME = EXCLUDED.ACC_LAST_NAME", new UpsertDialect(Dialect.postgresql, INSERT, keys).getSql());
+    assertEquals("MERGE INTO ACCOUNT UPSERT_T USING (SELECT ? ACC_ID, upper(?) ACC_FIRST_NAME, ? ACC_LAST_NAME"
+        + " FROM DUAL) UPSERT_S ON (UPSERT_T.ACC_ID = UPSERT_S.ACC_ID) WHEN MATCHED THEN UPDATE SET"
+        + " ACC_FIRST_NAME = UPSERT_S.ACC_FIRST_NAME, ACC_LAST_NAME = UPSERT_S.ACC_LAST_NAME WHEN NOT MATCHED THEN"
+        + " INSERT (ACC_ID, ACC_FIRST_NAME, ACC_LAST_NAME) VALUES (UPSERT_S.ACC_ID, UPSERT_S.ACC_FIRST_NAME,"
+        + " UPSERT_S.ACC_LAST_NAME)", new UpsertDialect(Dialect.oracle, INSERT, keys).getSql());
+
+    String merge = "MERGE INTO ACCOUNT AS UPSERT_T USING (VALUES (?, upper(?), ?)) AS UPSERT_S (ACC_ID,"
+        + " ACC_FIRST_NAME, ACC_LAST_NAME) ON UPSERT_T.ACC_ID = UPSERT_S.ACC_ID WHEN MATCHED THEN UPDATE SET"
+        + " ACC_FIRST_NAME = UPSERT_S.ACC_FIRST_NAME, ACC_LAST_NAME = UPSERT_S.ACC_LAST_NAME WHEN NOT MATCHED THEN"
+        + " INSERT (ACC_ID, ACC_FIRST_NAME, ACC_LAST_NAME) VALUES (UPSERT_S.ACC_ID, UPSERT_S.ACC_FIRST_NAME,"
+        + " UPSERT_S.ACC_LAST_NAME)";
+    assertEquals(merge, new UpsertDialect(Dialect.hsqldb, INSERT, keys).getSql());
+    assertEquals(merge, new UpsertDialect(Dialect.db2, INSERT, keys).getSql());
+    assertEquals(merge + ";", new UpsertDialect(Dialect.sqlserver, INSERT, keys).getSql());
+    assertNull(new UpsertDialect(Dialect.hsqldb, INSERT, keys).getParameterIndexes());
+
+    UpsertDialect derby = new UpsertDialect(Dialect.derby, INSERT, keys);
+    assertEquals("MERGE INTO ACCOUNT UPSERT_T USING SYSIBM.SYSDUMMY1 ON UPSERT_T.ACC_ID = ? WHEN MATCHED THEN"
+        + " UPDATE SET ACC_FIRST_NAME = upper(?), ACC_LAST_NAME = ? WHEN NOT MATCHED THEN INSERT (ACC_ID,"
+        + " ACC_FIRST_NAME, ACC_LAST_NAME) VALUES (?, upper(?), ?)", derby.getSql());
+    assertEquals("[0, 1, 2, 0, 1, 2]", Arrays.toString(derby.getParameterIndexes()));
+  }
+
+  public void testUpsertRequiresPlainInsert() {
+    try {
+      new UpsertDialect(Dialect.mysql, "INSERT INTO ACCOUNT SELECT * FROM OTHER", new String[] { "ACC_ID" });
+      fail("Expected the bad sql.");
+    } catch (SqlMapException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("column list"));
+    }
+    try {
+      new UpsertDialect(Dialect.mysql, INSERT, new String[] { "ACC_EMAIL" });
+      fail("Expected the unknown key column.");
+    } catch (SqlMapException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("ACC_EMAIL"));
+    }
+  }
+
+}
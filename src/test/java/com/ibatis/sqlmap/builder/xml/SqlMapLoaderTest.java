@@ -0,0 +1,139 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.builder.xml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.ibatis.client.SqlMapClient;
+import org.ibatis.client.SqlMapClientBuilder;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+
+public class SqlMapLoaderTest extends TestCase {
+  static final int MAPS = 300;
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = new File("target/sqlmap-loader");
+    dir.mkdirs();
+    for (int i = 0; i < MAPS; i++) {
+      writeMap(i, false);
+    }
+  }
+
+  private void writeMap(int i, boolean broken) throws IOException {
+    PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, "Map" + i + ".xml")),
+        "UTF-8"));
+    try {
+      pw.println("<?xml version='1.0' encoding='UTF-8' ?>");
+      pw.println("<!DOCTYPE sqlMap PUBLIC '-//ibatis.apache.org//DTD SQL Map 2.0//EN'"
+          + " 'http://ibatis.apache.org/dtd/sql-map-2.dtd'>");
+      pw.println("<sqlMap namespace='Map" + i + "'>");
+      pw.println("  <resultMap id='result' class='testdomain.Account'" + (i > 0 ? " extends='Map0.result'" : "")
+          + ">");
+      if (i == 0) {
+        pw.println("    <result property='id' column='ACC_ID'/>");
+      }
+      pw.println("    <result property='firstName' column='ACC_FIRST_NAME'/>");
+      pw.println("  </resultMap>");
+      for (int j = 0; j < 10; j++) {
+        pw.println("  <select id='find" + j + "' resultMap='result' parameterClass='int'>");
+        pw.println("    select * from ACCOUNT where ACC_ID = #value# <isNotNull prepend='and'>ACC_ID &gt; " + j
+            + "</isNotNull>");
+        pw.println("  </select>");
+      }
+      pw.println(broken ? "  <select id='broken'>" : "</sqlMap>");
+    } finally {
+      pw.close();
+    }
+  }
+
+  private String config() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("<?xml version='1.0' encoding='UTF-8' ?>\n");
+    buf.append("<!DOCTYPE sqlMapConfig PUBLIC '-//ibatis.apache.org//DTD SQL Map Config 2.0//EN'"
+        + " 'http://ibatis.apache.org/dtd/sql-map-config-2.dtd'>\n");
+    buf.append("<sqlMapConfig>\n");
+    buf.append("  <settings useStatementNamespaces='true'/>\n");
+    for (int i = 0; i < MAPS; i++) {
+      buf.append("  <sqlMap url='${dir}Map").append(i).append(".xml'/>\n");
+    }
+    buf.append("</sqlMapConfig>\n");
+    return buf.toString();
+  }
+
+  private SqlMapClient build(int threads) {
+    Properties props = new Properties();
+    props.setProperty("dir", dir.getAbsoluteFile().toURI().toString());
+    props.setProperty("sql_map_parse_threads", String.valueOf(threads));
+    return SqlMapClientBuilder.buildSqlMapClient(new StringReader(config()), props);
+  }
+
+  private static TreeSet<String> statements(SqlMapClient client) {
+    return new TreeSet<String>(((SqlMapClientImpl) client).getDelegate().getMappedStatementNames());
+  }
+
+  public void testParallelParsingRegistersTheSameStatements() {
+    TreeSet<String> sequential = statements(build(1));
+    TreeSet<String> parallel = statements(build(4));
+    assertEquals(MAPS * 10, sequential.size());
+    assertEquals(sequential, parallel);
+    assertTrue(parallel.contains("Map" + (MAPS - 1) + ".find9"));
+  }
+
+  public void testParallelParsingReportsTheSameError() throws IOException {
+    writeMap(MAPS / 2, true);
+    String sequential = error(1);
+    String parallel = error(4);
+    assertNotNull(sequential);
+    assertTrue(sequential, sequential.contains("Map" + (MAPS / 2) + ".xml"));
+    assertEquals(sequential, parallel);
+  }
+
+  private String error(int threads) {
+    try {
+      build(threads);
+      return null;
+    } catch (RuntimeException e) {
+      return e.getMessage();
+    }
+  }
+
+  public void testParallelParsingTimes() {
+    // warm up the parser and the class loading
+    build(1);
+    long t0 = System.nanoTime();
+    build(1);
+    long t1 = System.nanoTime();
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    build(threads);
+    long t2 = System.nanoTime();
+    System.out.println("Parsing " + MAPS + " sql maps: sequential " + (t1 - t0) / 1000000 + " ms, parallel "
+        + (t2 - t1) / 1000000 + " ms with " + threads + " threads");
+  }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.builder.xml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.ibatis.client.SqlMapClient;
+import org.ibatis.client.SqlMapClientBuilder;
+
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.mapping.statement.MappedStatement;
+
+public class SqlMapSnapshotTest extends TestCase {
+  static final int MAPS = 200;
+
+  private File dir;
+  private File snapshot;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = new File("target/sqlmap-snapshot");
+    dir.mkdirs();
+    snapshot = new File(dir, "sqlmap.snapshot");
+    snapshot.delete();
+    for (int i = 0; i < MAPS; i++) {
+      writeMap(i, 10);
+    }
+  }
+
+  private void writeMap(int i, int statements) throws IOException {
+    PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, "Map" + i + ".xml")),
+        "UTF-8"));
+    try {
+      pw.println("<?xml version='1.0' encoding='UTF-8' ?>");
+      pw.println("<!DOCTYPE sqlMap PUBLIC '-//ibatis.apache.org//DTD SQL Map 2.0//EN'"
+          + " 'http://ibatis.apache.org/dtd/sql-map-2.dtd'>");
+      pw.println("<sqlMap namespace='Map" + i + "'>");
+      pw.println("  <!-- comments are not kept -->");
+      pw.println("  <sql id='columns'>ACC_ID, ACC_FIRST_NAME, ACC_LAST_NAME</sql>");
+      for (int j = 0; j < statements; j++) {
+        pw.println("  <select id='find" + j + "' resultClass='testdomain.Account' parameterClass='map'>");
+        pw.println("    select <include refid='columns'/> from ACCOUNT where ACC_ID = #id#");
+        pw.println("    <dynamic prepend='and'><isNotNull property='name' prepend='and'>"
+            + "<![CDATA[ ACC_FIRST_NAME <> #name# ]]></isNotNull></dynamic>");
+        pw.println("  </select>");
+      }
+      pw.println("</sqlMap>");
+    } finally {
+      pw.close();
+    }
+  }
+
+  private String config() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("<?xml version='1.0' encoding='UTF-8' ?>\n");
+    buf.append("<!DOCTYPE sqlMapConfig PUBLIC '-//ibatis.apache.org//DTD SQL Map Config 2.0//EN'"
+        + " 'http://ibatis.apache.org/dtd/sql-map-config-2.dtd'>\n");
+    buf.append("<sqlMapConfig>\n");
+    buf.append("  <settings useStatementNamespaces='true'/>\n");
+    for (int i = 0; i < MAPS; i++) {
+      buf.append("  <sqlMap url='${dir}Map").append(i).append(".xml'/>\n");
+    }
+    buf.append("</sqlMapConfig>\n");
+    return buf.toString();
+  }
+
+  private SqlMapClient build(boolean useSnapshot) {
+    Properties props = new Properties();
+    props.setProperty("dir", dir.getAbsoluteFile().toURI().toString());
+    if (useSnapshot) {
+      props.setProperty("sql_map_snapshot_file", snapshot.getPath());
+    }
+    return SqlMapClientBuilder.buildSqlMapClient(new StringReader(config()), props);
+  }
+
+  private static TreeSet<String> statements(SqlMapClient client) {
+    return new TreeSet<String>(((SqlMapClientImpl) client).getDelegate().getMappedStatementNames());
+  }
+
+  private static String describe(SqlMapClient client, String id) {
+    MappedStatement ms = ((SqlMapClientImpl) client).getDelegate().getMappedStatement(id);
+    return ms.getClass().getName() + ":" + ms.getSql().getClass().getName() + ":"
+        + ms.getResultMap().getResultClass().getName() + ":" + ms.getParameterClass().getName();
+  }
+
+  public void testSnapshotRestoresTheSameStatements() {
+    SqlMapClient xml = build(false);
+    SqlMapClient first = build(true);
+    assertTrue(snapshot.isFile());
+    long written = snapshot.lastModified();
+    SqlMapClient second = build(true);
+
+    assertEquals(MAPS * 10, statements(xml).size());
+    assertEquals(statements(xml), statements(first));
+    assertEquals(statements(xml), statements(second));
+    assertEquals(written, snapshot.lastModified());
+    assertEquals(describe(xml, "Map7.find3"), describe(second, "Map7.find3"));
+  }
+
+  public void testChangedSqlMapIsParsedAgain() throws IOException {
+    build(true);
+    writeMap(5, 11);
+    SqlMapClient client = build(true);
+    assertTrue(statements(client).contains("Map5.find10"));
+    assertEquals(MAPS * 10 + 1, statements(client).size());
+  }
+
+  public void testBrokenSnapshotIsIgnored() throws IOException {
+    FileOutputStream out = new FileOutputStream(snapshot);
+    out.write(new byte[] { 1, 2, 3 });
+    out.close();
+    assertEquals(MAPS * 10, statements(build(true)).size());
+    assertTrue(snapshot.length() > 3);
+  }
+
+  public void testStartupTimes() {
+    // warm up the parser and the class loading
+    build(false);
+    long t0 = System.nanoTime();
+    build(true);
+    long writing = (System.nanoTime() - t0) / 1000000;
+    // the best of a few boots, the time of a single boot is mostly the gc of the other tests
+    long xml = Long.MAX_VALUE;
+    long restored = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      xml = Math.min(xml, time(false));
+      restored = Math.min(restored, time(true));
+    }
+    System.out.println("Startup of " + MAPS + " sql maps: xml " + xml + " ms, writing snapshot " + writing
+        + " ms, from snapshot " + restored + " ms");
+  }
+
+  private long time(boolean useSnapshot) {
+    long t0 = System.nanoTime();
+    build(useSnapshot);
+    return (System.nanoTime() - t0) / 1000000;
+  }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import com.ibatis.sqlmap.engine.cache.lru.LruCacheController;
+
+import junit.framework.TestCase;
+
+/**
+ * The large objects are cached compressed and a copy is inflated on each hit.
+ */
+public class CacheCompressorTest extends TestCase {
+
+  private static CacheModel newCacheModel(String threshold, String codec) {
+    CacheModel cm = new CacheModel();
+    cm.setId("compressed");
+    cm.setCacheController(new LruCacheController());
+    Properties props = new Properties();
+    props.setProperty(CacheModel.PROP_COMPRESS_THRESHOLD, threshold);
+    if (codec != null) {
+      props.setProperty(CacheModel.PROP_COMPRESS_CODEC, codec);
+    }
+    cm.setControllerProperties(props);
+    return cm;
+  }
+
+  private static List<String> newList(int size) {
+    List<String> list = new ArrayList<String>();
+    for (int i = 0; i < size; i++) {
+      list.add("account-" + (i % 10) + "@ibatis.apache.org");
+    }
+    return list;
+  }
+
+  public void testLargeObjectIsCompressed() {
+    CacheModel cm = newCacheModel("1024", null);
+    List<String> list = newList(1000);
+    cm.putObject("k", list);
+
+    CacheCompressor cc = cm.getCompressor();
+    assertEquals(1, cc.getCompressed());
+    assertTrue(cc.getRatio() > 1);
+    assertTrue(cc.getStoredBytes() < cc.getRawBytes());
+
+    List<String> hit = cm.getObject("k");
+    assertEquals(list, hit);
+    assertNotSame(list, hit);
+    assertNotSame(hit, cm.getObject("k"));
+    assertEquals(2, cc.getInflates());
+    assertEquals(2, cm.getHits());
+  }
+
+  public void testSmallObjectIsNotCompressed() {
+    CacheModel cm = newCacheModel("1024", "deflate:9");
+    assertEquals(9, cm.getCompressor().getLevel());
+    List<String> list = newList(2);
+    cm.putObject("k", list);
+    assertSame(list, cm.getObject("k"));
+    assertEquals(0, cm.getCompressor().getCompressed());
+    assertEquals(0, cm.getCompressor().getInflates());
+  }
+
+  public void testNotSerializableIsNotCompressed() {
+    CacheModel cm = newCacheModel("16", null);
+    Object value = new Object[] { new Object(), newList(100) };
+    cm.putObject("k", value);
+    assertSame(value, cm.getObject("k"));
+    assertEquals(0, cm.getCompressor().getCompressed());
+  }
+
+  public void testGetObjectsAndStalePut() {
+    CacheModel cm = newCacheModel("1024", null);
+    long version = cm.getVersion();
+    cm.putObject("a", newList(500), version);
+    cm.putObject("b", "small", version);
+    assertEquals(Arrays.asList(newList(500), "small", null), cm.getObjects(Arrays.asList("a", "b", "c")));
+
+    cm.flush();
+    assertFalse(cm.putObject("a", newList(500), version));
+    assertNull(cm.getObject("a"));
+  }
+
+  public void testOff() {
+    assertNull(newCacheModel("0", null).getCompressor());
+    assertNull(newCacheModel("bad", null).getCompressor());
+    assertNull(new CacheModel().getCompressor());
+  }
+
+}
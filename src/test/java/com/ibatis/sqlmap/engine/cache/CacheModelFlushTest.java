@@ -0,0 +1,79 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import com.ibatis.sqlmap.engine.cache.lru.LruCacheController;
+
+import junit.framework.TestCase;
+
+/**
+ * The flushes passed by the flush listeners.
+ */
+public class CacheModelFlushTest extends TestCase {
+
+  private static CacheModel newCacheModel(String id) {
+    CacheModel cm = new CacheModel();
+    cm.setId(id);
+    cm.setCacheController(new LruCacheController());
+    return cm;
+  }
+
+  public void testFlushInTheMillisecondOfCreation() {
+    CacheModel cm = newCacheModel("created");
+    cm.putObject("k", "v");
+    // the object may be cached in the same millisecond the cache is created
+    cm.onFlush("other", cm.getLastFlush());
+    assertNull(cm.getObject("k"));
+    assertEquals(1, cm.getFlushs());
+  }
+
+  public void testFlushInTheMillisecondOfLastFlush() {
+    CacheModel cm = newCacheModel("flushed");
+    cm.flush();
+    cm.putObject("k", "v");
+    cm.onFlush("other", cm.getLastFlush());
+    assertNull(cm.getObject("k"));
+    assertEquals(2, cm.getFlushs());
+  }
+
+  public void testEarlierFlushIsIgnored() {
+    CacheModel cm = newCacheModel("later");
+    cm.putObject("k", "v");
+    cm.onFlush("other", cm.getLastFlush() - 1);
+    assertEquals("v", cm.getObject("k"));
+    assertEquals(0, cm.getFlushs());
+  }
+
+  public void testCycleOfListeners() {
+    CacheModel a = newCacheModel("a");
+    CacheModel b = newCacheModel("b");
+    a.addFlushListener(b);
+    b.addFlushListener(a);
+    a.putObject("k", "v");
+    b.putObject("k", "v");
+
+    // a flushes b, which passes the same timestamp back to a
+    a.flush();
+    assertNull(a.getObject("k"));
+    assertNull(b.getObject("k"));
+    assertEquals(1, a.getFlushs());
+    assertEquals(1, b.getFlushs());
+
+    b.flush();
+    assertEquals(2, a.getFlushs());
+    assertEquals(2, b.getFlushs());
+  }
+}
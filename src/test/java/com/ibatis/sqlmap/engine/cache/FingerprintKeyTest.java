@@ -0,0 +1,229 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class FingerprintKeyTest extends TestCase {
+
+  private static final String SQL = "select ACC_ID as id, ACC_FIRST_NAME as firstName, ACC_LAST_NAME as lastName, "
+      + "ACC_EMAIL as emailAddress, ACC_AGE as age, ACC_BANNER_OPTION as bannerOption from ACCOUNT "
+      + "where ACC_FIRST_NAME = ? and ACC_LAST_NAME like ? and ACC_ID in (?, ?, ?, ?) order by ACC_LAST_NAME";
+
+  /**
+   * Equal by the name, but the hashCode is the same for all.
+   */
+  static class Name {
+    final String name;
+
+    Name(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Name && ((Name) o).name.equals(name);
+    }
+  }
+
+  private static FingerprintKey key(boolean verify, Object... values) {
+    FingerprintKey key = new FingerprintKey(verify);
+    for (Object value : values) {
+      key.update(value);
+    }
+    return key;
+  }
+
+  public void testEqualValues() {
+    Timestamp ts = new Timestamp(1000L);
+    FingerprintKey key1 = key(false, "Clinton", 1, 2L, 3.5d, Boolean.TRUE, null, ts, String.class,
+        Arrays.asList(1, 2, 3), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+    FingerprintKey key2 = key(false, new String("Clinton"), 1, 2L, 3.5d, Boolean.TRUE, null, new Timestamp(1000L),
+        String.class, new ArrayList<Integer>(Arrays.asList(1, 2, 3)), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertEquals(key1.toString(), key2.toString());
+    assertEquals(32 + 3, key1.toString().length());
+
+    key1.update(new Object[] { "a", 1 });
+    assertFalse(key1.equals(key2));
+    key2.update(new Object[] { "a", 1 });
+    assertEquals(key1, key2);
+  }
+
+  public void testDifferentValues() {
+    // the same hashCode of String
+    assertFalse(key(false, "HS1CS001").equals(key(false, "HS1D4001")));
+    assertFalse(key(false, "Aa").equals(key(false, "BB")));
+    assertFalse(key(false, "HS1CS001", "HS1D4001").equals(key(false, "HS1D4001", "HS1CS001")));
+    // the same value of different types
+    assertFalse(key(false, 1).equals(key(false, 1L)));
+    assertFalse(key(false, "1").equals(key(false, 1)));
+    assertFalse(key(false, (Object) null).equals(key(false, "")));
+    assertFalse(key(false, "ab", "c").equals(key(false, "a", "bc")));
+    assertFalse(key(false, Arrays.asList(1, 2)).equals(key(false, Arrays.asList(2, 1))));
+    assertFalse(key(false, new Timestamp(1000L)).equals(key(false, new java.util.Date(1000L))));
+    assertFalse(key(false, "x").equals(key(true, "x")) && key(false, "x").equals(key(false, "x", "y")));
+  }
+
+  public void testVerifyCollisions() throws Exception {
+    // the fingerprint of the other values is their hashCode, so they are kept and compared by equals
+    assertFalse(key(false, new Name("a")).equals(key(false, new Name("b"))));
+    assertEquals(key(false, new Name("a"), "x"), key(false, new Name("a"), "x"));
+    assertEquals(key(false, new Name("a")), key(false, new Name("a")).clone());
+    assertFalse(key(true, new Name("a")).equals(key(true, new Name("b"))));
+    assertEquals(key(true, new Name("a"), "x"), key(true, new Name("a"), "x"));
+
+    FingerprintKey sql = key(true, "statement", 7, SQL);
+    FingerprintKey key1 = key(true, new Name("a")).update(sql);
+    FingerprintKey key2 = key(true, new Name("a")).update(sql);
+    assertEquals(key1, key2);
+    assertFalse(key1.equals(key(true, new Name("a")).update(key(true, "statement", 8, SQL))));
+  }
+
+  public void testContentHashedValues() {
+    // the same hashCode
+    assertEquals(new BigDecimal("2").hashCode(), BigDecimal.valueOf(1, 31).hashCode());
+    assertFalse(key(false, new BigDecimal("2")).equals(key(false, BigDecimal.valueOf(1, 31))));
+    assertFalse(key(false, new BigDecimal("2")).equals(key(false, new BigDecimal("2.0"))));
+    assertEquals(key(false, new BigDecimal("2.50")), key(false, new BigDecimal("2.50")));
+    assertFalse(key(false, BigInteger.valueOf(2)).equals(key(false, 2L)));
+    assertEquals(key(false, new BigInteger("123456789012345678901234567890")),
+        key(false, new BigInteger("123456789012345678901234567890")));
+    assertFalse(key(false, TimeUnit.SECONDS).equals(key(false, TimeUnit.MINUTES)));
+    assertFalse(key(false, TimeUnit.SECONDS).equals(key(false, "SECONDS")));
+
+    // nothing is kept, the enum is hashed by its name rather than its identity hashCode
+    FingerprintKey key = key(false, new BigDecimal("2"), BigInteger.ONE, TimeUnit.SECONDS);
+    assertEquals(32 + 2, key.toString().length());
+    assertEquals(key.toString(), key(false, new BigDecimal("2"), BigInteger.ONE, TimeUnit.SECONDS).toString());
+  }
+
+  public void testClone() throws Exception {
+    FingerprintKey key = key(true, "a", 1);
+    FingerprintKey clone = key.clone();
+    assertEquals(key, clone);
+    clone.update("b");
+    assertFalse(key.equals(clone));
+  }
+
+  private static Object[] params(int i) {
+    return new Object[] { "Clinton" + i, "Be%", i, i + 1, i + 2, i + 3 };
+  }
+
+  /**
+   * Builds the key as the statement does: the parameters, then the id, the base and the sql.
+   */
+  private static CacheKey legacyKey(Object[] params) {
+    CacheKey key = new CacheKey();
+    for (Object param : params) {
+      key.update(param);
+    }
+    key.update("dynamicSearch");
+    key.update(17);
+    key.update(SQL);
+    return key;
+  }
+
+  private static CacheKey fingerprintKey(Object[] params, FingerprintKey sqlKey, boolean verify) {
+    FingerprintKey key = new FingerprintKey(verify);
+    for (Object param : params) {
+      key.update(param);
+    }
+    return key.update(sqlKey);
+  }
+
+  private static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static CacheKey[] buildKeys(int mode, Object[][] params, FingerprintKey sqlKey) {
+    CacheKey[] keys = new CacheKey[params.length];
+    for (int i = 0; i < params.length; i++) {
+      keys[i] = mode == 0 ? legacyKey(params[i]) : fingerprintKey(params[i], sqlKey, mode == 2);
+    }
+    return keys;
+  }
+
+  private static int probe(Map<CacheKey, Object> cache, CacheKey[] keys) {
+    int hits = 0;
+    for (CacheKey key : keys) {
+      if (cache.get(key) != null) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Compares the cost of building the keys and probing a large cache by them, and the heap kept by the keys.
+   */
+  public void testBenchmark() {
+    final int n = 100000;
+    Object[][] params = new Object[n][];
+    for (int i = 0; i < n; i++) {
+      params[i] = params(i);
+    }
+    FingerprintKey[] sqlKeys = { null, key(false, "dynamicSearch", 17, SQL), key(true, "dynamicSearch", 17, SQL) };
+    String[] names = { "CacheKey", "FingerprintKey", "FingerprintKey(verify)" };
+
+    for (int mode = 0; mode < 3; mode++) {
+      long build = Long.MAX_VALUE;
+      long get = Long.MAX_VALUE;
+      for (int round = 0; round < 5; round++) {
+        long start = System.nanoTime();
+        CacheKey[] keys = buildKeys(mode, params, sqlKeys[mode]);
+        build = Math.min(build, System.nanoTime() - start);
+
+        Map<CacheKey, Object> cache = new HashMap<CacheKey, Object>();
+        for (int i = 0; i < n; i++) {
+          cache.put(keys[i], params[i]);
+        }
+        CacheKey[] probes = buildKeys(mode, params, sqlKeys[mode]);
+        start = System.nanoTime();
+        assertEquals(n, probe(cache, probes));
+        get = Math.min(get, System.nanoTime() - start);
+      }
+
+      long heap = usedHeap();
+      CacheKey[] keys = buildKeys(mode, params, sqlKeys[mode]);
+      heap = usedHeap() - heap;
+      assertEquals(n, keys.length);
+      System.out.println(names[mode] + ": build " + build / n + " ns/key, hashCode and equals " + get / n
+          + " ns/probe, heap of " + n + " keys " + heap / 1024 + " KB");
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.cache.memory;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Two nodes in one jvm on the shared loopback stack of JGroups, node a flushes and node b applies the flushes.
+ */
+public class MemoryCacheJGroupsBroadcastorTest extends TestCase {
+
+  private static final String LOOPBACK = "SHARED_LOOPBACK:SHARED_LOOPBACK_PING:pbcast.NAKACK2:UNICAST3:pbcast.STABLE"
+      + ":pbcast.GMS(join_timeout=1000)";
+
+  private static final String[] CACHES = { "Account#cache", "Order#cache", "Item#cache" };
+
+  static class Node extends MemoryCacheJGroupsBroadcastor {
+    final MemoryCache memoryCache = new MemoryCache();
+    volatile long lastApplied;
+
+    Node(String coalesce) {
+      Properties props = new Properties();
+      props.setProperty("memory.mcast.properties", LOOPBACK);
+      if (coalesce != null) {
+        props.setProperty("memory.mcast.coalesce", coalesce);
+      }
+      memoryCache.multicast = this;
+      init(memoryCache, props);
+      for (String id : CACHES) {
+        memoryCache.cache(id);
+      }
+    }
+
+    @Override
+    public void onMulticastFlush(String cacheId) {
+      super.onMulticastFlush(cacheId);
+      lastApplied = System.nanoTime();
+    }
+  }
+
+  /**
+   * Flush the caches of a round robin, and return the nanos from the last flush to the last apply of node b.
+   */
+  private static long burst(Node a, Node b, int flushes) throws InterruptedException {
+    for (int i = 0; i < flushes; i++) {
+      a.memoryCache.flushGroup(CACHES[i % CACHES.length]);
+    }
+    long last = System.nanoTime();
+    long received = -1;
+    // wait until node b is quiet
+    while (received != b.getReceivedMessages()) {
+      received = b.getReceivedMessages();
+      Thread.sleep(200);
+    }
+    return b.lastApplied - last;
+  }
+
+  public void testEachFlushSentByDefault() throws Exception {
+    Node a = new Node(null);
+    Node b = new Node(null);
+    try {
+      long latency = burst(a, b, 300);
+      System.out.println("300 flushes of " + CACHES.length + " caches: " + a.getSentMessages()
+          + " messages, the last applied " + latency / 1000 + " us after the last flush");
+      assertEquals(300, a.getSentMessages());
+      assertEquals(300, b.getReceivedMessages());
+    } finally {
+      a.close();
+      b.close();
+    }
+  }
+
+  public void testFlushesCoalesced() throws Exception {
+    Node a = new Node("20");
+    Node b = new Node(null);
+    try {
+      b.memoryCache.cache(CACHES[0]).put("key", new MemoryCache.CacheEntry(Long.MAX_VALUE,
+          MemoryCacheLevel.STRONG, "value"));
+      long start = System.nanoTime();
+      long latency = burst(a, b, 10000);
+      long elapsed = System.nanoTime() - start;
+      long sent = a.getSentMessages();
+      System.out.println("10000 flushes of " + CACHES.length + " caches: " + sent + " messages in "
+          + elapsed / 1000000 + " ms, the last applied " + latency / 1000 + " us after the last flush");
+      // at least one window, at most one for each 20 ms window of the burst
+      assertTrue(sent >= 1);
+      assertTrue(sent <= elapsed / 20000000 + 2);
+      assertEquals(sent, b.getReceivedMessages());
+      assertNull(b.memoryCache.cache(CACHES[0]).getObject("key"));
+      // the added latency is capped by the window
+      assertTrue(latency < 1000000000L);
+    } finally {
+      a.close();
+      b.close();
+    }
+  }
+
+  public void testFlushWhileClosing() throws Exception {
+    final Node a = new Node("1");
+    Node b = new Node(null);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    Thread flusher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 200000; i++) {
+            a.memoryCache.flushGroup(CACHES[i % CACHES.length]);
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }
+    };
+    try {
+      flusher.start();
+      Thread.sleep(20);
+      a.close();
+      flusher.join();
+      assertNull(String.valueOf(error.get()), error.get());
+    } finally {
+      b.close();
+    }
+  }
+
+  public void testPendingFlushesSentOnClose() throws Exception {
+    Node a = new Node("60000");
+    Node b = new Node(null);
+    try {
+      a.memoryCache.flushGroup(CACHES[0]);
+      a.memoryCache.flushGroup(CACHES[1]);
+      assertEquals(0, a.getSentMessages());
+      a.close();
+      assertEquals(1, a.getSentMessages());
+      for (int i = 0; i < 50 && b.getReceivedMessages() == 0; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(1, b.getReceivedMessages());
+    } finally {
+      b.close();
+    }
+  }
+}
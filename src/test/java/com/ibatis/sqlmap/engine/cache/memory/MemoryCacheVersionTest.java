@@ -0,0 +1,81 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.cache.memory;
+
+import com.ibatis.sqlmap.engine.cache.CacheModel;
+import com.ibatis.sqlmap.engine.cache.lru.LruCacheController;
+
+import junit.framework.TestCase;
+
+/**
+ * The object loaded before a flush, local or by the other nodes, must not be cached after the flush.
+ */
+public class MemoryCacheVersionTest extends TestCase {
+
+  private static CacheModel newCacheModel(String id) {
+    CacheModel cm = new CacheModel();
+    cm.setId(id);
+    cm.setFlushInterval(60000);
+    cm.setCacheController(new MemoryCacheController());
+    return cm;
+  }
+
+  public void testRemoteFlushDropsStalePut() {
+    CacheModel cm = newCacheModel("MemoryCacheVersionTest#remote");
+    cm.putObject("k0", "v0");
+
+    // node a loads the object, node b commits an update and the flush arrives before the put
+    long version = cm.getVersion();
+    MemoryCache.getInstance().onRemoteFlush(cm.getId());
+    assertNull(cm.getObject("k0"));
+    assertFalse(cm.putObject("k1", "stale", version));
+    assertNull(cm.getObject("k1"));
+    assertEquals(1, cm.getStalePuts());
+
+    // loaded after the flush
+    version = cm.getVersion();
+    assertTrue(cm.putObject("k1", "fresh", version));
+    assertEquals("fresh", cm.getObject("k1"));
+    assertEquals(1, cm.getStalePuts());
+  }
+
+  public void testLocalFlushDropsStalePut() {
+    CacheModel cm = newCacheModel("MemoryCacheVersionTest#local");
+    long version = cm.getVersion();
+    cm.flush();
+    assertFalse(cm.putObject("k", "stale", version));
+    assertNull(cm.getObject("k"));
+
+    // the put without a version can not tell the stale object
+    cm.putObject("k", "stale");
+    assertEquals("stale", cm.getObject("k"));
+  }
+
+  public void testUnversionedController() {
+    CacheModel cm = new CacheModel();
+    cm.setId("MemoryCacheVersionTest#lru");
+    cm.setCacheController(new LruCacheController());
+    long version = cm.getVersion();
+    assertTrue(cm.putObject("k", "v", version));
+    assertEquals("v", cm.getObject("k"));
+
+    cm.flush();
+    assertFalse(cm.putObject("k", "stale", version));
+    assertNull(cm.getObject("k"));
+    assertTrue(cm.putObject("k", "v", cm.getVersion()));
+    assertEquals(1, cm.getStalePuts());
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibatis.sqlmap.engine.mapping.sql.simple;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.ibatis.sqlmap.BaseSqlMapTest;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
+import com.ibatis.sqlmap.engine.scope.SessionScope;
+import com.ibatis.sqlmap.engine.scope.StatementScope;
+
+import testdomain.Account;
+
+public class SimpleDynamicSqlTest extends BaseSqlMapTest {
+
+  @Override
+  protected void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("table", "ACCOUNT");
+    initSqlMap("com/ibatis/sqlmap/maps/SqlMapConfig.xml", props);
+  }
+
+  private static String render(SimpleDynamicSql sql, Object param) {
+    return sql.getSql(new StatementScope(new SessionScope()), param);
+  }
+
+  private static SimpleDynamicSql sql(String text) {
+    return new SimpleDynamicSql(((SqlMapClientImpl) sqlMap).getDelegate(), text);
+  }
+
+  public void testSubstitutions() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("column", "ACC_ID");
+    map.put("order", null);
+    SimpleDynamicSql sql = sql("select $column$ from $@table$ order by $column$ $order$, '$$1'");
+    assertEquals("select ACC_ID from ACCOUNT order by ACC_ID , '$1'", render(sql, map));
+
+    Account account = new Account();
+    account.setFirstName("ACC_FIRST_NAME");
+    account.setAccount(new Account());
+    account.getAccount().setLastName("ACC_LAST_NAME");
+    sql = sql("select $firstName$, $account.lastName$ from $@table$");
+    assertEquals("select ACC_FIRST_NAME, ACC_LAST_NAME from ACCOUNT", render(sql, account));
+    // the null values are empty
+    assertEquals("select ,  from ACCOUNT", render(sql, account.getAccount()));
+
+    // the simple value substitutes every element
+    assertEquals("select 5 from ACCOUNT where 5", render(sql("select $value$ from $@table$ where $id$"), 5));
+    assertEquals("select  from ACCOUNT", render(sql("select $value$ from $@table$"), null));
+  }
+
+  public void testSameValuesShareTheSql() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("column", "ACC_ID");
+    SimpleDynamicSql sql = sql("select $column$ from ACCOUNT");
+    String first = render(sql, map);
+    assertSame(first, render(sql, map));
+    map.put("column", "ACC_EMAIL");
+    assertEquals("select ACC_EMAIL from ACCOUNT", render(sql, map));
+    map.put("column", "ACC_ID");
+    assertSame(first, render(sql, map));
+  }
+
+  public void testUnterminatedElement() {
+    try {
+      render(sql("select $column from ACCOUNT"), new HashMap<String, Object>());
+      fail();
+    } catch (SqlMapException e) {
+      assertEquals("Unterminated dynamic element in near '$column from ACCOUNT'", e.getMessage());
+    }
+  }
+
+}
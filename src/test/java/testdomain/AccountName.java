@@ -0,0 +1,49 @@
+/**
+ * Copyright 2004-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package testdomain;
+
+import org.ibatis.persist.Cacheable;
+import org.ibatis.persist.Column;
+import org.ibatis.persist.Entity;
+import org.ibatis.persist.Id;
+import org.ibatis.persist.Table;
+
+@Entity
+@Cacheable(type = "MEMORY", roots = AccountEntity.class)
+@Table(name = "ACCOUNT")
+public class AccountName {
+  private int id;
+  private String firstName;
+
+  @Id
+  @Column(name = "ACC_ID")
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  @Column(name = "ACC_FIRST_NAME")
+  public String getFirstName() {
+    return firstName;
+  }
+
+  public void setFirstName(String firstName) {
+    this.firstName = firstName;
+  }
+}